@@ -0,0 +1,82 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the single log line in each supported format.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LogRecordParserBenchmark {
+    private static final int LINES_COUNT = 10000;
+
+    @Param({"THREADTIME", "TIME", "BRIEF"})
+    public SyntheticLogGenerator.Format format;
+
+    private final Map<Integer, String> pidToProcess = Collections.emptyMap();
+    private List<String> lines;
+
+    @Setup
+    public void setUp() {
+        lines = new SyntheticLogGenerator().nextLines(format, LINES_COUNT);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(LINES_COUNT)
+    public void parseLine(Blackhole blackhole) {
+        for (String line : lines) {
+            blackhole.consume(parse(line));
+        }
+    }
+
+    private LogRecord parse(String line) {
+        switch (format) {
+            case THREADTIME:
+                return LogRecordParser.parseThreadTime(Buffer.MAIN, line, pidToProcess);
+            case TIME:
+                return LogRecordParser.parseTime(Buffer.MAIN, line, pidToProcess);
+            case BRIEF:
+                return LogRecordParser.parseBrief(Buffer.MAIN, line, pidToProcess);
+            default:
+                throw new IllegalArgumentException("Unsupported format " + format);
+        }
+    }
+}
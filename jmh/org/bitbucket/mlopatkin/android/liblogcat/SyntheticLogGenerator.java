@@ -0,0 +1,195 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Resources;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Deterministic generator of the benchmark data. Records are built from the real ones of the test fixtures: the
+ * generator picks random fixture records and assigns them increasing timestamps. The same seed always produces the
+ * same sequence, so the results of different runs are comparable.
+ */
+public class SyntheticLogGenerator {
+    /** Seed that is used by all benchmarks. */
+    public static final long DEFAULT_SEED = 20180719L;
+
+    private static final String FIXTURE =
+            "/org/bitbucket/mlopatkin/android/liblogcat/file/galaxy_nexus_jbmr2_threadtime.log";
+    private static final int MAX_TIME_STEP_MS = 20;
+
+    /**
+     * Text formats of the generated lines.
+     */
+    public enum Format {
+        THREADTIME,
+        TIME,
+        BRIEF
+    }
+
+    private static volatile List<LogRecord> templates;
+
+    private final List<LogRecord> fixtureRecords;
+    private final Random random;
+    private long time;
+
+    public SyntheticLogGenerator() {
+        this(DEFAULT_SEED);
+    }
+
+    public SyntheticLogGenerator(long seed) {
+        fixtureRecords = getTemplates();
+        random = new Random(seed);
+        time = fixtureRecords.get(0).getTimestamp();
+    }
+
+    /**
+     * @return the next record, its timestamp is not less than the timestamp of the previous one
+     */
+    public LogRecord nextRecord() {
+        LogRecord template = fixtureRecords.get(random.nextInt(fixtureRecords.size()));
+        time += random.nextInt(MAX_TIME_STEP_MS);
+        return new LogRecord(time, template.getPid(), template.getTid(), template.getAppName(),
+                             template.getPriority(), template.getTag(), template.getMessage(), template.getBuffer());
+    }
+
+    /**
+     * @return the list of the next {@code count} records
+     */
+    public List<LogRecord> nextRecords(int count) {
+        List<LogRecord> result = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            result.add(nextRecord());
+        }
+        return result;
+    }
+
+    /**
+     * @return the list of the next {@code count} records formatted as lines without line terminators
+     */
+    public List<String> nextLines(Format format, int count) {
+        List<String> result = new ArrayList<>(count);
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < count; ++i) {
+            line.setLength(0);
+            appendRecord(line, nextRecord(), format);
+            result.add(line.toString());
+        }
+        return result;
+    }
+
+    /**
+     * Writes the log file of approximately the given size. The file starts with the buffer header like the real
+     * logcat output does.
+     */
+    public void writeFile(File file, Format format, long sizeBytes) throws IOException {
+        try (Writer out = new BufferedWriter(
+                new OutputStreamWriter(Files.newOutputStream(file.toPath()), StandardCharsets.UTF_8), 1 << 16)) {
+            out.write("--------- beginning of /dev/log/main\n");
+            StringBuilder line = new StringBuilder();
+            long written = 0;
+            while (written < sizeBytes) {
+                line.setLength(0);
+                appendRecord(line, nextRecord(), format).append('\n');
+                out.append(line);
+                // Fixture messages are mostly ASCII, so the number of chars is close enough to the number of bytes.
+                written += line.length();
+            }
+        }
+    }
+
+    /**
+     * Formats the record the same way as {@code logcat -v <format>} does.
+     */
+    public static StringBuilder appendRecord(StringBuilder line, LogRecord record, Format format) {
+        switch (format) {
+            case THREADTIME:
+                line.append(TimeFormatUtils.convertTimeToString(record.getTimestamp())).append(' ');
+                appendPadded(line, record.getPid()).append(' ');
+                appendPadded(line, record.getTid()).append(' ');
+                line.append(record.getPriority().getLetter()).append(' ').append(record.getTag()).append(": ");
+                break;
+            case TIME:
+                line.append(TimeFormatUtils.convertTimeToString(record.getTimestamp())).append(' ');
+                appendBriefPrefix(line, record);
+                break;
+            case BRIEF:
+                appendBriefPrefix(line, record);
+                break;
+            default:
+                throw new IllegalArgumentException("Unsupported format " + format);
+        }
+        return line.append(record.getMessage());
+    }
+
+    private static void appendBriefPrefix(StringBuilder line, LogRecord record) {
+        line.append(record.getPriority().getLetter()).append('/').append(record.getTag()).append('(');
+        appendPadded(line, record.getPid()).append("): ");
+    }
+
+    private static StringBuilder appendPadded(StringBuilder line, int value) {
+        return line.append(Strings.padStart(Integer.toString(value), 5, ' '));
+    }
+
+    private static List<LogRecord> getTemplates() {
+        List<LogRecord> result = templates;
+        if (result == null) {
+            result = loadTemplates();
+            templates = result;
+        }
+        return result;
+    }
+
+    private static List<LogRecord> loadTemplates() {
+        List<String> lines;
+        try {
+            lines = Resources.readLines(Resources.getResource(SyntheticLogGenerator.class, FIXTURE),
+                                        StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        List<LogRecord> result = new ArrayList<>(lines.size());
+        for (String line : lines) {
+            if (LogRecordParser.isLogBeginningLine(line)) {
+                continue;
+            }
+            LogRecord record = LogRecordParser.parseThreadTime(Buffer.MAIN, line, Collections.emptyMap());
+            if (record.getPid() != LogRecord.NO_ID) {
+                result.add(record);
+            }
+        }
+        if (result.isEmpty()) {
+            throw new IllegalStateException("No records in " + FIXTURE);
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.text.ParseException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding of the logcat timestamps.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimeFormatUtilsBenchmark {
+    private static final int TIMESTAMPS_COUNT = 10000;
+
+    private String[] timestamps;
+
+    @Setup
+    public void setUp() {
+        List<LogRecord> records = new SyntheticLogGenerator().nextRecords(TIMESTAMPS_COUNT);
+        timestamps = new String[records.size()];
+        for (int i = 0; i < timestamps.length; ++i) {
+            timestamps[i] = TimeFormatUtils.convertTimeToString(records.get(i).getTimestamp());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TIMESTAMPS_COUNT)
+    public void parseTimestamp(Blackhole blackhole) throws ParseException {
+        for (String timestamp : timestamps) {
+            blackhole.consume(TimeFormatUtils.parseTimestamp(timestamp, 0));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(TIMESTAMPS_COUNT)
+    public void getTimeFromString(Blackhole blackhole) throws ParseException {
+        for (String timestamp : timestamps) {
+            blackhole.consume(TimeFormatUtils.getTimeFromString(timestamp));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LoadingDataSource;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
+import org.bitbucket.mlopatkin.android.liblogcat.SyntheticLogGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loading of the whole synthetic log file through {@link FileDataSourceFactory}, from opening the file until the
+ * data source reports that the loading is finished. Files above the memory mapping threshold are decoded lazily, so
+ * only the indexing is measured for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class FileLoadBenchmark {
+    private static final long MEGABYTE = 1024 * 1024;
+
+    @Param({"100", "1024"})
+    public int sizeMb;
+
+    @Param({"THREADTIME"})
+    public SyntheticLogGenerator.Format format;
+
+    private File file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        file = File.createTempFile("benchmark", ".log");
+        new SyntheticLogGenerator().writeFile(file, format, sizeMb * MEGABYTE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (file != null && !file.delete()) {
+            file.deleteOnExit();
+        }
+    }
+
+    @Benchmark
+    public int loadFile() throws Exception {
+        LoadingDataSource source = (LoadingDataSource) FileDataSourceFactory.createDataSource(file);
+        try {
+            CountingListener listener = new CountingListener();
+            source.setProgressListener(listener);
+            source.setLogRecordListener(listener);
+            listener.finished.await();
+            if (!listener.completed) {
+                throw new IllegalStateException("Loading of " + file + " failed");
+            }
+            return listener.count;
+        } finally {
+            source.close();
+        }
+    }
+
+    private static class CountingListener implements RecordListener<LogRecord>, LoadingDataSource.ProgressListener {
+        // Written by the loading thread, read after the latch is released.
+        final CountDownLatch finished = new CountDownLatch(1);
+        boolean completed;
+        int count;
+
+        @Override
+        public void addRecord(LogRecord record) {
+            ++count;
+        }
+
+        @Override
+        public void addRecords(List<LogRecord> records) {
+            count += records.size();
+        }
+
+        @Override
+        public void setRecords(List<LogRecord> records) {
+            count = records.size();
+        }
+
+        @Override
+        public void onProgress(long loaded, long total) {
+        }
+
+        @Override
+        public void onLoadingFinished(boolean completed) {
+            this.completed = completed;
+            finished.countDown();
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.utils;
+
+import com.google.common.collect.Ordering;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.SyntheticLogGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordering of the batch of records that arrived from several buffers and merging it into the already sorted records.
+ * Records of each buffer are sorted, but the buffers are interleaved in chunks, like the live logcat output is.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MergeOrderedBenchmark {
+    private static final Buffer[] BUFFERS = {Buffer.MAIN, Buffer.SYSTEM, Buffer.EVENTS};
+    private static final int MAX_CHUNK_SIZE = 50;
+
+    @Param({"100000"})
+    public int baseSize;
+
+    @Param({"100", "10000"})
+    public int batchSize;
+
+    private List<LogRecord> base;
+    private List<LogRecord> batch;
+    private List<LogRecord> target;
+
+    @Setup(Level.Trial)
+    public void setUpData() {
+        List<LogRecord> records = new SyntheticLogGenerator().nextRecords(baseSize + batchSize);
+        // Every other record of the tail goes into the batch, so the merge has to insert records in the middle of
+        // the base.
+        int tailStart = Math.max(0, records.size() - 2 * batchSize);
+        base = new ArrayList<>(records.subList(0, tailStart));
+        List<LogRecord> batchRecords = new ArrayList<>(batchSize);
+        for (int i = tailStart; i < records.size(); ++i) {
+            if ((i - tailStart) % 2 == 1 && batchRecords.size() < batchSize) {
+                batchRecords.add(records.get(i));
+            } else {
+                base.add(records.get(i));
+            }
+        }
+        batch = interleave(batchRecords, new Random(SyntheticLogGenerator.DEFAULT_SEED));
+    }
+
+    @Setup(Level.Invocation)
+    public void setUpTarget() {
+        target = new ArrayList<>(base);
+    }
+
+    @Benchmark
+    public List<LogRecord> sortAndMerge() {
+        List<LogRecord> sorted = new ArrayList<>(batch);
+        sorted.sort(Ordering.natural());
+        MyListUtils.mergeOrdered(target, sorted);
+        return target;
+    }
+
+    @Benchmark
+    public List<LogRecord> kWayMergeAndMerge() {
+        KWayMerger<LogRecord> merger = new KWayMerger<>(Ordering.natural(), LogRecord::getBuffer);
+        merger.addAll(batch);
+        MyListUtils.mergeOrdered(target, merger.drain());
+        return target;
+    }
+
+    /**
+     * Distributes the sorted records between the buffers and interleaves the buffers in chunks of random size. The
+     * records of each buffer remain sorted.
+     */
+    private static List<LogRecord> interleave(List<LogRecord> records, Random random) {
+        List<List<LogRecord>> streams = new ArrayList<>();
+        for (int i = 0; i < BUFFERS.length; ++i) {
+            streams.add(new ArrayList<>());
+        }
+        for (LogRecord record : records) {
+            int stream = random.nextInt(BUFFERS.length);
+            streams.get(stream).add(withBuffer(record, BUFFERS[stream]));
+        }
+        List<LogRecord> result = new ArrayList<>(records.size());
+        int[] positions = new int[BUFFERS.length];
+        while (result.size() < records.size()) {
+            int stream = random.nextInt(BUFFERS.length);
+            List<LogRecord> streamRecords = streams.get(stream);
+            int end = Math.min(streamRecords.size(), positions[stream] + 1 + random.nextInt(MAX_CHUNK_SIZE));
+            result.addAll(streamRecords.subList(positions[stream], end));
+            positions[stream] = end;
+        }
+        return result;
+    }
+
+    private static LogRecord withBuffer(LogRecord record, Buffer buffer) {
+        return new LogRecord(record.getTimestamp(), record.getPid(), record.getTid(), record.getAppName(),
+                             record.getPriority(), record.getTag(), record.getMessage(), buffer);
+    }
+}
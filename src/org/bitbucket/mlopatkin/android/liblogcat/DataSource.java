@@ -40,6 +40,14 @@ public interface DataSource {
      */
     Map<Integer, String> getPidToProcessConverter();
 
+    /**
+     * Returns the table in which the tags and the application names of the records of this source are interned. Each
+     * source has its own table, so the symbols of the closed source can be collected.
+     *
+     * @return the symbol table of this source
+     */
+    SymbolTable getSymbolTable();
+
     /**
      * Disposes all resources of this {@link DataSource}. It becomes not usable.
      */
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+/**
+ * Data source that loads its records in background after the listener is set, e.g. a big log file. The records
+ * arrive into the listener in batches while loading.
+ */
+public interface LoadingDataSource extends DataSource {
+    /**
+     * Receives the loading progress. Methods are called on the loading thread.
+     */
+    interface ProgressListener {
+        /**
+         * Called after each loaded batch.
+         *
+         * @param loaded the amount of the loaded data, e.g. bytes
+         * @param total the total amount of the data
+         */
+        void onProgress(long loaded, long total);
+
+        /**
+         * Called once the loading is completed, failed or cancelled.
+         *
+         * @param completed {@code true} if all records have been loaded
+         */
+        void onLoadingFinished(boolean completed);
+    }
+
+    /**
+     * Sets the listener of the loading progress. Should be called before
+     * {@link #setLogRecordListener(RecordListener)} to receive all notifications.
+     *
+     * @param progressListener the listener to set
+     */
+    void setProgressListener(ProgressListener progressListener);
+
+    /**
+     * Stops loading. The records loaded so far remain in the listener.
+     */
+    void cancelLoading();
+}
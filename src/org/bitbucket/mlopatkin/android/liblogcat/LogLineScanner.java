@@ -0,0 +1,293 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+/**
+ * Single-pass cursor over a logcat line. It replaces regular expressions in {@link LogRecordParser} and accepts
+ * exactly the same lines the old patterns did: {@code \s} is {@code [ \t\n\x0B\f\r]}, {@code \d} is ASCII digit and
+ * "any char" is anything but a line terminator.
+ * <p>
+ * Methods that consume input return a failure marker and leave the position undefined if the input doesn't match.
+ */
+final class LogLineScanner {
+    /** Returned by {@link #readPriorityLetter()} if there is no priority. */
+    static final char NO_PRIORITY = 0;
+
+    private static final int MICROSECONDS_LENGTH = 3;
+    private static final int MAX_ID_DIGITS = 10;
+
+    private final String line;
+    private final int length;
+    private int pos;
+
+    LogLineScanner(String line) {
+        this.line = line;
+        this.length = line.length();
+    }
+
+    String getLine() {
+        return line;
+    }
+
+    int getPosition() {
+        return pos;
+    }
+
+    void setPosition(int pos) {
+        this.pos = pos;
+    }
+
+    /**
+     * Consumes {@code c} if it is the next char.
+     *
+     * @return {@code true} if the char was consumed
+     */
+    boolean consume(char c) {
+        if (pos < length && line.charAt(pos) == c) {
+            ++pos;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Consumes {@code \s*}.
+     *
+     * @return the number of consumed chars
+     */
+    int skipWhitespace() {
+        int start = pos;
+        while (pos < length && isWhitespace(line.charAt(pos))) {
+            ++pos;
+        }
+        return pos - start;
+    }
+
+    /**
+     * Consumes {@code \s+}.
+     *
+     * @return {@code true} if at least one whitespace char was consumed
+     */
+    boolean skipRequiredWhitespace() {
+        return skipWhitespace() > 0;
+    }
+
+    /**
+     * Consumes {@code (\d\d-\d\d \d\d:\d\d:\d\d\.\d\d\d)(?:\d\d\d)?}.
+     *
+     * @return the start position of the millisecond-precision timestamp or {@code -1} if there is no timestamp
+     */
+    int readTimestamp() {
+        int start = pos;
+        if (length - start < TimeFormatUtils.TIMESTAMP_LENGTH
+                || !isDigitPair(start) || line.charAt(start + 2) != '-'
+                || !isDigitPair(start + 3) || line.charAt(start + 5) != ' '
+                || !isDigitPair(start + 6) || line.charAt(start + 8) != ':'
+                || !isDigitPair(start + 9) || line.charAt(start + 11) != ':'
+                || !isDigitPair(start + 12) || line.charAt(start + 14) != '.'
+                || !isDigitPair(start + 15) || !isDigit(line.charAt(start + 17))) {
+            return -1;
+        }
+        pos = start + TimeFormatUtils.TIMESTAMP_LENGTH;
+        if (length - pos >= MICROSECONDS_LENGTH
+                && isDigitPair(pos) && isDigit(line.charAt(pos + 2))) {
+            pos += MICROSECONDS_LENGTH;
+        }
+        return start;
+    }
+
+    /**
+     * Consumes {@code \d+} and converts it to int.
+     *
+     * @return the parsed value or {@code -1} if there are no digits or the value doesn't fit into int
+     */
+    int readId() {
+        int start = pos;
+        long value = 0;
+        while (pos < length && isDigit(line.charAt(pos))) {
+            if (pos - start < MAX_ID_DIGITS) {
+                value = value * 10 + (line.charAt(pos) - '0');
+            }
+            ++pos;
+        }
+        int digits = pos - start;
+        if (digits == 0 || digits > MAX_ID_DIGITS || value > Integer.MAX_VALUE) {
+            return -1;
+        }
+        return (int) value;
+    }
+
+    /**
+     * Consumes {@code [AVDIWEF]}.
+     *
+     * @return the priority letter or {@link #NO_PRIORITY} if the next char isn't a priority letter
+     */
+    char readPriorityLetter() {
+        if (pos >= length) {
+            return NO_PRIORITY;
+        }
+        char c = line.charAt(pos);
+        switch (c) {
+            case 'A':
+            case 'V':
+            case 'D':
+            case 'I':
+            case 'W':
+            case 'E':
+            case 'F':
+                ++pos;
+                return c;
+            default:
+                return NO_PRIORITY;
+        }
+    }
+
+    /**
+     * Finds the end of the lazy {@code (.*?)\s*: } (or {@code (.*?): } if whitespace isn't allowed) tag that starts at
+     * the current position and is followed by the {@code (.*)} message.
+     *
+     * @return the position of the first separator char after the tag or {@code -1} if the rest of the line doesn't
+     *         match. The current position is set to the start of the message.
+     */
+    int findTagEndBeforeColon(boolean allowWhitespace) {
+        int tagStart = pos;
+        // The message cannot contain line terminators, so the separator must be after the last one. Only the \s*
+        // before the separator can swallow the terminator.
+        int lastTerminator = findLastLineTerminator(tagStart);
+        int separator = line.indexOf(": ", Math.max(tagStart, lastTerminator - 1));
+        if (separator < 0) {
+            return -1;
+        }
+        int tagEnd = allowWhitespace ? trimTrailingWhitespace(tagStart, separator) : separator;
+        if (!isAnyCharsRange(tagStart, tagEnd)) {
+            return -1;
+        }
+        pos = separator + 2;
+        return tagEnd;
+    }
+
+    /**
+     * Finds the end of the lazy {@code (.*?)\s*\(\s*(\d+)\): } tag that starts at the current position and is
+     * followed by the {@code (.*)} message.
+     *
+     * @return the position of the first separator char after the tag or {@code -1} if the rest of the line doesn't
+     *         match. The current position is set to the opening bracket of the separator.
+     */
+    int findTagEndBeforePid() {
+        int tagStart = pos;
+        int lastTerminator = findLastLineTerminator(tagStart);
+        int bracket = line.indexOf('(', tagStart);
+        while (bracket >= 0) {
+            if (findPidInBracketsEnd(bracket) > lastTerminator) {
+                int tagEnd = trimTrailingWhitespace(tagStart, bracket);
+                if (!isAnyCharsRange(tagStart, tagEnd)) {
+                    return -1;
+                }
+                pos = bracket;
+                return tagEnd;
+            }
+            bracket = line.indexOf('(', bracket + 1);
+        }
+        return -1;
+    }
+
+    /**
+     * Finds the start of the greedy {@code (.*)  \(} message followed by {@code (.*?)\)$} tag.
+     *
+     * @return the position of the separator after the message or {@code -1} if there is no separator. The current
+     *         position isn't changed.
+     */
+    int findMessageEndBeforeTag() {
+        if (length == 0 || line.charAt(length - 1) != ')') {
+            return -1;
+        }
+        int separator = line.lastIndexOf("  (", length - 4);
+        return separator >= pos ? separator : -1;
+    }
+
+    /**
+     * Checks that the range of the line can be matched with {@code .*}.
+     */
+    boolean isAnyCharsRange(int from, int to) {
+        for (int i = from; i < to; ++i) {
+            if (isLineTerminator(line.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int findPidInBracketsEnd(int bracket) {
+        int saved = pos;
+        pos = bracket + 1;
+        skipWhitespace();
+        int result = (readId() >= 0 && consume(')') && consume(':') && consume(' ')) ? pos : -1;
+        pos = saved;
+        return result;
+    }
+
+    private int findLastLineTerminator(int from) {
+        for (int i = length - 1; i >= from; --i) {
+            if (isLineTerminator(line.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int trimTrailingWhitespace(int from, int to) {
+        while (to > from && isWhitespace(line.charAt(to - 1))) {
+            --to;
+        }
+        return to;
+    }
+
+    private boolean isDigitPair(int at) {
+        return isDigit(line.charAt(at)) && isDigit(line.charAt(at + 1));
+    }
+
+    private static boolean isDigit(char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    private static boolean isWhitespace(char c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\u000B':
+            case '\f':
+            case '\r':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isLineTerminator(char c) {
+        switch (c) {
+            case '\n':
+            case '\r':
+            case '\u0085':
+            case '\u2028':
+            case '\u2029':
+                return true;
+            default:
+                return false;
+        }
+    }
+}
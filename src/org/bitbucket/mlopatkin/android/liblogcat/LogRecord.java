@@ -20,6 +20,8 @@ import com.google.common.base.Strings;
 
 import java.util.Date;
 
+import javax.annotation.Nullable;
+
 /**
  * This class contains all available log record data like timestamp, tag,
  * message, etc.
@@ -55,15 +57,20 @@ public class LogRecord implements Comparable<LogRecord> {
     }
 
     public static final int NO_ID = -1;
+    /** Value of {@link #getTimestamp()} for records without time. */
+    public static final long NO_TIME = Long.MIN_VALUE;
 
-    private final Date time;
+    private final long time;
     private final int pid;
     private final int tid;
     private final Priority priority;
     private final String tag;
+    private final int tagId;
     private final String message;
     private final Buffer buffer;
     private final String appName;
+    private final int appNameId;
+    private final @Nullable SymbolTable symbols;
 
     public LogRecord(Date time, int pid, int tid, String appName, Priority priority, String tag,
             String message) {
@@ -73,20 +80,91 @@ public class LogRecord implements Comparable<LogRecord> {
     public LogRecord(Date time, int pid, int tid, String appName, Priority priority, String tag,
             String message,
             Buffer buffer) {
+        this(time != null ? time.getTime() : NO_TIME, pid, tid, appName, priority, tag, message, buffer);
+    }
+
+    /**
+     * Creates the record that doesn't belong to any symbol table, its tag and application name aren't interned.
+     */
+    public LogRecord(long time, int pid, int tid, String appName, Priority priority, String tag, String message,
+            Buffer buffer) {
+        this(null, time, pid, tid, appName, priority, tag, message, buffer);
+    }
+
+    /**
+     * Creates the record and interns its tag and application name in the symbol table of the data source.
+     *
+     * @param symbols the table of the data source or {@code null} to not intern the fields
+     */
+    public LogRecord(@Nullable SymbolTable symbols, long time, int pid, int tid, String appName, Priority priority,
+            String tag, String message, Buffer buffer) {
+        this.symbols = symbols;
         this.time = time;
         this.pid = pid;
         this.tid = tid;
-        this.appName = CharMatcher.whitespace().trimFrom(Strings.nullToEmpty(appName));
+        String nonNullAppName = Strings.nullToEmpty(appName);
+        this.appNameId = symbols != null ? symbols.internTrimmed(nonNullAppName) : SymbolTable.NO_ID;
+        this.appName = appNameId != SymbolTable.NO_ID
+                ? symbols.getSymbol(appNameId)
+                : CharMatcher.whitespace().trimFrom(nonNullAppName);
+        this.priority = priority;
+        this.tagId = tag != null && symbols != null ? symbols.intern(tag) : SymbolTable.NO_ID;
+        this.tag = tagId != SymbolTable.NO_ID ? symbols.getSymbol(tagId) : tag;
+        this.message = message;
+        this.buffer = buffer;
+    }
+
+    private LogRecord(SymbolTable symbols, long time, int pid, int tid, String appName, int appNameId,
+            Priority priority, String tag, int tagId, String message, Buffer buffer) {
+        this.symbols = symbols;
+        this.time = time;
+        this.pid = pid;
+        this.tid = tid;
+        this.appName = appName;
+        this.appNameId = appNameId;
         this.priority = priority;
         this.tag = tag;
+        this.tagId = tagId;
         this.message = message;
         this.buffer = buffer;
     }
 
+    /**
+     * Creates the record from the fields that are already interned, e.g. the ones kept in a compact storage. The tag
+     * and the application name aren't interned and trimmed again.
+     *
+     * @param symbols the table of the ids
+     * @param appName the symbol with id {@code appNameId} or the trimmed name if the id is {@link SymbolTable#NO_ID}
+     * @param tag the symbol with id {@code tagId} or the tag if the id is {@link SymbolTable#NO_ID}
+     */
+    public static LogRecord createInterned(SymbolTable symbols, long time, int pid, int tid, String appName,
+            int appNameId, Priority priority, String tag, int tagId, String message, Buffer buffer) {
+        return new LogRecord(symbols, time, pid, tid, appName, appNameId, priority, tag, tagId, message, buffer);
+    }
+
+    /**
+     * Returns the timestamp of the record as a new Date object.
+     *
+     * @return the timestamp or {@code null} if the record has no time
+     * @see #getTimestamp()
+     */
     public Date getTime() {
+        return hasTime() ? new Date(time) : null;
+    }
+
+    /**
+     * Returns the timestamp of the record without creating a Date object.
+     *
+     * @return the timestamp in milliseconds since epoch or {@link #NO_TIME}
+     */
+    public long getTimestamp() {
         return time;
     }
 
+    public boolean hasTime() {
+        return time != NO_TIME;
+    }
+
     public int getPid() {
         return pid;
     }
@@ -103,6 +181,14 @@ public class LogRecord implements Comparable<LogRecord> {
         return tag;
     }
 
+    /**
+     * @return the id of the tag in the {@link #getSymbolTable() symbol table of the record} or
+     *         {@link SymbolTable#NO_ID}
+     */
+    public int getTagId() {
+        return tagId;
+    }
+
     public String getMessage() {
         return message;
     }
@@ -115,10 +201,26 @@ public class LogRecord implements Comparable<LogRecord> {
         return appName;
     }
 
+    /**
+     * @return the id of the application name in the {@link #getSymbolTable() symbol table of the record} or
+     *         {@link SymbolTable#NO_ID}
+     */
+    public int getAppNameId() {
+        return appNameId;
+    }
+
+    /**
+     * @return the table of the data source that created the record or {@code null} if the fields aren't interned
+     */
+    @Nullable
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     @Override
     public String toString() {
         StringBuilder b = new StringBuilder();
-        if (time != null) {
+        if (hasTime()) {
             b.append(TimeFormatUtils.convertTimeToString(time)).append('\t');
         }
         if (pid != NO_ID) {
@@ -144,7 +246,7 @@ public class LogRecord implements Comparable<LogRecord> {
      */
     @Override
     public int compareTo(LogRecord o) {
-        int timeCompare = getTime().compareTo(o.getTime());
+        int timeCompare = Long.compare(time, o.time);
         if (timeCompare == 0) {
             return getBuffer().compareTo(o.getBuffer());
         } else {
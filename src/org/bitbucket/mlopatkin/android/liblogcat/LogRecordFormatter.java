@@ -38,7 +38,7 @@ public class LogRecordFormatter {
             throw new IllegalArgumentException("Not sufficient data: " + record);
         }
         String formatString = "%s %5d %5d %s %-8s: %s";
-        return String.format(formatString, TimeFormatUtils.convertTimeToString(record.getTime()),
+        return String.format(formatString, TimeFormatUtils.convertTimeToString(record.getTimestamp()),
                 record.getPid(), record.getTid(), record.getPriority().getLetter(),
                 record.getTag(), record.getMessage());
     }
@@ -48,7 +48,7 @@ public class LogRecordFormatter {
             throw new IllegalArgumentException("Not sufficient data: " + record);
         }
         String formatString = "%s %s/%-8s(%5d): %s";
-        return String.format(formatString, TimeFormatUtils.convertTimeToString(record.getTime()),
+        return String.format(formatString, TimeFormatUtils.convertTimeToString(record.getTimestamp()),
                 record.getPriority().getLetter(), record.getTag(), record.getPid(),
                 record.getMessage());
     }
@@ -77,7 +77,7 @@ public class LogRecordFormatter {
 
     private static int getRecordMask(LogRecord record) {
         int result = 0;
-        if (record.getTime() != null) {
+        if (record.hasTime()) {
             result |= MASK_TIME;
         }
         if (record.getPid() != LogRecord.NO_ID) {
@@ -17,214 +17,305 @@ package org.bitbucket.mlopatkin.android.liblogcat;
 
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
-import org.bitbucket.mlopatkin.utils.MyStringUtils;
 
 import java.text.ParseException;
-import java.util.Date;
 import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+
+import javax.annotation.Nullable;
 
 /**
  * Utility class to parse log record lines in different formats.
+ * <p>
+ * Lines are tokenized with the single-pass {@link LogLineScanner} instead of regular expressions. The accepted
+ * grammar is still described by the regex-like comments on the format classes.
  */
 public class LogRecordParser {
 
     private LogRecordParser() {
     }
 
-    private static final String TIMESTAMP_REGEX = "(\\d\\d-\\d\\d \\d\\d:\\d\\d:\\d\\d\\.\\d\\d\\d)(?:\\d\\d\\d)?";
-    private static final String ID_REGEX = "(\\d+)";
-    private static final String PID_REGEX = ID_REGEX;
-    private static final String PID_BRACKETS = "\\(\\s*" + PID_REGEX + "\\)";
-
-    private static final String TID_REGEX = ID_REGEX;
-    private static final String TAG_REGEX = "(.*?)";
-    private static final String PRIORITY_REGEX = "([AVDIWEF])";
-    private static final String MESSAGE_REGEX = "(.*)";
-    private static final String SEP = "\\s+";
-    private static final String SEP_OPT = "\\s*";
-
+    /**
+     * {@code TIMESTAMP\s+(\d+)\s+(\d+)\s+([AVDIWEF])\s+(.*?)\s*: (.*)}
+     */
     private static class ThreadTime {
 
-        private static final String TAG = TAG_REGEX + "\\s*: ";
-        private static final String[] LOG_RECORD_FIELDS = {TIMESTAMP_REGEX, SEP, PID_REGEX, SEP,
-                                                           TID_REGEX, SEP, PRIORITY_REGEX, SEP, TAG, MESSAGE_REGEX};
-        private static final Pattern threadTimeRecordPattern =
-                Pattern.compile("^" + MyStringUtils.join(LOG_RECORD_FIELDS) + "$");
-
-        static Matcher matchLine(String line) {
-            return threadTimeRecordPattern.matcher(line);
-        }
-
-        static LogRecord createFromGroups(Buffer buffer, Matcher m,
-                                          Map<Integer, String> pidToProcess) {
-            if (!m.matches()) {
+        static LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                               Map<Integer, String> pidToProcess) {
+            LogLineScanner scanner = new LogLineScanner(line);
+            int timestampStart = scanner.readTimestamp();
+            if (timestampStart < 0 || !scanner.skipRequiredWhitespace()) {
+                return null;
+            }
+            int pid = scanner.readId();
+            if (pid < 0 || !scanner.skipRequiredWhitespace()) {
                 return null;
             }
+            int tid = scanner.readId();
+            if (tid < 0 || !scanner.skipRequiredWhitespace()) {
+                return null;
+            }
+            char priority = scanner.readPriorityLetter();
+            if (priority == LogLineScanner.NO_PRIORITY || !scanner.skipRequiredWhitespace()) {
+                return null;
+            }
+            int tagStart = scanner.getPosition();
+            int tagEnd = scanner.findTagEndBeforeColon(true);
+            if (tagEnd < 0) {
+                return null;
+            }
+            int messageStart = scanner.getPosition();
             try {
-                Date dateTime = TimeFormatUtils.getTimeFromString(m.group(1));
-                int pid = Integer.parseInt(m.group(2));
-                int tid = Integer.parseInt(m.group(3));
-                Priority priority = getPriorityFromChar(m.group(4));
-                String tag = m.group(5);
-                String message = m.group(6);
-                return new LogRecord(dateTime, pid, tid, pidToProcess.get(pid), priority, tag,
-                                     message, buffer);
+                long dateTime = TimeFormatUtils.parseTimestamp(line, timestampStart);
+                String tag = internTag(symbols, line, tagStart, tagEnd);
+                String message = line.substring(messageStart);
+                return new LogRecord(symbols, dateTime, pid, tid, pidToProcess.get(pid), getPriorityFromChar(priority),
+                                     tag, message, buffer);
             } catch (ParseException e) {
-                return new LogRecord(new Date(), -1, -1, "", Priority.ERROR, "Parse Error",
-                                     m.group());
+                return createParseErrorRecord(symbols, line);
             }
         }
     }
 
+    /**
+     * {@code ([AVDIWEF])/(.*?)\s*\(\s*(\d+)\): (.*)}
+     */
     private static class Brief {
 
-        private static final String[] LOG_RECORD_FIELDS = {PRIORITY_REGEX, "/", TAG_REGEX,
-                                                           SEP_OPT, PID_BRACKETS, ": ", MESSAGE_REGEX};
-        private static final Pattern briefRecordPattern =
-                Pattern.compile("^" + MyStringUtils.join(LOG_RECORD_FIELDS) + "$");
-
-        static Matcher matchLine(String line) {
-            return briefRecordPattern.matcher(line);
-        }
-
-        static LogRecord createFromGroups(Buffer buffer, Matcher m,
-                                          Map<Integer, String> pidToProcess) {
-            if (!m.matches()) {
+        static LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                               Map<Integer, String> pidToProcess) {
+            LogLineScanner scanner = new LogLineScanner(line);
+            char priority = scanner.readPriorityLetter();
+            if (priority == LogLineScanner.NO_PRIORITY || !scanner.consume('/')) {
                 return null;
             }
-            Priority priority = getPriorityFromChar(m.group(1));
-            String tag = m.group(2);
-            int pid = Integer.parseInt(m.group(3));
-            String message = m.group(4);
-
-            return new LogRecord(null, pid, LogRecord.NO_ID, pidToProcess.get(pid), priority, tag,
-                                 message, buffer);
+            return parseTagPidMessage(symbols, scanner, buffer, -1, priority, pidToProcess);
         }
     }
 
+    /**
+     * {@code ([AVDIWEF])\(\s*(\d+)\) (.*)  \((.*?)\)}
+     */
     private static class Process {
 
-        private static final String TAG_BRACKETS = "\\(" + TAG_REGEX + "\\)";
-        private static final String[] LOG_RECORD_FIELDS = {PRIORITY_REGEX, PID_BRACKETS, " ",
-                                                           MESSAGE_REGEX, "  ", TAG_BRACKETS};
-        private static final Pattern processRecordPattern =
-                Pattern.compile("^" + MyStringUtils.join(LOG_RECORD_FIELDS) + "$");
-
-        static Matcher matchLine(String line) {
-            return processRecordPattern.matcher(line);
-        }
-
-        static LogRecord createFromGroups(Buffer buffer, Matcher m,
-                                          Map<Integer, String> pidToProcess) {
-            if (!m.matches()) {
+        static LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                               Map<Integer, String> pidToProcess) {
+            LogLineScanner scanner = new LogLineScanner(line);
+            char priority = scanner.readPriorityLetter();
+            if (priority == LogLineScanner.NO_PRIORITY || !scanner.consume('(')) {
+                return null;
+            }
+            scanner.skipWhitespace();
+            int pid = scanner.readId();
+            if (pid < 0 || !scanner.consume(')') || !scanner.consume(' ')) {
                 return null;
             }
-            Priority priority = getPriorityFromChar(m.group(1));
-            int pid = Integer.parseInt(m.group(2));
-            String message = m.group(3);
-            String tag = m.group(4);
+            int messageStart = scanner.getPosition();
+            int messageEnd = scanner.findMessageEndBeforeTag();
+            if (messageEnd < 0) {
+                return null;
+            }
+            int tagStart = messageEnd + 3;
+            int tagEnd = line.length() - 1;
+            if (!scanner.isAnyCharsRange(messageStart, messageEnd) || !scanner.isAnyCharsRange(tagStart, tagEnd)) {
+                return null;
+            }
+            String message = line.substring(messageStart, messageEnd);
+            String tag = internTag(symbols, line, tagStart, tagEnd);
 
-            return new LogRecord(null, pid, LogRecord.NO_ID, pidToProcess.get(pid), priority, tag,
-                                 message, buffer);
+            return new LogRecord(symbols, LogRecord.NO_TIME, pid, LogRecord.NO_ID, pidToProcess.get(pid),
+                                 getPriorityFromChar(priority), tag, message, buffer);
         }
     }
 
+    /**
+     * {@code ([AVDIWEF])/(.*?): (.*)}
+     */
     private static class Tag {
 
-        private static final String[] LOG_RECORD_FIELDS = {PRIORITY_REGEX, "/", TAG_REGEX, ": ",
-                                                           MESSAGE_REGEX};
-        private static final Pattern tagRecordPattern =
-                Pattern.compile("^" + MyStringUtils.join(LOG_RECORD_FIELDS) + "$");
-
-        static Matcher matchLine(String line) {
-            return tagRecordPattern.matcher(line);
-        }
-
-        static LogRecord createFromGroups(Buffer buffer, Matcher m) {
-            if (!m.matches()) {
+        static LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line) {
+            LogLineScanner scanner = new LogLineScanner(line);
+            char priority = scanner.readPriorityLetter();
+            if (priority == LogLineScanner.NO_PRIORITY || !scanner.consume('/')) {
                 return null;
             }
-            Priority priority = getPriorityFromChar(m.group(1));
-            String tag = m.group(2);
-            String message = m.group(3);
+            int tagStart = scanner.getPosition();
+            int tagEnd = scanner.findTagEndBeforeColon(false);
+            if (tagEnd < 0) {
+                return null;
+            }
+            int messageStart = scanner.getPosition();
+            String tag = internTag(symbols, line, tagStart, tagEnd);
+            String message = line.substring(messageStart);
 
-            return new LogRecord(null, LogRecord.NO_ID, LogRecord.NO_ID, "", priority, tag, message,
-                                 buffer);
+            return new LogRecord(symbols, LogRecord.NO_TIME, LogRecord.NO_ID, LogRecord.NO_ID, "",
+                                 getPriorityFromChar(priority), tag, message, buffer);
         }
     }
 
+    /**
+     * {@code TIMESTAMP\s+([AVDIWEF])/(.*?)\s*\(\s*(\d+)\): (.*)}
+     */
     private static class Time {
 
-        private static final String[] LOG_RECORD_FIELDS = {TIMESTAMP_REGEX, SEP, PRIORITY_REGEX,
-                                                           "/", TAG_REGEX, SEP_OPT, PID_BRACKETS, ": ", MESSAGE_REGEX};
-        private static final Pattern timeRecordPattern =
-                Pattern.compile("^" + MyStringUtils.join(LOG_RECORD_FIELDS) + "$");
-
-        static Matcher matchLine(String line) {
-            return timeRecordPattern.matcher(line);
-        }
-
-        static LogRecord createFromGroups(Buffer buffer, Matcher m,
-                                          Map<Integer, String> pidToProcess) {
-            if (!m.matches()) {
+        static LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                               Map<Integer, String> pidToProcess) {
+            LogLineScanner scanner = new LogLineScanner(line);
+            int timestampStart = scanner.readTimestamp();
+            if (timestampStart < 0 || !scanner.skipRequiredWhitespace()) {
                 return null;
             }
+            char priority = scanner.readPriorityLetter();
+            if (priority == LogLineScanner.NO_PRIORITY || !scanner.consume('/')) {
+                return null;
+            }
+            return parseTagPidMessage(symbols, scanner, buffer, timestampStart, priority, pidToProcess);
+        }
+    }
+
+    /**
+     * Parses {@code (.*?)\s*\(\s*(\d+)\): (.*)} tail shared by the brief and time formats.
+     *
+     * @param timestampStart the start of the already scanned timestamp or {@code -1} if the format has no time
+     */
+    private static LogRecord parseTagPidMessage(@Nullable SymbolTable symbols, LogLineScanner scanner, Buffer buffer,
+                                                int timestampStart, char priority, Map<Integer, String> pidToProcess) {
+        String line = scanner.getLine();
+        int tagStart = scanner.getPosition();
+        int tagEnd = scanner.findTagEndBeforePid();
+        if (tagEnd < 0) {
+            return null;
+        }
+        scanner.consume('(');
+        scanner.skipWhitespace();
+        int pid = scanner.readId();
+        // the separator has already been validated by findTagEndBeforePid
+        scanner.setPosition(scanner.getPosition() + 3);
+        int messageStart = scanner.getPosition();
+        long dateTime = LogRecord.NO_TIME;
+        if (timestampStart >= 0) {
             try {
-                Date dateTime = TimeFormatUtils.getTimeFromString(m.group(1));
-                Priority priority = getPriorityFromChar(m.group(2));
-                String tag = m.group(3);
-                int pid = Integer.parseInt(m.group(4));
-                String message = m.group(5);
-                return new LogRecord(dateTime, pid, LogRecord.NO_ID, pidToProcess.get(pid),
-                                     priority, tag, message, buffer);
+                dateTime = TimeFormatUtils.parseTimestamp(line, timestampStart);
             } catch (ParseException e) {
-                return new LogRecord(new Date(), -1, -1, "", Priority.ERROR, "Parse Error",
-                                     m.group());
+                return createParseErrorRecord(symbols, line);
             }
         }
+        String tag = internTag(symbols, line, tagStart, tagEnd);
+        String message = line.substring(messageStart);
+        return new LogRecord(symbols, dateTime, pid, LogRecord.NO_ID, pidToProcess.get(pid),
+                             getPriorityFromChar(priority), tag, message, buffer);
     }
 
-    private static Priority getPriorityFromChar(String next) {
-        next = next.trim();
-        for (Priority val : Priority.values()) {
-            if (val.getLetter().equalsIgnoreCase(next)) {
-                return val;
-            }
+    /**
+     * Returns the canonical instance of the tag. The substring is only created for tags that aren't seen yet.
+     */
+    private static String internTag(@Nullable SymbolTable symbols, String line, int tagStart, int tagEnd) {
+        if (symbols == null) {
+            return line.substring(tagStart, tagEnd);
         }
-        throw new IllegalArgumentException("Symbol '" + next
-                                                   + "' doesn't correspond to valid priority value");
+        int id = symbols.intern(line, tagStart, tagEnd);
+        return id != SymbolTable.NO_ID ? symbols.getSymbol(id) : line.substring(tagStart, tagEnd);
+    }
+
+    private static Priority getPriorityFromChar(char next) {
+        switch (next) {
+            case 'V':
+                return Priority.VERBOSE;
+            case 'D':
+                return Priority.DEBUG;
+            case 'I':
+                return Priority.INFO;
+            case 'W':
+                return Priority.WARN;
+            case 'E':
+                return Priority.ERROR;
+            case 'F':
+                return Priority.FATAL;
+            default:
+                throw new IllegalArgumentException("Symbol '" + next
+                                                           + "' doesn't correspond to valid priority value");
+        }
+    }
+
+    private static LogRecord createParseErrorRecord(@Nullable SymbolTable symbols, String line) {
+        return new LogRecord(symbols, System.currentTimeMillis(), -1, -1, "", Priority.ERROR, "Parse Error", line,
+                             Buffer.UNKNOWN);
     }
 
     public static LogRecord parseThreadTime(Buffer buffer, String line,
                                             Map<Integer, String> pidToProcess) {
-        return ThreadTime.createFromGroups(buffer, ThreadTime.matchLine(line), pidToProcess);
+        return parseThreadTime(null, buffer, line, pidToProcess);
+    }
+
+    /**
+     * Parses the line and interns the fields of the record in the symbol table of the data source.
+     *
+     * @param symbols the table of the data source or {@code null} to not intern the fields
+     */
+    public static LogRecord parseThreadTime(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                                            Map<Integer, String> pidToProcess) {
+        return ThreadTime.parse(symbols, buffer, line, pidToProcess);
     }
 
     public static LogRecord parseBrief(Buffer buffer, String line,
                                        Map<Integer, String> pidToProcess) {
-        return Brief.createFromGroups(buffer, Brief.matchLine(line), pidToProcess);
+        return parseBrief(null, buffer, line, pidToProcess);
+    }
+
+    public static LogRecord parseBrief(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                                       Map<Integer, String> pidToProcess) {
+        return Brief.parse(symbols, buffer, line, pidToProcess);
     }
 
     public static LogRecord parseProcess(Buffer buffer, String line,
                                          Map<Integer, String> pidToProcess) {
-        return Process.createFromGroups(buffer, Process.matchLine(line), pidToProcess);
+        return Process.parse(null, buffer, line, pidToProcess);
     }
 
     public static LogRecord parseTag(Buffer buffer, String line) {
-        return Tag.createFromGroups(buffer, Tag.matchLine(line));
+        return Tag.parse(null, buffer, line);
     }
 
     private static final String LOG_BEGIN = "--------- beginning of ";
 
+    private static final String LOG_SWITCH = "--------- switch to ";
+
     public static boolean isLogBeginningLine(String line) {
         return (line != null) && line.startsWith(LOG_BEGIN);
     }
 
+    /**
+     * Extracts the buffer name from the {@code --------- beginning of <buffer>} or {@code --------- switch to <buffer>}
+     * line that logcat prints when it reads several buffers. Older versions print the device path like
+     * {@code /dev/log/main}, only the last component of it is returned.
+     *
+     * @return the buffer name or {@code null} if the line isn't a buffer marker
+     */
+    @Nullable
+    public static String getBufferNameFromMarker(String line) {
+        int nameStart;
+        if (line.startsWith(LOG_BEGIN)) {
+            nameStart = LOG_BEGIN.length();
+        } else if (line.startsWith(LOG_SWITCH)) {
+            nameStart = LOG_SWITCH.length();
+        } else {
+            return null;
+        }
+        int nameEnd = line.length();
+        while (nameEnd > nameStart && Character.isWhitespace(line.charAt(nameEnd - 1))) {
+            --nameEnd;
+        }
+        nameStart = Math.max(nameStart, line.lastIndexOf('/', nameEnd - 1) + 1);
+        return line.substring(nameStart, nameEnd);
+    }
+
     public static LogRecord parseTime(Buffer buffer, String line,
                                       Map<Integer, String> pidToProcess) {
-        return Time.createFromGroups(buffer, Time.matchLine(line), pidToProcess);
+        return parseTime(null, buffer, line, pidToProcess);
+    }
+
+    public static LogRecord parseTime(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                                      Map<Integer, String> pidToProcess) {
+        return Time.parse(symbols, buffer, line, pidToProcess);
     }
 
 }
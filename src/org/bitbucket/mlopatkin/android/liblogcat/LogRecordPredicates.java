@@ -21,6 +21,7 @@ import com.google.common.collect.ImmutableSet;
 
 import org.bitbucket.mlopatkin.utils.FluentPredicate;
 
+import java.util.Arrays;
 import java.util.List;
 
 import javax.annotation.Nullable;
@@ -37,11 +38,19 @@ public final class LogRecordPredicates {
     private LogRecordPredicates() {
     }
 
+    /**
+     * The result of the {@code tagMatcher} is computed once per distinct tag, so the matcher must be pure.
+     */
     public static FluentPredicate<LogRecord> matchTag(final Predicate<String> tagMatcher) {
-        return new FluentPredicate<LogRecord>() {
+        return new SymbolPredicate(tagMatcher) {
             @Override
-            public boolean apply(@Nullable LogRecord input) {
-                return tagMatcher.apply(checkNotNull(input).getTag());
+            protected int getSymbolId(LogRecord record) {
+                return record.getTagId();
+            }
+
+            @Override
+            protected String getSymbol(LogRecord record) {
+                return record.getTag();
             }
         };
     }
@@ -84,11 +93,20 @@ public final class LogRecordPredicates {
         };
     }
 
+    /**
+     * The result of the {@code appNameMatcher} is computed once per distinct application name, so the matcher must be
+     * pure.
+     */
     public static FluentPredicate<LogRecord> matchAppName(final Predicate<String> appNameMatcher) {
-        return new FluentPredicate<LogRecord>() {
+        return new SymbolPredicate(appNameMatcher) {
             @Override
-            public boolean apply(@Nullable LogRecord input) {
-                return appNameMatcher.apply(checkNotNull(input).getAppName());
+            protected int getSymbolId(LogRecord record) {
+                return record.getAppNameId();
+            }
+
+            @Override
+            protected String getSymbol(LogRecord record) {
+                return record.getAppName();
             }
         };
     }
@@ -101,4 +119,58 @@ public final class LogRecordPredicates {
             }
         };
     }
+
+    /**
+     * Predicate on the interned field of the record that remembers the result of the matcher for each symbol id.
+     * Concurrent evaluations may compute the same result twice, it is harmless because the matcher is pure. The results
+     * are dropped when a record of another symbol table comes, i.e. of the new data source.
+     */
+    private abstract static class SymbolPredicate extends FluentPredicate<LogRecord> {
+        private static final byte UNKNOWN = 0;
+        private static final byte MATCHES = 1;
+        private static final byte DOES_NOT_MATCH = 2;
+
+        private final Predicate<String> matcher;
+        private volatile Results results = new Results(null, new byte[64]);
+
+        SymbolPredicate(Predicate<String> matcher) {
+            this.matcher = matcher;
+        }
+
+        @Override
+        public boolean apply(@Nullable LogRecord input) {
+            int id = getSymbolId(checkNotNull(input));
+            if (id == SymbolTable.NO_ID) {
+                return matcher.apply(getSymbol(input));
+            }
+            Results currentResults = results;
+            byte[] values = currentResults.symbols == input.getSymbolTable() ? currentResults.values : new byte[64];
+            if (id < values.length && values[id] != UNKNOWN) {
+                return values[id] == MATCHES;
+            }
+            boolean result = matcher.apply(getSymbol(input));
+            if (id >= values.length) {
+                values = Arrays.copyOf(values, Math.max(id + 1, values.length * 2));
+            }
+            values[id] = result ? MATCHES : DOES_NOT_MATCH;
+            if (values != currentResults.values) {
+                results = new Results(input.getSymbolTable(), values);
+            }
+            return result;
+        }
+
+        protected abstract int getSymbolId(LogRecord record);
+
+        protected abstract String getSymbol(LogRecord record);
+
+        private static final class Results {
+            final @Nullable SymbolTable symbols;
+            final byte[] values;
+
+            Results(@Nullable SymbolTable symbols, byte[] values) {
+                this.symbols = symbols;
+                this.values = values;
+            }
+        }
+    }
 }
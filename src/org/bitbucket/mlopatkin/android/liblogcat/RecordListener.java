@@ -36,10 +36,33 @@ public interface RecordListener<T> {
      */
     void addRecord(T record);
 
+    /**
+     * Called when a batch of new records is available in the {@link DataSource}, e.g. a part of the file that is
+     * still being loaded. Records of the batch may be unordered, and may be older than the records of the previous
+     * batches. The list cannot be null or contain nulls. Neither the data source nor the listener may modify the list
+     * afterwards.
+     *
+     * @param records a non-null list of new records
+     */
+    void addRecords(List<T> records);
+
+    /**
+     * Called when a batch of records continues the previous batches in the order of the {@link DataSource}, e.g. the
+     * next part of the file that is still being loaded. The listener keeps this order instead of sorting the records
+     * by time. The list cannot be null or contain nulls. Neither the data source nor the listener may modify the list
+     * afterwards.
+     *
+     * @param records a non-null list of new records
+     */
+    void appendRecords(List<T> records);
+
     /**
      * Called when the {@link DataSource} sends all containing data to the
-     * listener and guarantees that there never be any more. The list supplied
-     * cannot be null or contain nulls.
+     * listener and guarantees that there never be any more. The only exception
+     * is the source that indexes the file: it may call this several times while
+     * indexing, each list starts with the records of the previous one. The list
+     * supplied cannot be null or contain nulls. Neither the data source nor the
+     * listener may modify the list afterwards.
      *
      * @param records list of records sorted by time in ascending order
      */
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.base.Preconditions;
+
+import org.apache.log4j.Logger;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Dictionary of repeating strings like tags and process names. Each distinct string gets a small int id and a
+ * canonical instance. The number of symbols is limited, so garbage in the input cannot make the table grow without
+ * bounds. Strings that don't fit aren't interned.
+ * <p>
+ * Each data source has its own table, so the symbols of the old source don't take the room of the new ones. Each
+ * record refers to the table its ids belong to.
+ * <p>
+ * Lookups are lock-free, additions are serialized. Misses in the full table don't lock. The class is thread-safe.
+ */
+public final class SymbolTable {
+    private static final Logger logger = Logger.getLogger(SymbolTable.class);
+
+    /** Id of strings that aren't in the table. */
+    public static final int NO_ID = -1;
+
+    private static final int DEFAULT_MAX_SIZE = 1 << 16;
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxSize;
+    private final Object lock = new Object();
+    // Open addressing hash table, the load factor is kept below 0.5.
+    private volatile AtomicReferenceArray<Symbol> slots = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private volatile AtomicReferenceArray<String> symbols = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    // The id of the trimmed symbol plus one for each id, zero if it isn't known yet. The elements are written once
+    // under lock, a reader that doesn't see the element yet computes it again.
+    private volatile int[] trimmedIds = new int[INITIAL_CAPACITY];
+    // Guarded by lock.
+    private int size;
+    // Set under lock when the size reaches the limit, never reset.
+    private volatile boolean full;
+
+    public SymbolTable() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public SymbolTable(int maxSize) {
+        Preconditions.checkArgument(maxSize > 0, "Max size must be positive");
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Adds the string to the table if it isn't there yet.
+     *
+     * @return the id of the string or {@link #NO_ID} if the table is full
+     */
+    public int intern(String value) {
+        return intern(value, 0, value.length());
+    }
+
+    /**
+     * Adds the {@code s[start, end)} to the table if it isn't there yet. The substring isn't created if it is already
+     * in the table.
+     *
+     * @return the id of the substring or {@link #NO_ID} if the table is full
+     */
+    public int intern(CharSequence s, int start, int end) {
+        int hash = hash(s, start, end);
+        Symbol symbol = find(slots, s, start, end, hash);
+        if (symbol != null) {
+            return symbol.id;
+        }
+        if (full) {
+            // The last symbol might have been added after the lookup above, it is visible once the flag is.
+            symbol = find(slots, s, start, end, hash);
+            return symbol != null ? symbol.id : NO_ID;
+        }
+        synchronized (lock) {
+            symbol = find(slots, s, start, end, hash);
+            if (symbol != null) {
+                return symbol.id;
+            }
+            if (size >= maxSize) {
+                return NO_ID;
+            }
+            int id = add(s.subSequence(start, end).toString(), hash);
+            if (size >= maxSize) {
+                full = true;
+                logger.warn("The symbol table is full (" + maxSize + " symbols), new strings aren't interned");
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Adds the string without leading and trailing whitespace to the table. The string is trimmed only when it is
+     * seen first time.
+     *
+     * @return the id of the trimmed string or {@link #NO_ID} if the table is full
+     */
+    public int internTrimmed(String value) {
+        int id = intern(value);
+        if (id == NO_ID) {
+            return NO_ID;
+        }
+        int[] currentTrimmedIds = trimmedIds;
+        if (id < currentTrimmedIds.length && currentTrimmedIds[id] != 0) {
+            return currentTrimmedIds[id] - 1;
+        }
+        String symbol = getSymbol(id);
+        String trimmed = CharMatcher.whitespace().trimFrom(symbol);
+        int trimmedId = trimmed.length() == symbol.length() ? id : intern(trimmed);
+        if (trimmedId == NO_ID) {
+            return NO_ID;
+        }
+        synchronized (lock) {
+            currentTrimmedIds = trimmedIds;
+            int maxId = Math.max(id, trimmedId);
+            if (maxId >= currentTrimmedIds.length) {
+                currentTrimmedIds = Arrays.copyOf(currentTrimmedIds, Math.max(maxId + 1, currentTrimmedIds.length * 2));
+            }
+            currentTrimmedIds[id] = trimmedId + 1;
+            currentTrimmedIds[trimmedId] = trimmedId + 1;
+            trimmedIds = currentTrimmedIds;
+        }
+        return trimmedId;
+    }
+
+    /**
+     * Returns the canonical instance of the string. The string itself is returned if the table is full.
+     */
+    public String canonicalize(String value) {
+        int id = intern(value);
+        return id != NO_ID ? getSymbol(id) : value;
+    }
+
+    /**
+     * @return the string with the given id
+     */
+    public String getSymbol(int id) {
+        AtomicReferenceArray<String> currentSymbols = symbols;
+        Preconditions.checkElementIndex(id, currentSymbols.length());
+        String result = currentSymbols.get(id);
+        Preconditions.checkArgument(result != null, "Unknown id %s", id);
+        return result;
+    }
+
+    public int size() {
+        synchronized (lock) {
+            return size;
+        }
+    }
+
+    private int add(String value, int hash) {
+        int id = size++;
+        AtomicReferenceArray<String> currentSymbols = symbols;
+        if (id >= currentSymbols.length()) {
+            currentSymbols = copyOf(currentSymbols, currentSymbols.length() * 2);
+            symbols = currentSymbols;
+        }
+        // The symbol must be visible in the id array before it is published in the hash table.
+        currentSymbols.set(id, value);
+        AtomicReferenceArray<Symbol> currentSlots = slots;
+        if (size * 2 > currentSlots.length()) {
+            currentSlots = rehash(currentSlots, currentSlots.length() * 2);
+            slots = currentSlots;
+        }
+        insert(currentSlots, new Symbol(value, hash, id));
+        return id;
+    }
+
+    private static Symbol find(AtomicReferenceArray<Symbol> slots, CharSequence s, int start, int end, int hash) {
+        int mask = slots.length() - 1;
+        for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+            Symbol symbol = slots.get(i);
+            if (symbol == null) {
+                return null;
+            }
+            if (symbol.hash == hash && symbol.matches(s, start, end)) {
+                return symbol;
+            }
+        }
+    }
+
+    private static void insert(AtomicReferenceArray<Symbol> slots, Symbol symbol) {
+        int mask = slots.length() - 1;
+        int i = spread(symbol.hash) & mask;
+        while (slots.get(i) != null) {
+            i = (i + 1) & mask;
+        }
+        slots.set(i, symbol);
+    }
+
+    private static AtomicReferenceArray<Symbol> rehash(AtomicReferenceArray<Symbol> slots, int capacity) {
+        AtomicReferenceArray<Symbol> result = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < slots.length(); ++i) {
+            Symbol symbol = slots.get(i);
+            if (symbol != null) {
+                insert(result, symbol);
+            }
+        }
+        return result;
+    }
+
+    private static AtomicReferenceArray<String> copyOf(AtomicReferenceArray<String> array, int capacity) {
+        AtomicReferenceArray<String> result = new AtomicReferenceArray<>(capacity);
+        for (int i = 0; i < array.length(); ++i) {
+            result.set(i, array.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * Same as {@link String#hashCode()}, so the cached hash of the string can be used.
+     */
+    private static int hash(CharSequence s, int start, int end) {
+        if (start == 0 && end == s.length() && s instanceof String) {
+            return s.hashCode();
+        }
+        int h = 0;
+        for (int i = start; i < end; ++i) {
+            h = 31 * h + s.charAt(i);
+        }
+        return h;
+    }
+
+    private static int spread(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static final class Symbol {
+        final String value;
+        final int hash;
+        final int id;
+
+        Symbol(String value, int hash, int id) {
+            this.value = value;
+            this.hash = hash;
+            this.id = id;
+        }
+
+        boolean matches(CharSequence s, int start, int end) {
+            if (value == s && start == 0 && end == value.length()) {
+                return true;
+            }
+            int length = end - start;
+            if (value.length() != length) {
+                return false;
+            }
+            for (int i = 0; i < length; ++i) {
+                if (value.charAt(i) != s.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
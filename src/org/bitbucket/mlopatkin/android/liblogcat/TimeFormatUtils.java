@@ -15,16 +15,36 @@
  */
 package org.bitbucket.mlopatkin.android.liblogcat;
 
+import java.nio.CharBuffer;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.Calendar;
 import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.TimeZone;
 
 /**
  * Thread-safe routines that perform reading and writing of the timestamps in
  * the logcat format.
+ * <p>
+ * Timestamps in the fixed {@code MM-dd HH:mm:ss.SSS} layout are decoded and encoded digit by digit without
+ * allocations. The result is the same as of the lenient {@code SimpleDateFormat}: the year is 1970 and the default
+ * time zone is used. Zone offsets are resolved with {@link GregorianCalendar} once per hour and cached.
  */
 public class TimeFormatUtils {
+    /** Length of the timestamp in the {@code MM-dd HH:mm:ss.SSS} format. */
+    public static final int TIMESTAMP_LENGTH = 18;
+
+    private static final long MILLIS_IN_SECOND = 1000;
+    private static final long MILLIS_IN_MINUTE = 60 * MILLIS_IN_SECOND;
+    private static final long MILLIS_IN_HOUR = 60 * MILLIS_IN_MINUTE;
+    private static final long MILLIS_IN_DAY = 24 * MILLIS_IN_HOUR;
+
+    private static final int EPOCH_YEAR = 1970;
+    private static final int MONTHS_IN_YEAR = 12;
+
+    private static final TimeZone DEFAULT_ZONE = TimeZone.getDefault();
 
     private TimeFormatUtils() {
     }
@@ -32,11 +52,238 @@ public class TimeFormatUtils {
     private static final ThreadLocal<DateFormat> LOGCAT_DATE_FORMAT =
             ThreadLocal.withInitial(() -> new SimpleDateFormat("MM-dd HH:mm:ss.SSS"));
 
+    private static volatile ZoneRange parseCache = ZoneRange.EMPTY;
+    private static volatile ZoneRange formatCache = ZoneRange.EMPTY;
+
     public static Date getTimeFromString(String s) throws ParseException {
+        if (s.length() == TIMESTAMP_LENGTH && isFixedLayout(s, 0)) {
+            return new Date(parseTimestamp(s, 0));
+        }
         return LOGCAT_DATE_FORMAT.get().parse(s);
     }
 
+    /**
+     * Decodes the {@code MM-dd HH:mm:ss.SSS} timestamp that starts at {@code offset}.
+     *
+     * @param s the string that contains the timestamp
+     * @param offset the position of the first char of the timestamp
+     * @return the timestamp in milliseconds since epoch
+     * @throws ParseException if the chars don't match the layout
+     */
+    public static long parseTimestamp(CharSequence s, int offset) throws ParseException {
+        return parseTimestamp(s, offset, DEFAULT_ZONE);
+    }
+
+    static long parseTimestamp(CharSequence s, int offset, TimeZone zone) throws ParseException {
+        if (s.length() - offset < TIMESTAMP_LENGTH || !isFixedLayout(s, offset)) {
+            throw new ParseException("Unparseable timestamp", offset);
+        }
+        int month = readTwoDigits(s, offset);
+        int day = readTwoDigits(s, offset + 3);
+        int hour = readTwoDigits(s, offset + 6);
+        int minute = readTwoDigits(s, offset + 9);
+        int second = readTwoDigits(s, offset + 12);
+        int millis = readTwoDigits(s, offset + 15) * 10 + (s.charAt(offset + 17) - '0');
+
+        // Out-of-range fields are rolled over like the lenient Calendar does.
+        int monthIndex = month - 1;
+        int year = EPOCH_YEAR + Math.floorDiv(monthIndex, MONTHS_IN_YEAR);
+        long days = daysFromCivil(year, Math.floorMod(monthIndex, MONTHS_IN_YEAR) + 1) + day - 1;
+        long local = days * MILLIS_IN_DAY + hour * MILLIS_IN_HOUR + minute * MILLIS_IN_MINUTE
+                + second * MILLIS_IN_SECOND + millis;
+
+        ZoneRange range = parseCache;
+        if (!range.contains(zone, local)) {
+            range = ZoneRange.forLocalTime(zone, local);
+            parseCache = range;
+        }
+        return local - range.offset;
+    }
+
+    /**
+     * Converts the timestamp into the convention of the text logcat output: the year isn't printed there, so the
+     * parsed timestamps fall into 1970. The month, day and time of day in the default time zone are kept, so the
+     * result is equal to what {@link #parseTimestamp(CharSequence, int)} returns for the formatted timestamp.
+     *
+     * @param time the timestamp in milliseconds since epoch
+     * @return the same moment of 1970 in milliseconds since epoch
+     */
+    public static long dropYear(long time) {
+        return dropYear(time, DEFAULT_ZONE);
+    }
+
+    static long dropYear(long time, TimeZone zone) {
+        char[] buffer = new char[TIMESTAMP_LENGTH];
+        formatTimestamp(time, buffer, 0, zone);
+        try {
+            return parseTimestamp(CharBuffer.wrap(buffer), 0, zone);
+        } catch (ParseException e) {
+            throw new AssertionError("Formatted timestamp is unparseable", e);
+        }
+    }
+
     public static String convertTimeToString(Date date) {
-        return LOGCAT_DATE_FORMAT.get().format(date);
+        return convertTimeToString(date.getTime());
+    }
+
+    /**
+     * @return the timestamp in the {@code MM-dd HH:mm:ss.SSS} format or an empty string for
+     *         {@link LogRecord#NO_TIME}
+     */
+    public static String convertTimeToString(long time) {
+        if (time == LogRecord.NO_TIME) {
+            return "";
+        }
+        char[] buffer = new char[TIMESTAMP_LENGTH];
+        formatTimestamp(time, buffer, 0);
+        return new String(buffer);
+    }
+
+    /**
+     * Writes the timestamp in the {@code MM-dd HH:mm:ss.SSS} format into the buffer.
+     *
+     * @param time the timestamp in milliseconds since epoch
+     * @param buffer the destination buffer, must have at least {@link #TIMESTAMP_LENGTH} chars after {@code offset}
+     * @param offset the position of the first char to write
+     * @return the position after the last written char
+     */
+    public static int formatTimestamp(long time, char[] buffer, int offset) {
+        return formatTimestamp(time, buffer, offset, DEFAULT_ZONE);
+    }
+
+    static int formatTimestamp(long time, char[] buffer, int offset, TimeZone zone) {
+        ZoneRange range = formatCache;
+        if (!range.contains(zone, time)) {
+            range = ZoneRange.forUtcTime(zone, time);
+            formatCache = range;
+        }
+        long local = time + range.offset;
+        long days = Math.floorDiv(local, MILLIS_IN_DAY);
+        long millisOfDay = local - days * MILLIS_IN_DAY;
+
+        // Civil from days, see http://howardhinnant.github.io/date_algorithms.html
+        long z = days + 719468;
+        long era = Math.floorDiv(z, 146097);
+        int dayOfEra = (int) (z - era * 146097);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * shiftedMonth + 2) / 5 + 1;
+        int month = shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9;
+
+        int pos = offset;
+        pos = writeTwoDigits(month, buffer, pos);
+        buffer[pos++] = '-';
+        pos = writeTwoDigits(day, buffer, pos);
+        buffer[pos++] = ' ';
+        pos = writeTwoDigits((int) (millisOfDay / MILLIS_IN_HOUR), buffer, pos);
+        buffer[pos++] = ':';
+        pos = writeTwoDigits((int) (millisOfDay / MILLIS_IN_MINUTE % 60), buffer, pos);
+        buffer[pos++] = ':';
+        pos = writeTwoDigits((int) (millisOfDay / MILLIS_IN_SECOND % 60), buffer, pos);
+        buffer[pos++] = '.';
+        int millis = (int) (millisOfDay % MILLIS_IN_SECOND);
+        buffer[pos++] = (char) ('0' + millis / 100);
+        return writeTwoDigits(millis % 100, buffer, pos);
+    }
+
+    private static boolean isFixedLayout(CharSequence s, int offset) {
+        return isDigitPair(s, offset) && s.charAt(offset + 2) == '-'
+                && isDigitPair(s, offset + 3) && s.charAt(offset + 5) == ' '
+                && isDigitPair(s, offset + 6) && s.charAt(offset + 8) == ':'
+                && isDigitPair(s, offset + 9) && s.charAt(offset + 11) == ':'
+                && isDigitPair(s, offset + 12) && s.charAt(offset + 14) == '.'
+                && isDigitPair(s, offset + 15) && isDigit(s.charAt(offset + 17));
+    }
+
+    private static boolean isDigitPair(CharSequence s, int at) {
+        return isDigit(s.charAt(at)) && isDigit(s.charAt(at + 1));
+    }
+
+    private static boolean isDigit(char c) {
+        return '0' <= c && c <= '9';
+    }
+
+    private static int readTwoDigits(CharSequence s, int at) {
+        return (s.charAt(at) - '0') * 10 + (s.charAt(at + 1) - '0');
+    }
+
+    private static int writeTwoDigits(int value, char[] buffer, int pos) {
+        buffer[pos] = (char) ('0' + value / 10);
+        buffer[pos + 1] = (char) ('0' + value % 10);
+        return pos + 2;
+    }
+
+    /**
+     * Days since epoch of the first day of the month, see http://howardhinnant.github.io/date_algorithms.html
+     */
+    private static long daysFromCivil(int year, int month) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    /**
+     * Range of time (either local or UTC) in which the zone offset doesn't change. Instances are immutable so they can
+     * be published through volatile fields.
+     */
+    private static final class ZoneRange {
+        static final ZoneRange EMPTY = new ZoneRange(null, 0, 0, 0);
+
+        final TimeZone zone;
+        final long start;
+        final long end;
+        final long offset;
+
+        ZoneRange(TimeZone zone, long start, long end, long offset) {
+            this.zone = zone;
+            this.start = start;
+            this.end = end;
+            this.offset = offset;
+        }
+
+        boolean contains(TimeZone zone, long time) {
+            return this.zone == zone && start <= time && time < end;
+        }
+
+        /**
+         * Resolves the offset of the local time the same way the lenient {@code SimpleDateFormat} does. The result is
+         * cached for the whole local hour unless the offset changes inside it.
+         */
+        static ZoneRange forLocalTime(TimeZone zone, long local) {
+            long hourStart = Math.floorDiv(local, MILLIS_IN_HOUR) * MILLIS_IN_HOUR;
+            long hourEnd = hourStart + MILLIS_IN_HOUR;
+            long offset = getOffsetOfLocalTime(zone, local);
+            if (getOffsetOfLocalTime(zone, hourStart) == offset && getOffsetOfLocalTime(zone, hourEnd - 1) == offset) {
+                return new ZoneRange(zone, hourStart, hourEnd, offset);
+            }
+            return new ZoneRange(zone, local, local + 1, offset);
+        }
+
+        /**
+         * Resolves the offset of the UTC time. The result is cached for the whole UTC hour unless the offset changes
+         * inside it.
+         */
+        static ZoneRange forUtcTime(TimeZone zone, long time) {
+            long hourStart = Math.floorDiv(time, MILLIS_IN_HOUR) * MILLIS_IN_HOUR;
+            long hourEnd = hourStart + MILLIS_IN_HOUR;
+            long offset = zone.getOffset(time);
+            if (zone.getOffset(hourStart) == offset && zone.getOffset(hourEnd - 1) == offset) {
+                return new ZoneRange(zone, hourStart, hourEnd, offset);
+            }
+            return new ZoneRange(zone, time, time + 1, offset);
+        }
+
+        private static long getOffsetOfLocalTime(TimeZone zone, long local) {
+            Calendar calendar = new GregorianCalendar(zone);
+            calendar.clear();
+            long days = Math.floorDiv(local, MILLIS_IN_DAY);
+            calendar.set(EPOCH_YEAR, Calendar.JANUARY, 1 + (int) days);
+            calendar.set(Calendar.MILLISECOND, (int) (local - days * MILLIS_IN_DAY));
+            return local - calendar.getTimeInMillis();
+        }
     }
 }
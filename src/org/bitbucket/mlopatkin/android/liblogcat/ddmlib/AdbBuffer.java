@@ -17,15 +17,16 @@ package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
 
 import com.android.ddmlib.IDevice;
 
-import org.apache.log4j.Logger;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
-import org.bitbucket.mlopatkin.android.liblogcat.LogRecordStream;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
 
+import java.util.Collections;
 import java.util.Map;
 
 /**
- * This class retrieves log records from the device using a background thread
- * and pushes them back to creator.
+ * This class retrieves log records from the device and pushes them back to
+ * creator. The output of the logcat is parsed right in the thread that
+ * receives it from adb. The thread is taken from the pool of the device session.
  */
 class AdbBuffer {
 
@@ -33,58 +34,47 @@ class AdbBuffer {
         void pushRecord(LogRecord record);
     }
 
-    private static final Logger logger = Logger.getLogger(AdbBuffer.class);
-
-    private final BufferReceiver receiver;
-    private final ShellInputStream shellInput = new ShellInputStream();
-    private final LogRecordStream in;
-    private final LogRecord.Buffer buffer;
-    private final PollingThread pollingThread;
-    private final Thread shellExecutor;
-
-    public AdbBuffer(BufferReceiver receiver, IDevice device, LogRecord.Buffer buffer,
-            String commandLine, Map<Integer, String> pidToProcess) {
-        this.receiver = receiver;
-        this.buffer = buffer;
-        in = new LogRecordStream(shellInput, pidToProcess);
-        shellExecutor = new Thread(new AutoClosingAdbShellCommand(device, commandLine, shellInput),
-                "Shell-reader-" + buffer);
-        pollingThread = new PollingThread();
-        shellExecutor.start();
-        pollingThread.start();
+    private final CancellableOutputReceiver logcatReceiver;
+
+    /**
+     * Starts reading the single buffer.
+     *
+     * @param binary {@code true} if the command produces the binary output ({@code logcat -B}) instead of the
+     *         threadtime text
+     * @param symbols the table of the data source
+     * @throws AdbException if the session cannot run one more reader
+     */
+    public AdbBuffer(BufferReceiver receiver, AdbSessionManager.Session session, LogRecord.Buffer buffer,
+            String commandLine, Map<Integer, String> pidToProcess, SymbolTable symbols, boolean binary)
+            throws AdbException {
+        this(session, "Shell-reader-" + buffer, commandLine,
+                binary ? new BinaryLogcatReceiver(buffer, pidToProcess, symbols, receiver)
+                        : new ThreadTimeLogcatReceiver(buffer, Collections.emptyMap(), pidToProcess, symbols,
+                                                       receiver));
     }
 
-    void close() {
-        pollingThread.close();
-        shellInput.close();
+    /**
+     * Starts reading several buffers with the single logcat. The command must print the buffer markers.
+     *
+     * @param buffersByName the buffers by the names that logcat prints in the markers
+     * @throws AdbException if the session cannot run one more reader
+     */
+    public AdbBuffer(BufferReceiver receiver, AdbSessionManager.Session session,
+            Map<String, LogRecord.Buffer> buffersByName, String commandLine, Map<Integer, String> pidToProcess,
+            SymbolTable symbols) throws AdbException {
+        this(session, "Shell-reader-" + buffersByName.values(), commandLine,
+                new ThreadTimeLogcatReceiver(LogRecord.Buffer.UNKNOWN, buffersByName, pidToProcess, symbols,
+                                             receiver));
     }
 
-    private class PollingThread extends Thread {
-
-        public PollingThread() {
-            super("ADB-polling-" + buffer);
-        }
-
-        @Override
-        public void run() {
-            LogRecord record = in.next(buffer);
-            while (!closed && record != null) {
-                receiver.pushRecord(record);
-                record = in.next(buffer);
-            }
-            if (closed) {
-                logger.debug(getName() + " successfully ended");
-            } else {
-                logger.warn(getName() + " ends due to null record");
-            }
-
-        }
-
-        private volatile boolean closed = false;
-
-        public void close() {
-            closed = true;
-        }
+    private AdbBuffer(AdbSessionManager.Session session, String threadName, String commandLine,
+            CancellableOutputReceiver logcatReceiver) throws AdbException {
+        this.logcatReceiver = logcatReceiver;
+        IDevice device = session.getDevice();
+        session.execute(threadName, new AdbShellCommand<>(device, commandLine, logcatReceiver));
     }
 
+    void close() {
+        logcatReceiver.cancel();
+    }
 }
@@ -17,6 +17,8 @@ package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
 
 import com.android.ddmlib.AndroidDebugBridge.IDeviceChangeListener;
 import com.android.ddmlib.IDevice;
+import com.android.sdklib.AndroidVersion;
+import com.google.common.base.Splitter;
 
 import org.apache.log4j.Logger;
 import org.bitbucket.mlopatkin.android.liblogcat.DataSource;
@@ -24,31 +26,93 @@ import org.bitbucket.mlopatkin.android.liblogcat.Field;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
 import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
 import org.bitbucket.mlopatkin.android.liblogcat.ddmlib.AdbBuffer.BufferReceiver;
 import org.bitbucket.mlopatkin.android.logviewer.config.Configuration;
 
 import java.util.EnumSet;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
 
 public class AdbDataSource implements DataSource, BufferReceiver {
 
+    /** The process name of the records which process wasn't known at the time of the record arrival. */
+    public static final String NO_PROCESS_INFO = AdbPidToProcessConverter.NO_INFO;
+
     private static final Logger logger = Logger.getLogger(AdbDataSource.class);
 
-    private RecordListener<LogRecord> listener;
+    /**
+     * Receives the names of the processes that were reported as {@link #NO_PROCESS_INFO} before.
+     */
+    public interface ProcessNamesListener {
+        /**
+         * Called on the background thread.
+         *
+         * @param names the resolved names by pid
+         */
+        void onProcessNamesResolved(Map<Integer, String> names);
+    }
+
+    private volatile RecordListener<LogRecord> listener;
 
     private IDevice device;
+    private AdbSessionManager.Session session;
+    private RecordPipe pipe;
     private AdbPidToProcessConverter converter;
+    private final SymbolTable symbols = new SymbolTable();
     private EnumSet<Buffer> availableBuffers = EnumSet.noneOf(Buffer.class);
+    private boolean binaryLogcat;
 
     private void initStreams() {
-        converter = new AdbPidToProcessConverter(device);
-        for (LogRecord.Buffer buffer : Buffer.values()) {
-            setUpStream(buffer);
+        converter = new AdbPidToProcessConverter(device, symbols);
+        session = AdbSessionManager.shared().openSession(device);
+        // Readers push the records through the pipe to the listener, the pipe limits the number of pending records.
+        pipe = new RecordPipe(Configuration.adb.maxPendingRecords(), this);
+        binaryLogcat = isBinaryLogcatSupported();
+        Map<String, Buffer> buffersByName = detectAvailableBuffers();
+        availableBuffers.addAll(buffersByName.values());
+        if (buffersByName.isEmpty()) {
+            logger.warn("No buffers are available on " + device);
+        } else if (!binaryLogcat && isMultiplexedLogcatSupported()) {
+            setUpMultiplexedStream(buffersByName);
+        } else {
+            buffersByName.forEach((bufferName, buffer) -> setUpStream(buffer, bufferName));
         }
     }
 
+    /**
+     * The binary output is only usable if the shell doesn't allocate a terminal for the command, which would mangle
+     * the line breaks. Older devices always do.
+     */
+    private boolean isBinaryLogcatSupported() {
+        if (!Configuration.adb.isBinaryLogcatEnabled()) {
+            return false;
+        }
+        AndroidVersion version = device.getVersion();
+        if (version.getApiLevel() < AndroidVersion.VersionCodes.N) {
+            logger.info("Binary logcat isn't supported on " + version + ", text output is used");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Logcat of the older devices prints only the first marker of each buffer, so the records cannot be attributed.
+     */
+    private boolean isMultiplexedLogcatSupported() {
+        if (!Configuration.adb.isMultiplexedLogcatEnabled()) {
+            return false;
+        }
+        AndroidVersion version = device.getVersion();
+        if (version.getApiLevel() < AndroidVersion.VersionCodes.N) {
+            logger.info("Multiplexed logcat isn't supported on " + version + ", logcat per buffer is used");
+            return false;
+        }
+        return true;
+    }
+
     public AdbDataSource(final IDevice device) {
         assert device != null;
         assert device.isOnline();
@@ -57,7 +121,7 @@ public class AdbDataSource implements DataSource, BufferReceiver {
         AdbDeviceManager.addDeviceChangeListener(deviceListener);
     }
 
-    private boolean closed = false;
+    private volatile boolean closed = false;
 
     @Override
     public void close() {
@@ -65,7 +129,12 @@ public class AdbDataSource implements DataSource, BufferReceiver {
             stream.close();
         }
         converter.close();
-        closed = true;
+        pipe.close();
+        session.close();
+        synchronized (this) {
+            closed = true;
+            notifyAll();
+        }
     }
 
     @Override
@@ -73,30 +142,73 @@ public class AdbDataSource implements DataSource, BufferReceiver {
         return converter.getMap();
     }
 
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
+    /**
+     * Sets the listener to be notified when the process names of the already produced records become known, so these
+     * records can be updated.
+     */
+    public void setProcessNamesListener(ProcessNamesListener namesListener) {
+        converter.setProcessNamesListener(namesListener);
+    }
+
+    /**
+     * Should be called by the listener when it takes the records of this source out of its queue. Readers of the
+     * device wait when there are too many records that aren't consumed yet.
+     *
+     * @param count the number of the consumed records
+     */
+    public void onRecordsConsumed(int count) {
+        pipe.release(count);
+    }
+
     @Override
     public synchronized void setLogRecordListener(RecordListener<LogRecord> listener) {
         this.listener = listener;
         notifyAll();
     }
 
-    private synchronized void waitForListener() {
-        while (listener == null) {
+    private synchronized RecordListener<LogRecord> waitForListener() {
+        while (listener == null && !closed) {
             try {
                 wait();
             } catch (InterruptedException e) {
                 // ignore
             }
         }
+        return listener;
     }
 
     @Override
-    public synchronized void pushRecord(final LogRecord record) {
-        waitForListener();
-        listener.addRecord(record);
+    public void pushRecord(final LogRecord record) {
+        // Records are pushed from the readers, they wait until the listener is set. The device holds the records
+        // meanwhile.
+        RecordListener<LogRecord> currentListener = listener;
+        if (currentListener == null) {
+            currentListener = waitForListener();
+            if (currentListener == null) {
+                // The source is closed.
+                return;
+            }
+        }
+        currentListener.addRecord(record);
+    }
+
+    private String createMultiplexedLogcatCommandLine(Set<String> bufferNames) {
+        StringBuilder b = new StringBuilder(Configuration.adb.multiplexedCommandline());
+        for (String bufferName : bufferNames) {
+            b.append(' ').append(Configuration.adb.bufferswitch());
+            b.append(' ').append(bufferName);
+        }
+        return b.toString();
     }
 
-    private String createLogcatCommandLine(String buffer) {
-        StringBuilder b = new StringBuilder(Configuration.adb.commandline());
+    private String createLogcatCommandLine(String buffer, boolean binary) {
+        StringBuilder b = new StringBuilder(
+                binary ? Configuration.adb.binaryCommandline() : Configuration.adb.commandline());
         b.append(' ').append(Configuration.adb.bufferswitch());
         b.append(' ').append(buffer);
         return b.toString();
@@ -104,26 +216,59 @@ public class AdbDataSource implements DataSource, BufferReceiver {
 
     private Set<AdbBuffer> buffers = new HashSet<AdbBuffer>();
 
-    private boolean isBufferHere(String bufferName) {
-        String cmd = "logcat -b " + bufferName + " -s -d  > /dev/null 2> /dev/null || echo 0";
-        return SyncAdbShellCommand.execute(device, cmd).isEmpty();
+    /**
+     * Checks all buffers with a single shell command.
+     *
+     * @return the available buffers by their logcat names
+     */
+    private Map<String, Buffer> detectAvailableBuffers() {
+        Map<String, Buffer> candidates = new LinkedHashMap<>();
+        StringBuilder cmd = new StringBuilder();
+        for (Buffer buffer : Buffer.values()) {
+            String bufferName = Configuration.adb.bufferName(buffer);
+            if (bufferName == null) {
+                logger.warn("This kind of log isn't supported by adb source: " + buffer);
+                continue;
+            }
+            candidates.put(bufferName, buffer);
+            // The receiver concatenates output lines, so names are separated with commas.
+            cmd.append("logcat -b ").append(bufferName).append(" -s -d > /dev/null 2> /dev/null && echo ")
+                    .append(bufferName).append(",; ");
+        }
+        Map<String, Buffer> result = new LinkedHashMap<>();
+        if (candidates.isEmpty()) {
+            return result;
+        }
+        String output = SyncAdbShellCommand.execute(device, cmd.toString());
+        for (String bufferName : Splitter.on(',').trimResults().omitEmptyStrings().split(output)) {
+            Buffer buffer = candidates.get(bufferName);
+            if (buffer != null) {
+                result.put(bufferName, buffer);
+            }
+        }
+        return result;
     }
 
-    private void setUpStream(LogRecord.Buffer buffer) {
-        String bufferName = Configuration.adb.bufferName(buffer);
-        if (bufferName == null) {
-            logger.warn("This kind of log isn't supported by adb source: " + buffer);
+    private void setUpMultiplexedStream(Map<String, Buffer> buffersByName) {
+        String commandLine = createMultiplexedLogcatCommandLine(buffersByName.keySet());
+        try {
+            buffers.add(new AdbBuffer(pipe, session, buffersByName, commandLine, getPidToProcessConverter(), symbols));
+        } catch (AdbException e) {
+            logger.error("Cannot start reading " + buffersByName.values() + " of " + device, e);
+            availableBuffers.removeAll(buffersByName.values());
         }
+    }
 
-        // check buffer for existence first
-        if (!isBufferHere(bufferName)) {
-            return;
+    private void setUpStream(LogRecord.Buffer buffer, String bufferName) {
+        // Payload of the events buffer is binary too, it needs the event tag map to be decoded.
+        boolean binary = binaryLogcat && buffer != Buffer.EVENTS;
+        final String commandLine = createLogcatCommandLine(bufferName, binary);
+        try {
+            buffers.add(new AdbBuffer(pipe, session, buffer, commandLine, getPidToProcessConverter(), symbols, binary));
+        } catch (AdbException e) {
+            logger.error("Cannot start reading " + buffer + " of " + device, e);
+            availableBuffers.remove(buffer);
         }
-        availableBuffers.add(buffer);
-        final String commandLine = createLogcatCommandLine(bufferName);
-        final AdbBuffer adbBuffer = new AdbBuffer(this, device, buffer, commandLine, getPidToProcessConverter());
-        buffers.add(adbBuffer);
-
     }
 
     @Override
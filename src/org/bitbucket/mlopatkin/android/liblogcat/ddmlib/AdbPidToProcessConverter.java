@@ -17,48 +17,79 @@ package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
 
 import com.android.ddmlib.IDevice;
 import com.android.sdklib.AndroidVersion;
+import com.google.common.annotations.VisibleForTesting;
 
 import org.apache.log4j.Logger;
 import org.bitbucket.mlopatkin.android.liblogcat.ProcessListParser;
-import org.bitbucket.mlopatkin.utils.MyStreamUtils;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.android.liblogcat.ddmlib.AdbDataSource.ProcessNamesListener;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Matcher;
 
+import javax.annotation.Nullable;
+
+/**
+ * Resolves the pids of the device to the process names. Unknown pids show up during the app launches, so they are
+ * collected over a short window and resolved together. A few of them are looked up in {@code /proc/<pid>/cmdline},
+ * many of them trigger the full {@code ps} scan. The full scans are rate-limited.
+ */
 class AdbPidToProcessConverter {
 
     private static final Logger logger = Logger.getLogger(AdbPidToProcessConverter.class);
 
+    static final String NO_INFO = "No info available";
+
     private static final String PS_COMMAND_LINE = "ps";
     private static final String PS_COMMAND_LINE_API_26 = "ps -A";
-    private static final String NO_INFO = "No info available";
+    private static final String PID_MARKER = "@pid ";
+
+    private static final long DEFAULT_BATCH_WINDOW_MS = 100;
+    private static final long DEFAULT_MIN_FULL_SCAN_INTERVAL_MS = 2000;
+    // More unknown pids than this are resolved with the full scan.
+    @VisibleForTesting
+    static final int MAX_PID_LOOKUPS = 8;
 
-    private final ExecutorService backgroundUpdater = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService backgroundUpdater = Executors.newSingleThreadScheduledExecutor();
     private final IDevice device;
+    private final SymbolTable symbols;
     private final String psCmdline;
+    private final long batchWindowMs;
+    private final long minFullScanIntervalNanos;
+
+    private final ProcessMap processMap = new ProcessMap();
+    private final Set<Integer> unknownPids = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean resolveScheduled = new AtomicBoolean();
+    private volatile ProcessNamesListener namesListener;
+
+    // Accessed only on the background thread.
+    private boolean hasFullScan;
+    private long lastFullScanNanos;
+
+    /**
+     * @param symbols the table of the data source, the process names are interned in it
+     */
+    AdbPidToProcessConverter(IDevice device, SymbolTable symbols) {
+        this(device, symbols, DEFAULT_BATCH_WINDOW_MS, DEFAULT_MIN_FULL_SCAN_INTERVAL_MS);
+    }
 
-    private Map<Integer, String> processMap = new ConcurrentHashMap<Integer, String>() {
-        @Override
-        public String get(Object key) {
-            String r = putIfAbsent((Integer) key, NO_INFO);
-            if (r == null) {
-                scheduleUpdate();
-            }
-            return super.get(key);
-        }
-    };
-
-    AdbPidToProcessConverter(IDevice device) {
+    @VisibleForTesting
+    AdbPidToProcessConverter(IDevice device, SymbolTable symbols, long batchWindowMs, long minFullScanIntervalMs) {
         this.device = device;
+        this.symbols = symbols;
+        this.batchWindowMs = batchWindowMs;
+        this.minFullScanIntervalNanos = TimeUnit.MILLISECONDS.toNanos(minFullScanIntervalMs);
         if (getAndroidVersionWithRetries(device, 10).getApiLevel() >= AndroidVersion.VersionCodes.O) {
             psCmdline = PS_COMMAND_LINE_API_26;
         } else {
@@ -70,55 +101,141 @@ class AdbPidToProcessConverter {
         return processMap;
     }
 
-    private volatile Future<?> result;
+    public void setProcessNamesListener(@Nullable ProcessNamesListener namesListener) {
+        this.namesListener = namesListener;
+    }
 
-    private synchronized void scheduleUpdate() {
-        if (!backgroundUpdater.isShutdown() && (result == null || result.isDone())) {
-            ShellInputStream in = new ShellInputStream();
-            BackgroundUpdateTask updateTask = new BackgroundUpdateTask(in);
-            AdbShellCommand<?> command = new AutoClosingAdbShellCommand(device, psCmdline, in);
+    /**
+     * The map that returns {@link #NO_INFO} for unknown pids and schedules their resolution.
+     */
+    private class ProcessMap extends ConcurrentHashMap<Integer, String> {
+        @Override
+        public String get(Object key) {
+            String r = putIfAbsent((Integer) key, NO_INFO);
+            if (r == null) {
+                unknownPids.add((Integer) key);
+                scheduleResolve(batchWindowMs);
+            }
+            return super.get(key);
+        }
 
-            result = backgroundUpdater.submit(updateTask);
-            command.start();
+        /**
+         * Same as {@link #get(Object)} but doesn't schedule the resolution.
+         */
+        @Nullable
+        String getKnownName(int pid) {
+            return super.get(pid);
         }
     }
 
-    private class BackgroundUpdateTask implements Runnable {
-
-        private BufferedReader in;
+    private void scheduleResolve(long delayMs) {
+        if (resolveScheduled.compareAndSet(false, true) && !backgroundUpdater.isShutdown()) {
+            backgroundUpdater.schedule(this::resolveUnknownPids, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
 
-        BackgroundUpdateTask(InputStream in) {
-            this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+    private void resolveUnknownPids() {
+        // The pids that become unknown from now on are handled by the next run.
+        resolveScheduled.set(false);
+        List<Integer> pids = new ArrayList<>();
+        for (Iterator<Integer> iter = unknownPids.iterator(); iter.hasNext(); ) {
+            Integer pid = iter.next();
+            iter.remove();
+            if (NO_INFO.equals(processMap.getKnownName(pid))) {
+                pids.add(pid);
+            }
+        }
+        if (pids.isEmpty()) {
+            return;
+        }
+        Map<Integer, String> resolved = new HashMap<>();
+        if (hasFullScan && pids.size() <= MAX_PID_LOOKUPS) {
+            lookUpCmdlines(pids, resolved);
+        }
+        List<Integer> unresolved = new ArrayList<>();
+        for (Integer pid : pids) {
+            if (!resolved.containsKey(pid)) {
+                unresolved.add(pid);
+            }
         }
+        if (!unresolved.isEmpty()) {
+            long sinceLastScan = System.nanoTime() - lastFullScanNanos;
+            if (!hasFullScan || sinceLastScan >= minFullScanIntervalNanos) {
+                scanAllProcesses(resolved);
+            } else {
+                // Too early for another scan, try again later.
+                unknownPids.addAll(unresolved);
+                scheduleResolve(TimeUnit.NANOSECONDS.toMillis(minFullScanIntervalNanos - sinceLastScan) + 1);
+            }
+        }
+        notifyResolved(resolved);
+    }
 
-        @Override
-        public void run() {
-            try {
-                String line = in.readLine();
-
-                if (!ProcessListParser.isProcessListHeader(line)) {
-                    logger.warn("Can't parse header");
-                    MyStreamUtils.consume(in);
-                    return;
-                }
-                line = in.readLine();
-                while (line != null) {
-                    Matcher m = ProcessListParser.parseProcessListLine(line);
-                    if (m.matches()) {
-                        String processName = ProcessListParser.getProcessName(m);
-                        int pid = ProcessListParser.getPid(m);
-                        processMap.put(pid, processName);
-                    } else {
-                        logger.debug("Failed to parse line " + line);
-                    }
-                    line = in.readLine();
+    /**
+     * Reads the first argument of the command line of each process in one shell command. Kernel threads have empty
+     * command lines, these aren't resolved.
+     */
+    private void lookUpCmdlines(Collection<Integer> pids, Map<Integer, String> resolved) {
+        StringBuilder cmd = new StringBuilder("for p in");
+        for (Integer pid : pids) {
+            cmd.append(' ').append(pid);
+        }
+        cmd.append("; do echo \"").append(PID_MARKER).append("$p\"; cat /proc/$p/cmdline 2> /dev/null; echo; done");
+        Integer currentPid = null;
+        for (String line : SyncAdbShellCommand.executeLines(device, cmd.toString())) {
+            if (line.startsWith(PID_MARKER)) {
+                currentPid = parsePid(line.substring(PID_MARKER.length()));
+            } else if (currentPid != null) {
+                int end = line.indexOf('\0');
+                String name = (end >= 0 ? line.substring(0, end) : line).trim();
+                if (!name.isEmpty()) {
+                    updateName(currentPid, name, resolved);
                 }
-            } catch (IOException e) {
-                logger.error("Unexpected IO exception", e);
+                currentPid = null;
             }
+        }
+    }
+
+    private void scanAllProcesses(Map<Integer, String> resolved) {
+        hasFullScan = true;
+        lastFullScanNanos = System.nanoTime();
+        List<String> lines = SyncAdbShellCommand.executeLines(device, psCmdline);
+        if (lines.isEmpty() || !ProcessListParser.isProcessListHeader(lines.get(0))) {
+            logger.warn("Can't parse header");
+            return;
+        }
+        for (String line : lines.subList(1, lines.size())) {
+            Matcher m = ProcessListParser.parseProcessListLine(line);
+            if (m.matches()) {
+                updateName(ProcessListParser.getPid(m), ProcessListParser.getProcessName(m), resolved);
+            } else {
+                logger.debug("Failed to parse line " + line);
+            }
+        }
+    }
+
+    private void updateName(int pid, String name, Map<Integer, String> resolved) {
+        String processName = symbols.canonicalize(name);
+        String previous = processMap.put(pid, processName);
+        if (NO_INFO.equals(previous) && !NO_INFO.equals(processName)) {
+            resolved.put(pid, processName);
+        }
+    }
 
+    private void notifyResolved(Map<Integer, String> resolved) {
+        ProcessNamesListener listener = namesListener;
+        if (listener != null && !resolved.isEmpty()) {
+            listener.onProcessNamesResolved(resolved);
         }
+    }
 
+    @Nullable
+    private static Integer parsePid(String s) {
+        try {
+            return Integer.valueOf(s.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
     }
 
     public void close() {
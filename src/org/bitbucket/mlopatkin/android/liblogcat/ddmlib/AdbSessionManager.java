@@ -0,0 +1,224 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.android.ddmlib.IDevice;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.apache.log4j.Logger;
+import org.bitbucket.mlopatkin.android.logviewer.config.Configuration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the long-living tasks of the attached devices, like the logcat readers, on the single bounded pool. Each adb
+ * data source attaches its device as a {@link Session}. The window shows one device at a time, but the tasks of the
+ * replaced data source may still be finishing when the new one starts, so the sessions share the pool.
+ * <p>
+ * The shell commands of ddmlib block the thread until the command finishes, so each running task occupies a thread of
+ * the pool. Tasks are never queued: a queued reader would wait behind the readers of another device that may never
+ * finish. Instead each session may run only a limited number of tasks at once, so a device with a stuck connection
+ * cannot take the threads of the others, and the task that doesn't fit is rejected right away.
+ * <p>
+ * The class is thread-safe.
+ */
+public final class AdbSessionManager {
+    private static final Logger logger = Logger.getLogger(AdbSessionManager.class);
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+
+    private static AdbSessionManager shared;
+
+    private final ThreadPoolExecutor executor;
+    private final int maxTasksPerSession;
+    private final List<Session> sessions = new ArrayList<>();
+
+    /**
+     * @param maxThreads the maximal number of the tasks of all sessions that run at once
+     * @param maxTasksPerSession the maximal number of the tasks of the single session that run at once
+     */
+    AdbSessionManager(int maxThreads, int maxTasksPerSession) {
+        Preconditions.checkArgument(maxThreads > 0, "Max threads must be positive");
+        Preconditions.checkArgument(maxTasksPerSession > 0, "Max tasks per session must be positive");
+        this.maxTasksPerSession = maxTasksPerSession;
+        this.executor = new ThreadPoolExecutor(0, maxThreads, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new SynchronousQueue<>(),
+                new ThreadFactoryBuilder().setNameFormat("AdbSession-%d").setDaemon(true).build());
+    }
+
+    /**
+     * @return the manager shared by all adb data sources
+     */
+    public static synchronized AdbSessionManager shared() {
+        if (shared == null) {
+            shared = new AdbSessionManager(Configuration.adb.maxSessionThreads(),
+                    Configuration.adb.maxSessionTasks());
+        }
+        return shared;
+    }
+
+    /**
+     * Attaches the device. The session must be closed when the device is no longer needed.
+     */
+    public Session openSession(IDevice device) {
+        Session session = new Session(device);
+        synchronized (sessions) {
+            sessions.add(session);
+        }
+        return session;
+    }
+
+    /**
+     * @return the sessions that are open now
+     */
+    public List<Session> getSessions() {
+        synchronized (sessions) {
+            return ImmutableList.copyOf(sessions);
+        }
+    }
+
+    /**
+     * @return the number of the tasks of all sessions that are running now
+     */
+    public int getActiveTaskCount() {
+        return executor.getActiveCount();
+    }
+
+    void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * The tasks of the single attached device.
+     */
+    public final class Session {
+        private final IDevice device;
+        private final AtomicInteger runningTasks = new AtomicInteger();
+        private final Set<FutureTask<?>> tasks = ConcurrentHashMap.newKeySet();
+        private volatile boolean closed;
+
+        private Session(IDevice device) {
+            this.device = device;
+        }
+
+        public IDevice getDevice() {
+            return device;
+        }
+
+        /**
+         * Starts the task on the shared pool. The thread is renamed while it runs the task, so the thread dumps
+         * show what it does.
+         *
+         * @param taskName the name of the task
+         * @param task the task to run
+         * @throws AdbException if the session already runs too many tasks or the pool is exhausted
+         */
+        public void execute(String taskName, Runnable task) throws AdbException {
+            Preconditions.checkState(!closed, "Session is closed");
+            if (runningTasks.incrementAndGet() > maxTasksPerSession) {
+                runningTasks.decrementAndGet();
+                throw new AdbException("Too many tasks are running for " + device + ", " + taskName + " is rejected");
+            }
+            // The slot is released when the task finishes or is cancelled, even if it never started.
+            FutureTask<Void> future = new FutureTask<Void>(() -> runTask(taskName, task), null) {
+                @Override
+                protected void done() {
+                    tasks.remove(this);
+                    runningTasks.decrementAndGet();
+                    logFailure(taskName, this);
+                }
+            };
+            tasks.add(future);
+            try {
+                executor.execute(future);
+            } catch (RejectedExecutionException e) {
+                tasks.remove(future);
+                runningTasks.decrementAndGet();
+                throw new AdbException("No threads left to run " + taskName + " for " + device, e);
+            }
+            if (closed) {
+                // The session is closed concurrently and may have missed this task.
+                future.cancel(true);
+            }
+        }
+
+        private void runTask(String taskName, Runnable task) {
+            Thread thread = Thread.currentThread();
+            String poolName = thread.getName();
+            thread.setName(taskName);
+            logger.debug("Starting " + taskName + " of " + device);
+            try {
+                task.run();
+            } finally {
+                thread.setName(poolName);
+            }
+        }
+
+        private void logFailure(String taskName, FutureTask<?> future) {
+            if (future.isCancelled()) {
+                return;
+            }
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                // Nobody else reads the result of the future.
+                logger.error(taskName + " of " + device + " failed", e.getCause());
+            } catch (InterruptedException e) {
+                // The future is done, get() doesn't wait.
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        /**
+         * @return the number of the tasks of this session that are running now
+         */
+        public int getRunningTaskCount() {
+            return runningTasks.get();
+        }
+
+        /**
+         * Detaches the device and interrupts the running tasks. The task that doesn't respond to the interruption
+         * keeps its thread until it finishes, e.g. because its shell command is cancelled.
+         */
+        public void close() {
+            closed = true;
+            synchronized (sessions) {
+                sessions.remove(this);
+            }
+            for (FutureTask<?> task : tasks) {
+                task.cancel(true);
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Session " + device + ", tasks: " + runningTasks.get();
+        }
+    }
+}
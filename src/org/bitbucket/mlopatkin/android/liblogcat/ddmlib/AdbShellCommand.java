@@ -24,8 +24,6 @@ import com.android.ddmlib.TimeoutException;
 import org.apache.log4j.Logger;
 
 import java.io.IOException;
-import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -34,8 +32,8 @@ import java.util.concurrent.TimeUnit;
  * It allows to detect when the command is finished or failed.
  * <p/>
  * Note that the {@link #run()} method will block until the command finishes.
- * Objects of this class are intended to be used in background threads.
- * Alternatively you can use {@link #start()} to run the command in background.
+ * Objects of this class are intended to be used in background threads, e.g.
+ * the ones of {@link AdbSessionManager.Session#execute(String, Runnable)}.
  * <p/>
  * This class is immutable.
  *
@@ -83,16 +81,6 @@ class AdbShellCommand<T extends IShellOutputReceiver> implements Runnable {
         logger.debug("The command '" + command + "' sucessfully terminated");
     }
 
-    private static final Executor backgroundShellCommandExecutor = Executors
-            .newSingleThreadExecutor();
-
-    /**
-     * Executes the command in the background using internal thread pool.
-     */
-    public void start() {
-        backgroundShellCommandExecutor.execute(this);
-    }
-
     /**
      * Called when one of exceptions occured during shell command's execution.
      *
@@ -113,20 +101,3 @@ class AdbShellCommand<T extends IShellOutputReceiver> implements Runnable {
     protected void onCommandFinished(T outputReceiver) {
     }
 }
-
-/**
- * This subclass closes its outputReceiver on errors. Closing will cause
- * {@link IOException} in a {@link ShellInputStream}'s client.
- */
-class AutoClosingAdbShellCommand extends AdbShellCommand<ShellInputStream> {
-
-    AutoClosingAdbShellCommand(IDevice device, String commandLine, ShellInputStream outputReceiver) {
-        super(device, commandLine, outputReceiver);
-    }
-
-    @Override
-    protected void onException(Exception e, ShellInputStream outputReceiver) {
-        super.onException(e, outputReceiver);
-        outputReceiver.close();
-    }
-}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import org.apache.log4j.Logger;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.android.liblogcat.TimeFormatUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+/**
+ * Decodes the output of the {@code logcat -B}. The output is a sequence of the {@code logger_entry} structs of the
+ * liblog:
+ * <pre>
+ * uint16_t len;       // length of the payload
+ * uint16_t hdr_size;  // size of the header, 0 in the v1 header
+ * int32_t  pid;
+ * int32_t  tid;
+ * int32_t  sec;
+ * int32_t  nsec;
+ * ...                 // fields of the newer header versions
+ * char     msg[];     // the payload: priority byte, NUL-terminated tag, NUL-terminated message
+ * </pre>
+ * All numbers are little-endian. The multi-line message produces a record for each line, like the text output does.
+ * Timestamps are converted to the year-less convention of the text output with {@link TimeFormatUtils#dropYear(long)},
+ * so records of both receivers can be merged.
+ * <p>
+ * The payload of the events buffer is binary, so this receiver doesn't support it.
+ */
+class BinaryLogcatReceiver extends CancellableOutputReceiver {
+    private static final Logger logger = Logger.getLogger(BinaryLogcatReceiver.class);
+
+    static final int V1_HEADER_SIZE = 20;
+    // The biggest header is 28 bytes (v4), the limit leaves space for future versions but catches garbage.
+    private static final int MAX_HEADER_SIZE = 128;
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+
+    // Values of the android_LogPriority, VERBOSE..FATAL map to Priority in order.
+    private static final int PRIORITY_VERBOSE = 2;
+    private static final int PRIORITY_FATAL = 7;
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private static final long MILLIS_IN_SECOND = 1000;
+    private static final int NANOS_IN_MILLI = 1000000;
+
+    private final LogRecord.Buffer buffer;
+    private final Map<Integer, String> pidToProcess;
+    private final SymbolTable symbols;
+    private final AdbBuffer.BufferReceiver receiver;
+
+    // In the read mode between the calls.
+    private ByteBuffer pending = createBuffer(INITIAL_CAPACITY);
+
+    BinaryLogcatReceiver(LogRecord.Buffer buffer, Map<Integer, String> pidToProcess, SymbolTable symbols,
+            AdbBuffer.BufferReceiver receiver) {
+        this.buffer = buffer;
+        this.pidToProcess = pidToProcess;
+        this.symbols = symbols;
+        this.receiver = receiver;
+        pending.flip();
+    }
+
+    @Override
+    public void addOutput(byte[] data, int offset, int length) {
+        if (isCancelled()) {
+            return;
+        }
+        append(data, offset, length);
+        while (!isCancelled() && decodeEntry()) {
+            // keep decoding
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (pending.hasRemaining() && !isCancelled()) {
+            logger.warn("Logcat output ends with the incomplete entry of " + pending.remaining() + " bytes");
+        }
+    }
+
+    private void append(byte[] data, int offset, int length) {
+        pending.compact();
+        if (pending.remaining() < length) {
+            ByteBuffer newPending = createBuffer(Math.max(pending.capacity() * 2, pending.position() + length));
+            pending.flip();
+            newPending.put(pending);
+            pending = newPending;
+        }
+        pending.put(data, offset, length);
+        pending.flip();
+    }
+
+    /**
+     * Decodes the entry at the position of the pending buffer if it is received completely.
+     *
+     * @return {@code true} if the entry was decoded
+     */
+    private boolean decodeEntry() {
+        int start = pending.position();
+        if (pending.remaining() < 4) {
+            return false;
+        }
+        int payloadLength = Short.toUnsignedInt(pending.getShort(start));
+        int headerSize = Short.toUnsignedInt(pending.getShort(start + 2));
+        if (headerSize == 0) {
+            headerSize = V1_HEADER_SIZE;
+        }
+        if (headerSize < V1_HEADER_SIZE || headerSize > MAX_HEADER_SIZE) {
+            logger.error("Invalid header size " + headerSize + ", the output isn't binary logcat output");
+            cancel();
+            return false;
+        }
+        if (pending.remaining() < headerSize + payloadLength) {
+            return false;
+        }
+        int pid = pending.getInt(start + 4);
+        int tid = pending.getInt(start + 8);
+        long sec = Integer.toUnsignedLong(pending.getInt(start + 12));
+        int nsec = pending.getInt(start + 16);
+        long time = TimeFormatUtils.dropYear(sec * MILLIS_IN_SECOND + nsec / NANOS_IN_MILLI);
+        decodePayload(start + headerSize, payloadLength, time, pid, tid);
+        pending.position(start + headerSize + payloadLength);
+        return true;
+    }
+
+    private void decodePayload(int payloadStart, int payloadLength, long time, int pid, int tid) {
+        if (payloadLength < 1) {
+            logger.debug("Empty payload of the entry");
+            return;
+        }
+        byte[] data = pending.array();
+        int offset = pending.arrayOffset() + payloadStart;
+        int end = offset + payloadLength;
+        Priority priority = toPriority(data[offset]);
+        int tagStart = offset + 1;
+        int tagEnd = indexOf(data, tagStart, end, (byte) 0);
+        String tag = new String(data, tagStart, tagEnd - tagStart, StandardCharsets.UTF_8);
+        int messageStart = Math.min(tagEnd + 1, end);
+        int messageEnd = indexOf(data, messageStart, end, (byte) 0);
+        // Trailing line breaks are dropped by the text logcat.
+        while (messageEnd > messageStart && data[messageEnd - 1] == '\n') {
+            --messageEnd;
+        }
+        String appName = pidToProcess.get(pid);
+        int lineStart = messageStart;
+        do {
+            int lineEnd = indexOf(data, lineStart, messageEnd, (byte) '\n');
+            String message = new String(data, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+            receiver.pushRecord(new LogRecord(symbols, time, pid, tid, appName, priority, tag, message, buffer));
+            lineStart = lineEnd + 1;
+        } while (lineStart <= messageEnd);
+    }
+
+    private static Priority toPriority(byte value) {
+        int index = Math.max(PRIORITY_VERBOSE, Math.min(PRIORITY_FATAL, value)) - PRIORITY_VERBOSE;
+        return PRIORITIES[index];
+    }
+
+    private static int indexOf(byte[] data, int from, int end, byte value) {
+        for (int i = from; i < end; ++i) {
+            if (data[i] == value) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static ByteBuffer createBuffer(int capacity) {
+        return ByteBuffer.allocate(capacity).order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
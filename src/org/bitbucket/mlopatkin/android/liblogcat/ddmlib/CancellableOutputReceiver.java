@@ -1,32 +1,38 @@
-/*
- * Copyright 2011 Mikhail Lopatkin
- *
- * Licensed under the Apache License, Version 2.0 (the "License");
- * you may not use this file except in compliance with the License.
- * You may obtain a copy of the License at
- *
- *     http://www.apache.org/licenses/LICENSE-2.0
- *
- * Unless required by applicable law or agreed to in writing, software
- * distributed under the License is distributed on an "AS IS" BASIS,
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
- * See the License for the specific language governing permissions and
- * limitations under the License.
- */
-package org.bitbucket.mlopatkin.android.logviewer.widgets;
-
-import javax.swing.table.TableModel;
-import javax.swing.table.TableRowSorter;
-
-public class SortingDisableSorter<T extends TableModel> extends TableRowSorter<T> {
-
-    @Override
-    public boolean isSortable(int column) {
-        return false;
-    }
-
-    public SortingDisableSorter(T model) {
-        super(model);
-    }
-
-}
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.android.ddmlib.IShellOutputReceiver;
+
+/**
+ * Base class for the receivers of the long-running commands that can be stopped from another thread.
+ */
+abstract class CancellableOutputReceiver implements IShellOutputReceiver {
+    private volatile boolean cancelled;
+
+    @Override
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Stops the processing of the output. The command is terminated by the adb shortly after that.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+}
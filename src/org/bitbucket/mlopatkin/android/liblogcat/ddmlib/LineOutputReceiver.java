@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Splits the output of the shell command into lines right in the adb thread. The lines are decoded from the received
+ * chunks directly, only the line that spans several chunks is copied. Lines are terminated by {@code \n}, the
+ * {@code \r}s before it are dropped, so the output of the devices that translate line endings is handled too.
+ * <p>
+ * The last line is passed to the handler even if it has no terminator.
+ */
+abstract class LineOutputReceiver extends CancellableOutputReceiver {
+    private static final int INITIAL_LINE_CAPACITY = 256;
+
+    private byte[] pendingLine = new byte[INITIAL_LINE_CAPACITY];
+    private int pendingLength;
+
+    @Override
+    public void addOutput(byte[] data, int offset, int length) {
+        if (isCancelled()) {
+            return;
+        }
+        int lineStart = offset;
+        int end = offset + length;
+        for (int i = offset; i < end; ++i) {
+            if (data[i] != '\n') {
+                continue;
+            }
+            if (pendingLength > 0) {
+                appendPending(data, lineStart, i);
+                emitLine(pendingLine, 0, pendingLength);
+                pendingLength = 0;
+            } else {
+                emitLine(data, lineStart, i);
+            }
+            lineStart = i + 1;
+            if (isCancelled()) {
+                return;
+            }
+        }
+        if (lineStart < end) {
+            appendPending(data, lineStart, end);
+        }
+    }
+
+    @Override
+    public void flush() {
+        if (pendingLength > 0 && !isCancelled()) {
+            emitLine(pendingLine, 0, pendingLength);
+        }
+        pendingLength = 0;
+        onFinished();
+    }
+
+    /**
+     * Called for each line of the output.
+     *
+     * @param line the line without the line terminator
+     */
+    protected abstract void handleLine(String line);
+
+    /**
+     * Called when the command completes and all lines are handled.
+     */
+    protected void onFinished() {
+    }
+
+    private void emitLine(byte[] data, int start, int end) {
+        int lineEnd = end;
+        while (lineEnd > start && data[lineEnd - 1] == '\r') {
+            --lineEnd;
+        }
+        handleLine(new String(data, start, lineEnd - start, StandardCharsets.UTF_8));
+    }
+
+    private void appendPending(byte[] data, int start, int end) {
+        int length = end - start;
+        if (pendingLength + length > pendingLine.length) {
+            byte[] newPendingLine = new byte[Math.max(pendingLength + length, pendingLine.length * 2)];
+            System.arraycopy(pendingLine, 0, newPendingLine, 0, pendingLength);
+            pendingLine = newPendingLine;
+        }
+        System.arraycopy(data, start, pendingLine, pendingLength, length);
+        pendingLength += length;
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.google.common.base.Preconditions;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.ddmlib.AdbBuffer.BufferReceiver;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of the records of the single device that are passed to the consumer but not consumed yet. The
+ * readers pass the records to the consumer directly, but each record takes a permit first. The consumer returns the
+ * permits with {@link #release(int)} when it takes the records out of its queue. The readers block when there are no
+ * permits, so they stop reading from adb and the device holds the records in its own log buffer. Each device has its
+ * own pipe, so a consumer that cannot keep up with one device doesn't slow down the others.
+ * <p>
+ * The class is thread-safe.
+ */
+final class RecordPipe implements BufferReceiver {
+    private static final long POLL_INTERVAL_MS = 100;
+
+    private final int capacity;
+    private final Semaphore permits;
+    private final BufferReceiver consumer;
+    private final AtomicLong blockedNanos = new AtomicLong();
+    private volatile boolean closed;
+
+    RecordPipe(int capacity, BufferReceiver consumer) {
+        Preconditions.checkArgument(capacity > 0, "Capacity must be positive");
+        this.capacity = capacity;
+        this.permits = new Semaphore(capacity);
+        this.consumer = Preconditions.checkNotNull(consumer);
+    }
+
+    /**
+     * Passes the record to the consumer, waits while there are too many pending records. The record is dropped if
+     * the pipe is closed.
+     */
+    @Override
+    public void pushRecord(LogRecord record) {
+        if (closed) {
+            return;
+        }
+        if (permits.tryAcquire() || waitForPermit()) {
+            consumer.pushRecord(record);
+        }
+    }
+
+    private boolean waitForPermit() {
+        long start = System.nanoTime();
+        try {
+            while (!closed) {
+                if (permits.tryAcquire(POLL_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            blockedNanos.addAndGet(System.nanoTime() - start);
+        }
+        return false;
+    }
+
+    /**
+     * Called by the consumer when it takes the records out of its queue, so the readers may pass more.
+     *
+     * @param count the number of the consumed records
+     */
+    void release(int count) {
+        Preconditions.checkArgument(count >= 0, "Count must be non-negative");
+        permits.release(count);
+    }
+
+    /**
+     * @return the number of the records that are passed to the consumer but not consumed yet
+     */
+    int size() {
+        return Math.max(0, capacity - permits.availablePermits());
+    }
+
+    /**
+     * @return the total time the readers have waited for the free space, in nanoseconds
+     */
+    long getBlockedNanos() {
+        return blockedNanos.get();
+    }
+
+    /**
+     * Releases the waiting readers. The records that are pushed afterwards are dropped.
+     */
+    void close() {
+        closed = true;
+    }
+}
@@ -4,11 +4,14 @@ import com.android.ddmlib.IDevice;
 import com.android.ddmlib.IShellOutputReceiver;
 import com.android.ddmlib.MultiLineReceiver;
 
+import java.util.ArrayList;
+import java.util.List;
+
 class SyncAdbShellCommand extends AdbShellCommand<IShellOutputReceiver> {
 
     private static class StringReceiver extends MultiLineReceiver {
 
-        final StringBuilder linesBuf = new StringBuilder();
+        final List<String> lines = new ArrayList<>();
 
         @Override
         public boolean isCancelled() {
@@ -18,7 +21,7 @@ class SyncAdbShellCommand extends AdbShellCommand<IShellOutputReceiver> {
         @Override
         public void processNewLines(String[] lines) {
             for (String line : lines) {
-                linesBuf.append(line);
+                this.lines.add(line);
             }
         }
 
@@ -43,6 +46,17 @@ class SyncAdbShellCommand extends AdbShellCommand<IShellOutputReceiver> {
         SyncAdbShellCommand cmd = new SyncAdbShellCommand(device, commandLine, receiver);
         // Run is used intentionally
         cmd.run();
-        return receiver.linesBuf.toString();
+        return String.join("", receiver.lines);
+    }
+
+    /**
+     * Executes the command and returns its output split into lines. The lines are trimmed.
+     */
+    public static List<String> executeLines(IDevice device, String commandLine) {
+        StringReceiver receiver = new StringReceiver();
+        SyncAdbShellCommand cmd = new SyncAdbShellCommand(device, commandLine, receiver);
+        // Run is used intentionally
+        cmd.run();
+        return receiver.lines;
     }
 }
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import org.apache.log4j.Logger;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecordParser;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+
+import java.util.Map;
+
+/**
+ * Parses the {@code logcat -v threadtime} output. If the logcat reads several buffers, the records are attributed to
+ * the buffer named in the last {@code --------- beginning of}/{@code --------- switch to} marker line.
+ */
+class ThreadTimeLogcatReceiver extends LineOutputReceiver {
+    private static final Logger logger = Logger.getLogger(ThreadTimeLogcatReceiver.class);
+
+    private final Map<String, Buffer> buffersByName;
+    private final Map<Integer, String> pidToProcess;
+    private final SymbolTable symbols;
+    private final AdbBuffer.BufferReceiver receiver;
+    private Buffer currentBuffer;
+
+    /**
+     * @param initialBuffer the buffer of the records before the first marker
+     * @param buffersByName the buffers by the names that logcat uses in the markers, the markers of the unknown
+     *         buffers are ignored
+     */
+    ThreadTimeLogcatReceiver(Buffer initialBuffer, Map<String, Buffer> buffersByName,
+            Map<Integer, String> pidToProcess, SymbolTable symbols, AdbBuffer.BufferReceiver receiver) {
+        this.currentBuffer = initialBuffer;
+        this.buffersByName = buffersByName;
+        this.pidToProcess = pidToProcess;
+        this.symbols = symbols;
+        this.receiver = receiver;
+    }
+
+    @Override
+    protected void handleLine(String line) {
+        LogRecord record = LogRecordParser.parseThreadTime(symbols, currentBuffer, line, pidToProcess);
+        if (record != null) {
+            receiver.pushRecord(record);
+            return;
+        }
+        String bufferName = LogRecordParser.getBufferNameFromMarker(line);
+        Buffer markedBuffer = bufferName != null ? buffersByName.get(bufferName) : null;
+        if (markedBuffer != null) {
+            currentBuffer = markedBuffer;
+        } else {
+            logger.debug("Null record: " + line);
+        }
+    }
+
+    @Override
+    protected void onFinished() {
+        if (isCancelled()) {
+            logger.debug(Thread.currentThread().getName() + " successfully ended");
+        } else {
+            logger.warn(Thread.currentThread().getName() + " ends because logcat has terminated");
+        }
+    }
+}
@@ -16,6 +16,12 @@
 package org.bitbucket.mlopatkin.android.liblogcat.file;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.base.Predicate;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+import com.google.common.collect.Ordering;
+import com.google.common.io.CharStreams;
+import com.google.common.util.concurrent.Uninterruptibles;
 
 import org.apache.log4j.Logger;
 import org.bitbucket.mlopatkin.android.liblogcat.DataSource;
@@ -25,11 +31,19 @@ import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecordParser;
 import org.bitbucket.mlopatkin.android.liblogcat.ProcessListParser;
 import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.android.liblogcat.file.DumpstateSectionScanner.Section;
 import org.bitbucket.mlopatkin.android.liblogcat.file.ParsingStrategies.Strategy;
 import org.bitbucket.mlopatkin.android.logviewer.config.Configuration;
+import org.bitbucket.mlopatkin.utils.KWayMerger;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -38,15 +52,26 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
+import javax.annotation.Nullable;
+
+/**
+ * Data source for the dumpstate (bugreport) files.
+ * <p>
+ * The section boundaries are found in a single pass over the bytes of the file. The process list is parsed first,
+ * then the logcat sections are parsed concurrently and the per-section records are merged by time.
+ */
 public class DumpstateFileDataSource implements DataSource {
 
     private static final Logger logger = Logger.getLogger(DumpstateFileDataSource.class);
-    private static final int READ_AHEAD_LIMIT = 65536;
 
-    private List<SectionHandler> handlers = new ArrayList<SectionHandler>();
+    private final SymbolTable symbols = new SymbolTable();
     private List<LogRecord> records = new ArrayList<LogRecord>();
     private EnumSet<Buffer> buffers = EnumSet.noneOf(Buffer.class);
     private RecordListener<LogRecord> logcatListener;
@@ -55,62 +80,126 @@ public class DumpstateFileDataSource implements DataSource {
 
     public DumpstateFileDataSource(String fileName, BufferedReader in)
             throws IOException, ParseException {
+        this(fileName, ByteBuffer.wrap(CharStreams.toString(in).getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Memory-maps the file and parses it.
+     */
+    public DumpstateFileDataSource(String fileName, File file) throws IOException, ParseException {
+        this(fileName, mapFile(file));
+    }
+
+    private DumpstateFileDataSource(String fileName, ByteBuffer content) throws ParseException {
         this.fileName = fileName;
-        initSectionHandlers();
-        parseFile(in);
+        parseFile(content);
     }
 
-    private void parseFile(BufferedReader in) throws IOException, ParseException {
-        String line = in.readLine();
-        while (line != null) {
-            String sectionName = getSectionName(line);
-            if (sectionName != null) {
-                parseSection(in, sectionName);
+    private static ByteBuffer mapFile(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Dumpstate file " + file + " is too big: " + size + " bytes");
             }
-            line = in.readLine();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
         }
     }
 
-    private void parseSection(BufferedReader in, String sectionName) throws IOException,
-            ParseException {
-        SectionHandler handler = getSectionHandler(sectionName);
-        if (handler == null) {
-            return;
+    private void parseFile(ByteBuffer content) throws ParseException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        List<Section> sections = DumpstateSectionScanner.scan(content, new Predicate<String>() {
+            @Override
+            public boolean apply(@Nullable String sectionName) {
+                return isProcessesSection(sectionName) || isLogcatSection(sectionName);
+            }
+        });
+        // Process names are needed to parse logcat records, so the process list goes first.
+        List<Callable<List<LogRecord>>> logcatTasks = new ArrayList<>();
+        for (final Section section : sections) {
+            logger.debug("Supported section: " + section);
+            if (isProcessesSection(section.getName())) {
+                DumpstateSectionScanner.forEachLine(content, section, this::handleProcessLine);
+            } else {
+                final Buffer buffer = getBufferFromName(section.getName());
+                buffers.add(buffer);
+                logcatTasks.add(() -> parseLogcatSection(content, section, buffer));
+            }
+        }
+        List<List<LogRecord>> sectionRecords = new ArrayList<>(logcatTasks.size());
+        for (Future<List<LogRecord>> result : ForkJoinPool.commonPool().invokeAll(logcatTasks)) {
+            sectionRecords.add(getSectionRecords(result));
+        }
+        records = KWayMerger.merge(sectionRecords, Ordering.natural());
+        logger.info(String.format("Parsed %s: %d sections, %d records in %d ms", fileName, sections.size(),
+                                  records.size(), stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+    }
+
+    private static List<LogRecord> getSectionRecords(Future<List<LogRecord>> result) throws ParseException {
+        try {
+            return Uninterruptibles.getUninterruptibly(result);
+        } catch (ExecutionException e) {
+            Throwables.propagateIfPossible(e.getCause(), ParseException.class);
+            throw new IllegalStateException("Unexpected exception while parsing", e.getCause());
         }
-        handler.startSection(sectionName);
-        in.mark(READ_AHEAD_LIMIT);
-        String line = in.readLine();
-        while (line != null) {
-            if (getSectionName(line) != null) {
-                // found start of a new section
-                in.reset();
-                break;
+    }
+
+    /**
+     * Parses the records of the section and sorts them. Can be called concurrently for different sections.
+     */
+    private List<LogRecord> parseLogcatSection(ByteBuffer content, Section section, final Buffer buffer)
+            throws ParseException {
+        final List<LogRecord> sectionRecords = new ArrayList<>();
+        DumpstateSectionScanner.forEachLine(content, section, new DumpstateSectionScanner.LineHandler() {
+            private Strategy parsingStrategy;
+
+            @Override
+            public void handleLine(String line) throws ParseException {
+                if (CharMatcher.whitespace().matchesAllOf(line) || LogRecordParser.isLogBeginningLine(line)) {
+                    return;
+                }
+                if (parsingStrategy == null) {
+                    parsingStrategy = chooseParsingStrategy(line);
+                }
+                LogRecord record = parsingStrategy.parse(symbols, buffer, line, converter);
+                if (record == null) {
+                    logger.debug("Null record: " + line);
+                } else {
+                    sectionRecords.add(record);
+                }
             }
-            boolean shouldBreak = !handler.handleLine(line);
-            if (shouldBreak) {
-                // handler reported that his section is over
-                break;
+        });
+        // The logcat output is almost sorted already, so this is cheap.
+        KWayMerger.sortAlmostSorted(sectionRecords, Ordering.natural());
+        return sectionRecords;
+    }
+
+    private static Strategy chooseParsingStrategy(String line) throws ParseException {
+        for (Strategy strategy : ParsingStrategies.supportedStrategies) {
+            if (strategy.parse(null, null, line, Collections.<Integer, String>emptyMap()) != null) {
+                return strategy;
             }
-            in.mark(READ_AHEAD_LIMIT);
-            line = in.readLine();
         }
-        handler.endSection();
+        throw new ParseException("Cannot figure out log format from " + line, 0);
     }
 
-    private SectionHandler getSectionHandler(String sectionName) {
-        for (SectionHandler handler : handlers) {
-            if (handler.isSupportedSection(sectionName)) {
-                logger.debug("Supported section: " + sectionName);
-                return handler;
+    private static boolean isLogcatSection(String sectionName) {
+        for (Buffer buffer : Buffer.values()) {
+            String header = Configuration.dump.bufferHeader(buffer);
+            if (header != null && sectionName.startsWith(header + " LOG")) {
+                return true;
             }
         }
-        logger.debug("Unsupported section: " + sectionName);
-        return null;
+        return false;
     }
 
-    private void initSectionHandlers() {
-        handlers.add(new LogcatSectionHandler());
-        handlers.add(new ProcessesSectionHandler());
+    private static Buffer getBufferFromName(String sectionName) {
+        for (Buffer buffer : Buffer.values()) {
+            String header = Configuration.dump.bufferHeader(buffer);
+            if (header != null && sectionName.startsWith(header)) {
+                return buffer;
+            }
+        }
+        return Buffer.UNKNOWN;
     }
 
     @Override
@@ -133,6 +222,11 @@ public class DumpstateFileDataSource implements DataSource {
         return converter;
     }
 
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     @Override
     public boolean reset() {
         setLogRecordListener(logcatListener);
@@ -142,177 +236,23 @@ public class DumpstateFileDataSource implements DataSource {
     @Override
     public void setLogRecordListener(RecordListener<LogRecord> listener) {
         this.logcatListener = listener;
-        Collections.sort(records);
         listener.setRecords(records);
     }
 
-    /**
-     * Handles one section of the dumpstate file
-     */
-    private interface SectionHandler {
-
-        /**
-         * Checks if the implementation supports some section.
-         *
-         * @param sectionName section name as appears in the file without wrapping
-         *                    dashes
-         * @return {@code true} if the implementation can handle this section
-         */
-        boolean isSupportedSection(String sectionName);
-
-        /**
-         * Handles one line from the file.
-         *
-         * @param line one line from the file (not null but can be empty)
-         * @return {@code true} if the line wasn't last line in section and the
-         *         handler is expecting more
-         */
-        boolean handleLine(String line) throws ParseException;
-
-        /**
-         * Called when the section ends due to end of the file or because other
-         * section starts.
-         */
-        void endSection();
-
-        /**
-         * Starts section processing.
-         */
-        void startSection(String sectionName);
-    }
-
-    private static final Pattern SECTION_NAME_PATTERN = Pattern.compile("^------ (.*) ------\\s*$");
-
-    private static String getSectionName(String line) {
-        Matcher m = SECTION_NAME_PATTERN.matcher(line);
-        if (m.matches()) {
-            return m.group(1);
-        } else {
-            return null;
-        }
-    }
-
-    private static final Pattern SECTION_END_PATTERN = Pattern.compile("^\\[.*: .* elapsed\\]$");
-
-    private void addLogRecord(LogRecord record) {
-        records.add(record);
-    }
-
-    private void addBuffer(Buffer buffer) {
-        buffers.add(buffer);
-    }
-
-    private class LogcatSectionHandler implements SectionHandler {
-
-        private Buffer buffer;
-        private Strategy parsingStrategy;
-
-        @Override
-        public void endSection() {
-            assert buffer != null;
-            addBuffer(buffer);
-        }
-
-        @Override
-        public boolean handleLine(String line) throws ParseException {
-            if (isEnd(line)) {
-                return false;
-            }
-            if (CharMatcher.whitespace().matchesAllOf(line)
-                    || LogRecordParser.isLogBeginningLine(line)) {
-                return true;
-            }
-            if (parsingStrategy == null) {
-                parsingStrategy = chooseParsingStrategy(line);
-            }
-            assert buffer != null;
-            LogRecord record = parsingStrategy.parse(buffer, line, getPidToProcessConverter());
-            if (record == null) {
-                logger.debug("Null record: " + line);
-            } else {
-                addLogRecord(record);
-            }
-            return true;
-        }
-
-        private Strategy chooseParsingStrategy(String line) throws ParseException {
-            for (Strategy strategy : ParsingStrategies.supportedStrategies) {
-                if (strategy.parse(null, line, Collections.<Integer, String>emptyMap()) != null) {
-                    return strategy;
-                }
-            }
-            throw new ParseException("Cannot figure out log format from " + line, 0);
-        }
-
-        @Override
-        public boolean isSupportedSection(String sectionName) {
-            for (Buffer buffer : Buffer.values()) {
-                String header = Configuration.dump.bufferHeader(buffer);
-                if (header != null && sectionName.startsWith(header + " LOG")) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        @Override
-        public void startSection(String sectionName) {
-            parsingStrategy = null;
-            buffer = getBufferFromName(sectionName);
-        }
-
-        private Buffer getBufferFromName(String sectionName) {
-            for (Buffer buffer : Buffer.values()) {
-                String header = Configuration.dump.bufferHeader(buffer);
-                if (header != null && sectionName.startsWith(header)) {
-                    return buffer;
-                }
-            }
-            return Buffer.UNKNOWN;
-        }
-
-        private boolean isEnd(String line) {
-            return SECTION_END_PATTERN.matcher(line).matches();
-        }
-    }
-
     private static final String PROCESSES_SECTION = "PROCESSES (ps -P)";
     private Map<Integer, String> converter = new HashMap<Integer, String>();
 
-    private class ProcessesSectionHandler implements SectionHandler {
-
-        @Override
-        public void endSection() {
-        }
-
-        @Override
-        public boolean handleLine(String line) throws ParseException {
-            if (isEnd(line)) {
-                return false;
-            }
-
-            if (CharMatcher.whitespace().matchesAllOf(line)
-                    || ProcessListParser.isProcessListHeader(line)) {
-                return true;
-            }
-            Matcher m = ProcessListParser.parseProcessListLine(line);
-            converter.put(ProcessListParser.getPid(m), ProcessListParser.getProcessName(m));
-            return true;
-        }
-
-        @Override
-        public boolean isSupportedSection(String sectionName) {
-            return PROCESSES_SECTION.equalsIgnoreCase(sectionName);
-        }
-
-        @Override
-        public void startSection(String sectionName) {
-        }
+    private static boolean isProcessesSection(String sectionName) {
+        return PROCESSES_SECTION.equalsIgnoreCase(sectionName);
+    }
 
-        private boolean isEnd(String line) {
-            return SECTION_END_PATTERN.matcher(line).matches();
+    private void handleProcessLine(String line) {
+        if (CharMatcher.whitespace().matchesAllOf(line) || ProcessListParser.isProcessListHeader(line)) {
+            return;
         }
-
+        Matcher m = ProcessListParser.parseProcessListLine(line);
+        converter.put(ProcessListParser.getPid(m),
+                      symbols.canonicalize(ProcessListParser.getProcessName(m)));
     }
 
     @Override
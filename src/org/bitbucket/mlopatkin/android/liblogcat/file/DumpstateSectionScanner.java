@@ -0,0 +1,227 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.base.Predicate;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.ParseException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the sections of the dumpstate file in a single pass over the UTF-8 bytes. The section starts with the
+ * {@code ------ NAME ------} header line and ends with the {@code [command: 0.1s elapsed]} line, the next header or
+ * the end of the file. Only the header and the end lines are decoded.
+ * <p>
+ * All ASCII bytes in UTF-8 are single-byte chars, so the markup can be matched on bytes.
+ */
+final class DumpstateSectionScanner {
+    private static final byte[] HEADER_PREFIX = "------ ".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] HEADER_SUFFIX = " ------".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] END_SUFFIX = " elapsed]".getBytes(StandardCharsets.US_ASCII);
+
+    private DumpstateSectionScanner() {
+    }
+
+    /**
+     * The body of the section, i.e. the lines between the header and the end line.
+     */
+    static final class Section {
+        private final String name;
+        private final int start;
+        private final int end;
+
+        Section(String name, int start, int end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * @return the offset of the first line of the section body
+         */
+        public int getStart() {
+            return start;
+        }
+
+        /**
+         * @return the offset right after the last line terminator of the section body
+         */
+        public int getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return name + " [" + start + ", " + end + ")";
+        }
+    }
+
+    /**
+     * Receives the decoded lines of the section.
+     */
+    interface LineHandler {
+        void handleLine(String line) throws ParseException;
+    }
+
+    /**
+     * Finds the supported sections of the file. Lines of the unsupported sections are only checked for being a
+     * header.
+     *
+     * @param content the bytes of the file between position and limit
+     * @param isSupportedSection the predicate on the section name
+     * @return the supported sections in the file order
+     */
+    static List<Section> scan(ByteBuffer content, Predicate<String> isSupportedSection) {
+        List<Section> sections = new ArrayList<>();
+        int limit = content.limit();
+        int lineStart = content.position();
+        String currentSection = null;
+        int sectionStart = 0;
+        while (lineStart < limit) {
+            int lineEnd = findLineEnd(content, lineStart, limit);
+            int nextLineStart = skipLineTerminator(content, lineEnd, limit);
+            String header = getSectionName(content, lineStart, lineEnd);
+            if (header != null) {
+                if (currentSection != null) {
+                    sections.add(new Section(currentSection, sectionStart, lineStart));
+                }
+                currentSection = isSupportedSection.apply(header) ? header : null;
+                sectionStart = nextLineStart;
+            } else if (currentSection != null && isSectionEnd(content, lineStart, lineEnd)) {
+                sections.add(new Section(currentSection, sectionStart, lineStart));
+                currentSection = null;
+            }
+            lineStart = nextLineStart;
+        }
+        if (currentSection != null) {
+            sections.add(new Section(currentSection, sectionStart, limit));
+        }
+        return sections;
+    }
+
+    /**
+     * Decodes the lines of the section and passes them to the handler. Lines are split the same way as
+     * {@link java.io.BufferedReader#readLine()} does.
+     */
+    static void forEachLine(ByteBuffer content, Section section, LineHandler handler) throws ParseException {
+        ByteBuffer bytes = content.duplicate();
+        byte[] buffer = new byte[256];
+        int lineStart = section.getStart();
+        int end = section.getEnd();
+        while (lineStart < end) {
+            int lineEnd = findLineEnd(bytes, lineStart, end);
+            int length = lineEnd - lineStart;
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            bytes.position(lineStart);
+            bytes.get(buffer, 0, length);
+            handler.handleLine(new String(buffer, 0, length, StandardCharsets.UTF_8));
+            lineStart = skipLineTerminator(bytes, lineEnd, end);
+        }
+    }
+
+    private static int findLineEnd(ByteBuffer content, int from, int limit) {
+        for (int i = from; i < limit; ++i) {
+            byte b = content.get(i);
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static int skipLineTerminator(ByteBuffer content, int lineEnd, int limit) {
+        if (lineEnd >= limit) {
+            return limit;
+        }
+        if (content.get(lineEnd) == '\r' && lineEnd + 1 < limit && content.get(lineEnd + 1) == '\n') {
+            return lineEnd + 2;
+        }
+        return lineEnd + 1;
+    }
+
+    /**
+     * Matches {@code ^------ (.*) ------\s*$}.
+     *
+     * @return the section name or {@code null} if the line isn't a header
+     */
+    private static String getSectionName(ByteBuffer content, int lineStart, int lineEnd) {
+        if (!startsWith(content, lineStart, lineEnd, HEADER_PREFIX)) {
+            return null;
+        }
+        int end = lineEnd;
+        while (end > lineStart && isWhitespace(content.get(end - 1))) {
+            --end;
+        }
+        int nameStart = lineStart + HEADER_PREFIX.length;
+        int nameEnd = end - HEADER_SUFFIX.length;
+        if (nameEnd < nameStart || !startsWith(content, nameEnd, end, HEADER_SUFFIX)) {
+            return null;
+        }
+        byte[] name = new byte[nameEnd - nameStart];
+        for (int i = 0; i < name.length; ++i) {
+            name[i] = content.get(nameStart + i);
+        }
+        return new String(name, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Matches {@code ^\[.*: .* elapsed\]$}.
+     */
+    private static boolean isSectionEnd(ByteBuffer content, int lineStart, int lineEnd) {
+        if (lineStart >= lineEnd || content.get(lineStart) != '[') {
+            return false;
+        }
+        int suffixStart = lineEnd - END_SUFFIX.length;
+        if (suffixStart < lineStart + 1 || !startsWith(content, suffixStart, lineEnd, END_SUFFIX)) {
+            return false;
+        }
+        for (int i = lineStart + 1; i + 2 <= suffixStart; ++i) {
+            if (content.get(i) == ':' && content.get(i + 1) == ' ') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean startsWith(ByteBuffer content, int from, int limit, byte[] prefix) {
+        if (limit - from < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; ++i) {
+            if (content.get(from + i) != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Same as {@code \s} of {@link java.util.regex.Pattern}.
+     */
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == 0x0B || b == '\f' || b == '\r';
+    }
+}
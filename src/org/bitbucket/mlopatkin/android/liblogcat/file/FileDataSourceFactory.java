@@ -29,6 +29,8 @@ import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.util.Collections;
 
+import javax.annotation.Nullable;
+
 public class FileDataSourceFactory {
     private static final int READ_AHEAD_LIMIT = 65536;
 
@@ -37,11 +39,16 @@ public class FileDataSourceFactory {
 
     public static DataSource createDataSource(File file) throws UnrecognizedFormatException,
             IOException {
-        return createDataSource(file.getName(), Files.asCharSource(file, StandardCharsets.UTF_8));
+        return createDataSource(file.getName(), Files.asCharSource(file, StandardCharsets.UTF_8), file);
     }
 
     public static DataSource createDataSource(String fileName, CharSource file) throws UnrecognizedFormatException,
             IOException {
+        return createDataSource(fileName, file, null);
+    }
+
+    private static DataSource createDataSource(String fileName, CharSource file, @Nullable File diskFile)
+            throws UnrecognizedFormatException, IOException {
         LogFormatSniffer dumpstateSniffer = new DumpstateSniffer();
         LogFormatSniffer logfileSniffer = new LogFileSniffer();
 
@@ -51,9 +58,9 @@ public class FileDataSourceFactory {
             String checkLine = in.readLine();
             while (checkLine != null) {
                 if (dumpstateSniffer.push(checkLine)) {
-                    return createDumpstateFileSource(fileName, in);
+                    return createDumpstateFileSource(fileName, in, diskFile);
                 } else if (logfileSniffer.push(checkLine)) {
-                    return createLogFileSource(fileName, checkLine, in);
+                    return createLogFileSource(fileName, checkLine, in, diskFile);
                 }
                 in.mark(READ_AHEAD_LIMIT);
                 checkLine = in.readLine();
@@ -62,18 +69,28 @@ public class FileDataSourceFactory {
         }
     }
 
-    private static DataSource createLogFileSource(String fileName, String checkLine, BufferedReader in)
-            throws IOException, UnrecognizedFormatException {
+    private static DataSource createLogFileSource(String fileName, String checkLine, BufferedReader in,
+            @Nullable File diskFile) throws IOException, UnrecognizedFormatException {
         LogfileDataSource source = LogfileDataSource.createLogfileDataSourceWithStrategy(fileName,
                                                                                          checkLine);
-        in.reset();
-        source.parse(in);
+        if (diskFile != null) {
+            // Lines before the check line cannot be parsed by any strategy so it is safe to load the whole file.
+            // The file is loaded in background once the source gets its listener.
+            source.load(diskFile);
+        } else {
+            in.reset();
+            source.parse(in);
+        }
         return source;
     }
 
-    private static DataSource createDumpstateFileSource(String fileName, BufferedReader in)
+    private static DataSource createDumpstateFileSource(String fileName, BufferedReader in, @Nullable File diskFile)
             throws IOException, UnrecognizedFormatException {
         try {
+            if (diskFile != null) {
+                // The lines before the sniffed one aren't sections, it is safe to scan the whole file.
+                return new DumpstateFileDataSource(fileName, diskFile);
+            }
             return new DumpstateFileDataSource(fileName, in);
         } catch (ParseException e) {
             throw new UnrecognizedFormatException("Cannot parse dumpstate file", e);
@@ -93,7 +110,7 @@ public class FileDataSourceFactory {
         @Override
         protected boolean pushNonEmpty(String nextLine) {
             for (ParsingStrategies.Strategy strategy : ParsingStrategies.supportedStrategies) {
-                if (strategy.parse(LogRecord.Buffer.UNKNOWN, nextLine, Collections.emptyMap()) != null) {
+                if (strategy.parse(null, LogRecord.Buffer.UNKNOWN, nextLine, Collections.emptyMap()) != null) {
                     return true;
                 }
             }
@@ -16,38 +16,70 @@
 package org.bitbucket.mlopatkin.android.liblogcat.file;
 
 import com.google.common.base.CharMatcher;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
 import org.apache.log4j.Logger;
-import org.bitbucket.mlopatkin.android.liblogcat.DataSource;
 import org.bitbucket.mlopatkin.android.liblogcat.Field;
+import org.bitbucket.mlopatkin.android.liblogcat.LoadingDataSource;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecordParser;
 import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.utils.Threads;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.annotation.Nullable;
 
 /**
  * This class implements simple log parser with the ability to determine actual
  * logcat output format used.
+ * <p>
+ * The file on disk is loaded in background when the listener is set. Records of the smaller files are sent to the
+ * listener in batches as soon as they are parsed. Larger files are memory-mapped and sent to the listener at once
+ * after indexing.
  */
-public class LogfileDataSource implements DataSource {
+public class LogfileDataSource implements LoadingDataSource {
 
     private static final Logger logger = Logger.getLogger(LogfileDataSource.class);
 
     private static final Buffer DEFAULT_BUFFER = Buffer.UNKNOWN;
+    // Larger files are memory-mapped instead of being parsed into the heap.
+    private static final long MAPPED_FILE_SIZE_THRESHOLD = 256L * 1024 * 1024;
+
+    private static final ProgressListener NO_PROGRESS_LISTENER = new ProgressListener() {
+        @Override
+        public void onProgress(long loaded, long total) {
+        }
+
+        @Override
+        public void onLoadingFinished(boolean completed) {
+        }
+    };
 
     private RecordListener<LogRecord> listener;
+    private ProgressListener progressListener = NO_PROGRESS_LISTENER;
     private ParsingStrategies.Strategy strategy;
-    private List<LogRecord> records = new ArrayList<LogRecord>();
+    private final SymbolTable symbols = new SymbolTable();
+    // Null until the file is loaded, the records of the streamed file aren't retained.
+    private volatile @Nullable List<LogRecord> records = new ArrayList<LogRecord>();
     private String fileName;
+    private @Nullable File file;
+    private @Nullable ExecutorService loadingExecutor;
+    private @Nullable Future<?> loading;
 
     private LogfileDataSource(String fileName, ParsingStrategies.Strategy strategy) {
         this.strategy = strategy;
@@ -56,33 +88,64 @@ public class LogfileDataSource implements DataSource {
     }
 
     void parse(BufferedReader in) throws IOException {
+        parseLines(strategy, symbols, in, records);
+    }
+
+    /**
+     * Makes the source load the file in background when the listener is set. Files smaller than
+     * {@link #MAPPED_FILE_SIZE_THRESHOLD} are parsed on all available cores and appended to the listener in the order
+     * of the lines. Larger files are memory-mapped and indexed, records are decoded from the mapped bytes only when
+     * requested, so the heap usage doesn't depend on the file size much. The indexed part of such file is sent to the
+     * listener periodically while the indexing is in progress.
+     */
+    void load(File file) {
+        this.file = file;
+        this.records = null;
+    }
+
+    static void parseLines(ParsingStrategies.Strategy strategy, @Nullable SymbolTable symbols, BufferedReader in,
+            List<LogRecord> records) throws IOException {
         String line = in.readLine();
         while (line != null) {
-            if (!LogRecordParser.isLogBeginningLine(line)
-                    && !CharMatcher.whitespace().matchesAllOf(line)) {
-                LogRecord record = strategy
-                        .parse(DEFAULT_BUFFER, line, Collections.<Integer, String>emptyMap());
-                // sometimes we cannot handle the line well: if we didn't guess
-                // the log type correctly or if there is some weird formatting
-                // (probably binary output)
-
-                // in the first case to stop and throw may be better but there
-                // is no reliable way to distinguish these two cases
-                // in the second case it is obviously better to ignore these
-                // weird lines
-                if (record != null) {
-                    records.add(record);
-                } else {
-                    logger.debug("Null record: " + line);
-                }
+            LogRecord record = parseLine(strategy, symbols, line);
+            if (record != null) {
+                records.add(record);
             }
             line = in.readLine();
         }
     }
 
+    /**
+     * Parses the line of the log file.
+     *
+     * @param symbols the table of the data source or {@code null} to not intern the fields
+     * @return the record or {@code null} if the line doesn't contain a record
+     */
+    static LogRecord parseLine(ParsingStrategies.Strategy strategy, @Nullable SymbolTable symbols, String line) {
+        if (LogRecordParser.isLogBeginningLine(line) || CharMatcher.whitespace().matchesAllOf(line)) {
+            return null;
+        }
+        LogRecord record = strategy.parse(symbols, DEFAULT_BUFFER, line, Collections.<Integer, String>emptyMap());
+        // sometimes we cannot handle the line well: if we didn't guess
+        // the log type correctly or if there is some weird formatting
+        // (probably binary output)
+
+        // in the first case to stop and throw may be better but there
+        // is no reliable way to distinguish these two cases
+        // in the second case it is obviously better to ignore these
+        // weird lines
+        if (record == null) {
+            logger.debug("Null record: " + line);
+        }
+        return record;
+    }
+
     @Override
     public void close() {
-
+        cancelLoading();
+        if (loadingExecutor != null) {
+            loadingExecutor.shutdown();
+        }
     }
 
     @Override
@@ -100,22 +163,96 @@ public class LogfileDataSource implements DataSource {
         return null;
     }
 
+    @Override
+    public SymbolTable getSymbolTable() {
+        return symbols;
+    }
+
     @Override
     public void setLogRecordListener(RecordListener<LogRecord> listener) {
         this.listener = listener;
-        this.listener.setRecords(records);
+        List<LogRecord> loadedRecords = records;
+        if (loadedRecords != null) {
+            this.listener.setRecords(loadedRecords);
+            progressListener.onLoadingFinished(true);
+        } else {
+            startLoading();
+        }
+    }
+
+    @Override
+    public void setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+    }
+
+    @Override
+    public void cancelLoading() {
+        if (loading != null) {
+            loading.cancel(true);
+            loading = null;
+        }
+    }
+
+    private void startLoading() {
+        assert file != null;
+        cancelLoading();
+        if (loadingExecutor == null) {
+            loadingExecutor = Executors.newSingleThreadExecutor(
+                    new ThreadFactoryBuilder().setThreadFactory(Threads.withName("FileLoader-" + fileName))
+                                              .setDaemon(true).build());
+        }
+        final File loadedFile = file;
+        final RecordListener<LogRecord> recordListener = listener;
+        final ProgressListener loadingProgressListener = progressListener;
+        loading = loadingExecutor.submit(() -> loadFile(loadedFile, recordListener, loadingProgressListener));
+    }
+
+    private void loadFile(File loadedFile, RecordListener<LogRecord> recordListener,
+            ProgressListener loadingProgressListener) {
+        boolean completed = false;
+        try {
+            final long total = loadedFile.length();
+            if (total >= MAPPED_FILE_SIZE_THRESHOLD) {
+                List<LogRecord> mappedRecords = MappedLogRecordList.create(
+                        strategy, symbols, loadedFile, loaded -> loadingProgressListener.onProgress(loaded, total),
+                        recordListener::setRecords);
+                records = mappedRecords;
+                recordListener.setRecords(mappedRecords);
+            } else {
+                new ParallelLogfileLoader(strategy, symbols).load(loadedFile, (chunkRecords, loaded) -> {
+                    if (!chunkRecords.isEmpty()) {
+                        recordListener.appendRecords(chunkRecords);
+                    }
+                    loadingProgressListener.onProgress(loaded, total);
+                });
+            }
+            completed = true;
+        } catch (InterruptedException | InterruptedIOException e) {
+            logger.debug("Loading of " + loadedFile + " is cancelled");
+        } catch (IOException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                logger.debug("Loading of " + loadedFile + " is cancelled", e);
+            } else {
+                logger.error("Failed to load " + loadedFile, e);
+            }
+        } finally {
+            loadingProgressListener.onLoadingFinished(completed);
+        }
     }
 
     static LogfileDataSource createLogfileDataSourceWithStrategy(String fileName, String checkLine)
             throws UnrecognizedFormatException {
         for (ParsingStrategies.Strategy current : ParsingStrategies.supportedStrategies) {
-            if (current.parse(null, checkLine, Collections.<Integer, String>emptyMap()) != null) {
+            if (current.parse(null, null, checkLine, Collections.<Integer, String>emptyMap()) != null) {
                 return new LogfileDataSource(fileName, current);
             }
         }
         throw new UnrecognizedFormatException();
     }
 
+    /**
+     * Resends the records into the listener. The streamed file is loaded again.
+     */
     @Override
     public boolean reset() {
         setLogRecordListener(listener);
@@ -0,0 +1,352 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+
+import org.apache.log4j.Logger;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+
+import javax.annotation.Nullable;
+
+/**
+ * Read-only list of the records of the memory-mapped log file. Only the offsets of the lines that contain records are
+ * kept in the heap, the records are decoded from the mapped bytes on access.
+ * <p>
+ * The record of the line is kept in the weak cache while it is referenced from somewhere else, e.g. bookmarks, so
+ * the list returns the same instance for the same index. The list is thread-safe.
+ * <p>
+ * The lines are indexed by the cheap check of their beginning, see
+ * {@link ParsingStrategies.Strategy#mayStartRecord(ByteBuffer, int, int)}, so the file isn't parsed twice.
+ * <p>
+ * The file may be changed after it is indexed, e.g. if it is still being written or is rotated. The lines that cannot
+ * be read or parsed are returned as the placeholder records, this is logged once.
+ */
+final class MappedLogRecordList extends AbstractList<LogRecord> implements RandomAccess {
+    private static final Logger logger = Logger.getLogger(MappedLogRecordList.class);
+
+    // Each mapped region contains whole lines only, so the line cannot be longer than the region.
+    private static final long MAX_REGION_SIZE = Integer.MAX_VALUE;
+    private static final int INITIAL_INDEX_CAPACITY = 1024;
+    // The interruption is checked and the progress is reported after this number of lines.
+    private static final int PROGRESS_INTERVAL_LINES = 65536;
+    // The indexed part of the file is published not more often than this.
+    private static final long PREFIX_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final LongConsumer NO_PROGRESS = bytes -> {
+    };
+    private static final Consumer<MappedLogRecordList> NO_PREFIXES = prefix -> {
+    };
+    private static final String CHANGED_FILE_TAG = "Changed File";
+    private static final String UNREADABLE_LINE = "<The line cannot be read, the file has been changed>";
+
+    private final ParsingStrategies.Strategy strategy;
+    private final SymbolTable symbols;
+    private final MappedByteBuffer[] regions;
+    // Index of the first line of each region.
+    private final int[] regionFirstLines;
+    // Offsets of the lines relative to the start of the region. The array can be longer than the list, the indexer
+    // may still fill its tail.
+    private final int[] lineStarts;
+    private final int size;
+    private final AtomicReferenceArray<RecordReference> cache;
+    private final ReferenceQueue<LogRecord> collectedRecords = new ReferenceQueue<>();
+    private final AtomicBoolean changeReported = new AtomicBoolean();
+
+    private MappedLogRecordList(ParsingStrategies.Strategy strategy, SymbolTable symbols, MappedByteBuffer[] regions,
+            int[] regionFirstLines, int[] lineStarts, int size) {
+        this.strategy = strategy;
+        this.symbols = symbols;
+        this.regions = regions;
+        this.regionFirstLines = regionFirstLines;
+        this.lineStarts = lineStarts;
+        this.size = size;
+        this.cache = new AtomicReferenceArray<>(size);
+    }
+
+    public static MappedLogRecordList create(ParsingStrategies.Strategy strategy, SymbolTable symbols, File file)
+            throws IOException {
+        return create(strategy, symbols, file, NO_PROGRESS, NO_PREFIXES);
+    }
+
+    /**
+     * Indexes the file and reports the number of the indexed bytes to {@code progress} periodically. Indexing stops
+     * with {@link InterruptedIOException} if the calling thread is interrupted.
+     *
+     * @param symbols the table of the data source, the decoded records are interned in it
+     * @param prefixes receives the lists of the records indexed so far while the indexing is in progress, each list
+     *         starts with the records of the previous one
+     */
+    public static MappedLogRecordList create(ParsingStrategies.Strategy strategy, SymbolTable symbols, File file,
+            LongConsumer progress, Consumer<? super MappedLogRecordList> prefixes) throws IOException {
+        return create(strategy, symbols, file, MAX_REGION_SIZE, progress, prefixes);
+    }
+
+    static MappedLogRecordList create(ParsingStrategies.Strategy strategy, SymbolTable symbols, File file,
+            long maxRegionSize) throws IOException {
+        return create(strategy, symbols, file, maxRegionSize, NO_PROGRESS, NO_PREFIXES);
+    }
+
+    private static MappedLogRecordList create(ParsingStrategies.Strategy strategy, SymbolTable symbols, File file,
+            long maxRegionSize, LongConsumer progress, Consumer<? super MappedLogRecordList> prefixes)
+            throws IOException {
+        Preconditions.checkArgument(0 < maxRegionSize && maxRegionSize <= MAX_REGION_SIZE, "Invalid region size");
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            Indexer indexer = new Indexer(strategy, symbols, progress, prefixes);
+            long fileSize = channel.size();
+            long regionStart = 0;
+            while (regionStart < fileSize) {
+                long regionSize = Math.min(maxRegionSize, fileSize - regionStart);
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, regionSize);
+                int consumed = indexer.indexRegion(region, regionStart, regionStart + regionSize == fileSize);
+                if (consumed == 0) {
+                    throw new IOException("The line at " + regionStart + " is longer than " + maxRegionSize);
+                }
+                regionStart += consumed;
+            }
+            MappedLogRecordList result = indexer.build();
+            logger.info(String.format("Indexed %s: %d records in %d ms", file.getName(), result.size(),
+                                      stopwatch.elapsed(TimeUnit.MILLISECONDS)));
+            return result;
+        }
+    }
+
+    @Override
+    public LogRecord get(int index) {
+        Preconditions.checkElementIndex(index, size);
+        cleanUpCache();
+        RecordReference ref = cache.get(index);
+        LogRecord record = ref != null ? ref.get() : null;
+        while (record == null) {
+            LogRecord decoded = decode(index);
+            RecordReference newRef = new RecordReference(decoded, index, collectedRecords);
+            if (cache.compareAndSet(index, ref, newRef)) {
+                return decoded;
+            }
+            // Other thread has decoded the record concurrently, use its instance.
+            ref = cache.get(index);
+            record = ref != null ? ref.get() : null;
+        }
+        return record;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private LogRecord decode(int index) {
+        int regionIndex = Arrays.binarySearch(regionFirstLines, index);
+        if (regionIndex < 0) {
+            regionIndex = -regionIndex - 2;
+        } else {
+            // Skip regions without lines.
+            while (regionIndex + 1 < regionFirstLines.length && regionFirstLines[regionIndex + 1] == index) {
+                ++regionIndex;
+            }
+        }
+        ByteBuffer region = regions[regionIndex].duplicate();
+        int start = lineStarts[index];
+        String line;
+        try {
+            line = decodeLine(region, start, findLineEnd(region, start, region.limit()));
+        } catch (InternalError e) {
+            // The access to the truncated part of the mapping fails this way.
+            reportChange(e);
+            return createPlaceholderRecord(UNREADABLE_LINE);
+        }
+        LogRecord record = LogfileDataSource.parseLine(strategy, symbols, line);
+        if (record == null) {
+            reportChange(null);
+            return createPlaceholderRecord(line);
+        }
+        return record;
+    }
+
+    private void reportChange(@Nullable Throwable cause) {
+        if (changeReported.compareAndSet(false, true)) {
+            logger.warn("Some records cannot be read, the file may have been changed since it was indexed", cause);
+        }
+    }
+
+    private static LogRecord createPlaceholderRecord(String message) {
+        return new LogRecord(LogRecord.NO_TIME, LogRecord.NO_ID, LogRecord.NO_ID, "", LogRecord.Priority.ERROR,
+                             CHANGED_FILE_TAG, message, LogRecord.Buffer.UNKNOWN);
+    }
+
+    private void cleanUpCache() {
+        Reference<? extends LogRecord> collected = collectedRecords.poll();
+        while (collected != null) {
+            RecordReference ref = (RecordReference) collected;
+            cache.compareAndSet(ref.index, ref, null);
+            collected = collectedRecords.poll();
+        }
+    }
+
+    private static String decodeLine(ByteBuffer region, int start, int end) {
+        byte[] bytes = new byte[end - start];
+        region.position(start);
+        region.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Finds the position of the line terminator or {@code limit} if there is no terminator. The terminators are the
+     * same as of {@link java.io.BufferedReader#readLine()}.
+     */
+    private static int findLineEnd(ByteBuffer region, int start, int limit) {
+        for (int i = start; i < limit; ++i) {
+            byte b = region.get(i);
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return limit;
+    }
+
+    private static class RecordReference extends WeakReference<LogRecord> {
+        final int index;
+
+        RecordReference(LogRecord record, int index, ReferenceQueue<LogRecord> queue) {
+            super(record, queue);
+            this.index = index;
+        }
+    }
+
+    private static class Indexer {
+        private final ParsingStrategies.Strategy strategy;
+        private final SymbolTable symbols;
+        private final LongConsumer progress;
+        private final Consumer<? super MappedLogRecordList> prefixes;
+        private final List<MappedByteBuffer> regions = new ArrayList<>();
+        private final List<Integer> regionFirstLines = new ArrayList<>();
+        // The published prefixes share the array, so only its tail is written after the growth.
+        private int[] lineStarts = new int[INITIAL_INDEX_CAPACITY];
+        private int lineCount;
+        private int linesSinceProgress;
+        private int publishedLineCount;
+        private long lastPublishTime = System.nanoTime();
+
+        Indexer(ParsingStrategies.Strategy strategy, SymbolTable symbols, LongConsumer progress,
+                Consumer<? super MappedLogRecordList> prefixes) {
+            this.strategy = strategy;
+            this.symbols = symbols;
+            this.progress = progress;
+            this.prefixes = prefixes;
+        }
+
+        /**
+         * Indexes all whole lines of the region.
+         *
+         * @param regionStart the offset of the region in the file
+         * @return the number of bytes in the whole lines, the next region should start right after them
+         */
+        int indexRegion(MappedByteBuffer region, long regionStart, boolean isLastRegion)
+                throws InterruptedIOException {
+            regions.add(region);
+            regionFirstLines.add(lineCount);
+            int limit = region.limit();
+            int lineStart = 0;
+            while (lineStart < limit) {
+                int lineEnd = findLineEnd(region, lineStart, limit);
+                int nextLineStart;
+                if (lineEnd == limit) {
+                    if (!isLastRegion) {
+                        // The line continues in the next region.
+                        break;
+                    }
+                    nextLineStart = limit;
+                } else if (region.get(lineEnd) == '\r') {
+                    if (lineEnd + 1 == limit && !isLastRegion) {
+                        // The '\n' of "\r\n" may be in the next region.
+                        break;
+                    }
+                    nextLineStart = (lineEnd + 1 < limit && region.get(lineEnd + 1) == '\n') ? lineEnd + 2
+                            : lineEnd + 1;
+                } else {
+                    nextLineStart = lineEnd + 1;
+                }
+                if (strategy.mayStartRecord(region, lineStart, lineEnd)) {
+                    addLine(lineStart);
+                }
+                lineStart = nextLineStart;
+                if (++linesSinceProgress == PROGRESS_INTERVAL_LINES) {
+                    linesSinceProgress = 0;
+                    if (Thread.currentThread().isInterrupted()) {
+                        throw new InterruptedIOException("Indexing is interrupted");
+                    }
+                    progress.accept(regionStart + lineStart);
+                    publishPrefix();
+                }
+            }
+            return lineStart;
+        }
+
+        private void addLine(int lineStart) {
+            if (lineCount == lineStarts.length) {
+                lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+            }
+            lineStarts[lineCount++] = lineStart;
+        }
+
+        private void publishPrefix() {
+            long now = System.nanoTime();
+            if (lineCount > publishedLineCount && now - lastPublishTime >= PREFIX_INTERVAL_NANOS) {
+                lastPublishTime = now;
+                publishedLineCount = lineCount;
+                prefixes.accept(createList(lineStarts));
+            }
+        }
+
+        MappedLogRecordList build() {
+            return createList(Arrays.copyOf(lineStarts, lineCount));
+        }
+
+        private MappedLogRecordList createList(int[] starts) {
+            int[] firstLines = new int[regionFirstLines.size()];
+            for (int i = 0; i < firstLines.length; ++i) {
+                firstLines[i] = regionFirstLines.get(i);
+            }
+            return new MappedLogRecordList(strategy, symbols, regions.toArray(new MappedByteBuffer[0]), firstLines,
+                                           starts, lineCount);
+        }
+    }
+}
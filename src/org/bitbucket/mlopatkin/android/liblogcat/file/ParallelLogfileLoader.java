@@ -0,0 +1,279 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Stopwatch;
+import com.google.common.base.Throwables;
+
+import org.apache.log4j.Logger;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loads the log file by splitting it into newline-aligned byte ranges and parsing the ranges on the fork-join pool.
+ * The records are concatenated in the file order so the result is the same as of the sequential
+ * {@link LogfileDataSource#parseLines(ParsingStrategies.Strategy, SymbolTable, BufferedReader, List)}.
+ */
+class ParallelLogfileLoader {
+    private static final Logger logger = Logger.getLogger(ParallelLogfileLoader.class);
+
+    private static final int MIN_CHUNK_SIZE = 1024 * 1024;
+    private static final int MAX_CHUNK_SIZE = 16 * 1024 * 1024;
+    private static final int CHUNKS_PER_THREAD = 4;
+    private static final int BOUNDARY_SCAN_SIZE = 8192;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+    private static final double BYTES_IN_MB = 1024 * 1024;
+
+    private final ParsingStrategies.Strategy strategy;
+    private final SymbolTable symbols;
+    private final ForkJoinPool pool;
+    private final int chunkSize;
+
+    ParallelLogfileLoader(ParsingStrategies.Strategy strategy, SymbolTable symbols) {
+        this(strategy, symbols, ForkJoinPool.commonPool(), 0);
+    }
+
+    /**
+     * @param symbols the table of the data source, the chunks are parsed into it concurrently
+     * @param chunkSize the size of the byte range to parse in one task or {@code 0} to pick the size based on the
+     *         file size and the pool parallelism
+     */
+    ParallelLogfileLoader(ParsingStrategies.Strategy strategy, SymbolTable symbols, ForkJoinPool pool, int chunkSize) {
+        Preconditions.checkArgument(chunkSize >= 0, "Negative chunk size");
+        this.strategy = strategy;
+        this.symbols = symbols;
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    public List<LogRecord> load(File file) throws IOException {
+        final List<LogRecord> records = new ArrayList<>();
+        try {
+            load(file, new ChunkListener() {
+                @Override
+                public void onChunkLoaded(List<LogRecord> chunkRecords, long loadedBytes) {
+                    records.addAll(chunkRecords);
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Loading of " + file + " is interrupted");
+        }
+        return records;
+    }
+
+    /**
+     * Parses the file and passes the records of each range to the listener in the file order. The listener is
+     * called on the calling thread as soon as the range and all preceding ranges are parsed, so the first records are
+     * available long before the whole file is parsed.
+     *
+     * @throws InterruptedException if the calling thread is interrupted, the remaining ranges are cancelled
+     */
+    public void load(File file, ChunkListener listener) throws IOException, InterruptedException {
+        Stopwatch stopwatch = Stopwatch.createStarted();
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            List<ChunkTask> tasks = new ArrayList<>();
+            long start = 0;
+            for (long end : findChunkEnds(channel, size)) {
+                ChunkTask task = new ChunkTask(channel, start, end);
+                tasks.add(task);
+                pool.execute(task);
+                start = end;
+            }
+            int recordsCount = 0;
+            try {
+                for (ChunkTask task : tasks) {
+                    List<LogRecord> records = task.get();
+                    recordsCount += records.size();
+                    listener.onChunkLoaded(records, task.end);
+                }
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof UncheckedIOException) {
+                    throw ((UncheckedIOException) e.getCause()).getCause();
+                }
+                Throwables.throwIfUnchecked(e.getCause());
+                throw new IllegalStateException("Unexpected exception while parsing", e.getCause());
+            } finally {
+                for (ChunkTask task : tasks) {
+                    task.cancel(false);
+                }
+            }
+            long elapsedMs = Math.max(1, stopwatch.elapsed(TimeUnit.MILLISECONDS));
+            logger.info(String.format("Loaded %s: %.1f MB, %d records in %d ms on %d threads (%.1f MB/s)",
+                                      file.getName(), size / BYTES_IN_MB, recordsCount, elapsedMs,
+                                      pool.getParallelism(), size / BYTES_IN_MB * 1000 / elapsedMs));
+        }
+    }
+
+    private long getChunkSize(long fileSize) {
+        if (chunkSize > 0) {
+            return chunkSize;
+        }
+        long perThread = fileSize / ((long) pool.getParallelism() * CHUNKS_PER_THREAD);
+        return Math.max(MIN_CHUNK_SIZE, Math.min(MAX_CHUNK_SIZE, perThread));
+    }
+
+    /**
+     * Returns the exclusive ends of the ranges. Each range except the last one ends right after '\n' so a line
+     * (including a "\r\n" terminator) never spans two ranges. A newline byte cannot be a part of a multi-byte UTF-8
+     * sequence, so each range can be decoded separately.
+     */
+    private List<Long> findChunkEnds(FileChannel channel, long size) throws IOException {
+        long step = getChunkSize(size);
+        List<Long> ends = new ArrayList<>();
+        ByteBuffer window = ByteBuffer.allocate(BOUNDARY_SCAN_SIZE);
+        long nextEnd = step;
+        while (nextEnd < size) {
+            long lineEnd = findNextLineEnd(channel, nextEnd, size, window);
+            if (lineEnd >= size) {
+                break;
+            }
+            ends.add(lineEnd);
+            nextEnd = lineEnd + step;
+        }
+        ends.add(size);
+        return ends;
+    }
+
+    private static long findNextLineEnd(FileChannel channel, long from, long size, ByteBuffer window)
+            throws IOException {
+        long pos = from;
+        while (pos < size) {
+            window.clear();
+            int read = channel.read(window, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; ++i) {
+                if (window.get(i) == '\n') {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    /**
+     * Receives the records of the parsed ranges.
+     */
+    interface ChunkListener {
+        /**
+         * @param records the records of the range in the file order
+         * @param loadedBytes the end of the range, i.e. the number of bytes parsed so far
+         */
+        void onChunkLoaded(List<LogRecord> records, long loadedBytes) throws InterruptedException;
+    }
+
+    private class ChunkTask extends RecursiveTask<List<LogRecord>> {
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        protected List<LogRecord> compute() {
+            // The range can be the rest of the file if there are no line ends, so it is read in bounded pieces.
+            List<LogRecord> result = new ArrayList<>();
+            try (BufferedReader in = new BufferedReader(new InputStreamReader(
+                    new RangeInputStream(channel, start, end), StandardCharsets.UTF_8))) {
+                LogfileDataSource.parseLines(strategy, symbols, in, result);
+                return result;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads the byte range of the channel with positional reads, so the ranges can be read concurrently.
+     */
+    private static class RangeInputStream extends InputStream {
+        private final FileChannel channel;
+        private final long end;
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private long position;
+
+        RangeInputStream(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.position = start;
+            this.end = end;
+            buffer.limit(0);
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, buffer.remaining());
+            buffer.get(b, off, count);
+            return count;
+        }
+
+        private boolean fill() throws IOException {
+            if (buffer.hasRemaining()) {
+                return true;
+            }
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - position));
+            int read = buffer.hasRemaining() ? channel.read(buffer, position) : -1;
+            buffer.flip();
+            if (read <= 0) {
+                return false;
+            }
+            position += read;
+            return true;
+        }
+    }
+}
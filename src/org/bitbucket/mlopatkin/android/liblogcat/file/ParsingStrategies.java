@@ -19,23 +19,48 @@ import org.bitbucket.mlopatkin.android.liblogcat.Field;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecordParser;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.android.liblogcat.TimeFormatUtils;
 
+import java.nio.ByteBuffer;
 import java.util.EnumSet;
 import java.util.Map;
 import java.util.Set;
 
+import javax.annotation.Nullable;
+
 class ParsingStrategies {
 
     interface Strategy {
-        LogRecord parse(Buffer buffer, String line, Map<Integer, String> pidToProcess);
+        /**
+         * @param symbols the table of the data source or {@code null} to not intern the fields, e.g. when the
+         *         format is detected
+         */
+        LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line, Map<Integer, String> pidToProcess);
+
+        /**
+         * Checks the beginning of the line in the UTF-8 bytes without decoding it. The lines that fail the check
+         * never contain the record, the lines that pass it may still fail to parse.
+         *
+         * @param bytes the buffer with the line, its position and limit aren't used
+         * @param start the position of the first byte of the line
+         * @param end the position after the last byte of the line
+         */
+        boolean mayStartRecord(ByteBuffer bytes, int start, int end);
 
         Set<Field> getAvailableFields();
     }
 
     static final ParsingStrategies.Strategy threadTime = new ParsingStrategies.Strategy() {
         @Override
-        public LogRecord parse(Buffer buffer, String line, Map<Integer, String> pidToProcess) {
-            return LogRecordParser.parseThreadTime(buffer, line, pidToProcess);
+        public LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                Map<Integer, String> pidToProcess) {
+            return LogRecordParser.parseThreadTime(symbols, buffer, line, pidToProcess);
+        }
+
+        @Override
+        public boolean mayStartRecord(ByteBuffer bytes, int start, int end) {
+            return startsWithTimestamp(bytes, start, end);
         }
 
         @Override
@@ -50,8 +75,14 @@ class ParsingStrategies {
     };
     static final ParsingStrategies.Strategy brief = new ParsingStrategies.Strategy() {
         @Override
-        public LogRecord parse(Buffer buffer, String line, Map<Integer, String> pidToProcess) {
-            return LogRecordParser.parseBrief(buffer, line, pidToProcess);
+        public LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                Map<Integer, String> pidToProcess) {
+            return LogRecordParser.parseBrief(symbols, buffer, line, pidToProcess);
+        }
+
+        @Override
+        public boolean mayStartRecord(ByteBuffer bytes, int start, int end) {
+            return startsWithPriority(bytes, start, end);
         }
 
         @Override
@@ -67,8 +98,14 @@ class ParsingStrategies {
 
     static final ParsingStrategies.Strategy time = new ParsingStrategies.Strategy() {
         @Override
-        public LogRecord parse(Buffer buffer, String line, Map<Integer, String> pidToProcess) {
-            return LogRecordParser.parseTime(buffer, line, pidToProcess);
+        public LogRecord parse(@Nullable SymbolTable symbols, Buffer buffer, String line,
+                Map<Integer, String> pidToProcess) {
+            return LogRecordParser.parseTime(symbols, buffer, line, pidToProcess);
+        }
+
+        @Override
+        public boolean mayStartRecord(ByteBuffer bytes, int start, int end) {
+            return startsWithTimestamp(bytes, start, end);
         }
 
         @Override
@@ -83,4 +120,46 @@ class ParsingStrategies {
     };
     static final ParsingStrategies.Strategy[] supportedStrategies = { threadTime, brief, time };
 
+    /**
+     * Checks for {@code \d\d-\d\d \d\d:\d\d:\d\d\.\d\d\d}.
+     */
+    private static boolean startsWithTimestamp(ByteBuffer bytes, int start, int end) {
+        return end - start >= TimeFormatUtils.TIMESTAMP_LENGTH
+                && isDigitPair(bytes, start) && bytes.get(start + 2) == '-'
+                && isDigitPair(bytes, start + 3) && bytes.get(start + 5) == ' '
+                && isDigitPair(bytes, start + 6) && bytes.get(start + 8) == ':'
+                && isDigitPair(bytes, start + 9) && bytes.get(start + 11) == ':'
+                && isDigitPair(bytes, start + 12) && bytes.get(start + 14) == '.'
+                && isDigitPair(bytes, start + 15) && isDigit(bytes.get(start + 17));
+    }
+
+    /**
+     * Checks for {@code [AVDIWEF]/}.
+     */
+    private static boolean startsWithPriority(ByteBuffer bytes, int start, int end) {
+        if (end - start < 2 || bytes.get(start + 1) != '/') {
+            return false;
+        }
+        switch (bytes.get(start)) {
+            case 'A':
+            case 'V':
+            case 'D':
+            case 'I':
+            case 'W':
+            case 'E':
+            case 'F':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isDigitPair(ByteBuffer bytes, int pos) {
+        return isDigit(bytes.get(pos)) && isDigit(bytes.get(pos + 1));
+    }
+
+    private static boolean isDigit(byte b) {
+        return '0' <= b && b <= '9';
+    }
+
 }
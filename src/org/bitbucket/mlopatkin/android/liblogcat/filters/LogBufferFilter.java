@@ -43,4 +43,13 @@ public class LogBufferFilter implements Predicate<LogRecord> {
         }
     }
 
+    /**
+     * @return the filter with the same enabled buffers that isn't affected by the further changes of this filter
+     */
+    public LogBufferFilter snapshot() {
+        LogBufferFilter copy = new LogBufferFilter();
+        copy.buffers = EnumSet.copyOf(buffers);
+        return copy;
+    }
+
 }
@@ -44,6 +44,16 @@ public interface BatchRecordsReceiver<T> {
     void addRecords(List<T> records);
 
     /**
+     * Adds several records after the existing ones in the given order.
+     *
+     * @see RecordListener#appendRecords(List)
+     */
+    void appendRecords(List<T> records);
+
+    /**
+     * Replaces all records. The list is owned by the data source and must not be
+     * modified.
+     *
      * @see RecordListener#setRecords(List)
      */
     void setRecords(List<T> records);
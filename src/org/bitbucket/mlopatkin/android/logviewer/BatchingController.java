@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer;
+
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Picks how long the arrived records wait before being merged into the model and how many of them are merged at
+ * once. The choice is based on the observed arrival rate and the measured cost of the merge on the EDT.
+ * <p>
+ * The cost of a flush of n records is modelled as {@code fixed + perRecord * n}, where the fixed part includes the
+ * repaint that follows the merge. The flush delay is the shortest one that keeps the share of the EDT time spent on
+ * the flushes within {@link #TARGET_EDT_SHARE}, but it never exceeds the latency budget. So a slow trickle of records
+ * appears almost immediately, while a flood is merged in big batches. The size of a single batch is limited so one
+ * flush doesn't block the EDT for longer than {@link #MAX_FLUSH_SLICE_NANOS}.
+ * <p>
+ * The time is passed explicitly, so the controller can be driven by a simulation. The class isn't thread-safe, all
+ * methods are called on the EDT.
+ */
+final class BatchingController {
+    private static final Logger logger = Logger.getLogger(BatchingController.class);
+
+    /** The share of the EDT time that can be spent on the flushes. */
+    static final double TARGET_EDT_SHARE = 0.5;
+    /** The shortest flush delay, one frame at 60 fps. Records that arrive together are merged together. */
+    static final long MIN_FLUSH_DELAY_NANOS = TimeUnit.MILLISECONDS.toNanos(16);
+    /** The longest time the single flush should take. */
+    static final long MAX_FLUSH_SLICE_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // Records of the small batches don't add up to the per-record estimate.
+    private static final int MIN_BATCH_FOR_PER_RECORD_ESTIMATE = 100;
+    private static final int MIN_BATCH_SIZE = 1000;
+    private static final double SMOOTHING = 0.3;
+
+    private static final long INITIAL_FIXED_COST_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final double INITIAL_PER_RECORD_COST_NANOS = 5000;
+
+    private final long latencyBudgetNanos;
+
+    private double ratePerNano;
+    private double mergeFixedCostNanos = INITIAL_FIXED_COST_NANOS;
+    private double repaintCostNanos;
+    private double perRecordCostNanos = INITIAL_PER_RECORD_COST_NANOS;
+    private long lastFlushTimeNanos;
+    private boolean hasFlushed;
+
+    /**
+     * @param latencyBudgetNanos the longest time the record may wait for the flush, unless the EDT cannot keep up. The
+     *         budget shorter than {@link #MIN_FLUSH_DELAY_NANOS} is raised to it.
+     */
+    BatchingController(long latencyBudgetNanos) {
+        if (latencyBudgetNanos < MIN_FLUSH_DELAY_NANOS) {
+            logger.warn(String.format("Update latency of %d ms is less than the minimal flush delay, %d ms is used",
+                                      TimeUnit.NANOSECONDS.toMillis(latencyBudgetNanos),
+                                      TimeUnit.NANOSECONDS.toMillis(MIN_FLUSH_DELAY_NANOS)));
+        }
+        this.latencyBudgetNanos = Math.max(MIN_FLUSH_DELAY_NANOS, latencyBudgetNanos);
+    }
+
+    /**
+     * Updates the estimates after the flush.
+     *
+     * @param nowNanos the time of the flush start
+     * @param arrivedCount the number of records that arrived since the previous flush
+     * @param batchSize the number of merged records
+     * @param mergeNanos the time the merge took
+     */
+    void onFlush(long nowNanos, long arrivedCount, int batchSize, long mergeNanos) {
+        if (hasFlushed && nowNanos > lastFlushTimeNanos) {
+            double rate = (double) arrivedCount / (nowNanos - lastFlushTimeNanos);
+            ratePerNano = smooth(ratePerNano, rate);
+        }
+        hasFlushed = true;
+        lastFlushTimeNanos = nowNanos;
+        if (batchSize >= MIN_BATCH_FOR_PER_RECORD_ESTIMATE) {
+            double perRecord = Math.max(0, mergeNanos - mergeFixedCostNanos) / batchSize;
+            perRecordCostNanos = smooth(perRecordCostNanos, perRecord);
+        } else if (batchSize > 0) {
+            mergeFixedCostNanos = smooth(mergeFixedCostNanos, Math.max(0, mergeNanos - perRecordCostNanos * batchSize));
+        }
+    }
+
+    /**
+     * Updates the estimate of the repaint cost.
+     *
+     * @param latencyNanos the time between the end of the flush and the moment the EDT processed the events queued
+     *         by the flush, e.g. the repaint
+     */
+    void onEdtLatency(long latencyNanos) {
+        repaintCostNanos = smooth(repaintCostNanos, latencyNanos);
+    }
+
+    /**
+     * @return the delay between the arrival of the first record after the flush and the next flush
+     */
+    long getFlushDelayNanos() {
+        double fixedCost = mergeFixedCostNanos + repaintCostNanos;
+        double spareShare = TARGET_EDT_SHARE - perRecordCostNanos * ratePerNano;
+        if (spareShare <= 0) {
+            // The EDT cannot keep up, merge as rarely as possible.
+            return latencyBudgetNanos;
+        }
+        long delay = (long) (fixedCost / spareShare);
+        return Math.max(MIN_FLUSH_DELAY_NANOS, Math.min(latencyBudgetNanos, delay));
+    }
+
+    /**
+     * @return the maximal number of records to merge in one flush
+     */
+    int getMaxBatchSize() {
+        double available = MAX_FLUSH_SLICE_NANOS - mergeFixedCostNanos;
+        double size = perRecordCostNanos > 0 ? available / perRecordCostNanos : Integer.MAX_VALUE;
+        return (int) Math.max(MIN_BATCH_SIZE, Math.min(Integer.MAX_VALUE, size));
+    }
+
+    /**
+     * @return the estimated arrival rate in records per second
+     */
+    double getRecordsPerSecond() {
+        return ratePerNano * TimeUnit.SECONDS.toNanos(1);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("rate: %.0f/s, fixed cost: %.2f ms, per record: %.2f us, delay: %d ms, max batch: %d",
+                             getRecordsPerSecond(), (mergeFixedCostNanos + repaintCostNanos) / 1e6,
+                             perRecordCostNanos / 1e3, TimeUnit.NANOSECONDS.toMillis(getFlushDelayNanos()),
+                             getMaxBatchSize());
+    }
+
+    private static double smooth(double current, double sample) {
+        return current + SMOOTHING * (sample - current);
+    }
+}
@@ -15,17 +15,26 @@
  */
 package org.bitbucket.mlopatkin.android.logviewer;
 
+import com.google.common.base.Preconditions;
+import com.google.common.collect.Ordering;
+
 import org.apache.log4j.Logger;
 import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
 import org.bitbucket.mlopatkin.android.liblogcat.ddmlib.AdbDataSource;
+import org.bitbucket.mlopatkin.utils.KWayMerger;
 
 import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.IntConsumer;
 
 import javax.swing.Timer;
 
@@ -37,142 +46,276 @@ import javax.swing.Timer;
  * {@link AdbDataSource} at the startup) and for each record we create an event
  * then the event queue becomes overloaded with these events. The UI becomes
  * unresponsive. However, new records should appear as fast as possible.
+ * <p/>
+ * The buffered records are passed from the producer threads to the EDT through the lock-free queue, so the producers
+ * never wait for each other or for the merge. The delay before the merge and the size of the merged batch are chosen
+ * by the {@link BatchingController} from the arrival rate and the measured cost of the merge.
  */
-public class BufferedListener<T> implements RecordListener<T> {
+public class BufferedListener<T extends Comparable<? super T>> implements RecordListener<T> {
+    /** The default time the record may wait before it appears in the model. */
+    public static final int DEFAULT_LATENCY_BUDGET_MS = 250;
+
     private static final Logger logger = Logger.getLogger(BufferedListener.class);
 
     private BatchRecordsReceiver<T> receiver;
     private AutoScrollController scrollController;
+    private final Function<? super T, ?> streamKey;
 
-    public BufferedListener(BatchRecordsReceiver<T> receiver, AutoScrollController scrollController) {
-        this.receiver = receiver;
-        this.scrollController = scrollController;
-        mergeTimer.start();
-        watchdogTimer.start();
-    }
+    private final Queue<T> internalBuffer = new ConcurrentLinkedQueue<>();
+    // The size of the ConcurrentLinkedQueue is O(n), so the depth is tracked separately.
+    private final LongAdder enqueuedCount = new LongAdder();
+    private final Metrics metrics = new Metrics();
+    // Set by the producer that schedules the flush, so the other producers don't flood the event queue.
+    private final AtomicBoolean flushScheduled = new AtomicBoolean();
+    private volatile IntConsumer drainListener = count -> { };
 
-    private enum Policy {
-        /**
-         * Send a record to the event queue as soon as it arrives.
-         */
-        IMMEDIATE,
-        /**
-         * Store a record in the buffer and send a batch of them in the merger.
-         */
-        BUFFER
-    }
+    // Accessed only on EDT.
+    private final BatchingController batchingController;
+    private final Timer flushTimer;
+    private long enqueuedAtLastFlush;
+    private boolean stopped;
 
-    private Policy policy = Policy.IMMEDIATE;
-
-    private static final int MERGE_INTERVAL_MS = 500;
-    private static final int WATCHDOG_INTERVAL_MS = 500;
-
-    // maximal number of records that can be set to eventqueue between watchdog
-    // invocations
-    private static final int MAX_RECORDS_SPEED_THRESHOLD = 50;
-
-    // minimal number of records that arrived between merger invokations to keep
-    // buffering
-    private static final int MIN_RECORDS_SPEED_THRESHOLD = 50;
-
-    // the number of records sent into eventqueue between watchdog invocations
-    private volatile AtomicInteger immediateCount = new AtomicInteger(0);
+    /**
+     * @param streamKey splits the records into streams that are almost sorted on their own, e.g. log buffers.
+     *         Batches are merged from these streams instead of being sorted.
+     */
+    public BufferedListener(BatchRecordsReceiver<T> receiver, AutoScrollController scrollController,
+            Function<? super T, ?> streamKey) {
+        this(receiver, scrollController, streamKey, DEFAULT_LATENCY_BUDGET_MS);
+    }
 
-    private List<T> internalBuffer = new ArrayList<T>();
-    private final Object lock = new Object();
+    /**
+     * @param streamKey splits the records into streams that are almost sorted on their own, e.g. log buffers.
+     *         Batches are merged from these streams instead of being sorted.
+     * @param latencyBudgetMs the longest time the record may wait before it is merged, unless the EDT cannot keep
+     *         up with the producers
+     */
+    public BufferedListener(BatchRecordsReceiver<T> receiver, AutoScrollController scrollController,
+            Function<? super T, ?> streamKey, int latencyBudgetMs) {
+        this.receiver = receiver;
+        this.scrollController = scrollController;
+        this.streamKey = streamKey;
+        this.batchingController = new BatchingController(TimeUnit.MILLISECONDS.toNanos(latencyBudgetMs));
+        this.flushTimer = new Timer(latencyBudgetMs, new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                flush();
+            }
+        });
+        flushTimer.setRepeats(false);
+    }
 
     @Override
     public void addRecord(final T record) {
         assert record != null;
-        switch (policy) {
-            case IMMEDIATE:
-                sendRecordImmediate(record);
-                break;
-            case BUFFER:
-                addRecordToBuffer(record);
-                break;
-            default:
-                throw new IllegalStateException("Invalid policy value: " + policy);
+        internalBuffer.offer(record);
+        enqueuedCount.increment();
+        if (flushScheduled.compareAndSet(false, true)) {
+            EventQueue.invokeLater(new Runnable() {
+                @Override
+                public void run() {
+                    scheduleFlush();
+                }
+            });
         }
     }
 
-    private void addRecordToBuffer(T record) {
-        synchronized (lock) {
-            internalBuffer.add(record);
+    /**
+     * Sets the listener that is notified on EDT when the records passed to {@link #addRecord(Comparable)} are taken
+     * out of the queue. The source can use it to limit the number of its pending records.
+     */
+    public void setDrainListener(IntConsumer drainListener) {
+        this.drainListener = Preconditions.checkNotNull(drainListener);
+    }
+
+    private void scheduleFlush() {
+        assert EventQueue.isDispatchThread();
+        if (stopped) {
+            return;
         }
+        flushTimer.setInitialDelay((int) TimeUnit.NANOSECONDS.toMillis(batchingController.getFlushDelayNanos()));
+        flushTimer.restart();
     }
 
-    private void sendRecordImmediate(final T record) {
-        int count = immediateCount.addAndGet(1);
-        if (count >= MAX_RECORDS_SPEED_THRESHOLD) {
-            setPolicy(Policy.BUFFER);
+    private void flush() {
+        assert EventQueue.isDispatchThread();
+        if (stopped) {
+            return;
         }
+        // Records that arrive during the merge schedule the next flush.
+        flushScheduled.set(false);
+        long startTime = System.nanoTime();
+        long enqueued = enqueuedCount.sum();
+        int batchSize = mergeIntoModel(batchingController.getMaxBatchSize());
+        long endTime = System.nanoTime();
+        metrics.onMerge(batchSize, endTime - startTime);
+        batchingController.onFlush(startTime, enqueued - enqueuedAtLastFlush, batchSize, endTime - startTime);
+        enqueuedAtLastFlush = enqueued;
+        // The repaint caused by the merge is processed before this probe, so it measures the rest of the EDT cost.
         EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
-                addOneRecord(record);
+                batchingController.onEdtLatency(System.nanoTime() - endTime);
             }
         });
+        if (metrics.getQueueDepth() > 0 && flushScheduled.compareAndSet(false, true)) {
+            scheduleFlush();
+        }
     }
 
-    private Timer mergeTimer = new Timer(MERGE_INTERVAL_MS, new ActionListener() {
-        @Override
-        public void actionPerformed(ActionEvent e) {
-            if (policy == Policy.BUFFER) {
-                mergeIntoModel();
+    private KWayMerger<T> createMerger() {
+        return new KWayMerger<>(Ordering.natural(), streamKey);
+    }
+
+    private int mergeIntoModel(int maxBatchSize) {
+        KWayMerger<T> batch = createMerger();
+        // Only the records that are in the queue now are drained, so the busy producers cannot stall the EDT.
+        long available = Math.min(metrics.getQueueDepth(), maxBatchSize);
+        for (long i = 0; i < available; ++i) {
+            T record = internalBuffer.poll();
+            if (record == null) {
+                break;
             }
+            batch.add(record);
         }
-    });
-
-    private Timer watchdogTimer = new Timer(WATCHDOG_INTERVAL_MS, new ActionListener() {
-        @Override
-        public void actionPerformed(ActionEvent e) {
-            immediateCount.set(0);
+        int batchSize = batch.size();
+        if (batchSize > 0) {
+            List<T> records = batch.drain();
+            scrollController.notifyBeforeInsert();
+            receiver.addRecords(records);
+            drainListener.accept(batchSize);
         }
-    });
+        return batchSize;
+    }
 
-    private void addOneRecord(T record) {
-        assert EventQueue.isDispatchThread();
-        scrollController.notifyBeforeInsert();
-        receiver.addRecord(record);
+    /**
+     * @return the statistics of the buffered records hand-off, can be called from any thread
+     */
+    public Metrics getMetrics() {
+        return metrics;
     }
 
-    @SuppressWarnings("unchecked")
-    private void sortRecordsIfPossible(List<T> records) {
-        if (records.size() > 0 && records.get(0) instanceof Comparable<?>) {
-            @SuppressWarnings("rawtypes")
-            List comparableRecords = records;
-            Collections.sort(comparableRecords);
-        }
+    @Override
+    public void addRecords(final List<T> records) {
+        // Batches come from the file loaders and are big enough to be merged one by one.
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (stopped) {
+                    return;
+                }
+                KWayMerger<T> batch = createMerger();
+                batch.addAll(records);
+                List<T> sortedRecords = batch.drain();
+                scrollController.notifyBeforeInsert();
+                receiver.addRecords(sortedRecords);
+            }
+        });
     }
 
-    private void mergeIntoModel() {
-        assert EventQueue.isDispatchThread();
-        List<T> records = internalBuffer;
-        synchronized (lock) {
-            internalBuffer = new ArrayList<T>();
-        }
-        if (records.size() < MIN_RECORDS_SPEED_THRESHOLD) {
-            setPolicy(Policy.IMMEDIATE);
-        }
-        sortRecordsIfPossible(records);
-        scrollController.notifyBeforeInsert();
-        receiver.addRecords(records);
+    @Override
+    public void appendRecords(final List<T> records) {
+        EventQueue.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                if (!stopped) {
+                    scrollController.notifyBeforeInsert();
+                    receiver.appendRecords(records);
+                }
+            }
+        });
     }
 
     @Override
-    public void setRecords(List<T> records) {
-        final List<T> copy = new ArrayList<T>(records);
+    public void setRecords(final List<T> records) {
+        // The list isn't copied because the data source never changes it after sending and the receiver doesn't
+        // modify it. Copying would also materialize all records of the lazy lists.
         EventQueue.invokeLater(new Runnable() {
             @Override
             public void run() {
-                receiver.setRecords(copy);
+                if (!stopped) {
+                    receiver.setRecords(records);
+                }
             }
         });
     }
 
-    private void setPolicy(Policy policy) {
-        this.policy = policy;
-        logger.debug("Switched to " + policy);
+    /**
+     * Stops passing records to the receiver, including the ones that are already scheduled. Should be called when
+     * the data source is replaced, so the late records of the old source don't get into the new one.
+     */
+    public void stop() {
+        assert EventQueue.isDispatchThread();
+        stopped = true;
+        flushTimer.stop();
+        logger.debug("Stopped: " + metrics + ", batching: " + batchingController);
+    }
+
+    /**
+     * Statistics of the hand-off of the buffered records from the producers to the EDT.
+     */
+    public final class Metrics {
+        // Written on EDT only.
+        private final AtomicLong drainedCount = new AtomicLong();
+        private final AtomicLong totalMergeNanos = new AtomicLong();
+        private final AtomicLong mergeCount = new AtomicLong();
+        private volatile int lastBatchSize;
+        private volatile int maxBatchSize;
+        private volatile long lastMergeNanos;
+        private volatile long maxMergeNanos;
+
+        private Metrics() {
+        }
+
+        void onMerge(int batchSize, long mergeNanos) {
+            drainedCount.addAndGet(batchSize);
+            lastBatchSize = batchSize;
+            maxBatchSize = Math.max(maxBatchSize, batchSize);
+            lastMergeNanos = mergeNanos;
+            maxMergeNanos = Math.max(maxMergeNanos, mergeNanos);
+            totalMergeNanos.addAndGet(mergeNanos);
+            mergeCount.incrementAndGet();
+        }
+
+        /**
+         * @return the number of records waiting in the queue
+         */
+        public long getQueueDepth() {
+            return Math.max(0, enqueuedCount.sum() - drainedCount.get());
+        }
+
+        public int getLastBatchSize() {
+            return lastBatchSize;
+        }
+
+        public int getMaxBatchSize() {
+            return maxBatchSize;
+        }
+
+        /**
+         * @return the time spent on the EDT by the last merge, in nanoseconds
+         */
+        public long getLastMergeNanos() {
+            return lastMergeNanos;
+        }
+
+        public long getMaxMergeNanos() {
+            return maxMergeNanos;
+        }
+
+        public long getTotalMergeNanos() {
+            return totalMergeNanos.get();
+        }
+
+        public long getMergeCount() {
+            return mergeCount.get();
+        }
+
+        @Override
+        public String toString() {
+            return "merges: " + getMergeCount() + ", queue depth: " + getQueueDepth() + ", max batch: "
+                    + maxBatchSize + ", max merge time: " + maxMergeNanos / 1000 + " us, total merge time: "
+                    + getTotalMergeNanos() / 1000 + " us";
+        }
     }
 }
@@ -80,7 +80,7 @@ public class LogRecordsTransferHandler extends TransferHandler {
                 int modelIndex = table.convertRowIndexToModel(row);
                 LogRecord record = model.getRowData(modelIndex);
 
-                formatter.formatLogRecord(modelIndex, record, plain).append('\n');
+                formatter.formatLogRecord(model.getLineIndex(modelIndex), record, plain).append('\n');
             }
         } catch (IOException e) {
             throw new AssertionError("StringBuilder throws IOException", e);
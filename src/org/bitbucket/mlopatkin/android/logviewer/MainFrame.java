@@ -21,9 +21,9 @@ import com.google.common.io.Files;
 
 import org.apache.log4j.Logger;
 import org.bitbucket.mlopatkin.android.liblogcat.DataSource;
+import org.bitbucket.mlopatkin.android.liblogcat.LoadingDataSource;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecordFormatter;
-import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
 import org.bitbucket.mlopatkin.android.liblogcat.ddmlib.AdbConnectionManager;
 import org.bitbucket.mlopatkin.android.liblogcat.ddmlib.AdbDataSource;
 import org.bitbucket.mlopatkin.android.liblogcat.ddmlib.AdbDeviceManager;
@@ -42,6 +42,7 @@ import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableColum
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogTable;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogTableHeaderPopupMenuController;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.RetentionPolicy;
 import org.bitbucket.mlopatkin.android.logviewer.ui.mainframe.BufferFilterMenu;
 import org.bitbucket.mlopatkin.android.logviewer.ui.mainframe.DaggerMainFrameDependencies;
 import org.bitbucket.mlopatkin.android.logviewer.ui.mainframe.MainFrameDependencies;
@@ -62,11 +63,13 @@ import java.io.IOException;
 import java.io.PrintWriter;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.concurrent.TimeUnit;
 
 import javax.swing.AbstractAction;
 import javax.swing.Action;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
+import javax.swing.JButton;
 import javax.swing.JComponent;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
@@ -75,6 +78,7 @@ import javax.swing.JMenu;
 import javax.swing.JMenuBar;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JProgressBar;
 import javax.swing.JScrollPane;
 import javax.swing.JTextField;
 import javax.swing.KeyStroke;
@@ -86,13 +90,16 @@ import javax.swing.border.EtchedBorder;
 public class MainFrame extends JFrame {
     private static final Logger logger = Logger.getLogger(MainFrame.class);
 
+    private static final long BYTES_IN_MEGABYTE = 1024 * 1024;
+    private static final int LOADING_PROGRESS_MAX = 1000;
+
     private final DataSourceHolder sourceHolder;
 
     private LogRecordTableModel recordsModel;
     private TableScrollController scrollController;
     private SearchController searchController;
 
-    private RecordListener<LogRecord> listener;
+    private BufferedListener<LogRecord> listener;
     private BookmarkController bookmarkController;
     private BookmarkModel bookmarkModel;
 
@@ -106,6 +113,8 @@ public class MainFrame extends JFrame {
     private JPanel statusPanel;
     private JLabel searchStatusLabel;
     private JLabel sourceStatusLabel;
+    private JProgressBar loadingProgressBar;
+    private JButton cancelLoadingButton;
     private final MainFrameDependencies dependencies;
 
     public MainFrame(AppGlobals appGlobals) {
@@ -127,8 +136,33 @@ public class MainFrame extends JFrame {
         }
         stopWaitingForDevice();
         sourceHolder.setDataSource(newSource);
+        // Only the live capture can run long enough to exhaust the memory.
+        boolean isLiveCapture = newSource instanceof AdbDataSource;
+        recordsModel.setSpillHotWindow(
+                isLiveCapture ? Configuration.adb.spillHotWindowMegabytes() * BYTES_IN_MEGABYTE : 0);
+        // The model creates its new store with the table of the new source, so the symbols of the old one are dropped.
+        recordsModel.setSymbolTable(newSource.getSymbolTable());
         recordsModel.clear();
         bookmarkModel.clear();
+        recordsModel.setRetentionPolicy(isLiveCapture ? createRetentionPolicy() : RetentionPolicy.unlimited());
+        // The records of the old source that are still in flight must not get into the model.
+        if (listener != null) {
+            listener.stop();
+        }
+        listener = new BufferedListener<>(recordsModel, scrollController, LogRecord::getBuffer,
+                                          Configuration.ui.updateLatencyMs());
+        hideLoadingProgress();
+        if (newSource instanceof LoadingDataSource) {
+            ((LoadingDataSource) newSource).setProgressListener(new LoadingProgressPresenter(newSource));
+        }
+        if (isLiveCapture) {
+            ((AdbDataSource) newSource).setProcessNamesListener(names -> EventQueue.invokeLater(() -> {
+                if (sourceHolder.getDataSource() == newSource) {
+                    recordsModel.backfillAppNames(names, AdbDataSource.NO_PROCESS_INFO);
+                }
+            }));
+            listener.setDrainListener(((AdbDataSource) newSource)::onRecordsConsumed);
+        }
         newSource.setLogRecordListener(listener);
         bufferMenu.setAvailableBuffers(newSource.getAvailableBuffers());
         showSourceMessage(newSource.toString());
@@ -149,6 +183,12 @@ public class MainFrame extends JFrame {
                               new LogTableHeaderPopupMenuController(columns).createMenu());
     }
 
+    private static RetentionPolicy createRetentionPolicy() {
+        return new RetentionPolicy(Configuration.adb.retentionMaxRecords(),
+                                   Configuration.adb.retentionMaxMegabytes() * BYTES_IN_MEGABYTE,
+                                   TimeUnit.MINUTES.toMillis(Configuration.adb.retentionMaxAgeMinutes()));
+    }
+
     public void setSourceAsync(final DataSource newSource) {
         if (EventQueue.isDispatchThread()) {
             setSource(newSource);
@@ -207,7 +247,6 @@ public class MainFrame extends JFrame {
         scrollController = new TableScrollController(logElements);
 
         searchController = new SearchController(logElements, recordsModel);
-        listener = new BufferedListener<>(recordsModel, scrollController);
 
         controlsPanel = new JPanel();
         getContentPane().add(controlsPanel, BorderLayout.SOUTH);
@@ -233,6 +272,17 @@ public class MainFrame extends JFrame {
         Component horizontalGlue = Box.createHorizontalGlue();
         statusPanel.add(horizontalGlue);
 
+        loadingProgressBar = new JProgressBar(0, LOADING_PROGRESS_MAX);
+        loadingProgressBar.setStringPainted(true);
+        loadingProgressBar.setMaximumSize(loadingProgressBar.getPreferredSize());
+        loadingProgressBar.setVisible(false);
+        statusPanel.add(loadingProgressBar);
+
+        cancelLoadingButton = new JButton(acCancelLoading);
+        cancelLoadingButton.setVisible(false);
+        statusPanel.add(cancelLoadingButton);
+        statusPanel.add(Box.createHorizontalStrut(8));
+
         sourceStatusLabel = new JLabel();
         statusPanel.add(sourceStatusLabel);
 
@@ -397,6 +447,58 @@ public class MainFrame extends JFrame {
         statusPanel.repaint();
     }
 
+    private void showLoadingProgress(long loaded, long total) {
+        loadingProgressBar.setValue(total > 0 ? (int) (LOADING_PROGRESS_MAX * loaded / total) : 0);
+        if (!loadingProgressBar.isVisible()) {
+            loadingProgressBar.setVisible(true);
+            cancelLoadingButton.setVisible(true);
+            statusPanel.revalidate();
+        }
+    }
+
+    private void hideLoadingProgress() {
+        loadingProgressBar.setVisible(false);
+        cancelLoadingButton.setVisible(false);
+        statusPanel.revalidate();
+        statusPanel.repaint();
+    }
+
+    /**
+     * Shows the loading progress of the source in the status bar while the source is the current one.
+     */
+    private class LoadingProgressPresenter implements LoadingDataSource.ProgressListener {
+        private final DataSource source;
+
+        LoadingProgressPresenter(DataSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public void onProgress(final long loaded, final long total) {
+            EventQueue.invokeLater(() -> {
+                if (isCurrentSource()) {
+                    showLoadingProgress(loaded, total);
+                }
+            });
+        }
+
+        @Override
+        public void onLoadingFinished(final boolean completed) {
+            EventQueue.invokeLater(() -> {
+                if (isCurrentSource()) {
+                    hideLoadingProgress();
+                    if (!completed) {
+                        showSearchMessage("Loading of " + source + " is incomplete");
+                    }
+                }
+            });
+        }
+
+        private boolean isCurrentSource() {
+            return sourceHolder.getDataSource() == source;
+        }
+    }
+
     public void reset() {
         recordsModel.clear();
         DataSource source = sourceHolder.getDataSource();
@@ -463,6 +565,20 @@ public class MainFrame extends JFrame {
         }
     };
 
+    private Action acCancelLoading = new AbstractAction("Cancel") {
+        {
+            putValue(SHORT_DESCRIPTION, "Stop loading, the records loaded so far remain");
+        }
+
+        @Override
+        public void actionPerformed(ActionEvent e) {
+            DataSource source = sourceHolder.getDataSource();
+            if (source instanceof LoadingDataSource) {
+                ((LoadingDataSource) source).cancelLoading();
+            }
+        }
+    };
+
     private Action acConnectToDevice = new AbstractAction("Connect to device...") {
 
         @Override
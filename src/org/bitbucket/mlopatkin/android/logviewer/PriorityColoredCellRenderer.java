@@ -17,7 +17,7 @@ package org.bitbucket.mlopatkin.android.logviewer;
 
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
 import org.bitbucket.mlopatkin.android.logviewer.config.Configuration;
-import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableModel;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.Column;
 import org.bitbucket.mlopatkin.android.logviewer.widgets.DecoratingCellRenderer;
 
 import java.awt.Color;
@@ -43,8 +43,7 @@ public class PriorityColoredCellRenderer implements DecoratingCellRenderer {
         Component result = inner.getTableCellRendererComponent(table, value, isSelected, hasFocus,
                 row, column);
         row = table.convertRowIndexToModel(row);
-        LogRecordTableModel model = (LogRecordTableModel) table.getModel();
-        Priority priority = model.getRowData(row).getPriority();
+        Priority priority = (Priority) table.getModel().getValueAt(row, Column.PRIORITY.getIndex());
         result.setForeground(COLOR_MAP.get(priority));
         return result;
     }
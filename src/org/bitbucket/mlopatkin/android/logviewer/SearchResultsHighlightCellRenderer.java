@@ -45,12 +45,12 @@ public class SearchResultsHighlightCellRenderer implements DecoratingCellRendere
         JComponent c = (JComponent) inner.getTableCellRendererComponent(table, value, isSelected,
                 hasFocus, row, column);
         int modelColumn = table.convertColumnIndexToModel(column);
-        LogRecordTableModel model = (LogRecordTableModel) table.getModel();
-        LogRecord rowData = model.getRowData(table.convertRowIndexToModel(row));
         if (modelColumn == Column.MESSAGE.getIndex()
                 || modelColumn == Column.TAG.getIndex()
                 || modelColumn == Column.APP_NAME.getIndex()) {
             if (value != null) {
+                // The record is only needed to highlight the search results.
+                LogRecord rowData = strategy != null ? getRecord(table, row) : null;
                 String text = value.toString();
                 if (!UiHelper.isTextFit(c, table, row, column, text)) {
                     TooltipGenerator tooltip = new TooltipGenerator(text);
@@ -70,6 +70,11 @@ public class SearchResultsHighlightCellRenderer implements DecoratingCellRendere
         return c;
     }
 
+    private static LogRecord getRecord(JTable table, int row) {
+        LogRecordTableModel model = (LogRecordTableModel) table.getModel();
+        return model.getRowData(table.convertRowIndexToModel(row));
+    }
+
     public void setHighlightStrategy(RowSearchStrategy strategy) {
         this.strategy = strategy;
     }
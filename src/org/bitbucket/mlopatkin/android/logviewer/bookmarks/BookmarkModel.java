@@ -16,19 +16,33 @@
 
 package org.bitbucket.mlopatkin.android.logviewer.bookmarks;
 
+import com.google.common.collect.HashMultiset;
+import com.google.common.collect.Multiset;
+
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.mainframe.MainFrameScoped;
+import org.bitbucket.mlopatkin.utils.PositionBitmap;
 import org.bitbucket.mlopatkin.utils.events.Observable;
 import org.bitbucket.mlopatkin.utils.events.Subject;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
 
 import javax.inject.Inject;
+import javax.swing.event.TableModelEvent;
 
 /**
  * Contains the list of all bookmarks made for the given log. All changes to the bookmarks mut be made through this
  * class.
+ * <p>
+ * Bookmarks are the rows of the {@link LogRecordTableModel} kept in the bitmap that follows the rows when the model
+ * changes. The model reports the rows shifted by the batched merge as updated, the bookmarks of the updated rows are
+ * found again by the content of their records. When the model drops all its rows, e.g. to reload the file, the
+ * bookmarks are remembered by the content of their records and restored when the same records come back. Observers
+ * are notified on EDT after the model event is processed by the tables.
  */
 @MainFrameScoped
 public class BookmarkModel {
@@ -39,37 +53,179 @@ public class BookmarkModel {
         void onBookmarkRemoved();
     }
 
-    private final Set<LogRecord> records = new HashSet<>();
+    private final LogRecordTableModel model;
+    private final PositionBitmap rows = new PositionBitmap();
+    // The keys of the bookmarked records in the order of their rows.
+    private final List<RecordKey> keys = new ArrayList<>();
+    // The keys of the bookmarks that have been dropped with all rows of the model and can come back.
+    private final Multiset<RecordKey> pendingKeys = HashMultiset.create();
     private final Subject<Observer> observers = new Subject<>();
 
     @Inject
-    public BookmarkModel() {
+    public BookmarkModel(LogRecordTableModel model) {
+        this.model = model;
+        model.addTableModelListener(this::onTableChanged);
     }
 
-
     public Observable<Observer> asObservable() {
         return observers.asObservable();
     }
 
-    public boolean containsRecord(LogRecord record) {
-        return records.contains(record);
+    public boolean containsRow(int modelRow) {
+        return rows.get(modelRow);
     }
 
-    public void addRecord(LogRecord record) {
-        records.add(record);
-        notifyAdd();
+    /**
+     * @return the bookmarked rows of the model, must not be modified
+     */
+    public PositionBitmap getRows() {
+        return rows;
     }
 
-    public void removeRecord(LogRecord record) {
-        records.remove(record);
-        notifyRemove();
+    public void addRow(int modelRow) {
+        if (!rows.get(modelRow)) {
+            keys.add(rows.rank(modelRow), new RecordKey(model.getRowData(modelRow)));
+            rows.set(modelRow);
+            notifyAdd();
+        }
+    }
+
+    public void removeRow(int modelRow) {
+        if (rows.get(modelRow)) {
+            keys.remove(rows.rank(modelRow));
+            rows.clear(modelRow);
+            notifyRemove();
+        }
     }
 
     public void clear() {
-        records.clear();
+        rows.clear();
+        keys.clear();
+        pendingKeys.clear();
         notifyRemove();
     }
 
+    private void onTableChanged(TableModelEvent e) {
+        int firstRow = e.getFirstRow();
+        int lastRow = e.getLastRow();
+        boolean allRowsDropped = e.getType() == TableModelEvent.DELETE && model.getRowCount() == 0;
+        if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE || allRowsDropped) {
+            boolean hadBookmarks = !keys.isEmpty();
+            pendingKeys.addAll(keys);
+            keys.clear();
+            rows.clear();
+            if (hadBookmarks) {
+                notifyRemoveLater();
+            }
+            restoreBookmarks(0, model.getRowCount() - 1);
+            return;
+        }
+        switch (e.getType()) {
+            case TableModelEvent.INSERT:
+                rows.insertRange(firstRow, lastRow - firstRow + 1);
+                restoreBookmarks(firstRow, lastRow);
+                break;
+            case TableModelEvent.DELETE:
+                int fromRank = rows.rank(firstRow);
+                int toRank = rows.rank(lastRow + 1);
+                rows.removeRange(firstRow, lastRow - firstRow + 1);
+                if (fromRank < toRank) {
+                    keys.subList(fromRank, toRank).clear();
+                    notifyRemoveLater();
+                }
+                break;
+            default:
+                relocateBookmarks(firstRow, lastRow);
+                break;
+        }
+    }
+
+    /**
+     * Finds the bookmarked records of the updated rows again. The records of these rows may have been shifted to the
+     * later rows by the merged ones, but kept their order.
+     */
+    private void relocateBookmarks(int firstRow, int lastRow) {
+        int fromRank = rows.rank(firstRow);
+        int toRank = rows.rank(lastRow + 1);
+        if (fromRank == toRank) {
+            return;
+        }
+        List<RecordKey> updatedKeys = new ArrayList<>(keys.subList(fromRank, toRank));
+        int[] oldRows = new int[updatedKeys.size()];
+        for (int i = 0, row = rows.nextSetBit(firstRow); i < oldRows.length; ++i, row = rows.nextSetBit(row + 1)) {
+            oldRows[i] = row;
+            rows.clear(row);
+        }
+        keys.subList(fromRank, toRank).clear();
+        boolean moved = false;
+        boolean lost = false;
+        int searchFrom = firstRow;
+        for (int i = 0; i < oldRows.length; ++i) {
+            RecordKey key = updatedKeys.get(i);
+            int row = findRow(key, searchFrom);
+            if (row < 0) {
+                lost = true;
+                continue;
+            }
+            keys.add(rows.rank(row), key);
+            rows.set(row);
+            moved |= row != oldRows[i];
+            searchFrom = row + 1;
+        }
+        if (moved || lost) {
+            notifyRemoveLater();
+        }
+        if (moved) {
+            EventQueue.invokeLater(this::notifyAdd);
+        }
+    }
+
+    /**
+     * @return the first row at or after {@code fromRow} that isn't bookmarked and has the record with the key, or
+     *         {@code -1} if there is no such row
+     */
+    private int findRow(RecordKey key, int fromRow) {
+        int rowCount = model.getRowCount();
+        int low = fromRow;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (model.getRowTimestamp(mid) < key.time) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        for (int row = low; row < rowCount && model.getRowTimestamp(row) == key.time; ++row) {
+            if (!rows.get(row) && key.equals(new RecordKey(model.getRowData(row)))) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private void restoreBookmarks(int firstRow, int lastRow) {
+        if (pendingKeys.isEmpty()) {
+            return;
+        }
+        boolean restored = false;
+        for (int row = firstRow; row <= lastRow && !pendingKeys.isEmpty(); ++row) {
+            RecordKey key = new RecordKey(model.getRowData(row));
+            if (pendingKeys.remove(key)) {
+                keys.add(rows.rank(row), key);
+                rows.set(row);
+                restored = true;
+            }
+        }
+        if (restored) {
+            EventQueue.invokeLater(this::notifyAdd);
+        }
+    }
+
+    private void notifyRemoveLater() {
+        EventQueue.invokeLater(this::notifyRemove);
+    }
+
     private void notifyAdd() {
         for (Observer o : observers) {
             o.onBookmarkAdded();
@@ -81,4 +237,47 @@ public class BookmarkModel {
             o.onBookmarkRemoved();
         }
     }
+
+    /**
+     * Identity of the record that doesn't depend on the instance, so the record parsed again has the same key. The
+     * application name isn't the part of it because it can be resolved later.
+     */
+    private static final class RecordKey {
+        private final long time;
+        private final int pid;
+        private final int tid;
+        private final LogRecord.Priority priority;
+        private final LogRecord.Buffer buffer;
+        private final String tag;
+        private final String message;
+
+        RecordKey(LogRecord record) {
+            this.time = record.getTimestamp();
+            this.pid = record.getPid();
+            this.tid = record.getTid();
+            this.priority = record.getPriority();
+            this.buffer = record.getBuffer();
+            this.tag = record.getTag();
+            this.message = record.getMessage();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof RecordKey)) {
+                return false;
+            }
+            RecordKey other = (RecordKey) o;
+            return time == other.time && pid == other.pid && tid == other.tid && priority == other.priority
+                    && buffer == other.buffer && Objects.equals(tag, other.tag)
+                    && Objects.equals(message, other.message);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(time, pid, tid, priority, buffer, tag, message);
+        }
+    }
 }
@@ -54,6 +54,7 @@ public class Configuration {
         private static final String TOOLTIP_MAX_WIDTH_KEY = PREFIX + "tooltip_max_width";
         private static final String COLUMNS_KEY = PREFIX + "columns";
         private static final String BUFFER_ENABLED_KEY = PREFIX + "buffer_enabled";
+        private static final String UPDATE_LATENCY_KEY = PREFIX + "update_latency_ms";
 
         private static final String MAIN_WINDOW_POSITION_KEY = PREFIX + "main_window_pos";
         private static final String MAIN_WINDOW_WIDTH_KEY = PREFIX + "main_window_width";
@@ -93,6 +94,13 @@ public class Configuration {
             return config.get(BUFFER_ENABLED_KEY, buffer);
         }
 
+        /**
+         * @return the longest time the new record may wait before it appears in the table, in milliseconds
+         */
+        public static Integer updateLatencyMs() {
+            return config.get(UPDATE_LATENCY_KEY);
+        }
+
         public static Boolean hideLoggingProcesses() {
             return config.get(HIDE_LOGGING_PROCESSES_KEY);
         }
@@ -138,9 +146,20 @@ public class Configuration {
         private static final String EXECUTABLE_KEY = PREFIX + "executable";
         private static final String BUFFERSWITCH_KEY = PREFIX + "bufferswitch";
         private static final String LOGCAT_COMMANDLINE_KEY = PREFIX + "logcat_cmdline";
+        private static final String BINARY_LOGCAT_KEY = PREFIX + "binary_logcat";
+        private static final String BINARY_LOGCAT_COMMANDLINE_KEY = PREFIX + "binary_logcat_cmdline";
+        private static final String MULTIPLEXED_LOGCAT_KEY = PREFIX + "multiplexed_logcat";
+        private static final String MULTIPLEXED_LOGCAT_COMMANDLINE_KEY = PREFIX + "multiplexed_logcat_cmdline";
         private static final String KMSG_COMMANDLINE_KEY = PREFIX + "kmsg_cmdline";
         private static final String BUFFER_NAME_KEY = PREFIX + "buffer";
         private static final String AUTORECONNECT_KEY = PREFIX + "autoreconnect";
+        private static final String RETENTION_MAX_RECORDS_KEY = PREFIX + "retention_max_records";
+        private static final String RETENTION_MAX_MB_KEY = PREFIX + "retention_max_mb";
+        private static final String RETENTION_MAX_AGE_MINUTES_KEY = PREFIX + "retention_max_age_minutes";
+        private static final String SPILL_HOT_WINDOW_MB_KEY = PREFIX + "spill_hot_window_mb";
+        private static final String MAX_SESSION_THREADS_KEY = PREFIX + "max_session_threads";
+        private static final String MAX_SESSION_TASKS_KEY = PREFIX + "max_session_tasks";
+        private static final String MAX_PENDING_RECORDS_KEY = PREFIX + "max_pending_records";
 
         public static final String DEFAULT_EXECUTABLE = ((SystemUtils.IS_OS_WINDOWS) ? "adb.exe"
                 : "adb").intern();
@@ -149,6 +168,73 @@ public class Configuration {
             return config.get(LOGCAT_COMMANDLINE_KEY);
         }
 
+        public static Boolean isBinaryLogcatEnabled() {
+            return config.get(BINARY_LOGCAT_KEY);
+        }
+
+        public static String binaryCommandline() {
+            return config.get(BINARY_LOGCAT_COMMANDLINE_KEY);
+        }
+
+        /**
+         * @return the maximal number of records kept during the live capture, 0 means no limit
+         */
+        public static Integer retentionMaxRecords() {
+            return config.get(RETENTION_MAX_RECORDS_KEY);
+        }
+
+        /**
+         * @return the maximal estimated size of records kept during the live capture in megabytes, 0 means no limit
+         */
+        public static Integer retentionMaxMegabytes() {
+            return config.get(RETENTION_MAX_MB_KEY);
+        }
+
+        /**
+         * @return the maximal age of records kept during the live capture in minutes, 0 means no limit
+         */
+        public static Integer retentionMaxAgeMinutes() {
+            return config.get(RETENTION_MAX_AGE_MINUTES_KEY);
+        }
+
+        /**
+         * @return the memory for the recent messages in megabytes, the older ones are moved to the disk during the
+         *         live capture; 0 disables the spilling
+         */
+        public static Integer spillHotWindowMegabytes() {
+            return config.get(SPILL_HOT_WINDOW_MB_KEY);
+        }
+
+        /**
+         * @return the maximal number of threads that read the logs of all attached devices
+         */
+        public static Integer maxSessionThreads() {
+            return config.get(MAX_SESSION_THREADS_KEY);
+        }
+
+        /**
+         * @return the maximal number of threads that read the logs of the single device
+         */
+        public static Integer maxSessionTasks() {
+            return config.get(MAX_SESSION_TASKS_KEY);
+        }
+
+        /**
+         * @return the maximal number of records of the single device that wait for the UI, the device is read slower
+         *         when there are more
+         */
+        public static Integer maxPendingRecords() {
+            return config.get(MAX_PENDING_RECORDS_KEY);
+        }
+
+        public static Boolean isMultiplexedLogcatEnabled() {
+            return config.get(MULTIPLEXED_LOGCAT_KEY);
+        }
+
+        public static String multiplexedCommandline() {
+            return config.get(MULTIPLEXED_LOGCAT_COMMANDLINE_KEY);
+        }
+
         public static String bufferswitch() {
             return config.get(BUFFERSWITCH_KEY);
         }
@@ -247,6 +333,7 @@ public class Configuration {
         cfg.property(ui.PRIORITY_FOREGROUND_KEY,
                      enumMap(Priority.class, Color.class, colorParser));
         cfg.property(ui.TOOLTIP_MAX_WIDTH_KEY, integer());
+        cfg.property(ui.UPDATE_LATENCY_KEY, integer(250));
 
         cfg.property(ui.MAIN_WINDOW_POSITION_KEY, point().defaultVal(new Point(0, 0)));
         cfg.property(ui.PROCESS_LIST_WINDOW_POSITION_KEY, point().defaultVal(null));
@@ -259,8 +346,19 @@ public class Configuration {
         cfg.property(adb.EXECUTABLE_KEY, string().defaultVal(adb.DEFAULT_EXECUTABLE));
         cfg.property(adb.KMSG_COMMANDLINE_KEY, string());
         cfg.property(adb.LOGCAT_COMMANDLINE_KEY, string());
+        cfg.property(adb.BINARY_LOGCAT_KEY, bool().defaultVal(false));
+        cfg.property(adb.BINARY_LOGCAT_COMMANDLINE_KEY, string());
+        cfg.property(adb.MULTIPLEXED_LOGCAT_KEY, bool().defaultVal(false));
+        cfg.property(adb.MULTIPLEXED_LOGCAT_COMMANDLINE_KEY, string());
         cfg.property(adb.SHOW_SETUP_DIALOG_KEY, bool().defaultVal(true));
         cfg.property(adb.AUTORECONNECT_KEY, bool().defaultVal(true));
+        cfg.property(adb.RETENTION_MAX_RECORDS_KEY, integer(0));
+        cfg.property(adb.RETENTION_MAX_MB_KEY, integer(0));
+        cfg.property(adb.RETENTION_MAX_AGE_MINUTES_KEY, integer(0));
+        cfg.property(adb.SPILL_HOT_WINDOW_MB_KEY, integer(0));
+        cfg.property(adb.MAX_SESSION_THREADS_KEY, integer(32));
+        cfg.property(adb.MAX_SESSION_TASKS_KEY, integer(8));
+        cfg.property(adb.MAX_PENDING_RECORDS_KEY, integer(50000));
 
         cfg.property(dump.BUFFER_HEADER_KEY,
                      enumMap(Buffer.class, String.class, Parsers.stringParser));
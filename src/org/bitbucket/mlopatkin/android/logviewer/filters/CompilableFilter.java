@@ -0,0 +1,35 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.filters;
+
+import com.google.common.base.Predicate;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+
+import javax.annotation.Nullable;
+
+/**
+ * Filter that can be merged with other filters into a {@link FilterPlan}. The filter must give the same result as its
+ * {@link FieldFilter}.
+ */
+public interface CompilableFilter extends Predicate<LogRecord> {
+    /**
+     * @return the tests of this filter or {@code null} if the filter isn't compiled, then it is applied as is
+     */
+    @Nullable
+    FieldFilter getFieldFilter();
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.filters;
+
+import com.google.common.base.Preconditions;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableSet;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecordPredicates;
+import org.bitbucket.mlopatkin.utils.FluentPredicate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import javax.annotation.Nullable;
+
+/**
+ * Filter that is a conjunction of the tests of the record fields: the tag, the application name or the pid, the
+ * message and the priority. The absent tests are passed by any record. The tests of the string fields have keys, the
+ * tests with equal keys must be equivalent, so the {@link FilterPlan} can evaluate them once for many filters.
+ */
+public final class FieldFilter implements Predicate<LogRecord> {
+    @Nullable
+    private final StringTest tagTest;
+    @Nullable
+    private final StringTest appNameTest;
+    private final ImmutableSet<Integer> pids;
+    @Nullable
+    private final StringTest messageTest;
+    @Nullable
+    private final LogRecord.Priority minPriority;
+
+    private final Predicate<LogRecord> predicate;
+
+    private FieldFilter(Builder builder) {
+        this.tagTest = builder.tagTest;
+        this.appNameTest = builder.appNameTest;
+        this.pids = builder.pids;
+        this.messageTest = builder.messageTest;
+        this.minPriority = builder.minPriority;
+        this.predicate = createPredicate();
+    }
+
+    private Predicate<LogRecord> createPredicate() {
+        List<Predicate<LogRecord>> predicates = new ArrayList<>(4);
+        if (tagTest != null) {
+            predicates.add(LogRecordPredicates.matchTag(tagTest.getMatcher()));
+        }
+        FluentPredicate<LogRecord> appsAndPidsPredicate = null;
+        if (!pids.isEmpty()) {
+            appsAndPidsPredicate = LogRecordPredicates.withAnyOfPids(pids.asList());
+        }
+        if (appNameTest != null) {
+            appsAndPidsPredicate =
+                    LogRecordPredicates.matchAppName(appNameTest.getMatcher()).or(appsAndPidsPredicate);
+        }
+        if (appsAndPidsPredicate != null) {
+            predicates.add(appsAndPidsPredicate);
+        }
+        if (messageTest != null) {
+            predicates.add(LogRecordPredicates.matchMessage(messageTest.getMatcher()));
+        }
+        if (minPriority != null) {
+            predicates.add(LogRecordPredicates.moreSevereThan(minPriority));
+        }
+        return Predicates.and(predicates);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public boolean apply(@Nullable LogRecord record) {
+        return predicate.apply(record);
+    }
+
+    @Nullable
+    public StringTest getTagTest() {
+        return tagTest;
+    }
+
+    @Nullable
+    public StringTest getAppNameTest() {
+        return appNameTest;
+    }
+
+    /**
+     * The record passes the application name test if it matches the application name or has one of these pids.
+     *
+     * @return the pids, empty if there is no pid test
+     */
+    public ImmutableSet<Integer> getPids() {
+        return pids;
+    }
+
+    @Nullable
+    public StringTest getMessageTest() {
+        return messageTest;
+    }
+
+    @Nullable
+    public LogRecord.Priority getMinPriority() {
+        return minPriority;
+    }
+
+    /**
+     * Test of the string field of the record.
+     */
+    public static final class StringTest {
+        private final Object key;
+        private final Predicate<String> matcher;
+        @Nullable
+        private final String literal;
+
+        StringTest(Object key, Predicate<String> matcher, @Nullable String literal) {
+            this.key = key;
+            this.matcher = matcher;
+            this.literal = literal;
+        }
+
+        public Object getKey() {
+            return key;
+        }
+
+        public Predicate<String> getMatcher() {
+            return matcher;
+        }
+
+        /**
+         * @return the substring that the matcher finds ignoring the case of ASCII letters or {@code null} if the
+         *         matcher isn't a plain substring search
+         */
+        @Nullable
+        public String getLiteral() {
+            return literal;
+        }
+    }
+
+    public static final class Builder {
+        @Nullable
+        private StringTest tagTest;
+        @Nullable
+        private StringTest appNameTest;
+        private ImmutableSet<Integer> pids = ImmutableSet.of();
+        @Nullable
+        private StringTest messageTest;
+        @Nullable
+        private LogRecord.Priority minPriority;
+
+        private Builder() {
+        }
+
+        public Builder setTagMatcher(Object key, Predicate<String> matcher) {
+            tagTest = new StringTest(key, matcher, null);
+            return this;
+        }
+
+        public Builder setAppNameMatcher(Object key, Predicate<String> matcher) {
+            appNameTest = new StringTest(key, matcher, null);
+            return this;
+        }
+
+        public Builder setPids(Collection<Integer> pids) {
+            this.pids = ImmutableSet.copyOf(pids);
+            return this;
+        }
+
+        public Builder setMessageMatcher(Object key, Predicate<String> matcher) {
+            messageTest = new StringTest(key, matcher, null);
+            return this;
+        }
+
+        /**
+         * Sets the message test that looks for the substring ignoring the case of ASCII letters.
+         *
+         * @param literal the substring to find
+         * @param matcher the predicate that finds the substring, e.g. the literal case-insensitive pattern
+         */
+        public Builder setMessageLiteral(String literal, Predicate<String> matcher) {
+            Preconditions.checkArgument(!literal.isEmpty(), "Empty literal");
+            messageTest = new StringTest(literal, matcher, literal);
+            return this;
+        }
+
+        public Builder setMinPriority(LogRecord.Priority minPriority) {
+            this.minPriority = minPriority;
+            return this;
+        }
+
+        public FieldFilter build() {
+            return new FieldFilter(this);
+        }
+    }
+}
@@ -22,7 +22,9 @@ import com.google.common.collect.SetMultimap;
 
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 
-import java.util.Set;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.Map;
 
 /**
  * Manages a list of filters and composes them based on their type. At first we hide anything that matches any of the
@@ -30,6 +32,8 @@ import java.util.Set;
  * FilteringMode#SHOW} (if any).
  * <p/>
  * The order in which filters are added to/removed from FilterChain doesn't matter.
+ * <p/>
+ * The filters of each mode are compiled into the {@link FilterPlan} when the chain changes.
  */
 public class FilterChain implements FilterCollection<Predicate<LogRecord>> {
 
@@ -37,24 +41,29 @@ public class FilterChain implements FilterCollection<Predicate<LogRecord>> {
             MultimapBuilder.enumKeys(FilteringMode.class)
                            .hashSetValues()
                            .build();
+    private final Map<FilteringMode, FilterPlan> plans = new EnumMap<>(FilteringMode.class);
 
     private boolean include(FilteringMode mode, LogRecord record) {
-        Set<Predicate<LogRecord>> filtersForMode = filters.get(mode);
-        if (filtersForMode.isEmpty()) {
+        FilterPlan plan = plans.get(mode);
+        if (plan == null) {
             return mode.getDefaultResult();
         }
-        for (Predicate<LogRecord> filter : filtersForMode) {
-            if (filter.apply(record)) {
-                return true;
-            }
-        }
-        return false;
+        return plan.matchesAny(record);
     }
 
     @Override
     public void addFilter(FilteringMode mode, Predicate<LogRecord> filter) {
         Preconditions.checkArgument(mode == FilteringMode.SHOW || mode == FilteringMode.HIDE);
         filters.put(mode, filter);
+        compile(mode);
+    }
+
+    private void compile(FilteringMode mode) {
+        if (filters.containsKey(mode)) {
+            plans.put(mode, FilterPlan.compile(new ArrayList<>(filters.get(mode))));
+        } else {
+            plans.remove(mode);
+        }
     }
 
     public boolean shouldShow(LogRecord record) {
@@ -64,6 +73,28 @@ public class FilterChain implements FilterCollection<Predicate<LogRecord>> {
     @Override
     public void removeFilter(FilteringMode mode, Predicate<LogRecord> filter) {
         filters.remove(mode, filter);
+        compile(mode);
+    }
+
+    /**
+     * @return the number of the enabled filters of the mode
+     */
+    public int getFilterCount(FilteringMode mode) {
+        return filters.get(mode).size();
+    }
+
+    /**
+     * Returns the predicate that applies the filters of this chain. The predicate isn't affected by the further changes
+     * of the chain, so it can be used on any thread as long as the filters themselves are thread-safe.
+     *
+     * @return the snapshot of this chain
+     */
+    public Predicate<LogRecord> snapshot() {
+        FilterChain copy = new FilterChain();
+        copy.filters.putAll(filters);
+        // Plans are immutable, so the copy shares them and their caches.
+        copy.plans.putAll(plans);
+        return copy::shouldShow;
     }
 
 }
@@ -0,0 +1,342 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.filters;
+
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.utils.AhoCorasickMatcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+import javax.annotation.Nullable;
+
+/**
+ * The list of filters compiled into one evaluation program. The equal tests of the {@link CompilableFilter}s are
+ * evaluated once per record. The tests of the tag and the application name are evaluated once per distinct value, the
+ * results for all filters are kept in the bitmap looked up by the symbol id. The priority and the pid are tested with
+ * the lookups too. Only the filters that pass these tests have their message tested, all literal message patterns are
+ * searched for at once with {@link AhoCorasickMatcher}. Other filters are applied as is after the cheap tests.
+ * <p>
+ * The plan is immutable and thread-safe as long as the filters are.
+ */
+final class FilterPlan {
+    private static final FilterPlan EMPTY = new FilterPlan(ImmutableList.of());
+
+    private final ImmutableList<Predicate<LogRecord>> filters;
+    private final int words;
+
+    // The bitmaps of the filters, the filter i is the bit (i % 64) of the word (i / 64). The filters without the test
+    // have their bits set in all bitmaps of the test.
+    private final long[][] priorityMasks = new long[LogRecord.Priority.values().length][];
+    private final SymbolMasks tagMasks;
+    private final SymbolMasks appNameMasks;
+    private final Map<Integer, long[]> pidMasks = new HashMap<>();
+    // The filters that are applied as is.
+    private final long[] opaqueFilters;
+
+    // The message test of the filter is either the literal or the regular test. Indices are -1 if there is no test.
+    private final int[] literalIndices;
+    private final int[] messageTestIndices;
+    @Nullable
+    private final AhoCorasickMatcher literalMatcher;
+    private final List<Predicate<String>> messageTests = new ArrayList<>();
+
+    private FilterPlan(List<? extends Predicate<LogRecord>> filters) {
+        this.filters = ImmutableList.copyOf(filters);
+        this.words = (filters.size() + Long.SIZE - 1) / Long.SIZE;
+        this.opaqueFilters = new long[words];
+        this.literalIndices = new int[filters.size()];
+        this.messageTestIndices = new int[filters.size()];
+        Arrays.fill(literalIndices, -1);
+        Arrays.fill(messageTestIndices, -1);
+
+        SymbolMasks.Builder tags = new SymbolMasks.Builder(words);
+        SymbolMasks.Builder appNames = new SymbolMasks.Builder(words);
+        Map<String, Integer> literals = new LinkedHashMap<>();
+        Map<Object, Integer> messageTestKeys = new HashMap<>();
+        for (int i = 0; i < priorityMasks.length; ++i) {
+            priorityMasks[i] = new long[words];
+        }
+        for (int i = 0; i < filters.size(); ++i) {
+            Predicate<LogRecord> filter = filters.get(i);
+            FieldFilter fieldFilter =
+                    filter instanceof CompilableFilter ? ((CompilableFilter) filter).getFieldFilter() : null;
+            if (fieldFilter == null) {
+                setBit(opaqueFilters, i);
+                setBits(priorityMasks, 0, i);
+                tags.addUntested(i);
+                appNames.addUntested(i);
+                continue;
+            }
+            LogRecord.Priority minPriority = fieldFilter.getMinPriority();
+            setBits(priorityMasks, minPriority != null ? minPriority.ordinal() : 0, i);
+            tags.add(i, fieldFilter.getTagTest());
+            if (fieldFilter.getAppNameTest() != null || fieldFilter.getPids().isEmpty()) {
+                appNames.add(i, fieldFilter.getAppNameTest());
+            }
+            for (Integer pid : fieldFilter.getPids()) {
+                setBit(pidMasks.computeIfAbsent(pid, p -> new long[words]), i);
+            }
+            FieldFilter.StringTest messageTest = fieldFilter.getMessageTest();
+            if (messageTest != null && messageTest.getLiteral() != null) {
+                literalIndices[i] = literals.computeIfAbsent(messageTest.getLiteral(), l -> literals.size());
+            } else if (messageTest != null) {
+                messageTestIndices[i] = messageTestKeys.computeIfAbsent(messageTest.getKey(), key -> {
+                    messageTests.add(messageTest.getMatcher());
+                    return messageTests.size() - 1;
+                });
+            }
+        }
+        tagMasks = tags.build(LogRecord::getTagId, LogRecord::getTag);
+        appNameMasks = appNames.build(LogRecord::getAppNameId, LogRecord::getAppName);
+        literalMatcher = literals.isEmpty() ? null : new AhoCorasickMatcher(new ArrayList<>(literals.keySet()), true);
+    }
+
+    /**
+     * Compiles the filters into the plan.
+     *
+     * @param filters the filters, the index of the filter in the list is its index in the plan
+     * @return the plan
+     */
+    static FilterPlan compile(List<? extends Predicate<LogRecord>> filters) {
+        return filters.isEmpty() ? EMPTY : new FilterPlan(filters);
+    }
+
+    /**
+     * @return the index of the first filter that matches the record or -1 if there is no such filter
+     */
+    int findFirstMatch(LogRecord record) {
+        if (filters.isEmpty()) {
+            return -1;
+        }
+        LogRecord.Priority priority = record.getPriority();
+        long[] priorityMask = priorityMasks[priority != null ? priority.ordinal() : 0];
+        long[] tagMask = tagMasks.getMask(record);
+        long[] appNameMask = appNameMasks.getMask(record);
+        long[] pidMask = pidMasks.get(record.getPid());
+        MessageMatches messageMatches = null;
+        for (int word = 0; word < words; ++word) {
+            long candidates = priorityMask[word] & tagMask[word]
+                    & (appNameMask[word] | (pidMask != null ? pidMask[word] : 0));
+            while (candidates != 0) {
+                int index = word * Long.SIZE + Long.numberOfTrailingZeros(candidates);
+                candidates &= candidates - 1;
+                if (literalIndices[index] >= 0 || messageTestIndices[index] >= 0) {
+                    if (messageMatches == null) {
+                        messageMatches = new MessageMatches(record.getMessage());
+                    }
+                    if (!messageMatches.matches(index)) {
+                        continue;
+                    }
+                }
+                if (isBitSet(opaqueFilters, index) && !filters.get(index).apply(record)) {
+                    continue;
+                }
+                return index;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return {@code true} if any of the filters matches the record
+     */
+    boolean matchesAny(LogRecord record) {
+        return findFirstMatch(record) >= 0;
+    }
+
+    /**
+     * Results of the message tests of one record, computed on demand.
+     */
+    private final class MessageMatches {
+        private final String message;
+        @Nullable
+        private long[] literals;
+        @Nullable
+        private byte[] results;
+
+        MessageMatches(String message) {
+            this.message = message;
+        }
+
+        boolean matches(int filterIndex) {
+            int literalIndex = literalIndices[filterIndex];
+            if (literalIndex >= 0) {
+                assert literalMatcher != null;
+                if (literals == null) {
+                    literals = new long[literalMatcher.getResultSize()];
+                    literalMatcher.findAll(message, literals);
+                }
+                return isBitSet(literals, literalIndex);
+            }
+            int testIndex = messageTestIndices[filterIndex];
+            if (results == null) {
+                results = new byte[messageTests.size()];
+            }
+            if (results[testIndex] == 0) {
+                results[testIndex] = (byte) (messageTests.get(testIndex).apply(message) ? 1 : -1);
+            }
+            return results[testIndex] > 0;
+        }
+    }
+
+    /**
+     * Bitmaps of the filters that pass the tests of the interned field, cached per symbol id. Concurrent lookups may
+     * compute the same bitmap twice, it is harmless because the tests are pure. The bitmaps are published through the
+     * atomic array, so the worker threads see them complete. The cache is dropped when a record of another symbol table
+     * comes, i.e. of the new data source.
+     */
+    private static final class SymbolMasks {
+        private final long[] untested;
+        private final List<Predicate<String>> tests;
+        private final List<long[]> testFilters;
+        private final ToIntFunction<LogRecord> symbolId;
+        private final Function<LogRecord, String> symbol;
+        private volatile CachedMasks masks = new CachedMasks(null, new AtomicReferenceArray<>(64));
+
+        SymbolMasks(Builder builder, ToIntFunction<LogRecord> symbolId, Function<LogRecord, String> symbol) {
+            this.untested = builder.untested;
+            this.tests = builder.tests;
+            this.testFilters = builder.testFilters;
+            this.symbolId = symbolId;
+            this.symbol = symbol;
+        }
+
+        long[] getMask(LogRecord record) {
+            if (tests.isEmpty()) {
+                return untested;
+            }
+            int id = symbolId.applyAsInt(record);
+            if (id == SymbolTable.NO_ID) {
+                return computeMask(symbol.apply(record));
+            }
+            CachedMasks cached = masks;
+            AtomicReferenceArray<long[]> currentMasks =
+                    cached.symbols == record.getSymbolTable() ? cached.masks : new AtomicReferenceArray<>(64);
+            long[] cachedMask = id < currentMasks.length() ? currentMasks.get(id) : null;
+            if (cachedMask != null) {
+                return cachedMask;
+            }
+            long[] mask = computeMask(symbol.apply(record));
+            if (id >= currentMasks.length()) {
+                currentMasks = copyOf(currentMasks, Math.max(id + 1, currentMasks.length() * 2));
+            }
+            currentMasks.set(id, mask);
+            if (currentMasks != cached.masks) {
+                masks = new CachedMasks(record.getSymbolTable(), currentMasks);
+            }
+            return mask;
+        }
+
+        private static AtomicReferenceArray<long[]> copyOf(AtomicReferenceArray<long[]> array, int length) {
+            AtomicReferenceArray<long[]> result = new AtomicReferenceArray<>(length);
+            for (int i = 0; i < array.length(); ++i) {
+                result.set(i, array.get(i));
+            }
+            return result;
+        }
+
+        private long[] computeMask(@Nullable String value) {
+            if (value == null) {
+                // The record without the field doesn't pass the tests.
+                return untested;
+            }
+            long[] mask = untested.clone();
+            for (int i = 0; i < tests.size(); ++i) {
+                if (tests.get(i).apply(value)) {
+                    long[] filters = testFilters.get(i);
+                    for (int word = 0; word < mask.length; ++word) {
+                        mask[word] |= filters[word];
+                    }
+                }
+            }
+            return mask;
+        }
+
+        private static final class CachedMasks {
+            final @Nullable SymbolTable symbols;
+            final AtomicReferenceArray<long[]> masks;
+
+            CachedMasks(@Nullable SymbolTable symbols, AtomicReferenceArray<long[]> masks) {
+                this.symbols = symbols;
+                this.masks = masks;
+            }
+        }
+
+        static final class Builder {
+            private final int words;
+            private final long[] untested;
+            private final List<Predicate<String>> tests = new ArrayList<>();
+            private final List<long[]> testFilters = new ArrayList<>();
+            private final Map<Object, Integer> testIndices = new HashMap<>();
+
+            Builder(int words) {
+                this.words = words;
+                this.untested = new long[words];
+            }
+
+            void addUntested(int filterIndex) {
+                setBit(untested, filterIndex);
+            }
+
+            void add(int filterIndex, @Nullable FieldFilter.StringTest test) {
+                if (test == null) {
+                    addUntested(filterIndex);
+                    return;
+                }
+                int testIndex = testIndices.computeIfAbsent(test.getKey(), key -> {
+                    tests.add(test.getMatcher());
+                    testFilters.add(new long[words]);
+                    return tests.size() - 1;
+                });
+                setBit(testFilters.get(testIndex), filterIndex);
+            }
+
+            SymbolMasks build(ToIntFunction<LogRecord> symbolId, Function<LogRecord, String> symbol) {
+                return new SymbolMasks(this, symbolId, symbol);
+            }
+        }
+    }
+
+    /**
+     * Sets the bit of the filter in the masks of the priority and all higher ones.
+     */
+    private static void setBits(long[][] priorityMasks, int minPriority, int filterIndex) {
+        for (int i = minPriority; i < priorityMasks.length; ++i) {
+            setBit(priorityMasks[i], filterIndex);
+        }
+    }
+
+    private static void setBit(long[] bitmap, int index) {
+        bitmap[index / Long.SIZE] |= 1L << index;
+    }
+
+    private static boolean isBitSet(long[] bitmap, int index) {
+        return (bitmap[index / Long.SIZE] & (1L << index)) != 0;
+    }
+}
@@ -16,6 +16,9 @@
 
 package org.bitbucket.mlopatkin.android.logviewer.filters;
 
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.liblogcat.filters.LogBufferFilter;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogModelFilter;
@@ -46,6 +49,11 @@ class LogModelFilterImpl implements LogModelFilter {
         return bufferFilter.apply(record) && filterChain.shouldShow(record);
     }
 
+    @Override
+    public Predicate<LogRecord> createShowPredicate() {
+        return Predicates.and(bufferFilter.snapshot(), filterChain.snapshot());
+    }
+
     @Nullable
     @Override
     public Color getHighlightColor(LogRecord record) {
@@ -57,9 +65,9 @@ class LogModelFilterImpl implements LogModelFilter {
         return observers.asObservable();
     }
 
-    public void notifyObservers() {
+    public void notifyObservers(VisibilityChange change) {
         for (Observer o : observers) {
-            o.onModelChange();
+            o.onModelChange(change);
         }
     }
 }
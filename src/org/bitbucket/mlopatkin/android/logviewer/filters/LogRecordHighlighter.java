@@ -39,15 +39,20 @@ class LogRecordHighlighter implements FilterCollection<ColoringFilter> {
 
     private final List<FilterInfo> filters = new ArrayList<>();
     private final List<FilterInfo> reversedView = Lists.reverse(filters);
+    // The enabled filters, the last added comes first.
+    private List<ColoringFilter> enabledFilters = new ArrayList<>();
+    private FilterPlan plan = FilterPlan.compile(enabledFilters);
 
     @Override
     public void addFilter(FilteringMode mode, ColoringFilter filter) {
         filters.add(new FilterInfo(filter, true));
+        compile();
     }
 
     @Override
     public void removeFilter(FilteringMode mode, ColoringFilter filter) {
         filters.remove(findInfoForFilter(filter));
+        compile();
     }
 
     @Override
@@ -55,6 +60,7 @@ class LogRecordHighlighter implements FilterCollection<ColoringFilter> {
         FilterInfo info = findInfoForFilter(filter);
         assert info != null;
         info.isEnabled = enable;
+        compile();
     }
 
     @Override
@@ -62,15 +68,23 @@ class LogRecordHighlighter implements FilterCollection<ColoringFilter> {
         FilterInfo info = findInfoForFilter(oldFilter);
         assert info != null;
         info.filter = newFilter;
+        compile();
     }
 
     public Color getColor(LogRecord record) {
+        int index = plan.findFirstMatch(record);
+        return index >= 0 ? enabledFilters.get(index).getHighlightColor() : null;
+    }
+
+    private void compile() {
+        List<ColoringFilter> newEnabledFilters = new ArrayList<>();
         for (FilterInfo info : reversedView) {
-            if (info.isEnabled && info.filter.apply(record)) {
-                return info.filter.getHighlightColor();
+            if (info.isEnabled) {
+                newEnabledFilters.add(info.filter);
             }
         }
-        return null;
+        enabledFilters = newEnabledFilters;
+        plan = FilterPlan.compile(newEnabledFilters);
     }
 
     @Nullable
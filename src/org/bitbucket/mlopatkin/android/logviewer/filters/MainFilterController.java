@@ -31,6 +31,7 @@ import org.bitbucket.mlopatkin.android.logviewer.ui.filterpanel.FilterCreator;
 import org.bitbucket.mlopatkin.android.logviewer.ui.filterpanel.FilterPanelModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.filterpanel.PanelFilter;
 import org.bitbucket.mlopatkin.android.logviewer.ui.indexfilter.IndexFilterCollection;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogModelFilter.VisibilityChange;
 import org.bitbucket.mlopatkin.android.logviewer.ui.mainframe.MainFrameScoped;
 
 import java.util.ArrayList;
@@ -89,7 +90,7 @@ public class MainFilterController implements FilterCreator {
 
     public void setBufferEnabled(LogRecord.Buffer buffer, boolean enabled) {
         filter.bufferFilter.setBufferEnabled(buffer, enabled);
-        notifyFiltersChanged();
+        notifyFiltersChanged(enabled ? VisibilityChange.WIDENED : VisibilityChange.NARROWED);
     }
 
     @Override
@@ -112,12 +113,12 @@ public class MainFilterController implements FilterCreator {
         DialogPanelFilter dialogPanelFilter = createDialogPanelFilter(filter);
         filters.add(dialogPanelFilter);
         filterPanelModel.addFilter(dialogPanelFilter.addToCollection());
-        notifyFiltersChanged();
+        notifyFiltersChanged(getVisibilityChange(dialogPanelFilter.mode, true));
         return dialogPanelFilter;
     }
 
-    private void notifyFiltersChanged() {
-        filter.notifyObservers();
+    private void notifyFiltersChanged(VisibilityChange change) {
+        filter.notifyObservers(change);
         ArrayList<SavedFilterData> serializedFilters = new ArrayList<>(filters.size());
         for (BaseToggleFilter<?> filter : filters) {
             serializedFilters.add(filter.getSerializedVersion());
@@ -125,6 +126,28 @@ public class MainFilterController implements FilterCreator {
         storage.saveConfig(SERIALIZER, serializedFilters);
     }
 
+    /**
+     * Describes the effect of the filter of the given mode on the shown records. Must be called after the filter is
+     * added to or removed from its collection.
+     */
+    private VisibilityChange getVisibilityChange(FilteringMode mode, boolean added) {
+        switch (mode) {
+            case HIDE:
+                return added ? VisibilityChange.NARROWED : VisibilityChange.WIDENED;
+            case SHOW:
+                // Without SHOW filters everything is shown, so the first one narrows the shown set and the others
+                // widen it.
+                int showFilterCount = filter.filterChain.getFilterCount(FilteringMode.SHOW);
+                if (added) {
+                    return showFilterCount == 1 ? VisibilityChange.NARROWED : VisibilityChange.WIDENED;
+                }
+                return showFilterCount == 0 ? VisibilityChange.WIDENED : VisibilityChange.NARROWED;
+            default:
+                // Highlighting and index windows don't affect the shown records.
+                return VisibilityChange.NONE;
+        }
+    }
+
     private FilterCollection<? super FilterFromDialog> getFilterCollectionForFilter(FilterFromDialog filter) {
         switch (filter.getMode()) {
             case SHOW:
@@ -165,7 +188,7 @@ public class MainFilterController implements FilterCreator {
             if (isEnabled != this.isEnabled) {
                 this.isEnabled = isEnabled;
                 collection.setFilterEnabled(mode, filter, isEnabled);
-                notifyFiltersChanged();
+                notifyFiltersChanged(getVisibilityChange(mode, isEnabled));
             }
         }
 
@@ -173,7 +196,7 @@ public class MainFilterController implements FilterCreator {
         public void delete() {
             collection.removeFilter(mode, filter);
             filters.remove(this);
-            notifyFiltersChanged();
+            notifyFiltersChanged(getVisibilityChange(mode, false));
         }
 
         protected void replaceMeWith(BaseToggleFilter<T> replacement) {
@@ -189,7 +212,7 @@ public class MainFilterController implements FilterCreator {
                 collection.removeFilter(mode, filter);
                 replacement.addToCollection();
             }
-            notifyFiltersChanged();
+            notifyFiltersChanged(VisibilityChange.ANY);
         }
 
         public BaseToggleFilter<T> addToCollection() {
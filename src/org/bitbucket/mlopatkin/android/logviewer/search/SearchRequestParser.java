@@ -71,7 +71,11 @@ public class SearchRequestParser<T> {
         this.delegate = delegate;
     }
 
-    private boolean isRegexRequest(String request) {
+    /**
+     * @param request the request
+     * @return {@code true} if the request is a regular expression, {@code false} if it is a plain text
+     */
+    public boolean isRegexRequest(String request) {
         final int length = request.length();
         if (length > 1) {
             if (request.charAt(0) == REGEX_BOUND_CHAR
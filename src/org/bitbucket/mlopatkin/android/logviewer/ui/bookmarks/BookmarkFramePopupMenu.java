@@ -16,7 +16,6 @@
 
 package org.bitbucket.mlopatkin.android.logviewer.ui.bookmarks;
 
-import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.logviewer.bookmarks.BookmarkModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.indexframe.PopupBuilder;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableModel;
@@ -24,8 +23,6 @@ import org.bitbucket.mlopatkin.android.logviewer.widgets.TablePopupMenu;
 import org.bitbucket.mlopatkin.android.logviewer.widgets.UiHelper;
 
 import java.awt.event.ActionEvent;
-import java.util.HashSet;
-import java.util.Set;
 
 import javax.inject.Inject;
 import javax.swing.AbstractAction;
@@ -45,11 +42,14 @@ public class BookmarkFramePopupMenu implements TablePopupMenu.ItemsUpdater {
         }
         @Override
         public void actionPerformed(ActionEvent e) {
-            Set<LogRecord> recordsToRemove = new HashSet<>();
-            for (int rowIndex : table.getSelectedRows()) {
-                recordsToRemove.add(tableModel.getRowData(table.convertRowIndexToModel(rowIndex)));
+            // Removing the bookmark changes the rows of this table.
+            int[] rowsToRemove = table.getSelectedRows();
+            for (int i = 0; i < rowsToRemove.length; ++i) {
+                rowsToRemove[i] = table.convertRowIndexToModel(rowsToRemove[i]);
+            }
+            for (int modelRow : rowsToRemove) {
+                bookmarkModel.removeRow(modelRow);
             }
-            recordsToRemove.forEach(bookmarkModel::removeRecord);
         }
     };
 
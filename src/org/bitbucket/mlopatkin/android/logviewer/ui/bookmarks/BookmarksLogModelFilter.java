@@ -16,9 +16,12 @@
 
 package org.bitbucket.mlopatkin.android.logviewer.ui.bookmarks;
 
+import com.google.common.base.Predicate;
+
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.logviewer.bookmarks.BookmarkModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogModelFilter;
+import org.bitbucket.mlopatkin.utils.PositionBitmap;
 import org.bitbucket.mlopatkin.utils.events.Observable;
 import org.bitbucket.mlopatkin.utils.events.Subject;
 
@@ -35,20 +38,20 @@ public class BookmarksLogModelFilter implements LogModelFilter {
 
     private final Observer mainFilterObserver = new Observer() {
         @Override
-        public void onModelChange() {
-            notifyObservers();
+        public void onModelChange(VisibilityChange change) {
+            notifyObservers(change);
         }
     };
 
     private final BookmarkModel.Observer bookmarkObserver = new BookmarkModel.Observer() {
         @Override
         public void onBookmarkAdded() {
-            notifyObservers();
+            notifyObservers(VisibilityChange.WIDENED);
         }
 
         @Override
         public void onBookmarkRemoved() {
-            notifyObservers();
+            notifyObservers(VisibilityChange.NARROWED);
         }
     };
 
@@ -62,7 +65,18 @@ public class BookmarksLogModelFilter implements LogModelFilter {
 
     @Override
     public boolean shouldShowRecord(LogRecord record) {
-        return bookmarkModel.containsRecord(record) && modelFilter.shouldShowRecord(record);
+        // Only the bookmarked rows are tested.
+        return modelFilter.shouldShowRecord(record);
+    }
+
+    @Override
+    public Predicate<LogRecord> createShowPredicate() {
+        return modelFilter.createShowPredicate();
+    }
+
+    @Override
+    public PositionBitmap getRowMask() {
+        return bookmarkModel.getRows();
     }
 
     @Nullable
@@ -77,9 +91,9 @@ public class BookmarksLogModelFilter implements LogModelFilter {
         return observers.asObservable();
     }
 
-    private void notifyObservers() {
+    private void notifyObservers(VisibilityChange change) {
         for (Observer observer : observers) {
-            observer.onModelChange();
+            observer.onModelChange(change);
         }
     }
 }
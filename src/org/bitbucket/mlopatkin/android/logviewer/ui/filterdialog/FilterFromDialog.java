@@ -19,16 +19,17 @@ package org.bitbucket.mlopatkin.android.logviewer.ui.filterdialog;
 import com.google.common.base.Joiner;
 import com.google.common.base.Predicate;
 import com.google.common.base.Predicates;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.Lists;
 
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
-import org.bitbucket.mlopatkin.android.liblogcat.LogRecordPredicates;
 import org.bitbucket.mlopatkin.android.logviewer.filters.ColoringFilter;
+import org.bitbucket.mlopatkin.android.logviewer.filters.CompilableFilter;
+import org.bitbucket.mlopatkin.android.logviewer.filters.FieldFilter;
 import org.bitbucket.mlopatkin.android.logviewer.filters.FilteringMode;
 import org.bitbucket.mlopatkin.android.logviewer.search.RequestCompilationException;
 import org.bitbucket.mlopatkin.android.logviewer.search.SearchRequestParser;
 import org.bitbucket.mlopatkin.android.logviewer.search.SearcherBuilder;
-import org.bitbucket.mlopatkin.utils.FluentPredicate;
 
 import java.awt.Color;
 import java.util.List;
@@ -36,7 +37,7 @@ import java.util.List;
 import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 
-public class FilterFromDialog implements ColoringFilter {
+public class FilterFromDialog implements ColoringFilter, CompilableFilter {
 
     private static final Joiner commaJoiner = Joiner.on(", ");
 
@@ -83,7 +84,7 @@ public class FilterFromDialog implements ColoringFilter {
 
     private Color highlightColor;
 
-    private transient Predicate<LogRecord> compiledPredicate;
+    private transient FieldFilter compiledPredicate;
     private transient String tooltipRepresentation;
 
     public FilterFromDialog() {
@@ -102,38 +103,44 @@ public class FilterFromDialog implements ColoringFilter {
         return compiledPredicate.apply(input);
     }
 
-    private Predicate<LogRecord> compilePredicate() throws RequestCompilationException {
-        List<Predicate<LogRecord>> predicates = Lists.newArrayListWithCapacity(4);
+    @Nullable
+    @Override
+    public FieldFilter getFieldFilter() {
+        return compiledPredicate;
+    }
+
+    private FieldFilter compilePredicate() throws RequestCompilationException {
+        // The patterns are the keys of the tests: filters with the same patterns share the evaluation.
+        FieldFilter.Builder builder = FieldFilter.builder();
         if (tags != null && !tags.isEmpty()) {
             List<Predicate<String>> tagPredicates = Lists.newArrayListWithCapacity(tags.size());
             for (String tagPattern : tags) {
                 tagPredicates.add(tagParser.parse(tagPattern));
             }
-            predicates.add(LogRecordPredicates.matchTag(Predicates.or(tagPredicates)));
+            builder.setTagMatcher(ImmutableList.copyOf(tags), Predicates.or(tagPredicates));
         }
-        FluentPredicate<LogRecord> appsAndPidsPredicate = null;
         if (pids != null && !pids.isEmpty()) {
-            appsAndPidsPredicate = LogRecordPredicates.withAnyOfPids(pids);
+            builder.setPids(pids);
         }
         if (apps != null && !apps.isEmpty()) {
             List<Predicate<String>> appsPredicates = Lists.newArrayListWithCapacity(apps.size());
             for (String appPattern : apps)  {
                 appsPredicates.add(tagParser.parse(appPattern));
             }
-            FluentPredicate<LogRecord> appsPredicate = LogRecordPredicates.matchAppName(Predicates.or(appsPredicates));
-            appsAndPidsPredicate = appsPredicate.or(appsAndPidsPredicate);
-        }
-        if (appsAndPidsPredicate != null) {
-            predicates.add(appsAndPidsPredicate);
+            builder.setAppNameMatcher(ImmutableList.copyOf(apps), Predicates.or(appsPredicates));
         }
         if (messagePattern != null && !messagePattern.isEmpty()) {
-            predicates.add(LogRecordPredicates
-                    .matchMessage(messageParser.parse(messagePattern)));
+            Predicate<String> messageMatcher = messageParser.parse(messagePattern);
+            if (messageParser.isRegexRequest(messagePattern)) {
+                builder.setMessageMatcher(messagePattern, messageMatcher);
+            } else {
+                builder.setMessageLiteral(messagePattern, messageMatcher);
+            }
         }
         if (priority != null && priority != LogRecord.Priority.LOWEST) {
-            predicates.add(LogRecordPredicates.moreSevereThan(priority));
+            builder.setMinPriority(priority);
         }
-        return Predicates.and(predicates);
+        return builder.build();
     }
 
     private String compileTooltip() {
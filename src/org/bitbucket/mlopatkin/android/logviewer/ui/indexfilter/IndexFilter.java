@@ -17,6 +17,7 @@
 package org.bitbucket.mlopatkin.android.logviewer.ui.indexfilter;
 
 import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
 
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogModelFilter;
@@ -36,8 +37,9 @@ class IndexFilter implements LogModelFilter {
 
     private final Observer parentObserver = new Observer() {
         @Override
-        public void onModelChange() {
-            notifyObservers();
+        public void onModelChange(VisibilityChange change) {
+            // The filter of this window doesn't change, so the change of the parent is passed as is.
+            notifyObservers(change);
         }
     };
 
@@ -52,6 +54,11 @@ class IndexFilter implements LogModelFilter {
         return parent.shouldShowRecord(record) && filter.apply(record);
     }
 
+    @Override
+    public Predicate<LogRecord> createShowPredicate() {
+        return Predicates.and(parent.createShowPredicate(), filter);
+    }
+
     @Nullable
     @Override
     public Color getHighlightColor(LogRecord record) {
@@ -63,9 +70,9 @@ class IndexFilter implements LogModelFilter {
         return observers.asObservable();
     }
 
-    private void notifyObservers() {
+    private void notifyObservers(VisibilityChange change) {
         for (Observer observer : observers) {
-            observer.onModelChange();
+            observer.onModelChange(change);
         }
     }
 }
@@ -50,7 +50,7 @@ public enum Column {
 
         @Override
         public String getStrValue(int rowIndex, LogRecord record) {
-            return TimeFormatUtils.convertTimeToString(record.getTime());
+            return TimeFormatUtils.convertTimeToString(record.getTimestamp());
         }
     },
     PID(Field.PID, "pid", "pid") {
@@ -0,0 +1,1012 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Preconditions;
+
+import org.apache.log4j.Logger;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+
+import java.io.IOException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.AbstractList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+
+import javax.annotation.Nullable;
+
+/**
+ * Sorted list of records that keeps the fields in parallel primitive arrays instead of LogRecord objects. Messages
+ * are stored in the shared char arena, tags and application names are kept as the ids of the {@link SymbolTable}.
+ * The values of the table columns are read from the arrays directly, see {@link #getValue(int, int, Column)}.
+ * <p>
+ * LogRecord objects are created on access. The created record is kept in the weak cache while it is referenced from
+ * somewhere else, e.g. bookmarks, so the list returns the same instance for the same row. The instance passed to
+ * {@code add} isn't retained.
+ * <p>
+ * Messages can be spilled to the disk, see {@link #enableSpilling(long)}. The column arrays stay in memory and serve
+ * as the index of the spilled messages.
+ * <p>
+ * Rows can be read on the background thread through the {@link #snapshot(int[])}, it copies only the column arrays.
+ * <p>
+ * The rows live in a window of the arrays. Removing rows from the head only moves the window start, so evicting the
+ * oldest rows of a bounded log is O(1) amortized. The arrays are compacted when the window reaches their end. The
+ * message pages are dropped once no row refers to them.
+ * <p>
+ * This class isn't thread-safe.
+ */
+class ColumnarRecordList extends AbstractList<LogRecord> implements RandomAccess {
+    private static final Logger logger = Logger.getLogger(ColumnarRecordList.class);
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final int NO_VALUE = -1;
+    // The string column values below this are the indices of the strings that don't fit into the symbol table.
+    private static final int FIRST_UNINTERNED = -2;
+    private static final int MIN_COLLECTED_TO_SWEEP = 1024;
+    private static final int MIN_UNINTERNED_TO_SWEEP = 1024;
+    // The size of the row in the column arrays, the message chars are counted separately.
+    private static final int ROW_BYTES = 48;
+
+    // The index of the first row in the arrays.
+    private int first;
+    private int size;
+    private long estimatedBytes;
+    private long[] times = new long[INITIAL_CAPACITY];
+    private int[] pids = new int[INITIAL_CAPACITY];
+    private int[] tids = new int[INITIAL_CAPACITY];
+    private byte[] priorities = new byte[INITIAL_CAPACITY];
+    private byte[] buffers = new byte[INITIAL_CAPACITY];
+    private int[] tags = new int[INITIAL_CAPACITY];
+    private int[] appNames = new int[INITIAL_CAPACITY];
+    private long[] messages = new long[INITIAL_CAPACITY];
+    private int[] messageLengths = new int[INITIAL_CAPACITY];
+    private RecordReference[] cache = new RecordReference[INITIAL_CAPACITY];
+
+    // The ids of the records that belong to another table are looked up again.
+    private final SymbolTable symbols;
+    // The strings that aren't in the full symbol table. They are rare, so they aren't deduplicated.
+    private final List<String> uninternedStrings = new ArrayList<>();
+    // The strings of the removed rows are dropped when the number of the strings reaches this.
+    private int uninternedSweepThreshold = MIN_UNINTERNED_TO_SWEEP;
+    private final CharArena arena = new CharArena();
+
+    private final ReferenceQueue<LogRecord> collectedRecords = new ReferenceQueue<>();
+    private int collectedCount;
+
+    ColumnarRecordList() {
+        this(new SymbolTable());
+    }
+
+    /**
+     * @param symbols the table of the data source, the records of this table are stored without lookups
+     */
+    ColumnarRecordList(SymbolTable symbols) {
+        this.symbols = symbols;
+    }
+
+    ColumnarRecordList(Collection<LogRecord> records) {
+        this();
+        addAll(records);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public LogRecord get(int index) {
+        Preconditions.checkElementIndex(index, size);
+        cleanUpCache();
+        int row = first + index;
+        RecordReference ref = cache[row];
+        LogRecord record = ref != null ? ref.get() : null;
+        if (record == null) {
+            record = materialize(row);
+            cache[row] = new RecordReference(record, collectedRecords);
+        }
+        return record;
+    }
+
+    /**
+     * @return the timestamp of the record at index, the record isn't materialized
+     */
+    long getTimestamp(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return times[first + index];
+    }
+
+    /**
+     * Returns the value of the column the same as {@link Column#getValue(int, LogRecord)} does for the record at
+     * index, but without creating the record.
+     *
+     * @param lineIndex the index of the line in the log, the value of the {@link Column#INDEX} column is based on it
+     */
+    @Nullable
+    Object getValue(int index, int lineIndex, Column column) {
+        Preconditions.checkElementIndex(index, size);
+        int row = first + index;
+        switch (column) {
+            case INDEX:
+                return lineIndex + 1;
+            case TIME:
+                return times[row] != LogRecord.NO_TIME ? new Date(times[row]) : null;
+            case PID:
+                return pids[row];
+            case TID:
+                return tids[row];
+            case APP_NAME:
+                return getString(appNames[row]);
+            case PRIORITY:
+                return getPriority(row);
+            case TAG:
+                return getString(tags[row]);
+            case MESSAGE:
+                return arena.get(messages[row], messageLengths[row]);
+            default:
+                throw new IllegalArgumentException("Unsupported column " + column);
+        }
+    }
+
+    /**
+     * @return the estimated memory taken by the record at index, in bytes
+     */
+    long getEstimatedBytes(int index) {
+        Preconditions.checkElementIndex(index, size);
+        return estimateRowBytes(first + index);
+    }
+
+    /**
+     * Keeps only the recently added messages in memory, the older ones are moved into the temporary file and are read
+     * back on access. Call {@link #close()} to delete the file.
+     *
+     * @param hotWindowBytes the approximate amount of memory for the recently added messages
+     */
+    void enableSpilling(long hotWindowBytes) {
+        arena.enableSpilling((int) Math.min(Integer.MAX_VALUE, hotWindowBytes / CharArena.PAGE_SIZE / 2));
+    }
+
+    /**
+     * @return the size of the spilled messages on the disk
+     */
+    long getSpilledBytes() {
+        return arena.getSpilledBytes();
+    }
+
+    /**
+     * Deletes the spilled messages. The list cannot be used after closing.
+     */
+    void close() {
+        arena.close();
+    }
+
+    /**
+     * @return the estimated memory taken by all records, in bytes
+     */
+    long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * Copies the columns of the rows, the records aren't created. The snapshot can be read on any thread while this
+     * list changes.
+     *
+     * @param indices the indices of the rows to copy in any order, or {@code null} to copy all rows
+     */
+    Snapshot snapshot(@Nullable int[] indices) {
+        return new Snapshot(indices);
+    }
+
+    @Override
+    public void add(int index, LogRecord record) {
+        Preconditions.checkPositionIndex(index, size);
+        ensureCapacity(size + 1);
+        moveRows(first + index, first + index + 1, size - index);
+        ++size;
+        setRow(first + index, record);
+        ++modCount;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends LogRecord> records) {
+        return addAll(size, records);
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends LogRecord> records) {
+        Preconditions.checkPositionIndex(index, size);
+        int count = records.size();
+        if (count == 0) {
+            return false;
+        }
+        ensureCapacity(size + count);
+        moveRows(first + index, first + index + count, size - index);
+        size += count;
+        int row = first + index;
+        for (LogRecord record : records) {
+            setRow(row++, record);
+        }
+        ++modCount;
+        return true;
+    }
+
+    @Override
+    public LogRecord remove(int index) {
+        LogRecord removed = get(index);
+        removeRange(index, index + 1);
+        return removed;
+    }
+
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        Preconditions.checkPositionIndexes(fromIndex, toIndex, size);
+        for (int row = first + fromIndex; row < first + toIndex; ++row) {
+            releaseRow(row);
+        }
+        int newSize = size - (toIndex - fromIndex);
+        if (fromIndex == 0) {
+            first = newSize > 0 ? first + toIndex : 0;
+        } else {
+            moveRows(first + toIndex, first + fromIndex, size - toIndex);
+            Arrays.fill(cache, first + newSize, first + size, null);
+        }
+        size = newSize;
+        sweepUninternedStrings();
+        ++modCount;
+    }
+
+    /**
+     * Removes the first {@code count} records in O(count).
+     *
+     * @return the removed records that are still referenced from somewhere else, e.g. bookmarks
+     */
+    List<LogRecord> removeFirst(int count) {
+        Preconditions.checkPositionIndex(count, size);
+        List<LogRecord> referenced = new ArrayList<>();
+        for (int row = first; row < first + count; ++row) {
+            LogRecord record = cache[row] != null ? cache[row].get() : null;
+            if (record != null) {
+                referenced.add(record);
+            }
+        }
+        removeRange(0, count);
+        return referenced;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(cache, first, first + size, null);
+        first = 0;
+        size = 0;
+        estimatedBytes = 0;
+        uninternedStrings.clear();
+        uninternedSweepThreshold = MIN_UNINTERNED_TO_SWEEP;
+        arena.clear();
+        ++modCount;
+    }
+
+    /**
+     * Replaces the application name of the recent records which name is {@code placeholder}. Only the last
+     * {@code maxScannedRows} rows are checked. The rows which records are referenced from somewhere else keep their
+     * old instances and names.
+     *
+     * @param namesByPid the new application names
+     * @return the index of the first updated row or {@code -1} if nothing was updated
+     */
+    int replaceAppNames(Map<Integer, String> namesByPid, String placeholder, int maxScannedRows) {
+        int placeholderId = symbols.intern(placeholder);
+        if (placeholderId == SymbolTable.NO_ID) {
+            return -1;
+        }
+        int firstUpdated = -1;
+        for (int index = size - 1; index >= Math.max(0, size - maxScannedRows); --index) {
+            int row = first + index;
+            if (appNames[row] != placeholderId || (cache[row] != null && cache[row].get() != null)) {
+                continue;
+            }
+            String name = namesByPid.get(pids[row]);
+            if (name != null) {
+                appNames[row] = toStringValue(name, symbols.intern(name));
+                cache[row] = null;
+                firstUpdated = index;
+            }
+        }
+        if (firstUpdated >= 0) {
+            ++modCount;
+        }
+        return firstUpdated;
+    }
+
+    /**
+     * Returns the position where {@code record} should be inserted to keep the list sorted. The position is after all
+     * records that are equal to {@code record}.
+     *
+     * @see org.bitbucket.mlopatkin.utils.MyListUtils#getUpperBoundPos(List, Comparable)
+     */
+    int getUpperBoundPos(LogRecord record) {
+        return getUpperBoundPos(record, 0);
+    }
+
+    /**
+     * Merges the sorted {@code records} into this list. Equal records of this list go before the merged ones.
+     *
+     * @return index of the first inserted row
+     * @see org.bitbucket.mlopatkin.utils.MyListUtils#mergeOrdered(List, List)
+     */
+    int mergeOrdered(List<LogRecord> records) {
+        int count = records.size();
+        if (count == 0) {
+            return size;
+        }
+        // Positions are in the coordinates of the current list, non-decreasing because records are sorted.
+        int[] positions = new int[count];
+        int from = 0;
+        for (int i = 0; i < count; ++i) {
+            from = getUpperBoundPos(records.get(i), from);
+            positions[i] = from;
+        }
+        ensureCapacity(size + count);
+        // Fill the gaps from the end so every row is moved only once.
+        int end = size;
+        for (int i = count - 1; i >= 0; --i) {
+            int position = positions[i];
+            moveRows(first + position, first + position + i + 1, end - position);
+            setRow(first + position + i, records.get(i));
+            end = position;
+        }
+        size += count;
+        ++modCount;
+        return positions[0];
+    }
+
+    private int getUpperBoundPos(LogRecord record, int from) {
+        long time = record.getTimestamp();
+        int buffer = ordinal(record.getBuffer());
+        int low = from;
+        int high = size;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            int cmp = Long.compare(times[first + mid], time);
+            if (cmp == 0) {
+                cmp = Integer.compare(buffers[first + mid], buffer);
+            }
+            if (cmp <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private LogRecord materialize(int row) {
+        return LogRecord.createInterned(symbols, times[row], pids[row], tids[row], getString(appNames[row]),
+                                        getSymbolId(appNames[row]), getPriority(row), getString(tags[row]),
+                                        getSymbolId(tags[row]), arena.get(messages[row], messageLengths[row]),
+                                        toBuffer(buffers[row]));
+    }
+
+    @Nullable
+    private Priority getPriority(int row) {
+        return toPriority(priorities[row]);
+    }
+
+    @Nullable
+    private static Priority toPriority(byte value) {
+        return value != NO_VALUE ? Priority.values()[value] : null;
+    }
+
+    @Nullable
+    private static Buffer toBuffer(byte value) {
+        return value != NO_VALUE ? Buffer.values()[value] : null;
+    }
+
+    /**
+     * Converts the string field of the record into the column value.
+     *
+     * @param symbolId the id of the value in the symbol table or {@link SymbolTable#NO_ID}
+     */
+    private int toStringValue(@Nullable String value, int symbolId) {
+        if (value == null) {
+            return NO_VALUE;
+        }
+        if (symbolId != SymbolTable.NO_ID) {
+            return symbolId;
+        }
+        uninternedStrings.add(value);
+        return FIRST_UNINTERNED - (uninternedStrings.size() - 1);
+    }
+
+    /**
+     * @return the number of the stored strings that aren't in the symbol table
+     */
+    int getUninternedStringCount() {
+        return uninternedStrings.size();
+    }
+
+    /**
+     * Drops the uninterned strings that no row refers to, e.g. the ones of the evicted rows. The strings are stored
+     * in the order of insertion, not in the order of rows, so all rows are scanned and renumbered. The threshold is
+     * doubled after the sweep, so the scan is O(1) amortized.
+     */
+    private void sweepUninternedStrings() {
+        if (uninternedStrings.size() < uninternedSweepThreshold) {
+            return;
+        }
+        // Zero is never a valid uninterned value, so it marks the strings that aren't renumbered yet.
+        int[] newValues = new int[uninternedStrings.size()];
+        List<String> liveStrings = new ArrayList<>();
+        for (int row = first; row < first + size; ++row) {
+            tags[row] = renumberUninterned(tags[row], newValues, liveStrings);
+            appNames[row] = renumberUninterned(appNames[row], newValues, liveStrings);
+        }
+        uninternedStrings.clear();
+        uninternedStrings.addAll(liveStrings);
+        uninternedSweepThreshold = Math.max(MIN_UNINTERNED_TO_SWEEP, 2 * liveStrings.size());
+    }
+
+    private int renumberUninterned(int value, int[] newValues, List<String> liveStrings) {
+        if (value > FIRST_UNINTERNED) {
+            return value;
+        }
+        int index = FIRST_UNINTERNED - value;
+        if (newValues[index] == 0) {
+            liveStrings.add(uninternedStrings.get(index));
+            newValues[index] = FIRST_UNINTERNED - (liveStrings.size() - 1);
+        }
+        return newValues[index];
+    }
+
+    @Nullable
+    private String getString(int value) {
+        if (value >= 0) {
+            return symbols.getSymbol(value);
+        }
+        return value != NO_VALUE ? uninternedStrings.get(FIRST_UNINTERNED - value) : null;
+    }
+
+    private static int getSymbolId(int value) {
+        return value >= 0 ? value : SymbolTable.NO_ID;
+    }
+
+    private void setRow(int row, LogRecord record) {
+        times[row] = record.getTimestamp();
+        pids[row] = record.getPid();
+        tids[row] = record.getTid();
+        priorities[row] = (byte) ordinal(record.getPriority());
+        buffers[row] = (byte) ordinal(record.getBuffer());
+        boolean sameSymbols = record.getSymbolTable() == symbols;
+        String tag = record.getTag();
+        tags[row] = toStringValue(tag, sameSymbols || tag == null ? record.getTagId() : symbols.intern(tag));
+        String appName = record.getAppName();
+        appNames[row] = toStringValue(appName, sameSymbols ? record.getAppNameId() : symbols.intern(appName));
+        String message = record.getMessage();
+        if (message != null) {
+            messages[row] = arena.put(message);
+            messageLengths[row] = message.length();
+        } else {
+            messageLengths[row] = NO_VALUE;
+        }
+        // The added instance isn't cached, so the caller's record can be collected right away.
+        cache[row] = null;
+        estimatedBytes += estimateRowBytes(row);
+    }
+
+    private void releaseRow(int row) {
+        estimatedBytes -= estimateRowBytes(row);
+        arena.release(messages[row], messageLengths[row]);
+        cache[row] = null;
+    }
+
+    private long estimateRowBytes(int row) {
+        return ROW_BYTES + 2L * Math.max(0, messageLengths[row]);
+    }
+
+    private void moveRows(int from, int to, int count) {
+        if (count <= 0 || from == to) {
+            return;
+        }
+        System.arraycopy(times, from, times, to, count);
+        System.arraycopy(pids, from, pids, to, count);
+        System.arraycopy(tids, from, tids, to, count);
+        System.arraycopy(priorities, from, priorities, to, count);
+        System.arraycopy(buffers, from, buffers, to, count);
+        System.arraycopy(tags, from, tags, to, count);
+        System.arraycopy(appNames, from, appNames, to, count);
+        System.arraycopy(messages, from, messages, to, count);
+        System.arraycopy(messageLengths, from, messageLengths, to, count);
+        System.arraycopy(cache, from, cache, to, count);
+    }
+
+    /**
+     * Makes room for {@code capacity} rows after the window start. The window is moved to the start of the arrays if
+     * at least half of them is free, so the compaction happens once per the number of rows removed from the head.
+     */
+    private void ensureCapacity(int capacity) {
+        if (first + capacity <= times.length) {
+            return;
+        }
+        if (capacity <= times.length / 2) {
+            moveRows(first, 0, size);
+            Arrays.fill(cache, Math.max(size, first), first + size, null);
+            first = 0;
+            return;
+        }
+        int newCapacity = Math.max(capacity, times.length + (times.length >> 1));
+        int from = first;
+        int to = first + newCapacity;
+        times = Arrays.copyOfRange(times, from, to);
+        pids = Arrays.copyOfRange(pids, from, to);
+        tids = Arrays.copyOfRange(tids, from, to);
+        priorities = Arrays.copyOfRange(priorities, from, to);
+        buffers = Arrays.copyOfRange(buffers, from, to);
+        tags = Arrays.copyOfRange(tags, from, to);
+        appNames = Arrays.copyOfRange(appNames, from, to);
+        messages = Arrays.copyOfRange(messages, from, to);
+        messageLengths = Arrays.copyOfRange(messageLengths, from, to);
+        cache = Arrays.copyOfRange(cache, from, to);
+        first = 0;
+    }
+
+    /**
+     * Drops the cleared references. Rows move on insertion so the reference cannot track its row, the cache is swept
+     * completely when enough references are cleared.
+     */
+    private void cleanUpCache() {
+        while (collectedRecords.poll() != null) {
+            ++collectedCount;
+        }
+        if (collectedCount >= Math.max(MIN_COLLECTED_TO_SWEEP, size / 2)) {
+            for (int i = first; i < first + size; ++i) {
+                if (cache[i] != null && cache[i].get() == null) {
+                    cache[i] = null;
+                }
+            }
+            collectedCount = 0;
+        }
+    }
+
+    private static int ordinal(Enum<?> value) {
+        return value != null ? value.ordinal() : NO_VALUE;
+    }
+
+    /**
+     * Read-only copy of the columns of some rows. Messages aren't copied, the snapshot keeps the arena pages instead.
+     * The records are created on access and aren't cached.
+     * <p>
+     * This class is thread-safe.
+     */
+    final class Snapshot {
+        private final int count;
+        private final long[] snapshotTimes;
+        private final int[] snapshotPids;
+        private final int[] snapshotTids;
+        private final byte[] snapshotPriorities;
+        private final byte[] snapshotBuffers;
+        private final int[] snapshotTags;
+        private final int[] snapshotAppNames;
+        private final long[] snapshotMessages;
+        private final int[] snapshotMessageLengths;
+        private final String[] snapshotUninternedStrings;
+        private final CharArena.Pages pages;
+
+        private Snapshot(@Nullable int[] indices) {
+            count = indices != null ? indices.length : size;
+            snapshotTimes = new long[count];
+            snapshotPids = new int[count];
+            snapshotTids = new int[count];
+            snapshotPriorities = new byte[count];
+            snapshotBuffers = new byte[count];
+            snapshotTags = new int[count];
+            snapshotAppNames = new int[count];
+            snapshotMessages = new long[count];
+            snapshotMessageLengths = new int[count];
+            if (indices == null) {
+                System.arraycopy(times, first, snapshotTimes, 0, count);
+                System.arraycopy(pids, first, snapshotPids, 0, count);
+                System.arraycopy(tids, first, snapshotTids, 0, count);
+                System.arraycopy(priorities, first, snapshotPriorities, 0, count);
+                System.arraycopy(buffers, first, snapshotBuffers, 0, count);
+                System.arraycopy(tags, first, snapshotTags, 0, count);
+                System.arraycopy(appNames, first, snapshotAppNames, 0, count);
+                System.arraycopy(messages, first, snapshotMessages, 0, count);
+                System.arraycopy(messageLengths, first, snapshotMessageLengths, 0, count);
+            } else {
+                for (int i = 0; i < count; ++i) {
+                    int row = first + Preconditions.checkElementIndex(indices[i], size);
+                    snapshotTimes[i] = times[row];
+                    snapshotPids[i] = pids[row];
+                    snapshotTids[i] = tids[row];
+                    snapshotPriorities[i] = priorities[row];
+                    snapshotBuffers[i] = buffers[row];
+                    snapshotTags[i] = tags[row];
+                    snapshotAppNames[i] = appNames[row];
+                    snapshotMessages[i] = messages[row];
+                    snapshotMessageLengths[i] = messageLengths[row];
+                }
+            }
+            snapshotUninternedStrings = uninternedStrings.toArray(new String[0]);
+            pages = arena.snapshot();
+        }
+
+        int size() {
+            return count;
+        }
+
+        /**
+         * @return the new record of the row at index in the snapshot
+         */
+        LogRecord get(int index) {
+            Preconditions.checkElementIndex(index, count);
+            return LogRecord.createInterned(symbols, snapshotTimes[index], snapshotPids[index], snapshotTids[index],
+                                            getSnapshotString(snapshotAppNames[index]),
+                                            getSymbolId(snapshotAppNames[index]),
+                                            toPriority(snapshotPriorities[index]),
+                                            getSnapshotString(snapshotTags[index]), getSymbolId(snapshotTags[index]),
+                                            pages.get(snapshotMessages[index], snapshotMessageLengths[index]),
+                                            toBuffer(snapshotBuffers[index]));
+        }
+
+        @Nullable
+        private String getSnapshotString(int value) {
+            if (value >= 0) {
+                return symbols.getSymbol(value);
+            }
+            return value != NO_VALUE ? snapshotUninternedStrings[FIRST_UNINTERNED - value] : null;
+        }
+    }
+
+    private static class RecordReference extends WeakReference<LogRecord> {
+        RecordReference(LogRecord record, ReferenceQueue<LogRecord> queue) {
+            super(record, queue);
+        }
+    }
+
+    /**
+     * Append-only storage of chars. A string is stored in a single page, the reference to it is the page index in
+     * the upper half and the offset inside the page in the lower half. The page is dropped when all strings stored in
+     * it are released.
+     * <p>
+     * If spilling is enabled, only a few recently filled pages are kept in memory. Older pages are written into the
+     * segment files and are read back on access through the small LRU cache. A new segment file is started when the
+     * current one grows too big, the file is deleted when all pages spilled into it are dropped.
+     */
+    private static class CharArena {
+        private static final int PAGE_SIZE = 1 << 20;
+        private static final int LOADED_PAGES_CACHE_SIZE = 8;
+        // About 16 pages of ASCII text.
+        private static final long MAX_SEGMENT_FILE_SIZE = 16L * PAGE_SIZE;
+        private static final long NOT_SPILLED = -1;
+        private static final String UNAVAILABLE_MESSAGE = "<The message cannot be read from the disk>";
+
+        private final List<char[]> pages = new ArrayList<>();
+        private int[] liveStrings = new int[INITIAL_CAPACITY];
+        private int[] pageLengths = new int[INITIAL_CAPACITY];
+        private long[] spilledOffsets = newSpilledOffsets(INITIAL_CAPACITY);
+        // The file the page is spilled into or null.
+        private SegmentFile[] pageSegments = new SegmentFile[INITIAL_CAPACITY];
+        private char[] currentPage;
+        private int currentPageIndex = -1;
+        private int currentOffset;
+
+        // Filled pages that are still in memory, in the order of filling.
+        private final ArrayDeque<Integer> hotPages = new ArrayDeque<>();
+        private int maxHotPages = Integer.MAX_VALUE;
+        // The file new pages are spilled into.
+        private SegmentFile segments;
+        // The number of the pages that aren't dropped yet in each open segment file.
+        private final Map<SegmentFile, Integer> liveSpilledPages = new HashMap<>();
+        private final Map<Integer, char[]> loadedPages = new LinkedHashMap<Integer, char[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+                return size() > LOADED_PAGES_CACHE_SIZE;
+            }
+        };
+
+        long put(String value) {
+            int length = value.length();
+            if (length > PAGE_SIZE / 4) {
+                // Long strings get their own pages so the current page isn't wasted.
+                int pageIndex = addPage(value.toCharArray());
+                ++liveStrings[pageIndex];
+                onPageFilled(pageIndex, length);
+                return reference(pageIndex, 0);
+            }
+            if (currentPage == null || currentOffset + length > PAGE_SIZE) {
+                if (currentPage != null) {
+                    onPageFilled(currentPageIndex, currentOffset);
+                }
+                currentPage = new char[PAGE_SIZE];
+                currentPageIndex = addPage(currentPage);
+                currentOffset = 0;
+            }
+            value.getChars(0, length, currentPage, currentOffset);
+            long result = reference(currentPageIndex, currentOffset);
+            currentOffset += length;
+            ++liveStrings[currentPageIndex];
+            return result;
+        }
+
+        void release(long reference, int length) {
+            if (length == NO_VALUE) {
+                return;
+            }
+            int pageIndex = (int) (reference >>> 32);
+            if (--liveStrings[pageIndex] == 0 && pageIndex != currentPageIndex) {
+                pages.set(pageIndex, null);
+                loadedPages.remove(pageIndex);
+                SegmentFile pageFile = pageSegments[pageIndex];
+                if (pageFile != null) {
+                    pageSegments[pageIndex] = null;
+                    spilledOffsets[pageIndex] = NOT_SPILLED;
+                    releaseSpilledPage(pageFile);
+                }
+            }
+        }
+
+        String get(long reference, int length) {
+            if (length == NO_VALUE) {
+                return null;
+            }
+            int pageIndex = (int) (reference >>> 32);
+            char[] page = pages.get(pageIndex);
+            if (page == null) {
+                page = loadPage(pageIndex);
+                if (page == null) {
+                    return UNAVAILABLE_MESSAGE;
+                }
+            }
+            return new String(page, (int) reference, length);
+        }
+
+        /**
+         * @return the view of the pages that can be read on any thread. The strings that are stored later aren't
+         *         available in it.
+         */
+        Pages snapshot() {
+            return new Pages(pages.toArray(new char[0][]), Arrays.copyOf(spilledOffsets, pages.size()),
+                             Arrays.copyOf(pageSegments, pages.size()));
+        }
+
+        /**
+         * Keeps at most {@code maxHotPages} filled pages in memory, the rest is spilled into the segment file.
+         */
+        void enableSpilling(int maxHotPages) {
+            Preconditions.checkArgument(maxHotPages >= 0, "Negative number of pages");
+            this.maxHotPages = maxHotPages;
+            spillColdPages();
+        }
+
+        long getSpilledBytes() {
+            long result = 0;
+            for (SegmentFile file : liveSpilledPages.keySet()) {
+                result += file.size();
+            }
+            return result;
+        }
+
+        void clear() {
+            pages.clear();
+            Arrays.fill(liveStrings, 0);
+            Arrays.fill(spilledOffsets, NOT_SPILLED);
+            Arrays.fill(pageSegments, null);
+            hotPages.clear();
+            loadedPages.clear();
+            closeSegments();
+            currentPage = null;
+            currentPageIndex = -1;
+            currentOffset = 0;
+        }
+
+        void close() {
+            closeSegments();
+        }
+
+        private int addPage(char[] page) {
+            pages.add(page);
+            if (pages.size() > liveStrings.length) {
+                int capacity = liveStrings.length * 2;
+                liveStrings = Arrays.copyOf(liveStrings, capacity);
+                pageLengths = Arrays.copyOf(pageLengths, capacity);
+                long[] offsets = newSpilledOffsets(capacity);
+                System.arraycopy(spilledOffsets, 0, offsets, 0, spilledOffsets.length);
+                spilledOffsets = offsets;
+                pageSegments = Arrays.copyOf(pageSegments, capacity);
+            }
+            return pages.size() - 1;
+        }
+
+        private void onPageFilled(int pageIndex, int length) {
+            pageLengths[pageIndex] = length;
+            if (maxHotPages != Integer.MAX_VALUE) {
+                hotPages.add(pageIndex);
+                spillColdPages();
+            }
+        }
+
+        private void spillColdPages() {
+            while (hotPages.size() > maxHotPages) {
+                int pageIndex = hotPages.peek();
+                char[] page = pages.get(pageIndex);
+                if (page != null) {
+                    try {
+                        SegmentFile file = getSegments();
+                        spilledOffsets[pageIndex] = file.append(page, pageLengths[pageIndex]);
+                        pageSegments[pageIndex] = file;
+                        liveSpilledPages.merge(file, 1, Integer::sum);
+                    } catch (IOException e) {
+                        logger.error("Failed to spill the records to the disk, keeping them in memory", e);
+                        maxHotPages = Integer.MAX_VALUE;
+                        hotPages.clear();
+                        return;
+                    }
+                    pages.set(pageIndex, null);
+                }
+                hotPages.poll();
+            }
+        }
+
+        private SegmentFile getSegments() throws IOException {
+            if (segments == null || segments.size() >= MAX_SEGMENT_FILE_SIZE) {
+                // The previous file is deleted when its pages are dropped.
+                segments = SegmentFile.createTemporary();
+                logger.info("Spilling the old records into " + segments);
+            }
+            return segments;
+        }
+
+        private void releaseSpilledPage(SegmentFile file) {
+            int live = liveSpilledPages.get(file) - 1;
+            if (live > 0) {
+                liveSpilledPages.put(file, live);
+                return;
+            }
+            liveSpilledPages.remove(file);
+            if (file == segments) {
+                segments = null;
+            }
+            closeSegments(file);
+        }
+
+        @Nullable
+        private char[] loadPage(int pageIndex) {
+            char[] page = loadedPages.get(pageIndex);
+            if (page != null) {
+                return page;
+            }
+            long offset = spilledOffsets[pageIndex];
+            SegmentFile pageFile = pageSegments[pageIndex];
+            if (offset == NOT_SPILLED || pageFile == null) {
+                return null;
+            }
+            try {
+                page = pageFile.read(offset);
+            } catch (IOException e) {
+                logger.error("Failed to read the spilled records", e);
+                return null;
+            }
+            loadedPages.put(pageIndex, page);
+            return page;
+        }
+
+        private void closeSegments() {
+            if (segments != null && !liveSpilledPages.containsKey(segments)) {
+                closeSegments(segments);
+            }
+            segments = null;
+            for (SegmentFile file : liveSpilledPages.keySet()) {
+                closeSegments(file);
+            }
+            liveSpilledPages.clear();
+        }
+
+        private static void closeSegments(SegmentFile file) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                logger.error("Failed to delete " + file, e);
+            }
+        }
+
+        private static long[] newSpilledOffsets(int capacity) {
+            long[] result = new long[capacity];
+            Arrays.fill(result, NOT_SPILLED);
+            return result;
+        }
+
+        private static long reference(int page, int offset) {
+            return ((long) page << 32) | offset;
+        }
+
+        /**
+         * Read-only view of the pages of the arena. The pages that are filled never change, so these are shared with
+         * the arena. The spilled pages are read back through the own small cache.
+         * <p>
+         * This class is thread-safe.
+         */
+        static final class Pages {
+            private final char[][] pages;
+            private final long[] spilledOffsets;
+            private final SegmentFile[] pageSegments;
+            // Guarded by itself.
+            private final Map<Integer, char[]> loadedPages = new LinkedHashMap<Integer, char[]>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Integer, char[]> eldest) {
+                    return size() > LOADED_PAGES_CACHE_SIZE;
+                }
+            };
+
+            Pages(char[][] pages, long[] spilledOffsets, SegmentFile[] pageSegments) {
+                this.pages = pages;
+                this.spilledOffsets = spilledOffsets;
+                this.pageSegments = pageSegments;
+            }
+
+            @Nullable
+            String get(long reference, int length) {
+                if (length == NO_VALUE) {
+                    return null;
+                }
+                int pageIndex = (int) (reference >>> 32);
+                char[] page = pages[pageIndex];
+                if (page == null) {
+                    page = loadPage(pageIndex);
+                    if (page == null) {
+                        return UNAVAILABLE_MESSAGE;
+                    }
+                }
+                return new String(page, (int) reference, length);
+            }
+
+            @Nullable
+            private char[] loadPage(int pageIndex) {
+                long offset = spilledOffsets[pageIndex];
+                SegmentFile pageFile = pageSegments[pageIndex];
+                if (offset == NOT_SPILLED || pageFile == null) {
+                    return null;
+                }
+                synchronized (loadedPages) {
+                    char[] page = loadedPages.get(pageIndex);
+                    if (page != null) {
+                        return page;
+                    }
+                    try {
+                        page = pageFile.read(offset);
+                    } catch (IOException e) {
+                        // The file is deleted if the list is cleared or the page is dropped meanwhile.
+                        logger.debug("Failed to read the spilled records", e);
+                        return null;
+                    }
+                    loadedPages.put(pageIndex, page);
+                    return page;
+                }
+            }
+        }
+    }
+}
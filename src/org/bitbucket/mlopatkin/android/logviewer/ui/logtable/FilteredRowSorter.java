@@ -0,0 +1,544 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogModelFilter.VisibilityChange;
+import org.bitbucket.mlopatkin.utils.PositionBitmap;
+
+import java.awt.EventQueue;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+import javax.swing.RowSorter;
+
+/**
+ * Row sorter that only filters the rows of the {@link LogRecordTableModel}, the order of the rows is never changed.
+ * The model indices of the shown rows are kept in the ascending array that is updated incrementally: the inserted and
+ * updated rows are tested once, and the filter change re-tests only the rows it can affect. The rows are tested on the
+ * EDT through the {@link RowStateCache}, so it must be invalidated before the filter change is passed to the sorter.
+ * <p>
+ * If the filter change affects many rows then these are tested on the background threads. The table keeps showing
+ * the old rows until the result is ready, then it is swapped in at once. The newer filter change cancels the
+ * evaluation in progress. The model may change during the evaluation, the rows affected by such changes are re-tested
+ * when the result is applied.
+ */
+class FilteredRowSorter extends RowSorter<LogRecordTableModel> {
+    private static final int INITIAL_CAPACITY = 1024;
+    // The base is reset before the stored indices can overflow.
+    private static final int MAX_BASE = Integer.MAX_VALUE / 2;
+    // Smaller evaluations are done right on the EDT, the hand-off would take longer.
+    private static final int DEFAULT_BACKGROUND_THRESHOLD = 50000;
+    private static final int MIN_CHUNK_SIZE = 4096;
+    private static final int CANCELLATION_CHECK_INTERVAL = 1024;
+
+    private static final int WORKER_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final Executor SHARED_EXECUTOR = Executors.newFixedThreadPool(
+            WORKER_COUNT, new ThreadFactoryBuilder().setNameFormat("FilterWorker-%d").setDaemon(true).build());
+
+    private final LogRecordTableModel model;
+    private final LogModelFilter filter;
+    private final RowStateCache rowStates;
+    private final Executor executor;
+    private final int backgroundThreshold;
+
+    // The shown rows are rows[start, end). The model index of the row is rows[i] - base, so removing the oldest model
+    // rows doesn't touch the rest of the array.
+    private int[] rows = new int[INITIAL_CAPACITY];
+    private int start;
+    private int end;
+    private int base;
+
+    @Nullable
+    private Evaluation pendingEvaluation;
+
+    FilteredRowSorter(LogRecordTableModel model, LogModelFilter filter, RowStateCache rowStates) {
+        this(model, filter, rowStates, SHARED_EXECUTOR, DEFAULT_BACKGROUND_THRESHOLD);
+    }
+
+    FilteredRowSorter(LogRecordTableModel model, LogModelFilter filter, RowStateCache rowStates, Executor executor,
+            int backgroundThreshold) {
+        this.model = model;
+        this.filter = filter;
+        this.rowStates = rowStates;
+        this.executor = executor;
+        this.backgroundThreshold = backgroundThreshold;
+        evaluate(VisibilityChange.ANY);
+    }
+
+    @Override
+    public LogRecordTableModel getModel() {
+        return model;
+    }
+
+    @Override
+    public void toggleSortOrder(int column) {
+    }
+
+    @Override
+    public int convertRowIndexToModel(int index) {
+        if (index < 0 || index >= getViewRowCount()) {
+            throw new IndexOutOfBoundsException("Invalid view index " + index);
+        }
+        return rows[start + index] - base;
+    }
+
+    @Override
+    public int convertRowIndexToView(int index) {
+        if (index < 0 || index >= getModelRowCount()) {
+            throw new IndexOutOfBoundsException("Invalid model index " + index);
+        }
+        int pos = Arrays.binarySearch(rows, start, end, index + base);
+        return pos >= 0 ? pos - start : -1;
+    }
+
+    @Override
+    public void setSortKeys(List<? extends SortKey> keys) {
+    }
+
+    @Override
+    public List<? extends SortKey> getSortKeys() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public int getViewRowCount() {
+        return end - start;
+    }
+
+    @Override
+    public int getModelRowCount() {
+        return model.getRowCount();
+    }
+
+    @Override
+    public void modelStructureChanged() {
+        allRowsChanged();
+    }
+
+    @Override
+    public void allRowsChanged() {
+        cancelPendingEvaluation();
+        // The old rows are meaningless now, the new ones appear once they are tested.
+        start = 0;
+        end = 0;
+        base = 0;
+        evaluate(VisibilityChange.ANY);
+        fireRowSorterChanged(null);
+    }
+
+    @Override
+    public void rowsInserted(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        if (pendingEvaluation != null) {
+            pendingEvaluation.onRowsChanged(firstRow);
+        }
+        int pos = lowerBound(firstRow);
+        for (int i = pos; i < end; ++i) {
+            rows[i] += count;
+        }
+        if (filter.getRowMask() == null) {
+            replaceRange(pos, pos, firstRow, endRow);
+        }
+        fireRowSorterChanged(null);
+    }
+
+    @Override
+    public void rowsDeleted(int firstRow, int endRow) {
+        int count = endRow - firstRow + 1;
+        int from = lowerBound(firstRow);
+        int to = lowerBound(endRow + 1);
+        if (pendingEvaluation != null) {
+            if (firstRow == 0) {
+                pendingEvaluation.onOldestRowsRemoved(count);
+            } else {
+                pendingEvaluation.onRowsChanged(firstRow);
+            }
+        }
+        if (from == start) {
+            // The oldest rows are removed, e.g. evicted.
+            start = to;
+            base += count;
+            if (start == end || base > MAX_BASE) {
+                normalize();
+            }
+        } else {
+            System.arraycopy(rows, to, rows, from, end - to);
+            end -= to - from;
+            for (int i = from; i < end; ++i) {
+                rows[i] -= count;
+            }
+        }
+        fireRowSorterChanged(null);
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow) {
+        if (pendingEvaluation != null) {
+            pendingEvaluation.onRowsChanged(firstRow);
+        }
+        replaceRange(lowerBound(firstRow), lowerBound(endRow + 1), firstRow, endRow);
+        fireRowSorterChanged(null);
+    }
+
+    @Override
+    public void rowsUpdated(int firstRow, int endRow, int column) {
+        rowsUpdated(firstRow, endRow);
+    }
+
+    /**
+     * Re-evaluates the filter for the rows that the change can affect.
+     */
+    public void onFilterChanged(VisibilityChange change) {
+        if (change == VisibilityChange.NONE) {
+            return;
+        }
+        if (pendingEvaluation != null) {
+            // The shown rows are still the ones before the pending change.
+            change = combine(pendingEvaluation.change, change);
+            cancelPendingEvaluation();
+        }
+        int[] oldViewToModel = getViewToModel();
+        if (evaluate(change)) {
+            fireRowSorterChanged(oldViewToModel);
+        }
+    }
+
+    /**
+     * @return {@code true} if the filter evaluation is running in background
+     */
+    public boolean isEvaluating() {
+        return pendingEvaluation != null;
+    }
+
+    private static VisibilityChange combine(VisibilityChange first, VisibilityChange second) {
+        return first == second ? first : VisibilityChange.ANY;
+    }
+
+    /**
+     * Tests the rows the change can affect. The small number of rows is tested right away, the rest is tested in
+     * background.
+     *
+     * @return {@code true} if the shown rows have been updated, {@code false} if the evaluation has been started
+     */
+    private boolean evaluate(VisibilityChange change) {
+        Evaluation evaluation = new Evaluation(change, filter.createShowPredicate());
+        if (evaluation.candidateCount < backgroundThreshold) {
+            evaluation.testRange(0, evaluation.candidateCount);
+            evaluation.apply();
+            return true;
+        }
+        pendingEvaluation = evaluation;
+        evaluation.start();
+        return false;
+    }
+
+    private void cancelPendingEvaluation() {
+        if (pendingEvaluation != null) {
+            pendingEvaluation.cancelled = true;
+            pendingEvaluation = null;
+        }
+    }
+
+    private void onEvaluationFinished(Evaluation evaluation) {
+        assert EventQueue.isDispatchThread();
+        if (evaluation != pendingEvaluation) {
+            // Cancelled.
+            return;
+        }
+        pendingEvaluation = null;
+        int[] oldViewToModel = getViewToModel();
+        evaluation.apply();
+        fireRowSorterChanged(oldViewToModel);
+    }
+
+    /**
+     * Replaces the shown rows in rows[from, to) with the ones of the model rows [firstRow, endRow].
+     */
+    private void replaceRange(int from, int to, int firstRow, int endRow) {
+        int[] shown = new int[endRow - firstRow + 1];
+        int shownCount = 0;
+        for (int i = firstRow; i <= endRow; ++i) {
+            if (shouldShow(i)) {
+                shown[shownCount++] = i + base;
+            }
+        }
+        int delta = shownCount - (to - from);
+        int oldStart = start;
+        ensureCapacity(delta);
+        int pos = from - oldStart + start;
+        int tail = to - oldStart + start;
+        System.arraycopy(rows, tail, rows, tail + delta, end - tail);
+        System.arraycopy(shown, 0, rows, pos, shownCount);
+        end += delta;
+    }
+
+    private boolean shouldShow(int modelRow) {
+        PositionBitmap rowMask = filter.getRowMask();
+        if (rowMask != null && !rowMask.get(modelRow)) {
+            return false;
+        }
+        return rowStates.isVisible(modelRow);
+    }
+
+    /**
+     * Makes room for the additional rows at the end of the array. The positions of the shown rows may change.
+     */
+    private void ensureCapacity(int additional) {
+        if (end + additional <= rows.length) {
+            return;
+        }
+        int size = end - start;
+        if (size + additional > rows.length / 2) {
+            rows = Arrays.copyOfRange(rows, start, start + Math.max(rows.length * 2, size + additional));
+        } else {
+            System.arraycopy(rows, start, rows, 0, size);
+        }
+        end = size;
+        start = 0;
+    }
+
+    private void normalize() {
+        for (int i = start; i < end; ++i) {
+            rows[i] -= base;
+        }
+        base = 0;
+    }
+
+    /**
+     * @return the position of the first shown row with the model index not less than the given one
+     */
+    private int lowerBound(int modelRow) {
+        int pos = Arrays.binarySearch(rows, start, end, modelRow + base);
+        return pos >= 0 ? pos : -pos - 1;
+    }
+
+    private int[] getViewToModel() {
+        int[] result = new int[end - start];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = rows[start + i] - base;
+        }
+        return result;
+    }
+
+    /**
+     * Tests the rows that the change can affect: the shown ones if the filter is narrowed, the hidden ones if it is
+     * widened, or all rows. Only the rows of the filter's row mask are tested if it has one. The columns of the rows
+     * are copied on the EDT and the records are created on the thread that tests them.
+     */
+    private final class Evaluation {
+        final VisibilityChange change;
+        final Predicate<LogRecord> predicate;
+        @Nullable
+        final PositionBitmap rowMask;
+        // The model indices of the tested rows in ascending order, null if all rows are tested.
+        @Nullable
+        final int[] candidates;
+        final int candidateCount;
+        // All rows if the model doesn't modify their list, otherwise the records of the candidates are copied.
+        @Nullable
+        final List<LogRecord> modelRecords;
+        @Nullable
+        final ColumnarRecordList.Snapshot candidateRecords;
+        final long[] results;
+        final AtomicInteger remainingChunks = new AtomicInteger();
+        volatile boolean cancelled;
+
+        // Tracking of the model changes during the evaluation, accessed on EDT only. Row indices are the ones at the
+        // start of the evaluation.
+        final int rowCount;
+        int removedOldestRows;
+        // The rows at and after this index are re-tested when the result is applied.
+        int firstChangedRow;
+
+        Evaluation(VisibilityChange change, Predicate<LogRecord> predicate) {
+            this.change = change;
+            this.predicate = predicate;
+            PositionBitmap currentRowMask = filter.getRowMask();
+            this.rowMask = currentRowMask != null ? currentRowMask.copy() : null;
+            this.rowCount = model.getRowCount();
+            this.firstChangedRow = rowCount;
+            switch (change) {
+                case NARROWED:
+                    // The shown rows that have left the mask are hidden by the test.
+                    candidates = getViewToModel();
+                    break;
+                case WIDENED:
+                    candidates = getHiddenRows();
+                    break;
+                default:
+                    candidates = rowMask != null ? getMaskedRows(false) : null;
+                    break;
+            }
+            candidateCount = candidates != null ? candidates.length : rowCount;
+            results = new long[(candidateCount + Long.SIZE - 1) / Long.SIZE];
+            modelRecords = model.getReadOnlyRecords();
+            if (modelRecords == null && candidateCount >= backgroundThreshold) {
+                candidateRecords = model.snapshotRecords(candidates);
+            } else {
+                candidateRecords = null;
+            }
+        }
+
+        private int[] getHiddenRows() {
+            if (rowMask != null) {
+                return getMaskedRows(true);
+            }
+            int[] hidden = new int[rowCount - (end - start)];
+            int count = 0;
+            int pos = start;
+            for (int row = 0; row < rowCount; ++row) {
+                if (pos < end && rows[pos] - base == row) {
+                    ++pos;
+                } else {
+                    hidden[count++] = row;
+                }
+            }
+            return hidden;
+        }
+
+        /**
+         * Iterates over the set bits of the mask instead of scanning all rows.
+         */
+        private int[] getMaskedRows(boolean hiddenOnly) {
+            assert rowMask != null;
+            int[] result = new int[rowMask.cardinality()];
+            int count = 0;
+            for (int row = rowMask.nextSetBit(0); row >= 0 && row < rowCount; row = rowMask.nextSetBit(row + 1)) {
+                if (!hiddenOnly || Arrays.binarySearch(rows, start, end, row + base) < 0) {
+                    result[count++] = row;
+                }
+            }
+            return Arrays.copyOf(result, count);
+        }
+
+        private int getCandidateRow(int index) {
+            return candidates != null ? candidates[index] : index;
+        }
+
+        private LogRecord getCandidateRecord(int index) {
+            if (candidateRecords != null) {
+                return candidateRecords.get(index);
+            }
+            if (modelRecords != null) {
+                return modelRecords.get(getCandidateRow(index));
+            }
+            return model.getRowData(getCandidateRow(index));
+        }
+
+        /**
+         * Splits the candidates into chunks and tests them on the executor.
+         */
+        void start() {
+            int chunkSize = Math.max(MIN_CHUNK_SIZE, candidateCount / (WORKER_COUNT * 4));
+            // Chunks don't share the words of the result bitmap.
+            chunkSize = (chunkSize + Long.SIZE - 1) / Long.SIZE * Long.SIZE;
+            int chunkCount = (candidateCount + chunkSize - 1) / chunkSize;
+            remainingChunks.set(chunkCount);
+            for (int chunk = 0; chunk < chunkCount; ++chunk) {
+                int from = chunk * chunkSize;
+                int to = Math.min(candidateCount, from + chunkSize);
+                executor.execute(() -> {
+                    testRange(from, to);
+                    if (remainingChunks.decrementAndGet() == 0 && !cancelled) {
+                        EventQueue.invokeLater(() -> onEvaluationFinished(this));
+                    }
+                });
+            }
+        }
+
+        void testRange(int from, int to) {
+            for (int i = from; i < to; ++i) {
+                if ((i - from) % CANCELLATION_CHECK_INTERVAL == 0 && cancelled) {
+                    return;
+                }
+                boolean inMask = rowMask == null || rowMask.get(getCandidateRow(i));
+                if (inMask && predicate.apply(getCandidateRecord(i))) {
+                    results[i / Long.SIZE] |= 1L << i;
+                }
+            }
+        }
+
+        private boolean isShown(int candidateIndex) {
+            return (results[candidateIndex / Long.SIZE] & (1L << candidateIndex)) != 0;
+        }
+
+        void onOldestRowsRemoved(int count) {
+            removedOldestRows += count;
+        }
+
+        void onRowsChanged(int firstRow) {
+            firstChangedRow = Math.min(firstChangedRow, firstRow + removedOldestRows);
+        }
+
+        /**
+         * Replaces the shown rows with the result. The rows that were changed or added during the evaluation are
+         * re-tested or taken from the current shown rows.
+         */
+        void apply() {
+            int[] newRows = new int[Math.max(INITIAL_CAPACITY, end - start + candidateCount)];
+            int newEnd = 0;
+            // The rows that aren't candidates keep their state: shown if the filter is widened, hidden otherwise.
+            boolean keepShown = change == VisibilityChange.WIDENED;
+            int candidate = 0;
+            int lastTested = Math.min(firstChangedRow, rowCount);
+            for (int row = 0; row < lastTested; ++row) {
+                boolean shown;
+                if (candidate < candidateCount && getCandidateRow(candidate) == row) {
+                    shown = isShown(candidate++);
+                } else {
+                    shown = keepShown;
+                }
+                if (shown && row >= removedOldestRows) {
+                    newRows[newEnd++] = row - removedOldestRows;
+                }
+            }
+            int firstCurrentRow = Math.max(0, lastTested - removedOldestRows);
+            int currentRowCount = model.getRowCount();
+            if (firstChangedRow < rowCount) {
+                for (int row = firstCurrentRow; row < currentRowCount; ++row) {
+                    if (shouldShow(row)) {
+                        newRows = appendTo(newRows, newEnd++, row);
+                    }
+                }
+            } else {
+                // Only the new rows were added, these were tested on arrival.
+                for (int pos = lowerBound(firstCurrentRow); pos < end; ++pos) {
+                    newRows = appendTo(newRows, newEnd++, rows[pos] - base);
+                }
+            }
+            rows = newRows;
+            start = 0;
+            end = newEnd;
+            base = 0;
+        }
+
+        private int[] appendTo(int[] array, int pos, int value) {
+            int[] result = pos < array.length ? array : Arrays.copyOf(array, array.length * 2);
+            result[pos] = value;
+            return result;
+        }
+    }
+}
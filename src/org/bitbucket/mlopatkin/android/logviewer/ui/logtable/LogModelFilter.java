@@ -16,7 +16,10 @@
 
 package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
 
+import com.google.common.base.Predicate;
+
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.utils.PositionBitmap;
 import org.bitbucket.mlopatkin.utils.events.Observable;
 
 import java.awt.Color;
@@ -28,12 +31,48 @@ import javax.annotation.Nullable;
  */
 public interface LogModelFilter {
 
+    /**
+     * Describes how the set of the shown records may have changed, so the tables re-test only the affected rows.
+     */
+    enum VisibilityChange {
+        /** Only the appearance of the records, e.g. highlighting, has changed. */
+        NONE,
+        /** Some shown records may become hidden, but no hidden record can become shown. */
+        NARROWED,
+        /** Some hidden records may become shown, but no shown record can become hidden. */
+        WIDENED,
+        /** Any record may become shown or hidden. */
+        ANY
+    }
+
     interface Observer {
-        void onModelChange();
+        void onModelChange(VisibilityChange change);
     }
 
     boolean shouldShowRecord(LogRecord record);
 
+    /**
+     * Returns the predicate that is equivalent to {@link #shouldShowRecord(LogRecord)} with the current state of the
+     * filter. The predicate doesn't change when the filter changes and can be applied on any thread.
+     *
+     * @return the immutable snapshot of the filter
+     */
+    Predicate<LogRecord> createShowPredicate();
+
+    /**
+     * Returns the rows of the {@link LogRecordTableModel} the filter is limited to, e.g. the bookmarked ones. The rows
+     * outside of the mask are hidden and the records of the rows in the mask are tested with
+     * {@link #shouldShowRecord(LogRecord)}. The table only visits the rows of the mask then.
+     * <p>
+     * The rows inserted into the model are never in the mask. The filter notifies its observers when the rows join it.
+     *
+     * @return the mask of the model rows or {@code null} if the filter isn't limited to some rows
+     */
+    @Nullable
+    default PositionBitmap getRowMask() {
+        return null;
+    }
+
     @Nullable
     Color getHighlightColor(LogRecord record);
 
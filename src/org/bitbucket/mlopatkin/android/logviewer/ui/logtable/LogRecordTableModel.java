@@ -17,15 +17,18 @@ package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
 
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
 import org.bitbucket.mlopatkin.android.logviewer.BatchRecordsReceiver;
 import org.bitbucket.mlopatkin.android.logviewer.ui.mainframe.MainFrameScoped;
-import org.bitbucket.mlopatkin.utils.MyListUtils;
+import org.bitbucket.mlopatkin.utils.events.Observable;
+import org.bitbucket.mlopatkin.utils.events.Subject;
 
 import java.awt.EventQueue;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
+import javax.annotation.Nullable;
 import javax.inject.Inject;
 import javax.swing.table.AbstractTableModel;
 
@@ -33,11 +36,38 @@ import javax.swing.table.AbstractTableModel;
 public class LogRecordTableModel extends AbstractTableModel implements
         BatchRecordsReceiver<LogRecord> {
 
+    // The processes are resolved within seconds, so only the tail of the log is checked for the unknown ones.
+    private static final int MAX_BACKFILLED_ROWS = 100000;
+
+    /**
+     * Receives the notifications about the records evicted by the {@link RetentionPolicy}.
+     */
+    public interface EvictionObserver {
+        /**
+         * Called after the oldest rows are removed from the model. The rows are removed with the usual table model
+         * event, so the tables update their selection.
+         *
+         * @param referencedRecords the evicted records that are still referenced, e.g. bookmarked ones
+         */
+        void onRecordsEvicted(List<LogRecord> referencedRecords);
+    }
+
     private List<LogRecord> records;
+    // The list passed to setRecords belongs to the data source, so it is copied into the compact store before the
+    // first modification. Null until then.
+    private ColumnarRecordList ownRecords;
+    private RetentionPolicy retentionPolicy = RetentionPolicy.unlimited();
+    // Zero if the spilling to the disk is disabled.
+    private long spillHotWindowBytes;
+    private SymbolTable symbols = new SymbolTable();
+    // The number of rows evicted since the last clear, keeps the line numbers stable.
+    private int evictedCount;
+    private final Subject<EvictionObserver> evictionObservers = new Subject<>();
 
     @Inject
     public LogRecordTableModel() {
-        this.records = new ArrayList<>();
+        this.ownRecords = createOwnRecords();
+        this.records = ownRecords;
     }
 
     @Override
@@ -52,8 +82,12 @@ public class LogRecordTableModel extends AbstractTableModel implements
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        LogRecord record = records.get(rowIndex);
-        return Column.getByColumnIndex(columnIndex).getValue(rowIndex, record);
+        Column column = Column.getByColumnIndex(columnIndex);
+        if (ownRecords != null) {
+            // Painting doesn't create records.
+            return ownRecords.getValue(rowIndex, getLineIndex(rowIndex), column);
+        }
+        return column.getValue(getLineIndex(rowIndex), records.get(rowIndex));
     }
 
     @Override
@@ -71,19 +105,113 @@ public class LogRecordTableModel extends AbstractTableModel implements
     @Override
     public void addRecord(LogRecord record) {
         assert EventQueue.isDispatchThread();
-        int pos = MyListUtils.getUpperBoundPos(records, record);
-        records.add(pos, record);
+        ColumnarRecordList ownRecords = ensureOwnsRecords();
+        int pos = ownRecords.getUpperBoundPos(record);
+        ownRecords.add(pos, record);
         fireTableRowsInserted(pos, pos);
+        evictExcessRecords();
     }
 
     public LogRecord getRowData(int row) {
         return records.get(row);
     }
 
+    /**
+     * @return the timestamp of the record of the row, the rows are sorted by it
+     */
+    public long getRowTimestamp(int row) {
+        return ownRecords != null ? ownRecords.getTimestamp(row) : records.get(row).getTimestamp();
+    }
+
+    /**
+     * Returns the rows if the model doesn't modify their list, e.g. the list passed to {@link #setRecords(List)}. The
+     * list can be read on any thread until the model changes.
+     *
+     * @return the list of all rows or {@code null} if the model modifies the list itself
+     */
+    @Nullable
+    List<LogRecord> getReadOnlyRecords() {
+        return ownRecords == null ? records : null;
+    }
+
+    /**
+     * Copies the rows that the model modifies itself, see {@link #getReadOnlyRecords()}. The records aren't created,
+     * the snapshot creates them on access and can be read on any thread.
+     *
+     * @param rows the model indices of the rows, or {@code null} to copy all rows
+     */
+    ColumnarRecordList.Snapshot snapshotRecords(@Nullable int[] rows) {
+        assert ownRecords != null;
+        return ownRecords.snapshot(rows);
+    }
+
+    /**
+     * Converts the model index of the row into the index of the line in the log. These are different when the oldest
+     * rows are evicted.
+     */
+    public int getLineIndex(int row) {
+        return evictedCount + row;
+    }
+
+    /**
+     * Sets the limits of the retained records. The excess records are evicted immediately.
+     */
+    public void setRetentionPolicy(RetentionPolicy retentionPolicy) {
+        assert EventQueue.isDispatchThread();
+        this.retentionPolicy = retentionPolicy;
+        if (ownRecords != null) {
+            evictExcessRecords();
+        }
+    }
+
+    /**
+     * Enables moving the messages of the old records into the temporary file. The records stay in the model and are
+     * read back on access. The change takes effect after the next {@link #clear()}.
+     *
+     * @param hotWindowBytes the approximate amount of memory for the recent messages, 0 disables the spilling
+     */
+    public void setSpillHotWindow(long hotWindowBytes) {
+        assert EventQueue.isDispatchThread();
+        this.spillHotWindowBytes = hotWindowBytes;
+    }
+
+    /**
+     * Sets the symbol table of the data source. The records of this table are stored without looking their tags and
+     * application names up again. The change takes effect after the next {@link #clear()}.
+     */
+    public void setSymbolTable(SymbolTable symbols) {
+        assert EventQueue.isDispatchThread();
+        this.symbols = symbols;
+    }
+
+    /**
+     * Sets the application names of the recent records which process was unknown when they arrived.
+     *
+     * @param namesByPid the resolved application names
+     * @param placeholder the application name of the records with the unknown process
+     */
+    public void backfillAppNames(Map<Integer, String> namesByPid, String placeholder) {
+        assert EventQueue.isDispatchThread();
+        if (ownRecords == null) {
+            return;
+        }
+        int firstUpdated = ownRecords.replaceAppNames(namesByPid, placeholder, MAX_BACKFILLED_ROWS);
+        if (firstUpdated >= 0) {
+            fireTableRowsUpdated(firstUpdated, ownRecords.size() - 1);
+        }
+    }
+
+    public Observable<EvictionObserver> asEvictionObservable() {
+        return evictionObservers.asObservable();
+    }
+
     public void clear() {
         assert EventQueue.isDispatchThread();
         int lastRow = records.size() - 1;
-        records.clear();
+        closeOwnRecords();
+        ownRecords = createOwnRecords();
+        records = ownRecords;
+        evictedCount = 0;
         if (lastRow >= 0) {
             fireTableRowsDeleted(0, lastRow);
         }
@@ -104,24 +232,88 @@ public class LogRecordTableModel extends AbstractTableModel implements
     }
 
     @Override
-    public void setRecords(List<LogRecord> copy) {
+    public void setRecords(List<LogRecord> newRecords) {
         assert EventQueue.isDispatchThread();
-        records = copy;
+        closeOwnRecords();
+        records = newRecords;
+        ownRecords = null;
+        evictedCount = 0;
         fireTableDataChanged();
     }
 
     @Override
     public void addRecords(List<LogRecord> newRecords) {
         assert EventQueue.isDispatchThread();
-        int oldSize = records.size();
-        int firstAffected = MyListUtils.mergeOrdered(records, newRecords);
+        ColumnarRecordList ownRecords = ensureOwnsRecords();
+        int oldSize = ownRecords.size();
+        int firstAffected = ownRecords.mergeOrdered(newRecords);
         if (firstAffected < records.size()) {
             // we need to do two fireXXX because JTable machinery is very
             // sensitive to the number of inserted rows
             // however to get all rows displayed properly we update all possibly
-            // affected rows
+            // affected rows. The inserted rows aren't updated, so the row sorter
+            // doesn't filter them twice.
             fireTableRowsInserted(oldSize, records.size() - 1);
-            fireTableRowsUpdated(firstAffected, records.size() - 1);
+            if (firstAffected < oldSize) {
+                fireTableRowsUpdated(firstAffected, oldSize - 1);
+            }
+        }
+        evictExcessRecords();
+    }
+
+    @Override
+    public void appendRecords(List<LogRecord> newRecords) {
+        assert EventQueue.isDispatchThread();
+        if (newRecords.isEmpty()) {
+            return;
+        }
+        ColumnarRecordList ownRecords = ensureOwnsRecords();
+        int oldSize = ownRecords.size();
+        ownRecords.addAll(newRecords);
+        fireTableRowsInserted(oldSize, ownRecords.size() - 1);
+        evictExcessRecords();
+    }
+
+    /**
+     * Removes the oldest rows that exceed the retention policy. This is done after the insertion, so the auto-scroll
+     * sees the insertion first.
+     */
+    private void evictExcessRecords() {
+        if (retentionPolicy.isUnlimited()) {
+            return;
+        }
+        int count = retentionPolicy.getRecordsToEvict(ownRecords);
+        if (count == 0) {
+            return;
+        }
+        List<LogRecord> referencedRecords = ownRecords.removeFirst(count);
+        evictedCount += count;
+        fireTableRowsDeleted(0, count - 1);
+        for (EvictionObserver observer : evictionObservers) {
+            observer.onRecordsEvicted(referencedRecords);
+        }
+    }
+
+    private ColumnarRecordList ensureOwnsRecords() {
+        if (ownRecords == null) {
+            ownRecords = createOwnRecords();
+            ownRecords.addAll(records);
+            records = ownRecords;
+        }
+        return ownRecords;
+    }
+
+    private ColumnarRecordList createOwnRecords() {
+        ColumnarRecordList result = new ColumnarRecordList(symbols);
+        if (spillHotWindowBytes > 0) {
+            result.enableSpilling(spillHotWindowBytes);
+        }
+        return result;
+    }
+
+    private void closeOwnRecords() {
+        if (ownRecords != null) {
+            ownRecords.close();
         }
     }
 }
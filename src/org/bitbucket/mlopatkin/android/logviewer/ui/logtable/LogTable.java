@@ -18,41 +18,31 @@ package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
 
 import org.bitbucket.mlopatkin.android.logviewer.PriorityColoredCellRenderer;
 import org.bitbucket.mlopatkin.android.logviewer.widgets.DecoratingRendererTable;
-import org.bitbucket.mlopatkin.android.logviewer.widgets.SortingDisableSorter;
-
-import javax.swing.RowFilter;
 
 /**
  * The ultimate log displaying table.
  */
 public class LogTable extends DecoratingRendererTable implements LogModelFilter.Observer {
 
-    private final LogModelFilter filterModel;
-    private final SortingDisableSorter<LogRecordTableModel> sorter;
+    private final FilteredRowSorter sorter;
+    private final RowStateCache rowStates;
 
     private LogTable(LogRecordTableModel dataModel, LogModelFilter filterModel) {
-        this.filterModel = filterModel;
-
-        addDecorator(new PriorityColoredCellRenderer());
-        addDecorator(new RowHighlightRenderer(filterModel));
-
         setModel(dataModel);
-        sorter = new SortingDisableSorter<>(dataModel);
-
-        RowFilter<LogRecordTableModel, Integer> rowFilter = new RowFilter<LogRecordTableModel, Integer>() {
-            @Override
-            public boolean include(Entry<? extends LogRecordTableModel, ? extends Integer> entry) {
-                return LogTable.this.filterModel.shouldShowRecord(entry.getModel().getRowData(entry.getIdentifier()));
-            }
-        };
+        // The model notifies the listeners in the reverse order, so the cache registered after the table follows the
+        // model changes before the sorter reads it.
+        rowStates = new RowStateCache(dataModel, filterModel);
+        addDecorator(new PriorityColoredCellRenderer());
+        addDecorator(new RowHighlightRenderer(rowStates));
 
-        sorter.setRowFilter(rowFilter);
+        sorter = new FilteredRowSorter(dataModel, filterModel, rowStates);
         setRowSorter(sorter);
     }
 
     @Override
-    public void onModelChange() {
-        sorter.sort();
+    public void onModelChange(LogModelFilter.VisibilityChange change) {
+        rowStates.invalidateHighlights();
+        sorter.onFilterChanged(change);
         repaint();
         // if the filtering state has changed and row is selected - scroll to selected row to avoid "get lost" syndrome
         if (getSelectedRow() != -1) {
@@ -60,6 +50,13 @@ public class LogTable extends DecoratingRendererTable implements LogModelFilter.
         }
     }
 
+    /**
+     * @return the cached states of the rows of this table
+     */
+    public RowStateCache getRowStates() {
+        return rowStates;
+    }
+
     public static LogTable create(LogRecordTableModel dataModel, LogModelFilter filterModel) {
         LogTable logTable = new LogTable(dataModel, filterModel);
         filterModel.asObservable().addObserver(logTable);
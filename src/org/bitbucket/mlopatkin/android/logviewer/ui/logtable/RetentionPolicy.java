@@ -0,0 +1,89 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Preconditions;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+
+/**
+ * Limits the number of records kept by {@link LogRecordTableModel}. The oldest records are evicted when any of the
+ * limits is exceeded. Zero limit means no limit.
+ */
+public final class RetentionPolicy {
+    private static final RetentionPolicy UNLIMITED = new RetentionPolicy(0, 0, 0);
+
+    private final int maxRecords;
+    private final long maxBytes;
+    private final long maxAgeMs;
+
+    /**
+     * @param maxRecords the maximal number of records
+     * @param maxBytes the maximal estimated size of records in memory
+     * @param maxAgeMs the maximal distance between the timestamps of the oldest and the newest record
+     */
+    public RetentionPolicy(int maxRecords, long maxBytes, long maxAgeMs) {
+        Preconditions.checkArgument(maxRecords >= 0, "Negative max records");
+        Preconditions.checkArgument(maxBytes >= 0, "Negative max bytes");
+        Preconditions.checkArgument(maxAgeMs >= 0, "Negative max age");
+        this.maxRecords = maxRecords;
+        this.maxBytes = maxBytes;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    public static RetentionPolicy unlimited() {
+        return UNLIMITED;
+    }
+
+    public boolean isUnlimited() {
+        return maxRecords == 0 && maxBytes == 0 && maxAgeMs == 0;
+    }
+
+    /**
+     * Computes the number of the oldest records to evict. The records are only inspected while they are evicted, so
+     * the cost is proportional to the result.
+     */
+    int getRecordsToEvict(ColumnarRecordList records) {
+        int size = records.size();
+        int count = 0;
+        if (maxRecords > 0) {
+            count = Math.max(0, size - maxRecords);
+        }
+        if (maxBytes > 0) {
+            long bytes = records.getEstimatedBytes();
+            for (int i = 0; i < count; ++i) {
+                bytes -= records.getEstimatedBytes(i);
+            }
+            while (count < size && bytes > maxBytes) {
+                bytes -= records.getEstimatedBytes(count++);
+            }
+        }
+        // The records without time are at the head, they are evicted only if there are timed records.
+        if (maxAgeMs > 0 && count < size && records.getTimestamp(size - 1) != LogRecord.NO_TIME) {
+            long oldestAllowed = records.getTimestamp(size - 1) - maxAgeMs;
+            while (count < size && records.getTimestamp(count) < oldestAllowed) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return "RetentionPolicy{maxRecords=" + maxRecords + ", maxBytes=" + maxBytes + ", maxAgeMs=" + maxAgeMs + "}";
+    }
+}
@@ -15,7 +15,6 @@
  */
 package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
 
-import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.logviewer.config.Configuration;
 import org.bitbucket.mlopatkin.android.logviewer.widgets.DecoratingCellRenderer;
 
@@ -29,10 +28,10 @@ class RowHighlightRenderer implements DecoratingCellRenderer {
 
     private TableCellRenderer inner;
     private Color backgroundColor = Configuration.ui.backgroundColor();
-    private LogModelFilter colorer;
+    private final RowStateCache rowStates;
 
-    public RowHighlightRenderer(LogModelFilter colorer) {
-        this.colorer = colorer;
+    public RowHighlightRenderer(RowStateCache rowStates) {
+        this.rowStates = rowStates;
     }
 
     @Override
@@ -46,10 +45,7 @@ class RowHighlightRenderer implements DecoratingCellRenderer {
         Component result = inner.getTableCellRendererComponent(table, value, isSelected, hasFocus,
                 row, column);
         if (!isSelected) {
-            LogRecordTableModel tableModel = (LogRecordTableModel) table.getModel();
-            int modelRow = table.convertRowIndexToModel(row);
-            LogRecord record = tableModel.getRowData(modelRow);
-            Color targetColor = colorer.getHighlightColor(record);
+            Color targetColor = rowStates.getHighlightColor(table.convertRowIndexToModel(row));
             if (targetColor != null) {
                 result.setBackground(targetColor);
             } else {
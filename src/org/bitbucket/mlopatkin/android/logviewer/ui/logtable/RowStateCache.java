@@ -0,0 +1,279 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+import javax.annotation.Nullable;
+import javax.swing.event.TableModelEvent;
+
+/**
+ * Per-row cache of the things the table asks about each row: whether the filter shows it, the highlight color of the
+ * filter and the mark, e.g. the bookmark. The table paints each row once per column, so the filter is asked once per
+ * row instead. The state of the row is packed into a long of the array indexed by the model row. The color is stored
+ * as the index in the palette of the colors seen since the last filter change.
+ * <p>
+ * The state is stamped with the generations of the filter and of the marks it was computed for. A filter change or
+ * {@link #invalidateMarks()} only bumps the generation, the entries of the older generations are ignored on read. The
+ * entries follow the rows when the model inserts or removes rows, the entries of the changed rows are dropped. Must
+ * be used on EDT only.
+ */
+public final class RowStateCache {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // The palette index + 1 of the color, 0 for no color.
+    private static final long COLOR_MASK = 0xFFFF;
+    private static final long COLOR_KNOWN = 1L << 16;
+    private static final long VISIBLE_KNOWN = 1L << 17;
+    private static final long VISIBLE = 1L << 18;
+    private static final long MARK_KNOWN = 1L << 19;
+    private static final long MARKED = 1L << 20;
+
+    private static final int GENERATION_BITS = 21;
+    private static final int MAX_GENERATION = (1 << GENERATION_BITS) - 1;
+    private static final int MARK_GENERATION_SHIFT = 22;
+    private static final int FILTER_GENERATION_SHIFT = MARK_GENERATION_SHIFT + GENERATION_BITS;
+    private static final long MARK_BITS = MARK_KNOWN | MARKED | ((long) MAX_GENERATION << MARK_GENERATION_SHIFT);
+    private static final long FILTER_BITS =
+            COLOR_MASK | COLOR_KNOWN | VISIBLE_KNOWN | VISIBLE | ((long) MAX_GENERATION << FILTER_GENERATION_SHIFT);
+
+    private final LogRecordTableModel model;
+    private final LogModelFilter filter;
+    private IntPredicate marker = row -> false;
+
+    // The state of the model row i is states[start + i], zero if nothing is known.
+    private long[] states = new long[INITIAL_CAPACITY];
+    private int start;
+    // Zero is never used, so the empty entries are always stale.
+    private int filterGeneration = 1;
+    private int markGeneration = 1;
+
+    private final List<Color> palette = new ArrayList<>();
+    private final Map<Color, Integer> paletteIndices = new HashMap<>();
+
+    /**
+     * Creates the cache of the rows of the model. The cache listens to the model, so the tables that use the cache
+     * must be registered as the listeners of the model before it, then the cache is updated first.
+     */
+    RowStateCache(LogRecordTableModel model, LogModelFilter filter) {
+        this.model = model;
+        this.filter = filter;
+        model.addTableModelListener(this::onTableChanged);
+    }
+
+    /**
+     * @return {@code true} if the filter shows the record of the row, the row mask of the filter isn't checked
+     */
+    public boolean isVisible(int modelRow) {
+        long state = getState(modelRow);
+        if ((state & VISIBLE_KNOWN) == 0) {
+            state |= VISIBLE_KNOWN | (filter.shouldShowRecord(model.getRowData(modelRow)) ? VISIBLE : 0);
+            setState(modelRow, state);
+        }
+        return (state & VISIBLE) != 0;
+    }
+
+    /**
+     * @return the highlight color of the filter for the row or {@code null} if the row isn't highlighted
+     */
+    @Nullable
+    public Color getHighlightColor(int modelRow) {
+        long state = getState(modelRow);
+        if ((state & COLOR_KNOWN) == 0) {
+            Color color = filter.getHighlightColor(model.getRowData(modelRow));
+            int colorIndex = getPaletteIndex(color);
+            if (colorIndex > COLOR_MASK) {
+                // Too many colors to cache.
+                return color;
+            }
+            state |= COLOR_KNOWN | colorIndex;
+            setState(modelRow, state);
+        }
+        int colorIndex = (int) (state & COLOR_MASK);
+        return colorIndex != 0 ? palette.get(colorIndex - 1) : null;
+    }
+
+    /**
+     * @return {@code true} if the row is marked with the marker
+     */
+    public boolean isMarked(int modelRow) {
+        long state = getState(modelRow);
+        if ((state & MARK_KNOWN) == 0) {
+            state |= MARK_KNOWN | (marker.test(modelRow) ? MARKED : 0);
+            setState(modelRow, state);
+        }
+        return (state & MARKED) != 0;
+    }
+
+    /**
+     * Sets the predicate on the model row that defines the marked rows, e.g. the bookmarked ones.
+     */
+    public void setMarker(IntPredicate marker) {
+        this.marker = marker;
+        invalidateMarks();
+    }
+
+    /**
+     * Drops the cached marks, e.g. when the set of the bookmarks changes.
+     */
+    public void invalidateMarks() {
+        assert EventQueue.isDispatchThread();
+        if (markGeneration == MAX_GENERATION) {
+            resetGenerations();
+        } else {
+            ++markGeneration;
+        }
+    }
+
+    /**
+     * Drops the cached visibility and highlight colors, called when the filter changes.
+     */
+    void invalidateHighlights() {
+        assert EventQueue.isDispatchThread();
+        if (filterGeneration == MAX_GENERATION) {
+            resetGenerations();
+        } else {
+            ++filterGeneration;
+        }
+        palette.clear();
+        paletteIndices.clear();
+    }
+
+    private void resetGenerations() {
+        Arrays.fill(states, 0);
+        filterGeneration = 1;
+        markGeneration = 1;
+    }
+
+    private void onTableChanged(TableModelEvent e) {
+        int firstRow = e.getFirstRow();
+        int lastRow = e.getLastRow();
+        if (firstRow == TableModelEvent.HEADER_ROW || lastRow == Integer.MAX_VALUE) {
+            start = 0;
+            invalidateMarks();
+            invalidateHighlights();
+            return;
+        }
+        int count = lastRow - firstRow + 1;
+        switch (e.getType()) {
+            case TableModelEvent.INSERT:
+                insertRows(firstRow, count);
+                break;
+            case TableModelEvent.DELETE:
+                if (firstRow == 0) {
+                    // The oldest rows are evicted.
+                    int evicted = Math.min(count, states.length - start);
+                    Arrays.fill(states, start, start + evicted, 0);
+                    start += evicted;
+                } else {
+                    removeRows(firstRow, count);
+                }
+                break;
+            default:
+                clear(firstRow, lastRow + 1);
+                break;
+        }
+    }
+
+    private int getPaletteIndex(@Nullable Color color) {
+        if (color == null) {
+            return 0;
+        }
+        Integer index = paletteIndices.get(color);
+        if (index == null) {
+            palette.add(color);
+            index = palette.size();
+            paletteIndices.put(color, index);
+        }
+        return index;
+    }
+
+    /**
+     * @return the state of the row with the parts of the older generations dropped
+     */
+    private long getState(int modelRow) {
+        int pos = start + modelRow;
+        long state = pos < states.length ? states[pos] : 0;
+        if ((int) (state >>> FILTER_GENERATION_SHIFT) != filterGeneration) {
+            state = (state & ~FILTER_BITS) | ((long) filterGeneration << FILTER_GENERATION_SHIFT);
+        }
+        if (((int) (state >>> MARK_GENERATION_SHIFT) & MAX_GENERATION) != markGeneration) {
+            state = (state & ~MARK_BITS) | ((long) markGeneration << MARK_GENERATION_SHIFT);
+        }
+        return state;
+    }
+
+    private void setState(int modelRow, long state) {
+        if (start + modelRow >= states.length) {
+            ensureCapacity(modelRow + 1);
+        }
+        states[start + modelRow] = state;
+    }
+
+    private void ensureCapacity(int rowCount) {
+        int size = states.length - start;
+        if (rowCount <= states.length / 2) {
+            // Most of the array is taken by the evicted rows.
+            System.arraycopy(states, start, states, 0, size);
+            Arrays.fill(states, size, states.length, 0);
+        } else {
+            long[] newStates = new long[Math.max(rowCount, states.length * 2)];
+            System.arraycopy(states, start, newStates, 0, size);
+            states = newStates;
+        }
+        start = 0;
+    }
+
+    private void insertRows(int firstRow, int count) {
+        if (start + firstRow >= states.length) {
+            // Entries of the appended rows are already empty.
+            return;
+        }
+        if (start + model.getRowCount() > states.length) {
+            ensureCapacity(model.getRowCount());
+        }
+        int pos = start + firstRow;
+        int moved = Math.max(0, states.length - pos - count);
+        System.arraycopy(states, pos, states, pos + count, moved);
+        Arrays.fill(states, pos, Math.min(states.length, pos + count), 0);
+    }
+
+    private void removeRows(int firstRow, int count) {
+        int pos = start + firstRow;
+        if (pos >= states.length) {
+            return;
+        }
+        int tail = Math.max(0, states.length - pos - count);
+        System.arraycopy(states, pos + count, states, pos, tail);
+        Arrays.fill(states, pos + tail, states.length, 0);
+    }
+
+    private void clear(int fromRow, int toRow) {
+        int from = Math.min(states.length, start + fromRow);
+        int to = Math.min(states.length, start + toRow);
+        if (from < to) {
+            Arrays.fill(states, from, to, 0);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Preconditions;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only temporary file of char segments. Segments are stored in UTF-8, which takes half of the memory for the
+ * typical ASCII logs. Segments that cannot be encoded, e.g. with unpaired surrogates, are stored as is. The file is
+ * deleted when closed.
+ * <p>
+ * This class isn't thread-safe, but the appended segments can be read on any thread while the segments are appended.
+ */
+class SegmentFile implements Closeable {
+    private static final byte ENCODING_UTF_8 = 0;
+    private static final byte ENCODING_UTF_16 = 1;
+    // Encoding, char length and byte length.
+    private static final int HEADER_SIZE = 1 + 4 + 4;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPORT)
+            .onUnmappableCharacter(CodingErrorAction.REPORT);
+    private volatile long size;
+
+    private SegmentFile(Path path) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                                        StandardOpenOption.DELETE_ON_CLOSE);
+    }
+
+    /**
+     * Creates the segment file in the temporary directory.
+     */
+    static SegmentFile createTemporary() throws IOException {
+        Path path = Files.createTempFile("logview-", ".segments");
+        // In case the application is killed before the file is closed.
+        path.toFile().deleteOnExit();
+        return new SegmentFile(path);
+    }
+
+    /**
+     * Appends the first {@code length} chars of the array.
+     *
+     * @return the offset of the segment to pass to {@link #read(long)}
+     */
+    long append(char[] chars, int length) throws IOException {
+        Preconditions.checkPositionIndex(length, chars.length);
+        ByteBuffer payload;
+        byte encoding;
+        try {
+            encoder.reset();
+            payload = encoder.encode(CharBuffer.wrap(chars, 0, length));
+            encoding = ENCODING_UTF_8;
+        } catch (CharacterCodingException e) {
+            payload = ByteBuffer.allocate(length * 2).order(ByteOrder.LITTLE_ENDIAN);
+            payload.asCharBuffer().put(chars, 0, length);
+            encoding = ENCODING_UTF_16;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(encoding).putInt(length).putInt(payload.remaining());
+        header.flip();
+        long offset = size;
+        writeFully(header, offset);
+        writeFully(payload, offset + HEADER_SIZE);
+        size = offset + HEADER_SIZE + payload.limit();
+        return offset;
+    }
+
+    /**
+     * Reads the segment that was appended at the offset.
+     */
+    char[] read(long offset) throws IOException {
+        Preconditions.checkArgument(offset >= 0 && offset < size, "Invalid offset %s", offset);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(header, offset);
+        byte encoding = header.get();
+        int charLength = header.getInt();
+        int byteLength = header.getInt();
+        ByteBuffer payload = ByteBuffer.allocate(byteLength).order(ByteOrder.LITTLE_ENDIAN);
+        readFully(payload, offset + HEADER_SIZE);
+        char[] result = new char[charLength];
+        if (encoding == ENCODING_UTF_8) {
+            StandardCharsets.UTF_8.decode(payload).get(result);
+        } else {
+            payload.asCharBuffer().get(result);
+        }
+        return result;
+    }
+
+    /**
+     * @return the size of the file in bytes
+     */
+    long size() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            current += channel.write(buffer, current);
+        }
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        long current = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, current);
+            if (read < 0) {
+                throw new IOException("Unexpected end of the segment file " + path);
+            }
+            current += read;
+        }
+        buffer.flip();
+    }
+}
@@ -16,10 +16,10 @@
 
 package org.bitbucket.mlopatkin.android.logviewer.ui.mainframe;
 
-import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.logviewer.bookmarks.BookmarkModel;
 import org.bitbucket.mlopatkin.android.logviewer.config.Configuration;
-import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableModel;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogTable;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.RowStateCache;
 import org.bitbucket.mlopatkin.android.logviewer.widgets.DecoratingCellRenderer;
 
 import java.awt.Color;
@@ -31,16 +31,37 @@ import javax.swing.table.TableCellRenderer;
 
 public class BookmarkHighlighter implements DecoratingCellRenderer {
 
-    private final LogRecordTableModel model;
     private final BookmarkModel bookmarkModel;
     private TableCellRenderer renderer;
+    private RowStateCache rowStates;
+
+    private final BookmarkModel.Observer bookmarkObserver = new BookmarkModel.Observer() {
+        @Override
+        public void onBookmarkAdded() {
+            rowStates.invalidateMarks();
+        }
+
+        @Override
+        public void onBookmarkRemoved() {
+            rowStates.invalidateMarks();
+        }
+    };
 
     @Inject
-    public BookmarkHighlighter(LogRecordTableModel model, BookmarkModel bookmarkModel) {
-        this.model = model;
+    public BookmarkHighlighter(BookmarkModel bookmarkModel) {
         this.bookmarkModel = bookmarkModel;
     }
 
+    /**
+     * Adds this highlighter to the table. The bookmarks are cached as the marks of the table rows.
+     */
+    public void install(LogTable table) {
+        rowStates = table.getRowStates();
+        rowStates.setMarker(bookmarkModel::containsRow);
+        bookmarkModel.asObservable().addObserver(bookmarkObserver);
+        table.addDecorator(this);
+    }
+
     @Override
     public void setInnerRenderer(TableCellRenderer renderer) {
         this.renderer = renderer;
@@ -55,8 +76,7 @@ public class BookmarkHighlighter implements DecoratingCellRenderer {
                                                    int column) {
         Component innerRenderer =
                 renderer.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
-        LogRecord record = model.getRowData(table.convertRowIndexToModel(row));
-        if (bookmarkModel.containsRecord(record)) {
+        if (rowStates.isMarked(table.convertRowIndexToModel(row))) {
             highlight(innerRenderer, isSelected);
         }
         return innerRenderer;
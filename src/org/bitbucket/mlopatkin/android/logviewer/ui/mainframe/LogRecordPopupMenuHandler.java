@@ -15,7 +15,6 @@
  */
 package org.bitbucket.mlopatkin.android.logviewer.ui.mainframe;
 
-import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
 import org.bitbucket.mlopatkin.android.logviewer.bookmarks.BookmarkModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogTable;
@@ -37,7 +36,7 @@ public class LogRecordPopupMenuHandler implements ItemsUpdater {
         @Override
         public void actionPerformed(ActionEvent e) {
             for (int rowIndex : getSelectedRows()) {
-                bookmarkModel.addRecord(getRecord(rowIndex));
+                bookmarkModel.addRow(table.convertRowIndexToModel(rowIndex));
             }
         }
     };
@@ -46,7 +45,7 @@ public class LogRecordPopupMenuHandler implements ItemsUpdater {
         @Override
         public void actionPerformed(ActionEvent e) {
             for (int rowIndex : getSelectedRows()) {
-                bookmarkModel.removeRecord(getRecord(rowIndex));
+                bookmarkModel.removeRow(table.convertRowIndexToModel(rowIndex));
             }
         }
     };
@@ -110,7 +109,7 @@ public class LogRecordPopupMenuHandler implements ItemsUpdater {
 
     private void adjustAddRemoveVisibilty() {
         assert table.getSelectedRowCount() == 1;
-        boolean marked = bookmarkModel.containsRecord(getRecord(getSelectedRow()));
+        boolean marked = bookmarkModel.containsRow(table.convertRowIndexToModel(getSelectedRow()));
         toggleAddRemoveState(!marked);
     }
 
@@ -119,10 +118,6 @@ public class LogRecordPopupMenuHandler implements ItemsUpdater {
         itemRemoveBookmarks.setVisible(!canAdd);
     }
 
-    private LogRecord getRecord(int tableRowIndex) {
-        return model.getRowData(table.convertRowIndexToModel(tableRowIndex));
-    }
-
     @MainFrameScoped
     public static class Factory {
 
@@ -61,7 +61,7 @@ public class MainFrameModule {
                              LogModelFilter filter,
                              BookmarkHighlighter bookmarkHighlighter) {
         LogTable logTable = LogTable.create(model, filter);
-        logTable.addDecorator(bookmarkHighlighter);
+        bookmarkHighlighter.install(logTable);
         return logTable;
     }
 }
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.Resources;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Checks that the hand-written tokenizer of {@link LogRecordParser} produces the same records as the original regex
+ * based parser.
+ */
+@RunWith(Parameterized.class)
+public class LogRecordParserDifferentialTest {
+
+    private interface Parser {
+        LogRecord parse(Buffer buffer, String line, Map<Integer, String> pidToProcess);
+    }
+
+    private static final String[] FIXTURES = {
+            "file/galaxy_nexus_jbmr2_brief.log",
+            "file/galaxy_nexus_jbmr2_time.log",
+            "file/galaxy_nexus_jbmr2_threadtime.log",
+            "file/galaxy_nexus_jbmr2.minimized.dump",
+            "file/huawei_p10_log_snippet.log"
+    };
+
+    private static final String[] TRICKY_LINES = {
+            "",
+            "08-18 13:40:59.546   417  1172 D : empty tag",
+            "08-18 13:40:59.546   417  1172 D Tag : : colon in message",
+            "08-18 13:40:59.546   417  1172 D Tag:with:colons: message",
+            "08-18 13:40:59.546   417  1172 D Tag \t: tab before colon",
+            "08-18 13:40:59.546   417  1172 D Tag:",
+            "08-18 13:40:59.546   417  1172 D Tag: ",
+            "08-18 13:40:59.5461   417  1172 D Tag: odd fraction",
+            "08-18 13:40:59.546123   417  1172 D Tag: microseconds",
+            "08-18 13:40:59.546123456   417  1172 D Tag: nanoseconds",
+            "08-18 13:40:59.546   417  1172 X Tag: wrong priority",
+            "08-18 13:40:59.546   417  1172 d Tag: lowercase priority",
+            "08-18 13:40:59.546   417 D Tag: no tid",
+            "08-18 13:40:59.546   99999999999  1172 D Tag: pid overflow",
+            "08-18 13:40:59.546   417  1172 D Tag: line\u2028separator",
+            "08-18 13:40:59.546   417  1172 D Tag: next\u0085line",
+            "08-18 13:40:59.546   417  1172 D Tag \r: carriage return before colon",
+            "08-18 13:40:59.546   417  1172 D Tag: \r: carriage return in message",
+            "8-18 13:40:59.546   417  1172 D Tag: short month",
+            "08-18 13:40:59.546 D/Tag(417): time",
+            "08-18 13:40:59.546 D/Tag (  417): time padded",
+            "08-18 13:40:59.546 D/Tag(with)(brackets)(417): time",
+            "08-18 13:40:59.546 D/Tag(417):no space",
+            "08-18 13:40:59.546 D/(417): empty tag",
+            "D/Tag(417): brief",
+            "D/Tag(  417): brief (with) brackets",
+            "D/Tag(x)( 417 ): brief bad bracket",
+            "D/Tag(1)(2): brief two pids",
+            "D/Tag: tag format",
+            "D/Tag:: tag format double colon",
+            "D/: tag format empty tag",
+            "D(  417) process  (Tag)",
+            "D(  417) process  (Tag)  (Tag2)",
+            "D(  417)   (Tag)",
+            "D(  417) process  (Tag) ",
+            "D(  417) process (Tag)",
+            "D(  417) process  ()",
+            "D(417)  (a)",
+            "--------- beginning of /dev/log/system",
+    };
+
+    private final boolean presentInFixtures;
+    private final Parser expected;
+    private final Parser actual;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {
+                        "threadtime", true,
+                        (Parser) RegexLogRecordParser::parseThreadTime,
+                        (Parser) LogRecordParser::parseThreadTime
+                },
+                {
+                        "brief", true,
+                        (Parser) RegexLogRecordParser::parseBrief,
+                        (Parser) LogRecordParser::parseBrief
+                },
+                {
+                        "time", true,
+                        (Parser) RegexLogRecordParser::parseTime,
+                        (Parser) LogRecordParser::parseTime
+                },
+                {
+                        "process", false,
+                        (Parser) RegexLogRecordParser::parseProcess,
+                        (Parser) LogRecordParser::parseProcess
+                },
+                {
+                        "tag", true,
+                        (Parser) (buffer, line, pidToProcess) -> RegexLogRecordParser.parseTag(buffer, line),
+                        (Parser) (buffer, line, pidToProcess) -> LogRecordParser.parseTag(buffer, line)
+                },
+        });
+    }
+
+    @SuppressWarnings("unused")
+    public LogRecordParserDifferentialTest(String format, boolean presentInFixtures, Parser expected, Parser actual) {
+        this.presentInFixtures = presentInFixtures;
+        this.expected = expected;
+        this.actual = actual;
+    }
+
+    @Test
+    public void fixturesAreParsedIdentically() throws Exception {
+        int matchedLines = 0;
+        for (String line : readFixtures()) {
+            if (checkLine(line)) {
+                ++matchedLines;
+            }
+        }
+        assertEquals(presentInFixtures, matchedLines > 0);
+    }
+
+    @Test
+    public void trickyLinesAreParsedIdentically() {
+        for (String line : TRICKY_LINES) {
+            checkLine(line);
+        }
+    }
+
+    private boolean checkLine(String line) {
+        Map<Integer, String> pidToProcess = ImmutableMap.of(417, "media", 380, "system_server");
+        LogRecord expectedRecord = parseOrNull(expected, line, pidToProcess);
+        LogRecord actualRecord = parseOrNull(actual, line, pidToProcess);
+        if (expectedRecord == null) {
+            assertNull(line, actualRecord);
+            return false;
+        }
+        assertSameRecord(line, expectedRecord, actualRecord);
+        return true;
+    }
+
+    private static LogRecord parseOrNull(Parser parser, String line, Map<Integer, String> pidToProcess) {
+        try {
+            return parser.parse(Buffer.MAIN, line, pidToProcess);
+        } catch (NumberFormatException e) {
+            // The regex parser throws on pid overflow, the tokenizer rejects such lines.
+            return null;
+        }
+    }
+
+    private static void assertSameRecord(String line, LogRecord expected, LogRecord actual) {
+        assertEquals(line, expected.getTime(), actual.getTime());
+        assertEquals(line, expected.getPid(), actual.getPid());
+        assertEquals(line, expected.getTid(), actual.getTid());
+        assertEquals(line, expected.getAppName(), actual.getAppName());
+        assertEquals(line, expected.getPriority(), actual.getPriority());
+        assertEquals(line, expected.getTag(), actual.getTag());
+        assertEquals(line, expected.getMessage(), actual.getMessage());
+        assertEquals(line, expected.getBuffer(), actual.getBuffer());
+    }
+
+    private static List<String> readFixtures() throws IOException {
+        List<String> lines = new ArrayList<>();
+        for (String fixture : FIXTURES) {
+            lines.addAll(Resources.readLines(Resources.getResource(LogRecordParserDifferentialTest.class, fixture),
+                                             StandardCharsets.UTF_8));
+        }
+        return lines;
+    }
+}
@@ -188,6 +188,15 @@ public class LogRecordParserTest {
         assertFalse(LogRecordParser.isLogBeginningLine(THREADTIME_RECORD));
     }
 
+    @Test
+    public void testGetBufferNameFromMarker() {
+        assertEquals("system", LogRecordParser.getBufferNameFromMarker(LOG_BEGINNING_LINE));
+        assertEquals("main", LogRecordParser.getBufferNameFromMarker("--------- beginning of main"));
+        assertEquals("crash", LogRecordParser.getBufferNameFromMarker("--------- switch to crash\r"));
+        assertNull(LogRecordParser.getBufferNameFromMarker(BLANK_LINE));
+        assertNull(LogRecordParser.getBufferNameFromMarker(THREADTIME_RECORD));
+    }
+
     @Test
     public void testTimeLogWithMicrosecondsTimestamp() {
         LogRecord record = LogRecordParser.parseTime(BUFFER, TIME_RECORD_WITH_MCS, Collections.emptyMap());
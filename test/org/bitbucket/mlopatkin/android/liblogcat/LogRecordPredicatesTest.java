@@ -54,6 +54,39 @@ public class LogRecordPredicatesTest {
         assertFalse(predicate.apply(FAIL_TAG));
     }
 
+    @Test
+    public void testMatchTag_evaluatesMatcherOncePerTag() throws Exception {
+        final int[] calls = new int[1];
+        FluentPredicate<LogRecord> predicate = LogRecordPredicates.matchTag(new Predicate<String>() {
+            @Override
+            public boolean apply(String input) {
+                ++calls[0];
+                return OK_STRING.equals(input);
+            }
+        });
+
+        for (int i = 0; i < 10; ++i) {
+            assertTrue(predicate.apply(LogRecordUtils.forTag(OK_STRING)));
+            assertFalse(predicate.apply(LogRecordUtils.forTag(FAIL_STRING)));
+        }
+        Assert.assertEquals(2, calls[0]);
+    }
+
+    @Test
+    public void testMatchTag_recordsOfNewSymbolTableAreMatched() throws Exception {
+        FluentPredicate<LogRecord> predicate = LogRecordPredicates.matchTag(strMatcher);
+        assertTrue(predicate.apply(OK_TAG));
+
+        // The ids of the new table start from scratch, so the old results must not be reused.
+        SymbolTable symbols = new SymbolTable();
+        LogRecord failTag = LogRecordUtils.forTag(symbols, FAIL_STRING);
+        LogRecord okTag = LogRecordUtils.forTag(symbols, OK_STRING);
+
+        assertFalse(predicate.apply(failTag));
+        assertTrue(predicate.apply(okTag));
+        assertTrue(predicate.apply(OK_TAG));
+    }
+
     @Test(expected = NullPointerException.class)
     public void testMatchTag_NPE() throws Exception {
         assertNpe(LogRecordPredicates.matchTag(strMatcher));
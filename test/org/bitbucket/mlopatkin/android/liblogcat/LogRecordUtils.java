@@ -23,9 +23,10 @@ import static org.bitbucket.mlopatkin.android.liblogcat.LogRecord.NO_ID;
 import static org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
 
 /**
- * Some factory methods to construct log records for tests.
+ * Some factory methods to construct log records for tests. The records are interned in the common table of the tests.
  */
 public final class LogRecordUtils {
+    private static final SymbolTable SYMBOLS = new SymbolTable();
 
     private LogRecordUtils() {
     }
@@ -35,11 +36,17 @@ public final class LogRecordUtils {
     }
 
     public static LogRecord forAppName(String appName) {
-        return new LogRecord(new Date(), NO_ID, NO_ID, appName, Priority.INFO, "", "");
+        return new LogRecord(SYMBOLS, System.currentTimeMillis(), NO_ID, NO_ID, appName, Priority.INFO, "", "",
+                             Buffer.UNKNOWN);
     }
 
     public static LogRecord forTag(String tag) {
-        return new LogRecord(new Date(), NO_ID, NO_ID, "", Priority.INFO, tag, "");
+        return forTag(SYMBOLS, tag);
+    }
+
+    public static LogRecord forTag(SymbolTable symbols, String tag) {
+        return new LogRecord(symbols, System.currentTimeMillis(), NO_ID, NO_ID, "", Priority.INFO, tag, "",
+                             Buffer.UNKNOWN);
     }
 
     public static LogRecord forMessage(String message) {
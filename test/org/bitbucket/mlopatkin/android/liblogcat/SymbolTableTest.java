@@ -0,0 +1,149 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+
+public class SymbolTableTest {
+    @Test
+    public void sameStringGetsSameId() {
+        SymbolTable table = new SymbolTable(100);
+
+        int id = table.intern("ActivityManager");
+
+        assertEquals(id, table.intern(new String("ActivityManager")));
+        assertNotEquals(id, table.intern("WindowManager"));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void canonicalInstanceIsReturned() {
+        SymbolTable table = new SymbolTable(100);
+        String first = new String("tag");
+
+        assertSame(first, table.canonicalize(first));
+        assertSame(first, table.canonicalize(new String("tag")));
+        assertSame(first, table.getSymbol(table.intern("tag")));
+    }
+
+    @Test
+    public void rangeIsInterned() {
+        SymbolTable table = new SymbolTable(100);
+        int id = table.intern("dalvikvm");
+
+        assertEquals(id, table.intern("I/dalvikvm( 123): message", 2, 10));
+        assertEquals("vm", table.getSymbol(table.intern("I/dalvikvm( 123): message", 8, 10)));
+        assertEquals("", table.getSymbol(table.intern("abc", 1, 1)));
+    }
+
+    @Test
+    public void prefixOfSymbolIsDifferentSymbol() {
+        SymbolTable table = new SymbolTable(100);
+        String tag = "tagtag";
+        int id = table.intern(tag);
+
+        assertNotEquals(id, table.intern(tag, 0, 3));
+        assertEquals("tag", table.getSymbol(table.intern(tag, 3, 6)));
+    }
+
+    @Test
+    public void stringsAreNotInternedWhenTableIsFull() {
+        SymbolTable table = new SymbolTable(2);
+        table.intern("a");
+        table.intern("b");
+        String c = new String("c");
+
+        assertEquals(SymbolTable.NO_ID, table.intern("c"));
+        assertSame(c, table.canonicalize(c));
+        assertEquals(1, table.intern("b"));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void trimmedStringIsInterned() {
+        SymbolTable table = new SymbolTable(100);
+        int id = table.intern("system_server");
+
+        assertEquals(id, table.internTrimmed("  system_server\t"));
+        assertEquals(id, table.internTrimmed("  system_server\t"));
+        assertEquals(id, table.internTrimmed("system_server"));
+        assertEquals("", table.getSymbol(table.internTrimmed("   ")));
+    }
+
+    @Test
+    public void trimmedStringIsNotInternedWhenTableIsFull() {
+        SymbolTable table = new SymbolTable(1);
+        table.intern(" app ");
+
+        assertEquals(SymbolTable.NO_ID, table.internTrimmed(" app "));
+    }
+
+    @Test
+    public void tableGrows() {
+        SymbolTable table = new SymbolTable(100000);
+        for (int i = 0; i < 10000; ++i) {
+            assertEquals(i, table.intern("tag" + i));
+        }
+        for (int i = 0; i < 10000; ++i) {
+            assertEquals(i, table.intern("tag" + i));
+            assertEquals("tag" + i, table.getSymbol(i));
+        }
+    }
+
+    @Test
+    public void concurrentInterningProducesSameIds() throws Exception {
+        final SymbolTable table = new SymbolTable(100000);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < 4; ++t) {
+                results.add(executor.submit(new Callable<int[]>() {
+                    @Override
+                    public int[] call() {
+                        int[] ids = new int[5000];
+                        for (int i = 0; i < ids.length; ++i) {
+                            ids[i] = table.intern("tag" + i);
+                        }
+                        return ids;
+                    }
+                }));
+            }
+            int[] expected = results.get(0).get();
+            for (Future<int[]> result : results) {
+                int[] ids = result.get();
+                for (int i = 0; i < ids.length; ++i) {
+                    assertEquals(expected[i], ids[i]);
+                    assertEquals("tag" + i, table.getSymbol(ids[i]));
+                }
+            }
+            assertEquals(5000, table.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Checks that the digit decoder and encoder of {@link TimeFormatUtils} agree with {@link SimpleDateFormat}.
+ */
+@RunWith(Parameterized.class)
+public class TimeFormatUtilsTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long YEAR = 365 * 24 * 60 * MINUTE;
+
+    private final TimeZone zone;
+    private final DateFormat referenceFormat;
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> data() {
+        return Arrays.asList(new Object[][] {
+                {"UTC"},
+                {"Europe/Moscow"},
+                {"America/New_York"},
+                {"Australia/Lord_Howe"},
+                {"Asia/Kolkata"},
+                {"Pacific/Chatham"},
+        });
+    }
+
+    public TimeFormatUtilsTest(String zoneId) {
+        zone = TimeZone.getTimeZone(zoneId);
+        referenceFormat = new SimpleDateFormat("MM-dd HH:mm:ss.SSS");
+        referenceFormat.setTimeZone(zone);
+    }
+
+    @Test
+    public void parsingMatchesSimpleDateFormat() throws Exception {
+        // 7 minutes and 13 milliseconds step visits all hours and DST transitions of the year.
+        for (long time = -MINUTE; time < YEAR + MINUTE; time += 7 * MINUTE + 13) {
+            checkParse(referenceFormat.format(time));
+        }
+    }
+
+    @Test
+    public void parsingOfOutOfRangeFieldsMatchesSimpleDateFormat() throws Exception {
+        checkParse("00-01 00:00:00.000");
+        checkParse("00-00 00:00:00.000");
+        checkParse("13-01 12:00:00.000");
+        checkParse("99-99 99:99:99.999");
+        checkParse("02-29 12:00:00.000");
+        checkParse("02-31 12:00:00.000");
+        checkParse("12-31 24:00:00.000");
+        checkParse("04-30 23:59:60.000");
+    }
+
+    @Test
+    public void formattingMatchesSimpleDateFormat() {
+        char[] buffer = new char[TimeFormatUtils.TIMESTAMP_LENGTH + 2];
+        for (long time = -YEAR; time < 2 * YEAR; time += 7 * MINUTE + 13) {
+            int end = TimeFormatUtils.formatTimestamp(time, buffer, 1, zone);
+
+            assertEquals(TimeFormatUtils.TIMESTAMP_LENGTH + 1, end);
+            assertEquals(referenceFormat.format(time), new String(buffer, 1, TimeFormatUtils.TIMESTAMP_LENGTH));
+        }
+    }
+
+    @Test
+    public void droppingYearMatchesParsingOfFormattedTimestamp() throws Exception {
+        // The leap day of 2016 rolls over to March 1st like the parsed text does.
+        for (long time : new long[] {1374240562804L, 1456747200000L, 0L}) {
+            assertEquals(referenceFormat.parse(referenceFormat.format(time)).getTime(),
+                         TimeFormatUtils.dropYear(time, zone));
+        }
+    }
+
+    @Test
+    public void missingTimeIsFormattedAsEmptyString() {
+        assertEquals("", TimeFormatUtils.convertTimeToString(LogRecord.NO_TIME));
+    }
+
+    @Test(expected = ParseException.class)
+    public void parsingOfBrokenTimestampThrows() throws Exception {
+        TimeFormatUtils.parseTimestamp("08-18 13:40:5x.546", 0, zone);
+    }
+
+    @Test(expected = ParseException.class)
+    public void parsingOfTruncatedTimestampThrows() throws Exception {
+        TimeFormatUtils.parseTimestamp("08-18 13:40:59.546", 1, zone);
+    }
+
+    private void checkParse(String timestamp) throws ParseException {
+        String line = "  " + timestamp + "  ";
+        assertEquals(timestamp, referenceFormat.parse(timestamp).getTime(),
+                     TimeFormatUtils.parseTimestamp(line, 2, zone));
+    }
+}
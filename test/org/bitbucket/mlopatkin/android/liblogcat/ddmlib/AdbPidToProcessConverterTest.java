@@ -0,0 +1,167 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.android.ddmlib.IDevice;
+import com.android.ddmlib.IShellOutputReceiver;
+import com.android.sdklib.AndroidVersion;
+
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class AdbPidToProcessConverterTest {
+    private static final long TIMEOUT_MS = 5000;
+    private static final long MIN_FULL_SCAN_INTERVAL_MS = 300;
+    private static final String PS_HEADER = "USER     PID   PPID  VSIZE  RSS     WCHAN    PC         NAME";
+    private static final Pattern CMDLINE_LOOKUP = Pattern.compile("for p in ([\\d ]+);.*");
+
+    private final Map<Integer, String> deviceProcesses = new HashMap<>();
+    private final List<String> executedCommands = new CopyOnWriteArrayList<>();
+    private final List<Long> fullScanTimes = new CopyOnWriteArrayList<>();
+    private final BlockingQueue<Map<Integer, String>> resolvedNames = new LinkedBlockingQueue<>();
+
+    private AdbPidToProcessConverter converter;
+
+    @Before
+    public void setUp() throws Exception {
+        IDevice device = mock(IDevice.class);
+        when(device.getVersion()).thenReturn(new AndroidVersion(AndroidVersion.VersionCodes.N, null));
+        doAnswer(invocation -> {
+            String command = invocation.getArgument(0);
+            IShellOutputReceiver receiver = invocation.getArgument(1);
+            executedCommands.add(command);
+            byte[] output = runCommand(command).getBytes(StandardCharsets.UTF_8);
+            receiver.addOutput(output, 0, output.length);
+            receiver.flush();
+            return null;
+        }).when(device).executeShellCommand(anyString(), any(IShellOutputReceiver.class), anyLong(),
+                                            any(TimeUnit.class));
+        deviceProcesses.put(1, "/init");
+        deviceProcesses.put(100, "system_server");
+        converter = new AdbPidToProcessConverter(device, new SymbolTable(), 10, MIN_FULL_SCAN_INTERVAL_MS);
+        converter.setProcessNamesListener(resolvedNames::add);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        converter.close();
+    }
+
+    @Test
+    public void firstUnknownPidTriggersFullScan() throws Exception {
+        assertEquals(AdbPidToProcessConverter.NO_INFO, converter.getMap().get(100));
+
+        Map<Integer, String> names = awaitResolved();
+
+        assertEquals("system_server", names.get(100));
+        assertEquals("system_server", converter.getMap().get(100));
+        assertEquals(1, fullScanTimes.size());
+    }
+
+    @Test
+    public void fewUnknownPidsAreLookedUpIndividually() throws Exception {
+        converter.getMap().get(100);
+        awaitResolved();
+        deviceProcesses.put(200, "com.example.app");
+        deviceProcesses.put(201, "com.example.app:remote");
+
+        converter.getMap().get(200);
+        converter.getMap().get(201);
+        Map<Integer, String> names = awaitAllResolved(200, 201);
+
+        assertEquals("com.example.app", names.get(200));
+        assertEquals("com.example.app:remote", names.get(201));
+        assertEquals(1, fullScanTimes.size());
+        assertTrue(executedCommands.get(executedCommands.size() - 1).startsWith("for p in"));
+    }
+
+    @Test
+    public void launchStormIsResolvedWithRateLimitedFullScan() throws Exception {
+        converter.getMap().get(100);
+        awaitResolved();
+        for (int pid = 300; pid < 300 + AdbPidToProcessConverter.MAX_PID_LOOKUPS * 2; ++pid) {
+            deviceProcesses.put(pid, "app" + pid);
+            converter.getMap().get(pid);
+        }
+
+        Map<Integer, String> names = awaitResolved();
+
+        assertEquals(AdbPidToProcessConverter.MAX_PID_LOOKUPS * 2, names.size());
+        assertEquals(2, fullScanTimes.size());
+        // The scans are timed inside the shell command, which runs a bit later than the converter checks the time.
+        long interval = TimeUnit.NANOSECONDS.toMillis(fullScanTimes.get(1) - fullScanTimes.get(0));
+        assertTrue("Full scans are " + interval + " ms apart", interval >= MIN_FULL_SCAN_INTERVAL_MS * 9 / 10);
+    }
+
+    private Map<Integer, String> awaitResolved() throws InterruptedException {
+        Map<Integer, String> names = resolvedNames.poll(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        assertNotNull("Names weren't resolved", names);
+        return names;
+    }
+
+    private Map<Integer, String> awaitAllResolved(Integer... pids) throws InterruptedException {
+        Map<Integer, String> result = new HashMap<>();
+        while (result.size() < pids.length) {
+            result.putAll(awaitResolved());
+        }
+        return result;
+    }
+
+    private String runCommand(String command) {
+        StringBuilder output = new StringBuilder();
+        Matcher lookup = CMDLINE_LOOKUP.matcher(command);
+        if (lookup.matches()) {
+            for (String pid : lookup.group(1).trim().split(" ")) {
+                output.append("@pid ").append(pid).append('\n');
+                String name = deviceProcesses.get(Integer.valueOf(pid));
+                if (name != null) {
+                    output.append(name).append("\0--arg\0");
+                }
+                output.append('\n');
+            }
+        } else if (command.startsWith("ps")) {
+            fullScanTimes.add(System.nanoTime());
+            output.append(PS_HEADER).append('\n');
+            deviceProcesses.forEach((pid, name) -> output.append(
+                    String.format("root      %d  1     1000   100   ffffffff 00000000 S %s%n", pid, name)));
+        }
+        return output.toString();
+    }
+}
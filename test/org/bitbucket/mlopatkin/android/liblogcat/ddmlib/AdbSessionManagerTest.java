@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.android.ddmlib.IDevice;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.empty;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+public class AdbSessionManagerTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private AdbSessionManager manager;
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (manager != null) {
+            manager.shutdown();
+        }
+    }
+
+    @Test
+    public void sessionCannotRunMoreTasksThanAllowed() throws Exception {
+        manager = new AdbSessionManager(10, 2);
+        AdbSessionManager.Session phone = manager.openSession(mock(IDevice.class));
+        AdbSessionManager.Session watch = manager.openSession(mock(IDevice.class));
+
+        runBlockingTasks(phone, 2);
+
+        assertRejected(phone);
+        runBlockingTasks(watch, 1);
+        assertEquals(1, watch.getRunningTaskCount());
+    }
+
+    @Test
+    public void taskIsRejectedWhenPoolIsExhausted() throws Exception {
+        manager = new AdbSessionManager(2, 2);
+        AdbSessionManager.Session phone = manager.openSession(mock(IDevice.class));
+        AdbSessionManager.Session watch = manager.openSession(mock(IDevice.class));
+
+        runBlockingTasks(phone, 2);
+
+        assertRejected(watch);
+        assertEquals(0, watch.getRunningTaskCount());
+    }
+
+    @Test
+    public void finishedTaskReleasesItsSlot() throws Exception {
+        manager = new AdbSessionManager(10, 1);
+        AdbSessionManager.Session session = manager.openSession(mock(IDevice.class));
+        CountDownLatch finished = new CountDownLatch(2);
+
+        session.execute("first", finished::countDown);
+        waitUntilIdle(session);
+        session.execute("second", finished::countDown);
+
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void threadIsNamedAfterTask() throws Exception {
+        manager = new AdbSessionManager(10, 1);
+        AdbSessionManager.Session session = manager.openSession(mock(IDevice.class));
+        AtomicReference<String> threadName = new AtomicReference<>();
+        CountDownLatch finished = new CountDownLatch(1);
+
+        session.execute("Shell-reader-MAIN", () -> {
+            threadName.set(Thread.currentThread().getName());
+            finished.countDown();
+        });
+
+        assertTrue(finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals("Shell-reader-MAIN", threadName.get());
+    }
+
+    @Test
+    public void closedSessionIsDetached() {
+        manager = new AdbSessionManager(10, 1);
+        AdbSessionManager.Session phone = manager.openSession(mock(IDevice.class));
+        AdbSessionManager.Session watch = manager.openSession(mock(IDevice.class));
+
+        phone.close();
+        assertThat(manager.getSessions(), contains(watch));
+
+        watch.close();
+        assertThat(manager.getSessions(), empty());
+    }
+
+    @Test
+    public void closingSessionInterruptsItsTasks() throws Exception {
+        manager = new AdbSessionManager(10, 1);
+        AdbSessionManager.Session session = manager.openSession(mock(IDevice.class));
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        session.execute("blocking", () -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+        });
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+
+        session.close();
+
+        assertTrue(interrupted.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(0, session.getRunningTaskCount());
+    }
+
+    private void runBlockingTasks(AdbSessionManager.Session session, int count) throws Exception {
+        CountDownLatch started = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i) {
+            session.execute("blocking-" + i, () -> {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+        assertTrue(started.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+    }
+
+    private static void assertRejected(AdbSessionManager.Session session) {
+        try {
+            session.execute("rejected", () -> {
+            });
+            fail("Task should be rejected");
+        } catch (AdbException expected) {
+            // expected
+        }
+    }
+
+    private static void waitUntilIdle(AdbSessionManager.Session session) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SECONDS);
+        while (session.getRunningTaskCount() > 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.android.liblogcat.TimeFormatUtils;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryLogcatReceiverTest {
+    private static final int V4_HEADER_SIZE = 28;
+
+    private static final String CYRILLIC_TAG = "\u0422\u044d\u0433";
+    private static final String CYRILLIC_MESSAGE = "\u043f\u0440\u0438\u0432\u0435\u0442";
+
+    private static final Map<Integer, String> PID_TO_PROCESS = ImmutableMap.of(380, "system_server");
+
+    private final List<LogRecord> records = new ArrayList<>();
+    private final BinaryLogcatReceiver receiver =
+            new BinaryLogcatReceiver(Buffer.MAIN, PID_TO_PROCESS, new SymbolTable(), records::add);
+
+    @Test
+    public void v1EntryIsDecoded() {
+        feed(entry(0, 380, 530, 1374240562, 804123456, 5, "ActivityManager", "Permission denied"), 1000);
+
+        assertEquals(1, records.size());
+        LogRecord record = records.get(0);
+        assertEquals(380, record.getPid());
+        assertEquals(530, record.getTid());
+        assertEquals(TimeFormatUtils.dropYear(1374240562804L), record.getTimestamp());
+        assertEquals(Priority.WARN, record.getPriority());
+        assertEquals("ActivityManager", record.getTag());
+        assertEquals("Permission denied", record.getMessage());
+        assertEquals("system_server", record.getAppName());
+        assertEquals(Buffer.MAIN, record.getBuffer());
+    }
+
+    @Test
+    public void timestampsMatchTextOutputOfOtherBuffers() {
+        ThreadTimeLogcatReceiver textReceiver = new ThreadTimeLogcatReceiver(
+                Buffer.SYSTEM, Collections.emptyMap(), PID_TO_PROCESS, new SymbolTable(), records::add);
+        byte[] text = "07-19 13:29:22.804   380   530 W SystemTag: text\n".getBytes(StandardCharsets.UTF_8);
+        textReceiver.addOutput(text, 0, text.length);
+        textReceiver.flush();
+        Calendar wallClock = new GregorianCalendar(2013, Calendar.JULY, 19, 13, 29, 22);
+
+        feed(entry(0, 380, 530, (int) (wallClock.getTimeInMillis() / 1000), 804123456, 5, "MainTag", "binary"), 1000);
+
+        assertEquals(2, records.size());
+        assertEquals(Buffer.MAIN, records.get(1).getBuffer());
+        assertEquals(records.get(0).getTimestamp(), records.get(1).getTimestamp());
+    }
+
+    @Test
+    public void extraHeaderFieldsAreSkipped() {
+        feed(entry(V4_HEADER_SIZE, 1, 2, 3, 0, 4, "Tag", "Message"), 1000);
+
+        assertEquals(1, records.size());
+        assertEquals("Tag", records.get(0).getTag());
+        assertEquals("Message", records.get(0).getMessage());
+    }
+
+    @Test
+    public void entriesAreDecodedAtAnyChunkBoundary() {
+        byte[] data = concat(entry(0, 1, 1, 1, 0, 3, "First", "message 1"),
+                             entry(V4_HEADER_SIZE, 2, 2, 2, 0, 6, CYRILLIC_TAG, CYRILLIC_MESSAGE),
+                             entry(0, 3, 3, 3, 0, 4, "Third", ""));
+        for (int chunkSize = 1; chunkSize <= data.length; ++chunkSize) {
+            records.clear();
+            BinaryLogcatReceiver chunkReceiver =
+                    new BinaryLogcatReceiver(Buffer.MAIN, PID_TO_PROCESS, new SymbolTable(), records::add);
+
+            feed(chunkReceiver, data, chunkSize);
+
+            assertEquals("Chunk size " + chunkSize, Arrays.asList("First", CYRILLIC_TAG, "Third"), tags());
+            assertEquals(CYRILLIC_MESSAGE, records.get(1).getMessage());
+            assertEquals(Priority.ERROR, records.get(1).getPriority());
+            assertEquals("", records.get(2).getMessage());
+        }
+    }
+
+    @Test
+    public void multilineMessageIsSplitIntoRecords() {
+        feed(entry(0, 1, 1, 1, 0, 4, "Tag", "line 1\nline 2\n"), 1000);
+
+        assertEquals(2, records.size());
+        assertEquals("line 1", records.get(0).getMessage());
+        assertEquals("line 2", records.get(1).getMessage());
+    }
+
+    @Test
+    public void outOfRangePrioritiesAreClamped() {
+        feed(concat(entry(0, 1, 1, 1, 0, 0, "Low", "m"), entry(0, 1, 1, 1, 0, 8, "High", "m")), 1000);
+
+        assertEquals(Priority.VERBOSE, records.get(0).getPriority());
+        assertEquals(Priority.FATAL, records.get(1).getPriority());
+    }
+
+    @Test
+    public void garbageCancelsReceiver() {
+        byte[] text = "07-19 13:29:22.804   380   530 W Tag: message\n".getBytes(StandardCharsets.UTF_8);
+
+        feed(text, 1000);
+
+        assertTrue(receiver.isCancelled());
+        assertTrue(records.isEmpty());
+    }
+
+    @Test
+    public void incompleteEntryIsNotDecoded() {
+        byte[] data = entry(0, 1, 1, 1, 0, 4, "Tag", "message");
+        receiver.addOutput(data, 0, data.length - 1);
+        receiver.flush();
+
+        assertTrue(records.isEmpty());
+        assertFalse(receiver.isCancelled());
+    }
+
+    private List<String> tags() {
+        List<String> result = new ArrayList<>();
+        for (LogRecord record : records) {
+            result.add(record.getTag());
+        }
+        return result;
+    }
+
+    private void feed(byte[] data, int chunkSize) {
+        feed(receiver, data, chunkSize);
+    }
+
+    private static void feed(BinaryLogcatReceiver receiver, byte[] data, int chunkSize) {
+        for (int pos = 0; pos < data.length; pos += chunkSize) {
+            byte[] chunk = Arrays.copyOfRange(data, pos, Math.min(data.length, pos + chunkSize));
+            receiver.addOutput(chunk, 0, chunk.length);
+        }
+        receiver.flush();
+    }
+
+    /**
+     * Builds the {@code logger_entry} struct as the logcat -B writes it.
+     */
+    private static byte[] entry(int headerSize, int pid, int tid, int sec, int nsec, int priority, String tag,
+            String message) {
+        byte[] tagBytes = tag.getBytes(StandardCharsets.UTF_8);
+        byte[] messageBytes = message.getBytes(StandardCharsets.UTF_8);
+        int payloadLength = 1 + tagBytes.length + 1 + messageBytes.length + 1;
+        int actualHeaderSize = headerSize == 0 ? BinaryLogcatReceiver.V1_HEADER_SIZE : headerSize;
+        ByteBuffer entry = ByteBuffer.allocate(actualHeaderSize + payloadLength).order(ByteOrder.LITTLE_ENDIAN);
+        entry.putShort((short) payloadLength);
+        entry.putShort((short) headerSize);
+        entry.putInt(pid);
+        entry.putInt(tid);
+        entry.putInt(sec);
+        entry.putInt(nsec);
+        entry.position(actualHeaderSize);
+        entry.put((byte) priority);
+        entry.put(tagBytes).put((byte) 0);
+        entry.put(messageBytes).put((byte) 0);
+        return entry.array();
+    }
+
+    private static byte[] concat(byte[]... entries) {
+        ByteArrayOutputStream result = new ByteArrayOutputStream();
+        for (byte[] entry : entries) {
+            result.write(entry, 0, entry.length);
+        }
+        return result.toByteArray();
+    }
+}
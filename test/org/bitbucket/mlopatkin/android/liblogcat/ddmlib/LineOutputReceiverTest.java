@@ -0,0 +1,133 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.google.common.io.CharSource;
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LineOutputReceiverTest {
+
+    @Test
+    public void linesAreSplitAtAnyChunkBoundary() throws Exception {
+        byte[] data = "first\nsecond line\n\nlast\n".getBytes(StandardCharsets.UTF_8);
+        List<String> expected = Arrays.asList("first", "second line", "", "last");
+        for (int chunkSize = 1; chunkSize <= data.length; ++chunkSize) {
+            assertEquals("Chunk size " + chunkSize, expected, feed(data, chunkSize));
+        }
+    }
+
+    @Test
+    public void carriageReturnsAreDropped() throws Exception {
+        byte[] data = "first\r\nsecond\r\r\n".getBytes(StandardCharsets.UTF_8);
+
+        assertEquals(Arrays.asList("first", "second"), feed(data, 3));
+    }
+
+    @Test
+    public void multibyteCharsAreDecodedAcrossChunks() throws Exception {
+        String text = "\u041f\u0440\u0438\u0432\u0435\u0442\n\u4f60\u597d\n";
+        byte[] data = text.getBytes(StandardCharsets.UTF_8);
+        for (int chunkSize = 1; chunkSize <= data.length; ++chunkSize) {
+            assertEquals(Arrays.asList("\u041f\u0440\u0438\u0432\u0435\u0442", "\u4f60\u597d"), feed(data, chunkSize));
+        }
+    }
+
+    @Test
+    public void lastLineWithoutTerminatorIsHandledOnFlush() throws Exception {
+        CollectingReceiver receiver = new CollectingReceiver();
+        byte[] data = "first\nlast".getBytes(StandardCharsets.UTF_8);
+        receiver.addOutput(data, 0, data.length);
+
+        assertEquals(Arrays.asList("first"), receiver.lines);
+
+        receiver.flush();
+        assertEquals(Arrays.asList("first", "last"), receiver.lines);
+        assertTrue(receiver.finished);
+    }
+
+    @Test
+    public void realLogIsSplitLikeReadLine() throws Exception {
+        String log = Resources.toString(
+                Resources.getResource(LineOutputReceiverTest.class, "../file/galaxy_nexus_jbmr2_threadtime.log"),
+                StandardCharsets.UTF_8);
+        List<String> expected = CharSource.wrap(log).readLines();
+        byte[] data = log.getBytes(StandardCharsets.UTF_8);
+
+        Random random = new Random(1);
+        CollectingReceiver receiver = new CollectingReceiver();
+        int pos = 0;
+        while (pos < data.length) {
+            int length = Math.min(data.length - pos, 1 + random.nextInt(4096));
+            receiver.addOutput(data, pos, length);
+            pos += length;
+        }
+        receiver.flush();
+
+        assertEquals(expected, receiver.lines);
+    }
+
+    @Test
+    public void cancelledReceiverIgnoresOutput() throws Exception {
+        CollectingReceiver receiver = new CollectingReceiver();
+        receiver.cancel();
+
+        byte[] data = "first\n".getBytes(StandardCharsets.UTF_8);
+        receiver.addOutput(data, 0, data.length);
+        receiver.flush();
+
+        assertTrue(receiver.isCancelled());
+        assertTrue(receiver.lines.isEmpty());
+    }
+
+    private static List<String> feed(byte[] data, int chunkSize) throws IOException {
+        CollectingReceiver receiver = new CollectingReceiver();
+        for (int pos = 0; pos < data.length; pos += chunkSize) {
+            // Copy the chunk to make sure that the receiver doesn't look outside of it.
+            byte[] chunk = Arrays.copyOfRange(data, pos, Math.min(data.length, pos + chunkSize));
+            receiver.addOutput(chunk, 0, chunk.length);
+        }
+        receiver.flush();
+        return receiver.lines;
+    }
+
+    private static class CollectingReceiver extends LineOutputReceiver {
+        final List<String> lines = new ArrayList<>();
+        boolean finished;
+
+        @Override
+        protected void handleLine(String line) {
+            lines.add(line);
+        }
+
+        @Override
+        protected void onFinished() {
+            finished = true;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.contains;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RecordPipeTest {
+    private static final long TIMEOUT_SECONDS = 5;
+
+    private final List<LogRecord> received = new CopyOnWriteArrayList<>();
+    private final RecordPipe pipe = new RecordPipe(2, received::add);
+
+    @After
+    public void tearDown() {
+        pipe.close();
+    }
+
+    @Test
+    public void recordsArePassedInOrder() throws Exception {
+        LogRecord first = record("first");
+        LogRecord second = record("second");
+        pipe.pushRecord(first);
+        pipe.pushRecord(second);
+
+        assertThat(received, contains(first, second));
+        assertEquals(2, pipe.size());
+    }
+
+    @Test
+    public void producerWaitsUntilRecordsAreConsumed() throws Exception {
+        pipe.pushRecord(record("first"));
+        pipe.pushRecord(record("second"));
+        CountDownLatch pushed = new CountDownLatch(1);
+        startThread(() -> {
+            pipe.pushRecord(record("third"));
+            pushed.countDown();
+        });
+
+        assertFalse(pushed.await(200, TimeUnit.MILLISECONDS));
+        assertEquals(2, received.size());
+
+        pipe.release(2);
+        assertTrue(pushed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(3, received.size());
+        assertEquals(1, pipe.size());
+        assertTrue(pipe.getBlockedNanos() > 0);
+    }
+
+    @Test
+    public void closeReleasesWaitingProducer() throws Exception {
+        pipe.pushRecord(record("first"));
+        pipe.pushRecord(record("second"));
+        CountDownLatch pushed = new CountDownLatch(1);
+        startThread(() -> {
+            pipe.pushRecord(record("third"));
+            pushed.countDown();
+        });
+
+        pipe.close();
+
+        assertTrue(pushed.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        assertEquals(2, received.size());
+    }
+
+    private static void startThread(Runnable runnable) {
+        Thread thread = new Thread(runnable);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private static LogRecord record(String message) {
+        return new LogRecord(0, 1, 1, "app", LogRecord.Priority.INFO, "Tag", message, LogRecord.Buffer.MAIN);
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.ddmlib;
+
+import com.google.common.collect.ImmutableMap;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ThreadTimeLogcatReceiverTest {
+    private static final String OUTPUT = ""
+            + "--------- beginning of main\n"
+            + "07-19 13:29:22.804   380   530 I MainTag: first main\n"
+            + "--------- beginning of system\n"
+            + "07-19 13:29:22.805   380   530 W SystemTag: first system\n"
+            + "--------- switch to main\n"
+            + "07-19 13:29:22.806   380   530 I MainTag: second main\n"
+            + "--------- beginning of kernel\n"
+            + "07-19 13:29:22.807   380   530 I MainTag: unknown buffer is ignored\n";
+
+    private final List<LogRecord> records = new ArrayList<>();
+
+    @Test
+    public void recordsAreAttributedToMarkedBuffers() {
+        ThreadTimeLogcatReceiver receiver = new ThreadTimeLogcatReceiver(
+                Buffer.UNKNOWN, ImmutableMap.of("main", Buffer.MAIN, "system", Buffer.SYSTEM),
+                Collections.emptyMap(), new SymbolTable(), records::add);
+
+        feed(receiver, OUTPUT);
+
+        assertEquals(Arrays.asList(Buffer.MAIN, Buffer.SYSTEM, Buffer.MAIN, Buffer.MAIN), buffers());
+        assertEquals("second main", records.get(2).getMessage());
+    }
+
+    @Test
+    public void singleBufferIgnoresMarkers() {
+        ThreadTimeLogcatReceiver receiver =
+                new ThreadTimeLogcatReceiver(Buffer.RADIO, Collections.emptyMap(), Collections.emptyMap(),
+                                             new SymbolTable(), records::add);
+
+        feed(receiver, OUTPUT);
+
+        assertEquals(Arrays.asList(Buffer.RADIO, Buffer.RADIO, Buffer.RADIO, Buffer.RADIO), buffers());
+    }
+
+    private List<Buffer> buffers() {
+        List<Buffer> result = new ArrayList<>();
+        for (LogRecord record : records) {
+            result.add(record.getBuffer());
+        }
+        return result;
+    }
+
+    private static void feed(ThreadTimeLogcatReceiver receiver, String output) {
+        byte[] data = output.getBytes(StandardCharsets.UTF_8);
+        receiver.addOutput(data, 0, data.length);
+        receiver.flush();
+    }
+}
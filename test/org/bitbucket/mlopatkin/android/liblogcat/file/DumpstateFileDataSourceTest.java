@@ -0,0 +1,135 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.collect.Ordering;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
+import org.hamcrest.Matchers;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DumpstateFileDataSourceTest {
+    // The number of records in the logcat sections of the test file.
+    private static final int RECORDS_COUNT = 1297 + 109 + 319;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void logcatSectionsAreMergedByTime() throws Exception {
+        List<LogRecord> records = getRecords(new DumpstateFileDataSource("dumpstate", openTestData()));
+
+        assertEquals(RECORDS_COUNT, records.size());
+        assertTrue(Ordering.natural().isOrdered(records));
+    }
+
+    @Test
+    public void buffersOfSectionsAreAvailable() throws Exception {
+        DumpstateFileDataSource source = new DumpstateFileDataSource("dumpstate", openTestData());
+
+        assertThat(source.getAvailableBuffers(), Matchers.containsInAnyOrder(Buffer.EVENTS, Buffer.RADIO,
+                                                                             Buffer.SYSTEM));
+    }
+
+    @Test
+    public void processNamesAreResolved() throws Exception {
+        DumpstateFileDataSource source = new DumpstateFileDataSource("dumpstate", openTestData());
+
+        assertEquals("/init", source.getPidToProcessConverter().get(1));
+        for (LogRecord record : getRecords(source)) {
+            String processName = source.getPidToProcessConverter().get(record.getPid());
+            if (processName != null) {
+                assertEquals(processName.trim(), record.getAppName());
+            }
+        }
+    }
+
+    @Test
+    public void mappedFileIsTheSameAsReader() throws Exception {
+        String content = readTestData();
+        File file = temporaryFolder.newFile();
+        Files.asCharSink(file, StandardCharsets.UTF_8).write(content);
+
+        List<LogRecord> expected = getRecords(new DumpstateFileDataSource("dumpstate", openTestData()));
+        List<LogRecord> actual = getRecords(new DumpstateFileDataSource("dumpstate", file));
+
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    private static List<LogRecord> getRecords(DumpstateFileDataSource source) {
+        final List<LogRecord> result = new ArrayList<>();
+        source.setLogRecordListener(new RecordListener<LogRecord>() {
+            @Override
+            public void addRecord(LogRecord record) {
+                result.add(record);
+            }
+
+            @Override
+            public void addRecords(List<LogRecord> records) {
+                result.addAll(records);
+            }
+
+            @Override
+            public void appendRecords(List<LogRecord> records) {
+                result.addAll(records);
+            }
+
+            @Override
+            public void setRecords(List<LogRecord> records) {
+                result.clear();
+                result.addAll(records);
+            }
+        });
+        return result;
+    }
+
+    private static List<String> describe(List<LogRecord> records) {
+        List<String> result = new ArrayList<>(records.size());
+        for (LogRecord record : records) {
+            result.add(record.getBuffer() + " " + record.getAppName() + " " + record);
+        }
+        return result;
+    }
+
+    private static BufferedReader openTestData() throws IOException {
+        return new BufferedReader(new StringReader(readTestData()));
+    }
+
+    private static String readTestData() throws IOException {
+        return Resources.toString(Resources.getResource(DumpstateFileDataSourceTest.class,
+                                                        "galaxy_nexus_jbmr2.minimized.dump"),
+                                  StandardCharsets.UTF_8);
+    }
+}
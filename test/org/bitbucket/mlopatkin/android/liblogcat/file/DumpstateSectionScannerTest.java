@@ -0,0 +1,116 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.base.Predicates;
+
+import org.bitbucket.mlopatkin.android.liblogcat.file.DumpstateSectionScanner.Section;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class DumpstateSectionScannerTest {
+    @Test
+    public void sectionEndsWithElapsedLine() throws Exception {
+        String content = "header\n"
+                + "------ A ------\n"
+                + "a1\n"
+                + "a2\n"
+                + "[a: 0.1s elapsed]\n"
+                + "garbage\n";
+
+        assertEquals(Arrays.asList("A: a1|a2"), scan(content));
+    }
+
+    @Test
+    public void sectionEndsWithNextHeader() throws Exception {
+        String content = "------ A ------\n"
+                + "a1\n"
+                + "------ B ------  \t\n"
+                + "b1\n";
+
+        assertEquals(Arrays.asList("A: a1", "B: b1"), scan(content));
+    }
+
+    @Test
+    public void unsupportedSectionsAreSkipped() throws Exception {
+        String content = "------ A ------\n"
+                + "a1\n"
+                + "------ SKIPPED ------\n"
+                + "[looks like end: but not elapsed]\n"
+                + "[skipped: 0.1s elapsed]\n"
+                + "------ B ------\n"
+                + "b1\n"
+                + "[b: 0.1s elapsed]\n";
+
+        List<String> sections = scan(content);
+
+        assertEquals(Arrays.asList("A: a1", "B: b1"), sections);
+    }
+
+    @Test
+    public void linesThatAlmostMatchAreNotMarkup() throws Exception {
+        String content = "------ A ------\n"
+                + "------ ------\n"
+                + "------ A -----\n"
+                + "[a:0.1s elapsed]\n"
+                + "[: 0.1s elapsed] \n"
+                + " [a: 0.1s elapsed]\n"
+                + "[ elapsed]\n";
+
+        assertEquals(Arrays.asList("A: ------ ------|------ A -----|[a:0.1s elapsed]|[: 0.1s elapsed] "
+                + "| [a: 0.1s elapsed]|[ elapsed]"), scan(content));
+    }
+
+    @Test
+    public void greedyHeaderNameIsUsed() throws Exception {
+        assertEquals(Arrays.asList(" ------ A ------ : a1"), scan("------  ------ A ------  ------\na1"));
+    }
+
+    @Test
+    public void crlfAndMultiByteCharsAreHandled() throws Exception {
+        String content = "------ \u0410 ------\r\n"
+                + "\u041f\u0440\u0438\u0432\u0435\u0442\r\n"
+                + "\r"
+                + "\u65e5\u672c\r\n"
+                + "[a: 0.1s elapsed]\r\n";
+
+        assertEquals(Arrays.asList("\u0410: \u041f\u0440\u0438\u0432\u0435\u0442||\u65e5\u672c"), scan(content));
+    }
+
+    @Test
+    public void emptySectionAtTheEndIsReported() throws Exception {
+        assertEquals(Arrays.asList("A: "), scan("------ A ------"));
+    }
+
+    private static List<String> scan(String content) throws Exception {
+        ByteBuffer bytes = ByteBuffer.wrap(content.getBytes(StandardCharsets.UTF_8));
+        List<String> result = new ArrayList<>();
+        for (Section section : DumpstateSectionScanner.scan(bytes, Predicates.not(Predicates.equalTo("SKIPPED")))) {
+            List<String> lines = new ArrayList<>();
+            DumpstateSectionScanner.forEachLine(bytes, section, lines::add);
+            result.add(section.getName() + ": " + String.join("|", lines));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LoadingDataSource;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.RecordListener;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LogfileDataSourceTest {
+    private static final long TIMEOUT_SECONDS = 10;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void fileIsStreamedInBackground() throws Exception {
+        String content = readTestData("galaxy_nexus_jbmr2_threadtime.log");
+        LoadingDataSource source = (LoadingDataSource) FileDataSourceFactory.createDataSource(writeFile(content));
+        CollectingListener listener = new CollectingListener();
+        source.setProgressListener(listener);
+
+        source.setLogRecordListener(listener);
+
+        assertTrue(listener.awaitFinished());
+        assertEquals(describe(parseSequentially(content)), describe(listener.records));
+        assertEquals(listener.total, listener.loaded);
+        source.close();
+    }
+
+    @Test
+    public void resetLoadsFileAgain() throws Exception {
+        String content = readTestData("galaxy_nexus_jbmr2_threadtime.log");
+        LoadingDataSource source = (LoadingDataSource) FileDataSourceFactory.createDataSource(writeFile(content));
+        CollectingListener listener = new CollectingListener();
+        source.setProgressListener(listener);
+        source.setLogRecordListener(listener);
+        assertTrue(listener.awaitFinished());
+        listener.records.clear();
+
+        CollectingListener resetProgressListener = new CollectingListener();
+        source.setProgressListener(resetProgressListener);
+        source.reset();
+
+        assertTrue(resetProgressListener.awaitFinished());
+        assertEquals(describe(parseSequentially(content)), describe(listener.records));
+        source.close();
+    }
+
+    @Test
+    public void recordsAreInternedInTableOfSource() throws Exception {
+        String content = readTestData("galaxy_nexus_jbmr2_threadtime.log");
+        File file = writeFile(content);
+        LoadingDataSource source = (LoadingDataSource) FileDataSourceFactory.createDataSource(file);
+        LoadingDataSource other = (LoadingDataSource) FileDataSourceFactory.createDataSource(file);
+        CollectingListener listener = new CollectingListener();
+        source.setProgressListener(listener);
+
+        source.setLogRecordListener(listener);
+
+        assertTrue(listener.awaitFinished());
+        assertNotSame(source.getSymbolTable(), other.getSymbolTable());
+        for (LogRecord record : listener.records) {
+            assertSame(source.getSymbolTable(), record.getSymbolTable());
+        }
+        source.close();
+        other.close();
+    }
+
+    private static List<LogRecord> parseSequentially(String content) throws IOException {
+        List<LogRecord> expected = new ArrayList<>();
+        LogfileDataSource.parseLines(ParsingStrategies.threadTime, null, new BufferedReader(new StringReader(content)),
+                                     expected);
+        return expected;
+    }
+
+    private File writeFile(String content) throws IOException {
+        File file = temporaryFolder.newFile("test.log");
+        Files.asCharSink(file, StandardCharsets.UTF_8).write(content);
+        return file;
+    }
+
+    private static List<String> describe(List<LogRecord> records) {
+        List<String> result = new ArrayList<>(records.size());
+        for (LogRecord record : records) {
+            result.add(record.getBuffer() + " " + record.getAppName() + " " + record);
+        }
+        return result;
+    }
+
+    private static String readTestData(String testDataName) throws IOException {
+        return Resources.toString(Resources.getResource(LogfileDataSourceTest.class, testDataName),
+                                  StandardCharsets.UTF_8);
+    }
+
+    private static class CollectingListener implements RecordListener<LogRecord>,
+            LoadingDataSource.ProgressListener {
+        final List<LogRecord> records = new ArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        volatile boolean completed;
+        volatile long loaded;
+        volatile long total;
+
+        @Override
+        public void addRecord(LogRecord record) {
+            records.add(record);
+        }
+
+        @Override
+        public void addRecords(List<LogRecord> newRecords) {
+            records.addAll(newRecords);
+        }
+
+        @Override
+        public void appendRecords(List<LogRecord> newRecords) {
+            records.addAll(newRecords);
+        }
+
+        @Override
+        public void setRecords(List<LogRecord> newRecords) {
+            records.clear();
+            records.addAll(newRecords);
+        }
+
+        @Override
+        public void onProgress(long loaded, long total) {
+            this.loaded = loaded;
+            this.total = total;
+        }
+
+        @Override
+        public void onLoadingFinished(boolean completed) {
+            this.completed = completed;
+            finished.countDown();
+        }
+
+        boolean awaitFinished() throws InterruptedException {
+            return finished.await(TIMEOUT_SECONDS, TimeUnit.SECONDS) && completed;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.base.Strings;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class MappedLogRecordListTest {
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    @Test
+    public void threadtimeFileIsIndexed() throws Exception {
+        checkSameAsSequential(ParsingStrategies.threadTime, readTestData("galaxy_nexus_jbmr2_threadtime.log"), 1024);
+    }
+
+    @Test
+    public void fileIsIndexedWithDefaultRegionSize() throws Exception {
+        String content = readTestData("galaxy_nexus_jbmr2_brief.log");
+        List<LogRecord> expected = parseSequentially(ParsingStrategies.brief, content);
+
+        List<LogRecord> actual = MappedLogRecordList.create(ParsingStrategies.brief, symbols, writeFile(content));
+
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    @Test
+    public void regionsEndingInsideCrlfAreHandled() throws Exception {
+        String content = readTestData("galaxy_nexus_jbmr2_time.log").replace("\n", "\r\n");
+        for (int regionSize = 1024; regionSize < 1040; ++regionSize) {
+            checkSameAsSequential(ParsingStrategies.time, content, regionSize);
+        }
+    }
+
+    @Test
+    public void multiByteCharsAndGarbageAreHandled() throws Exception {
+        String content = "\n\n    \n"
+                + "--------- beginning of /dev/log/main\n"
+                + "08-18 13:40:59.546   417  1172 D Tag: \u041f\u0440\u0438\u0432\u0435\u0442\n"
+                + "binary \u0000\u0001 garbage\r"
+                + "08-18 13:40:59.547   417  1172 I \u65e5\u672c: \u8a9e\r\n"
+                + "08-18 13:40:59.548   417  1172 E Tag: no trailing newline";
+        for (int regionSize = 80; regionSize < 100; ++regionSize) {
+            checkSameAsSequential(ParsingStrategies.threadTime, content, regionSize);
+        }
+    }
+
+    @Test
+    public void emptyFileIsIndexed() throws Exception {
+        assertTrue(MappedLogRecordList.create(ParsingStrategies.threadTime, symbols, writeFile("")).isEmpty());
+    }
+
+    @Test
+    public void sameRecordInstanceIsReturnedWhileReferenced() throws Exception {
+        File file = writeFile(readTestData("galaxy_nexus_jbmr2_threadtime.log"));
+        List<LogRecord> records = MappedLogRecordList.create(ParsingStrategies.threadTime, symbols, file);
+
+        LogRecord first = records.get(0);
+        LogRecord last = records.get(records.size() - 1);
+
+        assertSame(first, records.get(0));
+        assertSame(last, records.get(records.size() - 1));
+    }
+
+    @Test
+    public void changedLinesAreReturnedAsPlaceholders() throws Exception {
+        String line = "08-18 13:40:59.546   417  1172 D Tag: message\n";
+        File file = writeFile(line + line);
+        List<LogRecord> records = MappedLogRecordList.create(ParsingStrategies.threadTime, symbols, file);
+
+        // The file is overwritten in place, so the mapping sees the new content.
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.write(Strings.repeat("x", line.length() - 1).getBytes(StandardCharsets.UTF_8));
+        }
+
+        LogRecord changed = records.get(0);
+        assertEquals(LogRecord.NO_TIME, changed.getTimestamp());
+        assertEquals(Strings.repeat("x", line.length() - 1), changed.getMessage());
+        assertEquals("message", records.get(1).getMessage());
+    }
+
+    @Test
+    public void malformedLinesWithTimestampAreReturnedAsPlaceholders() throws Exception {
+        String malformed = "08-18 13:40:59.546 not a record";
+        File file = writeFile(malformed + "\n08-18 13:40:59.547   417  1172 D Tag: message\n");
+
+        List<LogRecord> records = MappedLogRecordList.create(ParsingStrategies.threadTime, symbols, file);
+
+        assertEquals(2, records.size());
+        assertEquals(malformed, records.get(0).getMessage());
+        assertEquals("message", records.get(1).getMessage());
+    }
+
+    @Test(expected = IOException.class)
+    public void tooLongLineIsReported() throws Exception {
+        String content = "08-18 13:40:59.546   417  1172 D Tag: " + Strings.repeat("x", 200) + "\n";
+        MappedLogRecordList.create(ParsingStrategies.threadTime, symbols, writeFile(content), 100);
+    }
+
+    private void checkSameAsSequential(ParsingStrategies.Strategy strategy, String content, int regionSize)
+            throws IOException {
+        List<LogRecord> expected = parseSequentially(strategy, content);
+
+        List<LogRecord> actual = MappedLogRecordList.create(strategy, symbols, writeFile(content), regionSize);
+
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    private static List<LogRecord> parseSequentially(ParsingStrategies.Strategy strategy, String content)
+            throws IOException {
+        List<LogRecord> expected = new ArrayList<>();
+        LogfileDataSource.parseLines(strategy, null, new BufferedReader(new StringReader(content)), expected);
+        return expected;
+    }
+
+    private File writeFile(String content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.asCharSink(file, StandardCharsets.UTF_8).write(content);
+        return file;
+    }
+
+    private static List<String> describe(List<LogRecord> records) {
+        List<String> result = new ArrayList<>(records.size());
+        for (LogRecord record : records) {
+            result.add(record.getBuffer() + " " + record.getAppName() + " " + record);
+        }
+        return result;
+    }
+
+    private static String readTestData(String testDataName) throws IOException {
+        return Resources.toString(Resources.getResource(MappedLogRecordListTest.class, testDataName),
+                                  StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.liblogcat.file;
+
+import com.google.common.collect.Ordering;
+import com.google.common.io.Files;
+import com.google.common.io.Resources;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelLogfileLoaderTest {
+    private static ForkJoinPool pool;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private final SymbolTable symbols = new SymbolTable();
+
+    @BeforeClass
+    public static void setUpClass() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        pool.shutdown();
+    }
+
+    @Test
+    public void threadtimeFileIsLoadedInFileOrder() throws Exception {
+        checkSameAsSequential(ParsingStrategies.threadTime, readTestData("galaxy_nexus_jbmr2_threadtime.log"), 97);
+    }
+
+    @Test
+    public void briefFileIsLoadedInFileOrder() throws Exception {
+        checkSameAsSequential(ParsingStrategies.brief, readTestData("galaxy_nexus_jbmr2_brief.log"), 64);
+    }
+
+    @Test
+    public void crlfLineEndingsAreNotSplit() throws Exception {
+        String content = readTestData("galaxy_nexus_jbmr2_time.log").replace("\n", "\r\n");
+        // Every possible split position between '\r' and '\n' is tried with the small odd chunk sizes.
+        for (int chunkSize = 1; chunkSize < 8; ++chunkSize) {
+            checkSameAsSequential(ParsingStrategies.time, content, chunkSize);
+        }
+    }
+
+    @Test
+    public void multiByteCharsAndGarbageAreHandled() throws Exception {
+        String content = "\n\n    \n"
+                + "--------- beginning of /dev/log/main\n"
+                + "08-18 13:40:59.546   417  1172 D Tag: \u041f\u0440\u0438\u0432\u0435\u0442\n"
+                + "binary \u0000\u0001 garbage\r"
+                + "08-18 13:40:59.547   417  1172 I \u65e5\u672c: \u8a9e\r\n"
+                + "08-18 13:40:59.548   417  1172 E Tag: no trailing newline";
+        for (int chunkSize = 1; chunkSize < 16; ++chunkSize) {
+            checkSameAsSequential(ParsingStrategies.threadTime, content, chunkSize);
+        }
+    }
+
+    @Test
+    public void fileWithoutNewlinesIsLoaded() throws Exception {
+        StringBuilder content = new StringBuilder();
+        while (content.length() < 300 * 1024) {
+            content.append("08-18 13:40:59.546   417  1172 D Tag: \u041f\u0440\u0438\u0432\u0435\u0442 ");
+        }
+        // The whole file is the single range that is bigger than the read buffer.
+        checkSameAsSequential(ParsingStrategies.threadTime, content.toString(), 16);
+    }
+
+    @Test
+    public void emptyFileIsLoaded() throws Exception {
+        File file = writeFile("");
+        assertTrue(new ParallelLogfileLoader(ParsingStrategies.threadTime, symbols, pool, 16).load(file).isEmpty());
+    }
+
+    @Test
+    public void chunksAreStreamedInFileOrder() throws Exception {
+        String content = readTestData("galaxy_nexus_jbmr2_threadtime.log");
+        File file = writeFile(content);
+        final List<LogRecord> streamed = new ArrayList<>();
+        final List<Long> progress = new ArrayList<>();
+
+        ParallelLogfileLoader loader = new ParallelLogfileLoader(ParsingStrategies.threadTime, symbols, pool, 512);
+        loader.load(file, (records, loadedBytes) -> {
+            streamed.addAll(records);
+            progress.add(loadedBytes);
+        });
+
+        List<LogRecord> expected = new ArrayList<>();
+        LogfileDataSource.parseLines(ParsingStrategies.threadTime, null, new BufferedReader(new StringReader(content)),
+                                     expected);
+        assertEquals(describe(expected), describe(streamed));
+        assertTrue(progress.size() > 1);
+        assertEquals(Ordering.natural().sortedCopy(progress), progress);
+        assertEquals(Long.valueOf(file.length()), progress.get(progress.size() - 1));
+    }
+
+    private void checkSameAsSequential(ParsingStrategies.Strategy strategy, String content, int chunkSize)
+            throws IOException {
+        List<LogRecord> expected = new ArrayList<>();
+        LogfileDataSource.parseLines(strategy, null, new BufferedReader(new StringReader(content)), expected);
+
+        List<LogRecord> actual = new ParallelLogfileLoader(strategy, symbols, pool, chunkSize).load(writeFile(content));
+
+        assertEquals(describe(expected), describe(actual));
+    }
+
+    private File writeFile(String content) throws IOException {
+        File file = temporaryFolder.newFile();
+        Files.asCharSink(file, StandardCharsets.UTF_8).write(content);
+        return file;
+    }
+
+    private static List<String> describe(List<LogRecord> records) {
+        List<String> result = new ArrayList<>(records.size());
+        for (LogRecord record : records) {
+            result.add(record.getBuffer() + " " + record.getAppName() + " " + record);
+        }
+        return result;
+    }
+
+    private static String readTestData(String testDataName) throws IOException {
+        return Resources.toString(Resources.getResource(ParallelLogfileLoaderTest.class, testDataName),
+                                  StandardCharsets.UTF_8);
+    }
+}
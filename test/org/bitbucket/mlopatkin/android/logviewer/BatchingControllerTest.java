@@ -0,0 +1,267 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer;
+
+import com.google.common.io.Resources;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Replays the arrival patterns in the virtual time against the simulated EDT. The synthetic patterns model the
+ * extreme rates, the recorded one comes from the logs of the real device.
+ */
+public class BatchingControllerTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long US = TimeUnit.MICROSECONDS.toNanos(1);
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final long BUDGET = 250 * MS;
+
+    private static final long MERGE_FIXED_COST = 2 * MS;
+    private static final long MERGE_PER_RECORD_COST = 5 * US;
+    private static final long REPAINT_COST = 5 * MS;
+    // The cost estimates need a few flushes to converge.
+    private static final int WARM_UP_FLUSHES = 10;
+    private static final long MAX_FLUSH_COST = BatchingController.MAX_FLUSH_SLICE_NANOS * 11 / 10 + REPAINT_COST;
+
+    // The logs of all buffers of the dumpstate captured on Galaxy Nexus.
+    private static final String RECORDED_TRACE =
+            "org/bitbucket/mlopatkin/android/liblogcat/file/galaxy_nexus_jbmr2.minimized.dump";
+    private static final Pattern RECORD_TIME = Pattern.compile(
+            "^(\\d\\d)-(\\d\\d) (\\d\\d):(\\d\\d):(\\d\\d)\\.(\\d\\d\\d) ", Pattern.MULTILINE);
+
+    @Test
+    public void tooShortBudgetIsRaisedToMinimalDelay() {
+        BatchingController controller = new BatchingController(MS);
+
+        // The EDT cannot keep up, so the delay is the whole budget.
+        controller.onFlush(0, 0, 1000, 0);
+        controller.onFlush(SECOND, 1000000, 1000, SECOND);
+
+        assertEquals(BatchingController.MIN_FLUSH_DELAY_NANOS, controller.getFlushDelayNanos());
+    }
+
+    @Test
+    public void trickleIsShownAlmostImmediately() {
+        long[] arrivals = poisson(new Random(1), 0, 30 * SECOND, 5);
+
+        SimulationResult result = simulate(arrivals, MERGE_PER_RECORD_COST);
+
+        assertEquals(arrivals.length, result.delivered);
+        assertThat(result.maxLatency, lessThan(BatchingController.MIN_FLUSH_DELAY_NANOS + 10 * MS));
+    }
+
+    @Test
+    public void bootBurstKeepsEdtResponsive() {
+        long[] arrivals = poisson(new Random(2), 0, 5 * SECOND, 50000);
+
+        SimulationResult result = simulate(arrivals, MERGE_PER_RECORD_COST);
+
+        assertEquals(arrivals.length, result.delivered);
+        assertThat(result.edtShare(), lessThanOrEqualTo(BatchingController.TARGET_EDT_SHARE + 0.1));
+        assertThat(result.maxLatency, lessThanOrEqualTo(BUDGET + BatchingController.MAX_FLUSH_SLICE_NANOS));
+        assertThat(result.maxFlushCost, lessThanOrEqualTo(MAX_FLUSH_COST));
+    }
+
+    @Test
+    public void ratesChangesAreFollowed() {
+        Random random = new Random(3);
+        // Boot burst, then the idle device with the periodic bursts of the GC and the service restarts.
+        long[] boot = poisson(random, 0, 3 * SECOND, 20000);
+        long[] idle = poisson(random, 3 * SECOND, 20 * SECOND, 20);
+        List<long[]> parts = new ArrayList<>(Arrays.asList(boot, idle));
+        for (long start = 4 * SECOND; start < 20 * SECOND; start += 2 * SECOND) {
+            parts.add(poisson(random, start, start + 20 * MS, 100000));
+        }
+        long[] arrivals = concat(parts);
+
+        SimulationResult result = simulate(arrivals, MERGE_PER_RECORD_COST);
+
+        assertEquals(arrivals.length, result.delivered);
+        assertThat(result.maxLatency, lessThanOrEqualTo(BUDGET + BatchingController.MAX_FLUSH_SLICE_NANOS));
+        assertThat(result.edtShare(), lessThanOrEqualTo(BatchingController.TARGET_EDT_SHARE));
+    }
+
+    @Test
+    public void overloadedEdtStillDeliversAllRecordsInBoundedSlices() {
+        // The merge of the burst takes 1.5 times longer than the burst itself.
+        long[] arrivals = poisson(new Random(4), 0, 2 * SECOND, 50000);
+
+        SimulationResult result = simulate(arrivals, 30 * US);
+
+        assertEquals(arrivals.length, result.delivered);
+        // Once the estimates converge, flushes are short.
+        assertThat(result.maxFlushCost, lessThanOrEqualTo(MAX_FLUSH_COST));
+    }
+
+    @Test
+    public void recordedTraceIsReplayed() throws Exception {
+        long[] arrivals = readRecordedArrivals();
+
+        SimulationResult result = simulate(arrivals, MERGE_PER_RECORD_COST);
+
+        assertEquals(arrivals.length, result.delivered);
+        assertThat(result.maxLatency, lessThanOrEqualTo(BUDGET));
+        assertThat(result.edtShare(), lessThanOrEqualTo(BatchingController.TARGET_EDT_SHARE));
+    }
+
+    @Test
+    public void recordedTraceIsReplayedFaster() throws Exception {
+        // The idle periods of the device are shortened, so the bursts follow one another.
+        long[] arrivals = readRecordedArrivals();
+        long shift = 0;
+        for (int i = 1; i < arrivals.length; ++i) {
+            long gap = arrivals[i] - shift - arrivals[i - 1];
+            shift += Math.max(0, gap - 100 * MS);
+            arrivals[i] -= shift;
+        }
+
+        SimulationResult result = simulate(arrivals, MERGE_PER_RECORD_COST);
+
+        assertEquals(arrivals.length, result.delivered);
+        assertThat(result.maxLatency, lessThanOrEqualTo(BUDGET));
+        assertThat(result.edtShare(), lessThanOrEqualTo(BatchingController.TARGET_EDT_SHARE));
+    }
+
+    /**
+     * Reads the timestamps of the recorded log. The year isn't recorded, so the month is treated as 31 days long.
+     */
+    private static long[] readRecordedArrivals() throws IOException {
+        String content = Resources.toString(Resources.getResource(RECORDED_TRACE), StandardCharsets.UTF_8);
+        List<Long> times = new ArrayList<>();
+        Matcher m = RECORD_TIME.matcher(content);
+        while (m.find()) {
+            long days = Long.parseLong(m.group(1)) * 31 + Long.parseLong(m.group(2));
+            long seconds = ((days * 24 + Long.parseLong(m.group(3))) * 60 + Long.parseLong(m.group(4))) * 60
+                    + Long.parseLong(m.group(5));
+            times.add(seconds * SECOND + Long.parseLong(m.group(6)) * MS);
+        }
+        long[] result = new long[times.size()];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] = times.get(i);
+        }
+        Arrays.sort(result);
+        long start = result[0];
+        for (int i = 0; i < result.length; ++i) {
+            result[i] -= start;
+        }
+        return result;
+    }
+
+    private static long[] poisson(Random random, long from, long to, double recordsPerSecond) {
+        List<Long> result = new ArrayList<>();
+        double meanInterval = SECOND / recordsPerSecond;
+        for (double time = from; time < to; time += -Math.log(1 - random.nextDouble()) * meanInterval) {
+            result.add((long) time);
+        }
+        long[] array = new long[result.size()];
+        for (int i = 0; i < array.length; ++i) {
+            array[i] = result.get(i);
+        }
+        return array;
+    }
+
+    private static long[] concat(List<long[]> parts) {
+        long[] result = new long[0];
+        for (long[] part : parts) {
+            int offset = result.length;
+            result = Arrays.copyOf(result, offset + part.length);
+            System.arraycopy(part, 0, result, offset, part.length);
+        }
+        Arrays.sort(result);
+        return result;
+    }
+
+    /**
+     * Mimics the BufferedListener: the first record after the flush schedules the next flush with the current delay,
+     * the flush runs once the EDT is free and merges at most the max batch size of records.
+     */
+    private static SimulationResult simulate(long[] arrivals, long perRecordCost) {
+        BatchingController controller = new BatchingController(BUDGET);
+        SimulationResult result = new SimulationResult();
+        ArrayDeque<Long> queue = new ArrayDeque<>();
+        long edtFreeAt = 0;
+        long flushAt = Long.MAX_VALUE;
+        long arrivedSinceFlush = 0;
+        int next = 0;
+        while (next < arrivals.length || !queue.isEmpty()) {
+            if (next < arrivals.length && arrivals[next] < flushAt) {
+                long time = arrivals[next++];
+                queue.add(time);
+                ++arrivedSinceFlush;
+                if (flushAt == Long.MAX_VALUE) {
+                    flushAt = time + controller.getFlushDelayNanos();
+                }
+                continue;
+            }
+            long start = Math.max(flushAt, edtFreeAt);
+            // Records that arrive while the EDT is busy are in the queue at the time of the flush too.
+            while (next < arrivals.length && arrivals[next] <= start) {
+                queue.add(arrivals[next++]);
+                ++arrivedSinceFlush;
+            }
+            int batchSize = (int) Math.min(queue.size(), controller.getMaxBatchSize());
+            long mergeCost = MERGE_FIXED_COST + perRecordCost * batchSize;
+            long mergeEnd = start + mergeCost;
+            for (int i = 0; i < batchSize; ++i) {
+                result.maxLatency = Math.max(result.maxLatency, mergeEnd - queue.poll());
+            }
+            result.delivered += batchSize;
+            controller.onFlush(start, arrivedSinceFlush, batchSize, mergeCost);
+            controller.onEdtLatency(REPAINT_COST);
+            arrivedSinceFlush = 0;
+            edtFreeAt = mergeEnd + REPAINT_COST;
+            result.busyTime += mergeCost + REPAINT_COST;
+            if (++result.flushCount > WARM_UP_FLUSHES) {
+                result.maxFlushCost = Math.max(result.maxFlushCost, mergeCost + REPAINT_COST);
+            }
+            result.endTime = edtFreeAt;
+            flushAt = queue.isEmpty() ? Long.MAX_VALUE : start + controller.getFlushDelayNanos();
+        }
+        result.startTime = arrivals[0];
+        return result;
+    }
+
+    private static final class SimulationResult {
+        long delivered;
+        int flushCount;
+        long maxLatency;
+        long maxFlushCost;
+        long busyTime;
+        long startTime;
+        long endTime;
+
+        double edtShare() {
+            return (double) busyTime / (endTime - startTime);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+public class BufferedListenerTest {
+    private static final int PRODUCERS = 4;
+    private static final int RECORDS_PER_PRODUCER = 5000;
+    private static final long TIMEOUT_MS = 10000;
+
+    private final CollectingReceiver receiver = new CollectingReceiver();
+    private BufferedListener<Item> listener;
+
+    @After
+    public void tearDown() throws Exception {
+        if (listener != null) {
+            EventQueue.invokeAndWait(listener::stop);
+        }
+    }
+
+    @Test
+    public void recordsOfConcurrentProducersAreDelivered() throws Exception {
+        AutoScrollController scrollController = mock(AutoScrollController.class);
+        EventQueue.invokeAndWait(
+                () -> listener = new BufferedListener<>(receiver, scrollController, item -> item.producer));
+        LongAdder drained = new LongAdder();
+        listener.setDrainListener(drained::add);
+        ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+        CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < PRODUCERS; ++i) {
+            int producer = i;
+            producers.execute(() -> {
+                awaitUninterruptibly(start);
+                for (int seq = 0; seq < RECORDS_PER_PRODUCER; ++seq) {
+                    listener.addRecord(new Item(producer, seq));
+                }
+            });
+        }
+        start.countDown();
+        producers.shutdown();
+        assertTrue(producers.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (receivedCount() < PRODUCERS * RECORDS_PER_PRODUCER && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+
+        List<Item> received = receivedItems();
+        assertEquals(PRODUCERS * RECORDS_PER_PRODUCER, received.size());
+        int[] nextSeq = new int[PRODUCERS];
+        for (Item item : received) {
+            assertEquals(nextSeq[item.producer]++, item.seq);
+        }
+        BufferedListener<Item>.Metrics metrics = listener.getMetrics();
+        assertThat(metrics.getMergeCount(), greaterThan(0L));
+        assertThat(metrics.getMaxBatchSize(), greaterThan(0));
+        assertEquals(0, metrics.getQueueDepth());
+        assertEquals(PRODUCERS * RECORDS_PER_PRODUCER, drained.sum());
+    }
+
+    private int receivedCount() throws Exception {
+        return receivedItems().size();
+    }
+
+    private List<Item> receivedItems() throws Exception {
+        List<Item> result = new ArrayList<>();
+        EventQueue.invokeAndWait(() -> result.addAll(receiver.items));
+        return result;
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Items of the same producer are ordered by the sequence number, items of different producers are equal.
+     */
+    private static final class Item implements Comparable<Item> {
+        final int producer;
+        final int seq;
+
+        Item(int producer, int seq) {
+            this.producer = producer;
+            this.seq = seq;
+        }
+
+        @Override
+        public int compareTo(Item o) {
+            return producer == o.producer ? Integer.compare(seq, o.seq) : 0;
+        }
+    }
+
+    private static class CollectingReceiver implements BatchRecordsReceiver<Item> {
+        // Accessed on EDT only.
+        final List<Item> items = new ArrayList<>();
+
+        @Override
+        public void addRecord(Item record) {
+            items.add(record);
+        }
+
+        @Override
+        public void addRecords(List<Item> records) {
+            items.addAll(records);
+        }
+
+        @Override
+        public void appendRecords(List<Item> records) {
+            items.addAll(records);
+        }
+
+        @Override
+        public void setRecords(List<Item> records) {
+            items.clear();
+            items.addAll(records);
+        }
+    }
+}
@@ -16,28 +16,46 @@
 
 package org.bitbucket.mlopatkin.android.logviewer.bookmarks;
 
-import org.bitbucket.mlopatkin.android.logviewer.test.TestData;
+import com.google.common.collect.ImmutableMap;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogRecordTableModel;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.RetentionPolicy;
 import org.junit.Before;
 import org.junit.Test;
 import org.mockito.Mock;
 import org.mockito.MockitoAnnotations;
 
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 
 public class BookmarkModelTest {
 
+    private LogRecordTableModel tableModel;
     private BookmarkModel model;
 
     @Mock
     private BookmarkModel.Observer observer;
 
     @Before
-    public void setUp() {
-        model = new BookmarkModel();
+    public void setUp() throws Exception {
         MockitoAnnotations.initMocks(this);
+        onEdt(() -> {
+            tableModel = new LogRecordTableModel();
+            tableModel.addRecords(createRecords(0, 10));
+            model = new BookmarkModel(tableModel);
+        });
     }
 
     @Test
@@ -46,46 +64,185 @@ public class BookmarkModelTest {
     }
 
     @Test
-    public void testContainsRecord() throws Exception {
-        model.addRecord(TestData.RECORD1);
+    public void testContainsRow() throws Exception {
+        onEdt(() -> model.addRow(1));
 
-        assertTrue(model.containsRecord(TestData.RECORD1));
-        assertFalse(model.containsRecord(TestData.RECORD2));
+        assertTrue(model.containsRow(1));
+        assertFalse(model.containsRow(2));
     }
 
     @Test
-    public void testAddRecord() throws Exception {
-        model.asObservable().addObserver(observer);
+    public void testAddRow() throws Exception {
+        onEdt(() -> {
+            model.asObservable().addObserver(observer);
 
-        model.addRecord(TestData.RECORD1);
+            model.addRow(1);
+        });
 
-        assertTrue(model.containsRecord(TestData.RECORD1));
+        assertTrue(model.containsRow(1));
         verify(observer).onBookmarkAdded();
     }
 
     @Test
-    public void testRemoveRecord() throws Exception {
-        model.addRecord(TestData.RECORD1);
-        model.addRecord(TestData.RECORD2);
+    public void testRemoveRow() throws Exception {
+        onEdt(() -> {
+            model.addRow(1);
+            model.addRow(2);
 
-        model.asObservable().addObserver(observer);
-        model.removeRecord(TestData.RECORD1);
+            model.asObservable().addObserver(observer);
+            model.removeRow(1);
+        });
 
-        assertFalse(model.containsRecord(TestData.RECORD1));
-        assertTrue(model.containsRecord(TestData.RECORD2));
+        assertFalse(model.containsRow(1));
+        assertTrue(model.containsRow(2));
         verify(observer).onBookmarkRemoved();
     }
 
+    @Test
+    public void testRemoveRowWithoutBookmarkDoesNotNotify() throws Exception {
+        onEdt(() -> {
+            model.addRow(2);
+            model.asObservable().addObserver(observer);
+
+            model.removeRow(1);
+        });
+
+        assertTrue(model.containsRow(2));
+        verify(observer, never()).onBookmarkRemoved();
+    }
+
     @Test
     public void testClear() throws Exception {
-        model.addRecord(TestData.RECORD1);
-        model.addRecord(TestData.RECORD2);
-        model.asObservable().addObserver(observer);
+        onEdt(() -> {
+            model.addRow(1);
+            model.addRow(2);
+            model.asObservable().addObserver(observer);
 
-        model.clear();
+            model.clear();
+        });
 
         verify(observer).onBookmarkRemoved();
-        assertFalse(model.containsRecord(TestData.RECORD1));
-        assertFalse(model.containsRecord(TestData.RECORD2));
+        assertFalse(model.containsRow(1));
+        assertFalse(model.containsRow(2));
+    }
+
+    @Test
+    public void bookmarksFollowMergedRows() throws Exception {
+        onEdt(() -> {
+            model.addRow(3);
+            model.addRow(8);
+
+            // The late record is merged before the bookmarked ones.
+            tableModel.addRecord(createRecord(1));
+        });
+
+        assertArrayEquals(new int[] {4, 9}, model.getRows().toArray());
+    }
+
+    @Test
+    public void bookmarksFollowBatchMergedRows() throws Exception {
+        onEdt(() -> {
+            model.addRow(0);
+            model.addRow(5);
+            model.addRow(9);
+            model.asObservable().addObserver(observer);
+
+            // The batch is merged at once, so the shifted rows are reported as updated.
+            List<LogRecord> batch = new ArrayList<>();
+            batch.add(createRecord(1, "late"));
+            batch.add(createRecord(5, "late"));
+            batch.add(createRecord(12));
+            tableModel.addRecords(batch);
+        });
+        onEdt(() -> { });
+
+        assertArrayEquals(new int[] {0, 6, 11}, model.getRows().toArray());
+        assertEquals("message 0", tableModel.getRowData(0).getMessage());
+        assertEquals("message 5", tableModel.getRowData(6).getMessage());
+        assertEquals("message 9", tableModel.getRowData(11).getMessage());
+        verify(observer).onBookmarkAdded();
+    }
+
+    @Test
+    public void updatedRowsKeepBookmarks() throws Exception {
+        onEdt(() -> {
+            model.addRow(5);
+            model.asObservable().addObserver(observer);
+
+            tableModel.addRecord(createRecord(15));
+            tableModel.backfillAppNames(ImmutableMap.of(1, "resolved"), "app");
+        });
+        onEdt(() -> { });
+
+        assertArrayEquals(new int[] {5}, model.getRows().toArray());
+        verify(observer, never()).onBookmarkAdded();
+        verify(observer, never()).onBookmarkRemoved();
+    }
+
+    @Test
+    public void evictedBookmarksAreRemoved() throws Exception {
+        onEdt(() -> {
+            tableModel.setRetentionPolicy(new RetentionPolicy(10, 0, 0));
+            model.addRow(2);
+            model.addRow(7);
+            model.asObservable().addObserver(observer);
+
+            tableModel.addRecords(createRecords(10, 15));
+        });
+        onEdt(() -> { });
+
+        assertArrayEquals(new int[] {2}, model.getRows().toArray());
+        verify(observer).onBookmarkRemoved();
+    }
+
+    @Test
+    public void bookmarksSurviveReload() throws Exception {
+        onEdt(() -> {
+            model.addRow(3);
+            model.addRow(5);
+            model.asObservable().addObserver(observer);
+
+            tableModel.clear();
+            // The records are parsed again, so they are the new instances.
+            tableModel.setRecords(createRecords(0, 10));
+        });
+        onEdt(() -> { });
+
+        assertArrayEquals(new int[] {3, 5}, model.getRows().toArray());
+        verify(observer).onBookmarkRemoved();
+        verify(observer).onBookmarkAdded();
+    }
+
+    @Test
+    public void clearForgetsBookmarksOfDroppedRows() throws Exception {
+        onEdt(() -> {
+            model.addRow(3);
+            tableModel.clear();
+            model.clear();
+
+            tableModel.addRecords(createRecords(0, 10));
+        });
+
+        assertTrue(model.getRows().isEmpty());
+    }
+
+    private static void onEdt(Runnable runnable) throws Exception {
+        EventQueue.invokeAndWait(runnable);
+    }
+
+    private static List<LogRecord> createRecords(long from, long to) {
+        List<LogRecord> result = new ArrayList<>();
+        for (long i = from; i < to; ++i) {
+            result.add(createRecord(i));
+        }
+        return result;
+    }
+
+    private static LogRecord createRecord(long time) {
+        return createRecord(time, "message " + time);
+    }
+
+    private static LogRecord createRecord(long time, String message) {
+        return new LogRecord(time, 1, 1, "app", Priority.INFO, "tag", message, Buffer.MAIN);
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.filters;
+
+import com.google.common.base.Predicate;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.android.logviewer.ui.filterdialog.FilterFromDialog;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilterPlanTest {
+    private static final String[] TAGS = {"ActivityManager", "dalvikvm", "Tag", "/Act.*/", "/^d/"};
+    private static final String[] APPS = {"system_server", "com.android.phone", "/com\\..*/"};
+    private static final String[] MESSAGES = {"gc", "Start proc", "ACTIVITY", "/\\d{3}/", "/^Start/", "proc"};
+    private static final int[] PIDS = {1, 42, 100};
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void emptyPlanMatchesNothing() {
+        assertEquals(-1, FilterPlan.compile(Collections.emptyList()).findFirstMatch(createRecord()));
+    }
+
+    @Test
+    public void equalTagTestsAreEvaluatedOncePerTag() {
+        AtomicInteger calls = new AtomicInteger();
+        Predicate<String> tagMatcher = tag -> {
+            calls.incrementAndGet();
+            return tag.startsWith("A");
+        };
+        FilterPlan plan = FilterPlan.compile(Arrays.asList(
+                compilable(FieldFilter.builder().setTagMatcher("A*", tagMatcher).setMinPriority(Priority.ERROR)),
+                compilable(FieldFilter.builder().setTagMatcher("A*", tagMatcher).setPids(Arrays.asList(1, 2))),
+                compilable(FieldFilter.builder().setTagMatcher("A*", tagMatcher))));
+
+        SymbolTable symbols = new SymbolTable();
+        assertEquals(1, plan.findFirstMatch(new LogRecord(symbols, 0, 1, 1, "app", Priority.INFO, "ATag", "",
+                                                          Buffer.MAIN)));
+        assertEquals(2, plan.findFirstMatch(new LogRecord(symbols, 0, 3, 1, "app", Priority.INFO, "ATag", "",
+                                                          Buffer.MAIN)));
+        assertEquals(0, plan.findFirstMatch(new LogRecord(symbols, 0, 3, 1, "app", Priority.FATAL, "ATag", "",
+                                                          Buffer.MAIN)));
+        assertEquals(-1, plan.findFirstMatch(new LogRecord(symbols, 0, 1, 1, "app", Priority.FATAL, "BTag", "",
+                                                           Buffer.MAIN)));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    public void tagsOfNewSymbolTableAreTested() {
+        FilterPlan plan = FilterPlan.compile(Collections.singletonList(
+                compilable(FieldFilter.builder().setTagMatcher("A*", tag -> tag.startsWith("A")))));
+        LogRecord first = new LogRecord(new SymbolTable(), 0, 1, 1, "app", Priority.INFO, "ATag", "", Buffer.MAIN);
+        assertEquals(0, plan.findFirstMatch(first));
+
+        // The ids of the new table start from scratch, so the cached masks must not be reused.
+        LogRecord other = new LogRecord(new SymbolTable(), 0, 1, 1, "app", Priority.INFO, "BTag", "", Buffer.MAIN);
+
+        assertEquals(-1, plan.findFirstMatch(other));
+        assertEquals(0, plan.findFirstMatch(first));
+    }
+
+    @Test
+    public void opaqueFiltersAreApplied() {
+        FilterPlan plan = FilterPlan.compile(Arrays.<Predicate<LogRecord>>asList(
+                record -> record.getPid() == 2,
+                compilable(FieldFilter.builder().setMinPriority(Priority.WARN))));
+
+        assertEquals(0, plan.findFirstMatch(new LogRecord(0, 2, 1, "app", Priority.ERROR, "tag", "", Buffer.MAIN)));
+        assertEquals(1, plan.findFirstMatch(new LogRecord(0, 3, 1, "app", Priority.ERROR, "tag", "", Buffer.MAIN)));
+        assertFalse(plan.matchesAny(new LogRecord(0, 3, 1, "app", Priority.INFO, "tag", "", Buffer.MAIN)));
+        assertTrue(plan.matchesAny(new LogRecord(0, 2, 1, "app", Priority.INFO, "tag", "", Buffer.MAIN)));
+    }
+
+    @Test
+    public void planMatchesSameFiltersAsFiltersThemselves() throws Exception {
+        List<LogRecord> records = new ArrayList<>();
+        for (int i = 0; i < 500; ++i) {
+            records.add(createRecord());
+        }
+        for (int iteration = 0; iteration < 50; ++iteration) {
+            // More than 64 filters use several words of the bitmaps.
+            int filterCount = random.nextInt(iteration % 5 == 0 ? 150 : 10);
+            List<Predicate<LogRecord>> filters = new ArrayList<>();
+            for (int i = 0; i < filterCount; ++i) {
+                filters.add(createFilter());
+            }
+            FilterPlan plan = FilterPlan.compile(filters);
+
+            for (LogRecord record : records) {
+                assertEquals(record.toString(), findFirstMatch(filters, record), plan.findFirstMatch(record));
+            }
+        }
+    }
+
+    private static int findFirstMatch(List<Predicate<LogRecord>> filters, LogRecord record) {
+        for (int i = 0; i < filters.size(); ++i) {
+            if (filters.get(i).apply(record)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private LogRecord createRecord() {
+        String message = pick(new String[] {"GC freed 123 objects", "Start proc com.android.phone", "activity idle",
+                "nothing", "gc", "proc 42"});
+        return new LogRecord(0, PIDS[random.nextInt(PIDS.length)] + random.nextInt(2), 1,
+                             pick(new String[] {"system_server", "com.android.phone", "com.example", ""}),
+                             Priority.values()[random.nextInt(Priority.values().length)],
+                             pick(new String[] {"ActivityManager", "dalvikvm", "tag", "Other"}), message,
+                             Buffer.MAIN);
+    }
+
+    private Predicate<LogRecord> createFilter() throws Exception {
+        if (random.nextInt(10) == 0) {
+            Priority priority = Priority.values()[random.nextInt(Priority.values().length)];
+            return record -> record.getPriority() == priority;
+        }
+        FilterFromDialog filter = new FilterFromDialog();
+        filter.setMode(FilteringMode.SHOW);
+        if (random.nextBoolean()) {
+            filter.setTags(pickSome(TAGS));
+        }
+        if (random.nextInt(3) == 0) {
+            filter.setApps(pickSome(APPS));
+        }
+        if (random.nextInt(3) == 0) {
+            List<Integer> pids = new ArrayList<>();
+            pids.add(PIDS[random.nextInt(PIDS.length)]);
+            filter.setPids(pids);
+        }
+        if (random.nextBoolean()) {
+            filter.setMessagePattern(pick(MESSAGES));
+        }
+        if (random.nextBoolean()) {
+            filter.setPriority(Priority.values()[random.nextInt(Priority.values().length)]);
+        }
+        filter.initialize();
+        return filter;
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private List<String> pickSome(String[] values) {
+        List<String> result = new ArrayList<>();
+        for (int i = 0; i <= random.nextInt(2); ++i) {
+            result.add(pick(values));
+        }
+        return result;
+    }
+
+    private static CompilableFilter compilable(FieldFilter.Builder builder) {
+        FieldFilter fieldFilter = builder.build();
+        return new CompilableFilter() {
+            @Override
+            public FieldFilter getFieldFilter() {
+                return fieldFilter;
+            }
+
+            @Override
+            public boolean apply(@Nullable LogRecord input) {
+                return fieldFilter.apply(input);
+            }
+        };
+    }
+}
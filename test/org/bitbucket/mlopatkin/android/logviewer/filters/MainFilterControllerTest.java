@@ -30,6 +30,7 @@ import org.bitbucket.mlopatkin.android.logviewer.ui.filterdialog.FilterFromDialo
 import org.bitbucket.mlopatkin.android.logviewer.ui.filterpanel.FilterPanelModel;
 import org.bitbucket.mlopatkin.android.logviewer.ui.filterpanel.PanelFilter;
 import org.bitbucket.mlopatkin.android.logviewer.ui.indexfilter.IndexFilterCollection;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogModelFilter.VisibilityChange;
 import org.bitbucket.mlopatkin.utils.events.Observable;
 import org.junit.Before;
 import org.junit.Ignore;
@@ -42,6 +43,8 @@ import org.mockito.Mockito;
 import org.mockito.MockitoAnnotations;
 
 import java.awt.Color;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -178,6 +181,28 @@ public class MainFilterControllerTest {
         assertEquals(Color.BLACK, filterImpl.getHighlightColor(RECORD2));
     }
 
+    @Test
+    public void testVisibilityChangesOfShowAndHideFilters() throws Exception {
+        mockStorage = new FakeDefaultConfigStorage();
+        MainFilterController controller =
+                new MainFilterController(filterPanelModel, indexFilterCollection, dialogFactory, mockStorage,
+                                         filterImpl);
+        List<VisibilityChange> changes = new ArrayList<>();
+        filterImpl.asObservable().addObserver(changes::add);
+        order = inOrder(dialogFactory, filterPanelModel);
+
+        PanelFilter firstShow = createFilterWithDialog(controller, createMockFilter(FilteringMode.SHOW, MATCH_FIRST));
+        createFilterWithDialog(controller, createMockFilter(FilteringMode.SHOW, MATCH_ALL));
+        PanelFilter hide = createFilterWithDialog(controller, createMockFilter(FilteringMode.HIDE, MATCH_FIRST));
+        createFilterWithDialog(controller, createColoringFilter(Color.BLACK, MATCH_ALL));
+        hide.setEnabled(false);
+        firstShow.delete();
+
+        assertEquals(Arrays.asList(VisibilityChange.NARROWED, VisibilityChange.WIDENED, VisibilityChange.NARROWED,
+                                   VisibilityChange.NONE, VisibilityChange.WIDENED, VisibilityChange.NARROWED),
+                     changes);
+    }
+
     private PanelFilter createFilterWithDialog(MainFilterController controller, FilterFromDialog dialogResult) {
         controller.createFilterWithDialog();
         order.verify(dialogFactory).startCreateFilterDialog(createResultReceiver.capture());
@@ -0,0 +1,394 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Strings;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.liblogcat.SymbolTable;
+import org.bitbucket.mlopatkin.utils.MyListUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ColumnarRecordListTest {
+    private final Random random = new Random(42);
+
+    @Test
+    public void fieldsAreStored() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        LogRecord record = new LogRecord(1234L, 1, 2, "app", Priority.WARN, "tag", "message", Buffer.RADIO);
+        list.add(record);
+
+        assertEquals(describe(record), describe(list.get(0)));
+    }
+
+    @Test
+    public void nullFieldsAreStored() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        LogRecord record = new LogRecord(LogRecord.NO_TIME, LogRecord.NO_ID, LogRecord.NO_ID, null, null, null, null,
+                                         null);
+        list.add(record);
+
+        LogRecord actual = list.get(0);
+
+        assertNull(actual.getTime());
+        assertNull(actual.getPriority());
+        assertNull(actual.getTag());
+        assertNull(actual.getMessage());
+        assertNull(actual.getBuffer());
+        assertEquals("", actual.getAppName());
+    }
+
+    @Test
+    public void columnValuesAreReadWithoutRecords() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        LogRecord record = new LogRecord(1234L, 1, 2, " app ", Priority.WARN, "tag", "message", Buffer.RADIO);
+        LogRecord empty = new LogRecord(LogRecord.NO_TIME, LogRecord.NO_ID, LogRecord.NO_ID, null, null, null, null,
+                                        null);
+        list.add(record);
+        list.add(empty);
+
+        for (Column column : Column.values()) {
+            assertEquals(column.getValue(10, record), list.getValue(0, 10, column));
+            assertEquals(column.getValue(11, empty), list.getValue(1, 11, column));
+        }
+    }
+
+    @Test
+    public void materializedRecordsKeepSymbols() {
+        SymbolTable symbols = new SymbolTable();
+        ColumnarRecordList list = new ColumnarRecordList(symbols);
+        LogRecord record = new LogRecord(symbols, 1234L, 1, 2, "app", Priority.WARN, "tag", "message", Buffer.RADIO);
+        list.add(record);
+
+        LogRecord actual = list.get(0);
+
+        assertSame(record.getTag(), actual.getTag());
+        assertEquals(record.getTagId(), actual.getTagId());
+        assertSame(record.getAppName(), actual.getAppName());
+        assertEquals(record.getAppNameId(), actual.getAppNameId());
+    }
+
+    @Test
+    public void longMessagesAreStored() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        for (int i = 0; i < 100; ++i) {
+            list.add(createRecord(i, Strings.repeat(Integer.toString(i), 1 << (i % 19))));
+        }
+        for (int i = 0; i < 100; ++i) {
+            assertEquals(Strings.repeat(Integer.toString(i), 1 << (i % 19)), list.get(i).getMessage());
+        }
+    }
+
+    @Test
+    public void sameInstanceIsReturnedWhileReferenced() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        list.add(createRecord(1, "first"));
+        LogRecord record = list.get(0);
+        list.add(0, createRecord(0, "zero"));
+        list.add(createRecord(2, "second"));
+
+        assertSame(record, list.get(1));
+    }
+
+    @Test
+    public void mergeOrderedMatchesListUtils() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        List<LogRecord> expected = new ArrayList<>();
+        for (int batch = 0; batch < 200; ++batch) {
+            List<LogRecord> newRecords = createSortedBatch(batch);
+
+            int expectedFirst = MyListUtils.mergeOrdered(expected, newRecords);
+            int actualFirst = list.mergeOrdered(newRecords);
+
+            assertEquals(expectedFirst, actualFirst);
+            assertEquals(describe(expected), describe(list));
+        }
+    }
+
+    @Test
+    public void upperBoundMatchesListUtils() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        List<LogRecord> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; ++i) {
+            LogRecord record = createRandomRecord(i);
+
+            int expectedPos = MyListUtils.getUpperBoundPos(expected, record);
+            int actualPos = list.getUpperBoundPos(record);
+            assertEquals(expectedPos, actualPos);
+
+            expected.add(expectedPos, record);
+            list.add(actualPos, record);
+        }
+        assertEquals(describe(expected), describe(list));
+    }
+
+    @Test
+    public void rowsAreRemoved() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        List<LogRecord> expected = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            LogRecord record = createRecord(i, "message " + i);
+            list.add(record);
+            expected.add(record);
+        }
+
+        list.subList(10, 20).clear();
+        expected.subList(10, 20).clear();
+        assertEquals(describe(expected.remove(0)), describe(list.remove(0)));
+
+        assertEquals(describe(expected), describe(list));
+    }
+
+    @Test
+    public void oldestRowsAreRemovedInSlidingWindow() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        List<LogRecord> expected = new ArrayList<>();
+        for (int batch = 0; batch < 300; ++batch) {
+            List<LogRecord> newRecords = createSortedBatch(batch);
+            MyListUtils.mergeOrdered(expected, newRecords);
+            list.mergeOrdered(newRecords);
+
+            int excess = Math.max(0, list.size() - 500);
+            list.removeFirst(excess);
+            expected.subList(0, excess).clear();
+
+            assertEquals(describe(expected), describe(list));
+        }
+    }
+
+    @Test
+    public void removeFirstReturnsReferencedRecords() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        for (int i = 0; i < 10; ++i) {
+            list.add(createRecord(i, "message " + i));
+        }
+        LogRecord referenced = list.get(3);
+        LogRecord kept = list.get(5);
+
+        List<LogRecord> removed = list.removeFirst(5);
+
+        assertEquals(1, removed.size());
+        assertSame(referenced, removed.get(0));
+        assertSame(kept, list.get(0));
+        assertEquals(5, list.size());
+    }
+
+    @Test
+    public void estimatedBytesFollowRemoval() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        list.add(createRecord(1, "short"));
+        long oneRecordBytes = list.getEstimatedBytes();
+        list.add(createRecord(2, Strings.repeat("long", 1 << 18)));
+        list.add(createRecord(3, "short"));
+
+        list.removeFirst(2);
+
+        assertEquals(oneRecordBytes, list.getEstimatedBytes());
+        assertEquals(oneRecordBytes, list.getEstimatedBytes(0));
+        assertEquals("short", list.get(0).getMessage());
+    }
+
+    @Test
+    public void spilledMessagesAreReadBack() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        list.enableSpilling(0);
+        try {
+            List<String> expected = new ArrayList<>();
+            for (int i = 0; i < 30; ++i) {
+                // Every long message fills its own page, short ones share the page.
+                String message = i % 3 == 0 ? Strings.repeat(Integer.toString(i), 1 << 18) : "message " + i;
+                list.add(createRecord(i, message));
+                expected.add(message);
+            }
+
+            assertTrue(list.getSpilledBytes() > 0);
+            for (int i = expected.size() - 1; i >= 0; --i) {
+                assertEquals(expected.get(i), list.get(i).getMessage());
+            }
+        } finally {
+            list.close();
+        }
+    }
+
+    @Test
+    public void evictedSpilledRowsAreRemoved() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        list.enableSpilling(0);
+        try {
+            for (int i = 0; i < 10; ++i) {
+                list.add(createRecord(i, Strings.repeat(Integer.toString(i), 1 << 18)));
+            }
+
+            list.removeFirst(5);
+
+            assertEquals(5, list.size());
+            assertEquals(Strings.repeat("5", 1 << 18), list.get(0).getMessage());
+        } finally {
+            list.close();
+        }
+    }
+
+    @Test
+    public void snapshotIsNotAffectedByChanges() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        List<LogRecord> expected = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            LogRecord record = createRandomRecord(i);
+            list.add(record);
+            expected.add(record);
+        }
+
+        ColumnarRecordList.Snapshot all = list.snapshot(null);
+        ColumnarRecordList.Snapshot some = list.snapshot(new int[] {7, 2});
+        list.removeFirst(3);
+        list.add(0, createRecord(0, "inserted"));
+        list.clear();
+
+        assertEquals(expected.size(), all.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(describe(expected.get(i)), describe(all.get(i)));
+        }
+        assertEquals(2, some.size());
+        assertEquals(describe(expected.get(7)), describe(some.get(0)));
+        assertEquals(describe(expected.get(2)), describe(some.get(1)));
+    }
+
+    @Test
+    public void snapshotReadsSpilledMessages() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        list.enableSpilling(0);
+        try {
+            for (int i = 0; i < 10; ++i) {
+                list.add(createRecord(i, Strings.repeat(Integer.toString(i), 1 << 18)));
+            }
+            ColumnarRecordList.Snapshot snapshot = list.snapshot(null);
+            list.removeFirst(5);
+
+            assertTrue(list.getSpilledBytes() > 0);
+            for (int i = 0; i < 10; ++i) {
+                assertEquals(Strings.repeat(Integer.toString(i), 1 << 18), snapshot.get(i).getMessage());
+            }
+        } finally {
+            list.close();
+        }
+    }
+
+    @Test
+    public void uninternedStringsAreDroppedWithTheirRows() {
+        // The table is full after the first symbol.
+        ColumnarRecordList list = new ColumnarRecordList(new SymbolTable(1));
+        for (int i = 0; i < 5000; ++i) {
+            list.add(new LogRecord(i, 1, 1, "app", Priority.INFO, "tag" + i, "message", Buffer.MAIN));
+            if (list.size() > 100) {
+                list.removeFirst(list.size() - 100);
+            }
+        }
+
+        assertTrue(list.getUninternedStringCount() <= 2048);
+        for (int i = 0; i < list.size(); ++i) {
+            assertEquals("tag" + (4900 + i), list.get(i).getTag());
+            assertEquals("app", list.get(i).getAppName());
+        }
+    }
+
+    @Test
+    public void spilledBytesAreReclaimedWithEvictedRows() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        list.enableSpilling(0);
+        try {
+            // Four messages fill the page, 100 messages don't fit into a single segment file.
+            for (int i = 0; i < 100; ++i) {
+                list.add(createRecord(i, Strings.repeat(Integer.toString(i % 10), 1 << 18)));
+                if (list.size() > 8) {
+                    list.removeFirst(list.size() - 8);
+                }
+            }
+
+            assertTrue(list.getSpilledBytes() > 0);
+            assertTrue(list.getSpilledBytes() < 16L << 20);
+            for (int i = 0; i < list.size(); ++i) {
+                assertEquals(Strings.repeat(Integer.toString((92 + i) % 10), 1 << 18), list.get(i).getMessage());
+            }
+            list.removeFirst(list.size());
+            assertEquals(0, list.getSpilledBytes());
+        } finally {
+            list.close();
+        }
+    }
+
+    @Test
+    public void unknownAppNamesAreReplaced() {
+        ColumnarRecordList list = new ColumnarRecordList();
+        list.add(new LogRecord(1, 10, 10, "unknown", Priority.INFO, "tag", "first", Buffer.MAIN));
+        list.add(new LogRecord(2, 20, 20, "unknown", Priority.INFO, "tag", "second", Buffer.MAIN));
+        list.add(new LogRecord(3, 10, 10, "known", Priority.INFO, "tag", "third", Buffer.MAIN));
+        list.add(new LogRecord(4, 10, 10, "unknown", Priority.INFO, "tag", "fourth", Buffer.MAIN));
+        LogRecord referenced = list.get(3);
+
+        int firstUpdated = list.replaceAppNames(Collections.singletonMap(10, "resolved"), "unknown", 100);
+
+        assertEquals(0, firstUpdated);
+        assertEquals("resolved", list.get(0).getAppName());
+        assertEquals("unknown", list.get(1).getAppName());
+        assertEquals("known", list.get(2).getAppName());
+        assertSame(referenced, list.get(3));
+    }
+
+    private List<LogRecord> createSortedBatch(int batch) {
+        List<LogRecord> result = new ArrayList<>();
+        int count = random.nextInt(20);
+        for (int i = 0; i < count; ++i) {
+            result.add(createRandomRecord(batch * 100 + i));
+        }
+        Collections.sort(result);
+        return result;
+    }
+
+    private LogRecord createRandomRecord(int id) {
+        // Small time range produces a lot of equal timestamps.
+        return new LogRecord(random.nextInt(50), id, id, "app" + id % 3, Priority.values()[id % 6],
+                             "tag" + id % 7, "message " + id, Buffer.values()[random.nextInt(3)]);
+    }
+
+    private static LogRecord createRecord(long time, String message) {
+        return new LogRecord(time, 1, 1, "app", Priority.INFO, "tag", message, Buffer.MAIN);
+    }
+
+    private static List<String> describe(List<LogRecord> records) {
+        List<String> result = new ArrayList<>(records.size());
+        for (LogRecord record : records) {
+            result.add(describe(record));
+        }
+        return result;
+    }
+
+    private static String describe(LogRecord record) {
+        return record.getBuffer() + " " + record.getAppName() + " " + record;
+    }
+}
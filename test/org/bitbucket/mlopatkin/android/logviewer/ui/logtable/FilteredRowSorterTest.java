@@ -0,0 +1,411 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Predicate;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.android.logviewer.ui.logtable.LogModelFilter.VisibilityChange;
+import org.bitbucket.mlopatkin.utils.PositionBitmap;
+import org.bitbucket.mlopatkin.utils.events.Observable;
+import org.bitbucket.mlopatkin.utils.events.Subject;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongPredicate;
+
+import javax.annotation.Nullable;
+import javax.swing.JTable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class FilteredRowSorterTest {
+    private static final int BACKGROUND_THRESHOLD = 10;
+
+    private final LogRecordTableModel model = new LogRecordTableModel();
+    private final CountingFilter filter = new CountingFilter();
+    private final Queue<Runnable> executor = new ConcurrentLinkedQueue<>();
+    private RowStateCache rowStates;
+    private FilteredRowSorter sorter;
+
+    @Test
+    public void appendedRowsAreTestedOnce() throws Exception {
+        filter.predicate = time -> time % 2 == 0;
+        onEdt(() -> {
+            createTable();
+            model.addRecords(createRecords(0, 100));
+            model.addRecords(createRecords(100, 150));
+        });
+
+        assertEquals(150, filter.calls.get());
+        assertMatchesFilter();
+    }
+
+    @Test
+    public void mergedRowsAreFiltered() throws Exception {
+        filter.predicate = time -> time % 3 != 0;
+        onEdt(() -> {
+            createTable();
+            model.addRecords(createRecords(0, 100, 2));
+            model.addRecords(createRecords(51, 100, 2));
+            model.addRecord(createRecord(7));
+        });
+
+        assertMatchesFilter();
+    }
+
+    @Test
+    public void evictedRowsAreRemoved() throws Exception {
+        filter.predicate = time -> time % 4 == 1;
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(50, 0, 0));
+            createTable();
+            for (int i = 0; i < 10; ++i) {
+                model.addRecords(createRecords(i * 30, (i + 1) * 30));
+            }
+        });
+
+        assertEquals(50, model.getRowCount());
+        assertMatchesFilter();
+    }
+
+    @Test
+    public void narrowingTestsOnlyShownRows() throws Exception {
+        filter.predicate = time -> time % 2 == 0;
+        onEdt(() -> {
+            createTable();
+            model.addRecords(createRecords(0, 100));
+            filter.calls.set(0);
+            filter.predicate = time -> time % 4 == 0;
+            changeFilter(VisibilityChange.NARROWED);
+        });
+
+        assertEquals(50, filter.calls.get());
+        assertMatchesFilter();
+    }
+
+    @Test
+    public void wideningTestsOnlyHiddenRows() throws Exception {
+        filter.predicate = time -> time % 4 == 0;
+        onEdt(() -> {
+            createTable();
+            model.addRecords(createRecords(0, 100));
+            filter.calls.set(0);
+            filter.predicate = time -> time % 2 == 0;
+            changeFilter(VisibilityChange.WIDENED);
+        });
+
+        assertEquals(75, filter.calls.get());
+        assertMatchesFilter();
+    }
+
+    @Test
+    public void appearanceChangeDoesNotTestRows() throws Exception {
+        onEdt(() -> {
+            createTable();
+            model.addRecords(createRecords(0, 100));
+            filter.calls.set(0);
+            changeFilter(VisibilityChange.NONE);
+        });
+
+        assertEquals(0, filter.calls.get());
+    }
+
+    @Test
+    public void randomChangesKeepMappingConsistent() throws Exception {
+        Random random = new Random(42);
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(500, 0, 0));
+            createTable();
+            long time = 0;
+            int modulus = 2;
+            filter.predicate = t -> t % 2 == 0;
+            for (int step = 0; step < 300; ++step) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        int count = random.nextInt(50);
+                        model.addRecords(createRecords(time, time + count));
+                        time += count;
+                        break;
+                    case 1:
+                        // Late records are merged into the middle.
+                        model.addRecord(createRecord(Math.max(0, time - random.nextInt(100))));
+                        break;
+                    case 2:
+                        // Multiples of the larger power of two are a subset.
+                        modulus = modulus * 2;
+                        filter.predicate = createModulusFilter(modulus);
+                        changeFilter(VisibilityChange.NARROWED);
+                        break;
+                    default:
+                        modulus = Math.max(1, modulus / 2);
+                        filter.predicate = createModulusFilter(modulus);
+                        changeFilter(VisibilityChange.WIDENED);
+                        break;
+                }
+                assertMatchesFilter();
+            }
+        });
+    }
+
+    @Test
+    public void rowMaskLimitsTestedRows() throws Exception {
+        filter.predicate = time -> time % 2 == 0;
+        filter.rowMask = new PositionBitmap();
+        filter.rowMask.set(4);
+        filter.rowMask.set(5);
+        filter.rowMask.set(60);
+        onEdt(() -> {
+            createTable();
+            model.setRecords(createRecords(0, 100));
+        });
+
+        assertEquals(3, filter.calls.get());
+        assertMatchesFilter();
+    }
+
+    @Test
+    public void backgroundEvaluationKeepsOldRowsUntilFinished() throws Exception {
+        filter.predicate = time -> time % 2 == 0;
+        onEdt(() -> {
+            createTable(BACKGROUND_THRESHOLD);
+            model.addRecords(createRecords(0, 100));
+            filter.predicate = time -> time % 4 == 0;
+            changeFilter(VisibilityChange.NARROWED);
+        });
+
+        onEdt(() -> {
+            assertTrue(sorter.isEvaluating());
+            assertEquals(50, sorter.getViewRowCount());
+        });
+        finishEvaluation();
+        onEdt(() -> {
+            assertFalse(sorter.isEvaluating());
+            assertMatchesFilter();
+        });
+    }
+
+    @Test
+    public void backgroundEvaluationOfReadOnlyRecords() throws Exception {
+        filter.predicate = time -> time % 3 == 0;
+        onEdt(() -> {
+            createTable(BACKGROUND_THRESHOLD);
+            model.setRecords(createRecords(0, 100));
+        });
+        finishEvaluation();
+        onEdt(() -> {
+            filter.predicate = time -> time % 3 != 1;
+            changeFilter(VisibilityChange.ANY);
+        });
+        finishEvaluation();
+
+        onEdt(this::assertMatchesFilter);
+    }
+
+    @Test
+    public void newerChangeCancelsPendingEvaluation() throws Exception {
+        filter.predicate = time -> time % 2 == 0;
+        onEdt(() -> {
+            createTable(BACKGROUND_THRESHOLD);
+            model.addRecords(createRecords(0, 100));
+            filter.predicate = time -> time % 4 == 0;
+            changeFilter(VisibilityChange.NARROWED);
+            filter.predicate = time -> time % 3 == 0;
+            changeFilter(VisibilityChange.WIDENED);
+        });
+        finishEvaluation();
+
+        onEdt(this::assertMatchesFilter);
+    }
+
+    @Test
+    public void rowsChangedDuringEvaluationAreRetested() throws Exception {
+        filter.predicate = time -> time % 2 == 0;
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(150, 0, 0));
+            createTable(BACKGROUND_THRESHOLD);
+            model.addRecords(createRecords(0, 200, 2));
+            filter.predicate = time -> time % 4 == 0;
+            changeFilter(VisibilityChange.ANY);
+            model.addRecords(createRecords(200, 230));
+            model.addRecord(createRecord(180));
+            model.addRecords(createRecords(230, 260));
+        });
+        finishEvaluation();
+
+        onEdt(this::assertMatchesFilter);
+    }
+
+    @Test
+    public void randomChangesDuringBackgroundEvaluation() throws Exception {
+        Random random = new Random(42);
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(500, 0, 0));
+            createTable(BACKGROUND_THRESHOLD);
+        });
+        long time = 0;
+        for (int step = 0; step < 300; ++step) {
+            long currentTime = time;
+            int action = random.nextInt(5);
+            int value = random.nextInt(50);
+            onEdt(() -> {
+                switch (action) {
+                    case 0:
+                        model.addRecords(createRecords(currentTime, currentTime + value));
+                        break;
+                    case 1:
+                        model.addRecord(createRecord(Math.max(0, currentTime - value)));
+                        break;
+                    default:
+                        filter.predicate = createModulusFilter(value % 4 + 1);
+                        changeFilter(VisibilityChange.ANY);
+                        break;
+                }
+            });
+            time += action == 0 ? value : 0;
+            if (random.nextBoolean()) {
+                finishEvaluation();
+                onEdt(() -> {
+                    if (!sorter.isEvaluating()) {
+                        assertMatchesFilter();
+                    }
+                });
+            }
+        }
+        finishEvaluation();
+
+        onEdt(this::assertMatchesFilter);
+    }
+
+    private void createTable() {
+        createTable(Integer.MAX_VALUE);
+    }
+
+    private void createTable(int backgroundThreshold) {
+        JTable table = new JTable(model);
+        rowStates = new RowStateCache(model, filter);
+        sorter = new FilteredRowSorter(model, filter, rowStates, executor::add, backgroundThreshold);
+        table.setRowSorter(sorter);
+    }
+
+    private void changeFilter(VisibilityChange change) {
+        rowStates.invalidateHighlights();
+        sorter.onFilterChanged(change);
+    }
+
+    private void assertMatchesFilter() {
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < model.getRowCount(); ++i) {
+            boolean inMask = filter.rowMask == null || filter.rowMask.get(i);
+            if (inMask && filter.predicate.test(model.getRowData(i).getTimestamp())) {
+                expected.add(i);
+            }
+        }
+        List<Integer> actual = new ArrayList<>();
+        for (int i = 0; i < sorter.getViewRowCount(); ++i) {
+            actual.add(sorter.convertRowIndexToModel(i));
+        }
+        assertEquals(expected, actual);
+        for (int i = 0; i < model.getRowCount(); ++i) {
+            assertEquals(expected.indexOf(i), sorter.convertRowIndexToView(i));
+        }
+    }
+
+    private void finishEvaluation() throws Exception {
+        Runnable task;
+        while ((task = executor.poll()) != null) {
+            task.run();
+        }
+        // The result is applied on the EDT.
+        onEdt(() -> { });
+    }
+
+    private static LongPredicate createModulusFilter(int modulus) {
+        return t -> t % modulus == 0;
+    }
+
+    private static void onEdt(Runnable runnable) throws Exception {
+        EventQueue.invokeAndWait(runnable);
+    }
+
+    private static List<LogRecord> createRecords(long from, long to) {
+        return createRecords(from, to, 1);
+    }
+
+    private static List<LogRecord> createRecords(long from, long to, int step) {
+        List<LogRecord> result = new ArrayList<>();
+        for (long i = from; i < to; i += step) {
+            result.add(createRecord(i));
+        }
+        return result;
+    }
+
+    private static LogRecord createRecord(long time) {
+        return new LogRecord(time, 1, 1, "app", Priority.INFO, "tag", "message " + time, Buffer.MAIN);
+    }
+
+    private static class CountingFilter implements LogModelFilter {
+        private final Subject<Observer> observers = new Subject<>();
+        LongPredicate predicate = time -> true;
+        final AtomicInteger calls = new AtomicInteger();
+        @Nullable
+        PositionBitmap rowMask;
+
+        @Override
+        public boolean shouldShowRecord(LogRecord record) {
+            calls.incrementAndGet();
+            return predicate.test(record.getTimestamp());
+        }
+
+        @Override
+        public Predicate<LogRecord> createShowPredicate() {
+            LongPredicate snapshot = predicate;
+            return record -> {
+                calls.incrementAndGet();
+                return snapshot.test(record.getTimestamp());
+            };
+        }
+
+        @Nullable
+        @Override
+        public PositionBitmap getRowMask() {
+            return rowMask;
+        }
+
+        @Nullable
+        @Override
+        public Color getHighlightColor(LogRecord record) {
+            return null;
+        }
+
+        @Override
+        public Observable<Observer> asObservable() {
+            return observers.asObservable();
+        }
+    }
+}
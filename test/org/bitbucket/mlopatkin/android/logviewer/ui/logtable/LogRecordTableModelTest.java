@@ -0,0 +1,141 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.junit.Test;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.swing.event.TableModelEvent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class LogRecordTableModelTest {
+    private final LogRecordTableModel model = new LogRecordTableModel();
+
+    @Test
+    public void oldestRecordsAreEvictedByCount() throws Exception {
+        List<TableModelEvent> events = new ArrayList<>();
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(10, 0, 0));
+            model.addTableModelListener(events::add);
+            model.addRecords(createRecords(0, 15));
+        });
+
+        assertEquals(10, model.getRowCount());
+        assertEquals(5L, model.getRowData(0).getTimestamp());
+        TableModelEvent last = events.get(events.size() - 1);
+        assertEquals(TableModelEvent.DELETE, last.getType());
+        assertEquals(0, last.getFirstRow());
+        assertEquals(4, last.getLastRow());
+    }
+
+    @Test
+    public void lineNumbersAreStableAfterEviction() throws Exception {
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(10, 0, 0));
+            model.addRecords(createRecords(0, 15));
+            model.addRecord(createRecord(15));
+        });
+
+        assertEquals(6, model.getLineIndex(0));
+        assertEquals(7, model.getValueAt(0, Column.INDEX.ordinal()));
+    }
+
+    @Test
+    public void oldestRecordsAreEvictedByAge() throws Exception {
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(0, 0, 100));
+            model.addRecords(createRecords(0, 1000));
+        });
+
+        assertEquals(101, model.getRowCount());
+        assertEquals(899L, model.getRowData(0).getTimestamp());
+    }
+
+    @Test
+    public void oldestRecordsAreEvictedBySize() throws Exception {
+        // All messages have the same length.
+        List<LogRecord> records = createRecords(100, 200);
+        ColumnarRecordList single = new ColumnarRecordList(records.subList(0, 1));
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(0, single.getEstimatedBytes() * 20, 0));
+            model.addRecords(records);
+        });
+
+        assertEquals(20, model.getRowCount());
+    }
+
+    @Test
+    public void referencedRecordsAreReportedOnEviction() throws Exception {
+        List<LogRecord> evicted = new ArrayList<>();
+        LogRecord[] bookmarked = new LogRecord[1];
+        onEdt(() -> {
+            model.asEvictionObservable().addObserver(evicted::addAll);
+            model.addRecords(createRecords(0, 10));
+            bookmarked[0] = model.getRowData(2);
+            model.setRetentionPolicy(new RetentionPolicy(5, 0, 0));
+        });
+
+        assertEquals(Collections.singletonList(bookmarked[0]), evicted);
+        assertSame(evicted.get(0), bookmarked[0]);
+    }
+
+    @Test
+    public void appendedRecordsKeepOrderOfSource() throws Exception {
+        onEdt(() -> {
+            model.appendRecords(createRecords(10, 20));
+            model.appendRecords(createRecords(0, 10));
+        });
+
+        assertEquals(20, model.getRowCount());
+        assertEquals(10L, model.getRowData(0).getTimestamp());
+        assertEquals(0L, model.getRowData(10).getTimestamp());
+    }
+
+    @Test
+    public void unlimitedPolicyKeepsAllRecords() throws Exception {
+        onEdt(() -> model.addRecords(createRecords(0, 1000)));
+
+        assertEquals(1000, model.getRowCount());
+        assertTrue(RetentionPolicy.unlimited().isUnlimited());
+    }
+
+    private static void onEdt(Runnable runnable) throws Exception {
+        EventQueue.invokeAndWait(runnable);
+    }
+
+    private static List<LogRecord> createRecords(int from, int to) {
+        List<LogRecord> result = new ArrayList<>();
+        for (int i = from; i < to; ++i) {
+            result.add(createRecord(i));
+        }
+        return result;
+    }
+
+    private static LogRecord createRecord(long time) {
+        return new LogRecord(time, 1, 1, "app", Priority.INFO, "tag", "message " + time, Buffer.MAIN);
+    }
+}
@@ -0,0 +1,221 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Predicate;
+
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Buffer;
+import org.bitbucket.mlopatkin.android.liblogcat.LogRecord.Priority;
+import org.bitbucket.mlopatkin.utils.events.Observable;
+import org.bitbucket.mlopatkin.utils.events.Subject;
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.Nullable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RowStateCacheTest {
+    private final LogRecordTableModel model = new LogRecordTableModel();
+    private final ColoringFilter filter = new ColoringFilter();
+    private RowStateCache cache;
+
+    @Test
+    public void colorIsComputedOncePerRow() throws Exception {
+        onEdt(() -> {
+            cache = new RowStateCache(model, filter);
+            model.addRecords(createRecords(0, 10));
+            for (int column = 0; column < 5; ++column) {
+                for (int row = 0; row < 10; ++row) {
+                    assertEquals(expectedColor(row), cache.getHighlightColor(row));
+                }
+            }
+        });
+
+        assertEquals(10, filter.calls);
+    }
+
+    @Test
+    public void colorsAreRecomputedAfterFilterChange() throws Exception {
+        onEdt(() -> {
+            cache = new RowStateCache(model, filter);
+            model.addRecords(createRecords(0, 10));
+            assertEquals(Color.RED, cache.getHighlightColor(3));
+
+            filter.color = Color.BLUE;
+            cache.invalidateHighlights();
+
+            assertEquals(Color.BLUE, cache.getHighlightColor(3));
+            assertNull(cache.getHighlightColor(4));
+        });
+    }
+
+    @Test
+    public void statesFollowRowsWhenModelChanges() throws Exception {
+        onEdt(() -> {
+            model.setRetentionPolicy(new RetentionPolicy(20, 0, 0));
+            cache = new RowStateCache(model, filter);
+            for (int i = 0; i < 10; ++i) {
+                model.addRecords(createRecords(i * 10, (i + 1) * 10));
+                // Late record is merged into the middle.
+                model.addRecord(createRecord(i * 10 + 4));
+                assertStatesMatch();
+            }
+        });
+    }
+
+    @Test
+    public void marksAreCached() throws Exception {
+        Set<Integer> marked = new HashSet<>();
+        onEdt(() -> {
+            cache = new RowStateCache(model, filter);
+            model.addRecords(createRecords(0, 10));
+            cache.setMarker(marked::contains);
+            assertFalse(cache.isMarked(2));
+
+            marked.add(2);
+            assertFalse(cache.isMarked(2));
+            cache.invalidateMarks();
+            assertTrue(cache.isMarked(2));
+            assertFalse(cache.isMarked(3));
+        });
+    }
+
+    @Test
+    public void visibilityIsCachedUntilFilterChange() throws Exception {
+        onEdt(() -> {
+            cache = new RowStateCache(model, filter);
+            model.addRecords(createRecords(0, 10));
+            assertTrue(cache.isVisible(3));
+            assertTrue(cache.isVisible(3));
+            assertEquals(1, filter.showCalls);
+
+            filter.shown = false;
+            assertTrue(cache.isVisible(3));
+            cache.invalidateHighlights();
+            assertFalse(cache.isVisible(3));
+            assertEquals(2, filter.showCalls);
+        });
+    }
+
+    @Test
+    public void marksFollowInsertedRows() throws Exception {
+        Set<Long> marked = new HashSet<>();
+        onEdt(() -> {
+            cache = new RowStateCache(model, filter);
+            model.addRecords(createRecords(0, 10, 2));
+            cache.setMarker(row -> marked.contains(model.getRowData(row).getTimestamp()));
+            marked.add(8L);
+            cache.invalidateMarks();
+            assertTrue(cache.isMarked(4));
+
+            // The merged record shifts the marked one, the cached mark follows it.
+            model.addRecord(createRecord(3));
+            marked.clear();
+            assertTrue(cache.isMarked(5));
+            assertFalse(cache.isMarked(4));
+        });
+    }
+
+    @Test
+    public void statesAreDroppedWhenGenerationsWrapAround() throws Exception {
+        onEdt(() -> {
+            cache = new RowStateCache(model, filter);
+            model.addRecords(createRecords(0, 10));
+            assertEquals(Color.RED, cache.getHighlightColor(3));
+            filter.color = Color.BLUE;
+            // Every generation of the stamp is used at least once.
+            for (int i = 0; i < 1 << 22; ++i) {
+                cache.invalidateHighlights();
+            }
+
+            assertEquals(Color.BLUE, cache.getHighlightColor(3));
+        });
+    }
+
+    private void assertStatesMatch() {
+        for (int row = 0; row < model.getRowCount(); ++row) {
+            assertEquals(expectedColor(model.getRowData(row).getTimestamp()), cache.getHighlightColor(row));
+        }
+    }
+
+    @Nullable
+    private Color expectedColor(long time) {
+        return time % 3 == 0 ? filter.color : null;
+    }
+
+    private static void onEdt(Runnable runnable) throws Exception {
+        EventQueue.invokeAndWait(runnable);
+    }
+
+    private static List<LogRecord> createRecords(long from, long to) {
+        return createRecords(from, to, 1);
+    }
+
+    private static List<LogRecord> createRecords(long from, long to, int step) {
+        List<LogRecord> result = new ArrayList<>();
+        for (long i = from; i < to; i += step) {
+            result.add(createRecord(i));
+        }
+        return result;
+    }
+
+    private static LogRecord createRecord(long time) {
+        return new LogRecord(time, 1, 1, "app", Priority.INFO, "tag", "message " + time, Buffer.MAIN);
+    }
+
+    private static class ColoringFilter implements LogModelFilter {
+        private final Subject<Observer> observers = new Subject<>();
+        Color color = Color.RED;
+        boolean shown = true;
+        int calls;
+        int showCalls;
+
+        @Override
+        public boolean shouldShowRecord(LogRecord record) {
+            ++showCalls;
+            return shown;
+        }
+
+        @Override
+        public Predicate<LogRecord> createShowPredicate() {
+            return record -> true;
+        }
+
+        @Nullable
+        @Override
+        public Color getHighlightColor(LogRecord record) {
+            ++calls;
+            return record.getTimestamp() % 3 == 0 ? color : null;
+        }
+
+        @Override
+        public Observable<Observer> asObservable() {
+            return observers.asObservable();
+        }
+    }
+}
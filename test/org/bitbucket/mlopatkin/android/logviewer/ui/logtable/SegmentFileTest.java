@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.android.logviewer.ui.logtable;
+
+import com.google.common.base.Strings;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class SegmentFileTest {
+    private static final String CYRILLIC = "\u041f\u0440\u0438\u0432\u0435\u0442";
+    private static final String EMOJI = "\ud83d\ude00";
+    private static final String UNPAIRED_SURROGATE = "\ud83d";
+
+    private SegmentFile file;
+
+    @Before
+    public void setUp() throws Exception {
+        file = SegmentFile.createTemporary();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        file.close();
+    }
+
+    @Test
+    public void segmentsAreReadBack() throws Exception {
+        char[] first = "first segment".toCharArray();
+        char[] second = Strings.repeat("second ", 1000).toCharArray();
+
+        long firstOffset = file.append(first, first.length);
+        long secondOffset = file.append(second, second.length);
+
+        assertArrayEquals(second, file.read(secondOffset));
+        assertArrayEquals(first, file.read(firstOffset));
+    }
+
+    @Test
+    public void onlyPrefixIsStored() throws Exception {
+        char[] chars = "prefix and garbage".toCharArray();
+
+        long offset = file.append(chars, "prefix".length());
+
+        assertEquals("prefix", new String(file.read(offset)));
+    }
+
+    @Test
+    public void asciiIsStoredCompactly() throws Exception {
+        char[] chars = Strings.repeat("a", 1000).toCharArray();
+
+        file.append(chars, chars.length);
+
+        assertTrue(file.size() < 2 * chars.length);
+    }
+
+    @Test
+    public void nonAsciiCharsAreStored() throws Exception {
+        assertRoundTrip(CYRILLIC + " " + EMOJI);
+    }
+
+    @Test
+    public void unpairedSurrogatesAreStored() throws Exception {
+        assertRoundTrip("before " + UNPAIRED_SURROGATE + " after");
+    }
+
+    private void assertRoundTrip(String value) throws Exception {
+        char[] chars = value.toCharArray();
+
+        long offset = file.append(chars, chars.length);
+
+        assertEquals(value, new String(file.read(offset)));
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class AhoCorasickMatcherTest {
+    @Test
+    public void overlappingPatternsAreFound() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("he", "she", "his", "hers"), false);
+
+        assertEquals(0b1011, find(matcher, "ushers"));
+        assertEquals(0b0100, find(matcher, "this"));
+        assertEquals(0, find(matcher, "hxs"));
+    }
+
+    @Test
+    public void asciiCaseIsIgnored() {
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(Arrays.asList("Activity", "GC_"), true);
+
+        assertEquals(0b11, find(matcher, "ACTIVITY gc_concurrent"));
+        assertEquals(0, find(new AhoCorasickMatcher(Arrays.asList("Activity"), false), "ACTIVITY"));
+    }
+
+    @Test
+    public void nonAsciiCharsAreMatchedExactly() {
+        AhoCorasickMatcher matcher =
+                new AhoCorasickMatcher(Arrays.asList("\u00e9t\u00e9", "t\u00e9", "\u044f\u044f"), true);
+
+        assertEquals(0b011, find(matcher, "l'\u00e9t\u00e9"));
+        assertEquals(0b100, find(matcher, "\u044f\u044f\u044f"));
+        assertEquals(0, find(matcher, "\u00c9T\u00c9 \u042f\u042f"));
+    }
+
+    @Test
+    public void manyPatternsAreFound() {
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            patterns.add("p" + i + ";");
+        }
+        AhoCorasickMatcher matcher = new AhoCorasickMatcher(patterns, true);
+        long[] result = new long[matcher.getResultSize()];
+
+        assertTrue(matcher.findAll("P3; p70; p99;", result));
+        assertArrayEquals(new long[] {1L << 3, (1L << (70 - 64)) | (1L << (99 - 64))}, result);
+        assertFalse(matcher.findAll("p100;", new long[2]));
+    }
+
+    @Test
+    public void resultIsSameAsOfLiteralPatterns() {
+        Random random = new Random(42);
+        String alphabet = "abAB\u00e9\u00c9 ";
+        for (int iteration = 0; iteration < 200; ++iteration) {
+            List<String> patterns = new ArrayList<>();
+            for (int i = 0; i < 1 + random.nextInt(10); ++i) {
+                patterns.add(randomString(random, alphabet, 1 + random.nextInt(4)));
+            }
+            AhoCorasickMatcher matcher = new AhoCorasickMatcher(patterns, true);
+            String text = randomString(random, alphabet, random.nextInt(30));
+
+            long expected = 0;
+            for (int i = 0; i < patterns.size(); ++i) {
+                if (Pattern.compile(patterns.get(i), Pattern.LITERAL | Pattern.CASE_INSENSITIVE)
+                           .matcher(text)
+                           .find()) {
+                    expected |= 1L << i;
+                }
+            }
+            assertEquals(patterns + " in " + text, expected, find(matcher, text));
+        }
+    }
+
+    private static long find(AhoCorasickMatcher matcher, String text) {
+        long[] result = new long[matcher.getResultSize()];
+        matcher.findAll(text, result);
+        return result[0];
+    }
+
+    private static String randomString(Random random, String alphabet, int length) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < length; ++i) {
+            result.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return result.toString();
+    }
+}
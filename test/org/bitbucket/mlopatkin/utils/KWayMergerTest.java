@@ -0,0 +1,146 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.bitbucket.mlopatkin.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static org.bitbucket.mlopatkin.utils.ListTestUtils.list;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KWayMergerTest {
+    // Elements are compared by the value only, the stream and the sequence number make equal elements
+    // distinguishable.
+    private static final Comparator<Element> BY_VALUE = Comparator.comparingInt(e -> e.value);
+
+    private final Random random = new Random(42);
+
+    @Test
+    public void sortedListsAreMerged() {
+        List<Integer> merged = KWayMerger.merge(Arrays.asList(list(1, 4, 7), list(2, 5, 8), list(3, 6, 9)),
+                                                Comparator.<Integer>naturalOrder());
+
+        assertEquals(list(1, 2, 3, 4, 5, 6, 7, 8, 9), merged);
+    }
+
+    @Test
+    public void emptyListsAreMerged() {
+        List<Integer> merged = KWayMerger.merge(Arrays.asList(list(), list(1, 2), list()),
+                                                Comparator.<Integer>naturalOrder());
+
+        assertEquals(list(1, 2), merged);
+        assertTrue(KWayMerger.merge(Collections.<List<Integer>>emptyList(), Comparator.<Integer>naturalOrder())
+                             .isEmpty());
+    }
+
+    @Test
+    public void equalElementsAreTakenInListOrder() {
+        List<Element> first = Arrays.asList(new Element(0, 1, 0), new Element(0, 2, 1));
+        List<Element> second = Arrays.asList(new Element(1, 1, 0), new Element(1, 2, 1));
+
+        List<Element> merged = KWayMerger.merge(Arrays.asList(second, first), BY_VALUE);
+
+        assertEquals(Arrays.asList(second.get(0), first.get(0), second.get(1), first.get(1)), merged);
+    }
+
+    @Test
+    public void almostSortedStreamsGiveStableSortResult() {
+        for (int iteration = 0; iteration < 50; ++iteration) {
+            checkSameAsStableSort(createStreams(4, 500, 5));
+        }
+    }
+
+    @Test
+    public void farOutOfOrderElementsAreSorted() {
+        for (int iteration = 0; iteration < 20; ++iteration) {
+            checkSameAsStableSort(createStreams(3, 500, 5 * KWayMerger.MAX_OUT_OF_ORDER_DISTANCE));
+        }
+    }
+
+    @Test
+    public void reverseOrderIsSorted() {
+        List<Integer> list = new ArrayList<>();
+        for (int i = 1000; i > 0; --i) {
+            list.add(i);
+        }
+
+        KWayMerger.sortAlmostSorted(list, Comparator.<Integer>naturalOrder());
+
+        for (int i = 0; i < list.size(); ++i) {
+            assertEquals(i + 1, list.get(i).intValue());
+        }
+    }
+
+    @Test
+    public void mergerIsClearedAfterDrain() {
+        KWayMerger<Element> merger = new KWayMerger<>(BY_VALUE, e -> e.stream);
+        merger.add(new Element(0, 1, 0));
+        assertEquals(1, merger.drain().size());
+
+        assertTrue(merger.isEmpty());
+        assertTrue(merger.drain().isEmpty());
+    }
+
+    private void checkSameAsStableSort(List<Element> elements) {
+        KWayMerger<Element> merger = new KWayMerger<>(BY_VALUE, e -> e.stream);
+        merger.addAll(elements);
+        assertEquals(elements.size(), merger.size());
+
+        List<Element> expected = new ArrayList<>(elements);
+        // Streams are ordered by the first appearance, which matches the stream number here.
+        expected.sort(BY_VALUE.thenComparingInt(e -> e.stream).thenComparingInt(e -> e.sequence));
+
+        assertEquals(expected, merger.drain());
+    }
+
+    /**
+     * Creates the interleaved streams, values of each stream are increasing with random jitter.
+     */
+    private List<Element> createStreams(int streamCount, int streamSize, int maxJitter) {
+        List<Element> result = new ArrayList<>();
+        int[] sequences = new int[streamCount];
+        for (int i = 0; i < streamCount * streamSize; ++i) {
+            int stream = i < streamCount ? i : random.nextInt(streamCount);
+            int value = i / 4 - random.nextInt(maxJitter + 1);
+            result.add(new Element(stream, value, sequences[stream]++));
+        }
+        return result;
+    }
+
+    private static final class Element {
+        final int stream;
+        final int value;
+        final int sequence;
+
+        Element(int stream, int value, int sequence) {
+            this.stream = stream;
+            this.value = value;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public String toString() {
+            return stream + ":" + value + ":" + sequence;
+        }
+    }
+}
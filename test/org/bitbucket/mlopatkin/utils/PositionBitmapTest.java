@@ -0,0 +1,109 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.utils;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PositionBitmapTest {
+    @Test
+    public void setPositionsAreFound() {
+        PositionBitmap bitmap = new PositionBitmap();
+        bitmap.set(3);
+        bitmap.set(64);
+        bitmap.set(1000);
+
+        assertTrue(bitmap.get(64));
+        assertFalse(bitmap.get(65));
+        assertFalse(bitmap.get(100000));
+        assertEquals(1000, bitmap.nextSetBit(65));
+        assertEquals(-1, bitmap.nextSetBit(1001));
+        assertEquals(2, bitmap.rank(1000));
+        assertEquals(3, bitmap.cardinality());
+        assertArrayEquals(new int[] {3, 64, 1000}, bitmap.toArray());
+    }
+
+    @Test
+    public void clearedBitmapIsEmpty() {
+        PositionBitmap bitmap = new PositionBitmap();
+        bitmap.set(70);
+        bitmap.clear(70);
+        assertTrue(bitmap.isEmpty());
+
+        bitmap.set(1);
+        bitmap.set(130);
+        bitmap.clear();
+        assertTrue(bitmap.isEmpty());
+        assertEquals(0, bitmap.cardinality());
+    }
+
+    @Test
+    public void copyIsIndependent() {
+        PositionBitmap bitmap = new PositionBitmap();
+        bitmap.set(5);
+        PositionBitmap copy = bitmap.copy();
+        bitmap.set(6);
+        copy.clear(5);
+
+        assertArrayEquals(new int[] {5, 6}, bitmap.toArray());
+        assertTrue(copy.isEmpty());
+    }
+
+    @Test
+    public void shiftsMatchListOperations() {
+        Random random = new Random(42);
+        PositionBitmap bitmap = new PositionBitmap();
+        List<Boolean> expected = new ArrayList<>();
+        for (int step = 0; step < 1000; ++step) {
+            int from = random.nextInt(expected.size() + 1);
+            int count = random.nextInt(100);
+            if (random.nextBoolean() || expected.isEmpty()) {
+                bitmap.insertRange(from, count);
+                for (int i = 0; i < count; ++i) {
+                    boolean value = random.nextInt(5) == 0;
+                    expected.add(from + i, value);
+                    if (value) {
+                        bitmap.set(from + i);
+                    }
+                }
+            } else {
+                count = Math.min(count, expected.size() - from);
+                bitmap.removeRange(from, count);
+                expected.subList(from, from + count).clear();
+            }
+            assertEquals(toPositions(expected), bitmap.toString());
+        }
+    }
+
+    private static String toPositions(List<Boolean> values) {
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < values.size(); ++i) {
+            if (values.get(i)) {
+                positions.add(i);
+            }
+        }
+        return positions.toString();
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.utils;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Finds all of the given substrings in the text in a single pass with the Aho-Corasick automaton. The ASCII letters
+ * may be matched ignoring case, the same way as {@link java.util.regex.Pattern#CASE_INSENSITIVE} without
+ * {@link java.util.regex.Pattern#UNICODE_CASE} does.
+ * <p>
+ * The matcher is immutable and thread-safe.
+ */
+public final class AhoCorasickMatcher {
+    private static final int ASCII_SIZE = 128;
+    private static final int ROOT = 0;
+
+    private final int patternCount;
+    private final boolean ignoreAsciiCase;
+    // The transitions of the automaton on ASCII chars, ASCII_SIZE entries per state.
+    private final int[] asciiTransitions;
+    // The trie edges on the other chars, null if the state has none. The transitions follow the failure links.
+    private final List<Map<Character, Integer>> otherEdges;
+    private final int[] failureLinks;
+    // The patterns that end at the state, including the ones reachable by the failure links. Null if there are none.
+    private final long[][] outputs;
+
+    /**
+     * @param patterns the non-empty patterns to find, the index of the pattern in the list is its id
+     * @param ignoreAsciiCase if {@code true} then ASCII letters are matched ignoring case
+     */
+    public AhoCorasickMatcher(List<String> patterns, boolean ignoreAsciiCase) {
+        this.patternCount = patterns.size();
+        this.ignoreAsciiCase = ignoreAsciiCase;
+        List<Map<Character, Integer>> edges = new ArrayList<>();
+        List<long[]> patternEnds = new ArrayList<>();
+        edges.add(new HashMap<>());
+        patternEnds.add(null);
+        for (int id = 0; id < patterns.size(); ++id) {
+            String pattern = patterns.get(id);
+            Preconditions.checkArgument(!pattern.isEmpty(), "Empty pattern");
+            int state = ROOT;
+            for (int i = 0; i < pattern.length(); ++i) {
+                char c = fold(pattern.charAt(i));
+                Integer next = edges.get(state).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new HashMap<>());
+                    patternEnds.add(null);
+                    edges.get(state).put(c, next);
+                }
+                state = next;
+            }
+            long[] ends = patternEnds.get(state);
+            if (ends == null) {
+                ends = new long[getResultSize()];
+                patternEnds.set(state, ends);
+            }
+            ends[id / Long.SIZE] |= 1L << id;
+        }
+        int stateCount = edges.size();
+        asciiTransitions = new int[stateCount * ASCII_SIZE];
+        otherEdges = new ArrayList<>(Collections.nCopies(stateCount, null));
+        failureLinks = new int[stateCount];
+        outputs = patternEnds.toArray(new long[stateCount][]);
+        buildAutomaton(edges);
+    }
+
+    /**
+     * Computes the failure links and the ASCII transitions in the breadth-first order, so the ones of the shorter
+     * prefixes are ready.
+     */
+    private void buildAutomaton(List<Map<Character, Integer>> edges) {
+        Queue<Integer> queue = new ArrayDeque<>();
+        for (int c = 0; c < ASCII_SIZE; ++c) {
+            Integer next = edges.get(ROOT).get((char) c);
+            asciiTransitions[c] = next != null ? next : ROOT;
+            if (next != null) {
+                queue.add(next);
+            }
+        }
+        addOtherEdges(ROOT, edges.get(ROOT), queue);
+        while (!queue.isEmpty()) {
+            int state = queue.remove();
+            Map<Character, Integer> stateEdges = edges.get(state);
+            int failure = failureLinks[state];
+            mergeOutputs(state, failure);
+            for (int c = 0; c < ASCII_SIZE; ++c) {
+                Integer next = stateEdges.get((char) c);
+                if (next != null) {
+                    failureLinks[next] = asciiTransitions[failure * ASCII_SIZE + c];
+                    asciiTransitions[state * ASCII_SIZE + c] = next;
+                    queue.add(next);
+                } else {
+                    asciiTransitions[state * ASCII_SIZE + c] = asciiTransitions[failure * ASCII_SIZE + c];
+                }
+            }
+            for (Map.Entry<Character, Integer> edge : stateEdges.entrySet()) {
+                if (edge.getKey() >= ASCII_SIZE) {
+                    failureLinks[edge.getValue()] = getTransition(failure, edge.getKey());
+                }
+            }
+            addOtherEdges(state, stateEdges, queue);
+        }
+    }
+
+    private void addOtherEdges(int state, Map<Character, Integer> stateEdges, Queue<Integer> queue) {
+        for (Map.Entry<Character, Integer> edge : stateEdges.entrySet()) {
+            if (edge.getKey() >= ASCII_SIZE) {
+                Map<Character, Integer> edges = otherEdges.get(state);
+                if (edges == null) {
+                    edges = new HashMap<>();
+                    otherEdges.set(state, edges);
+                }
+                edges.put(edge.getKey(), edge.getValue());
+                queue.add(edge.getValue());
+            }
+        }
+    }
+
+    private void mergeOutputs(int state, int failure) {
+        long[] inherited = outputs[failure];
+        if (inherited == null) {
+            return;
+        }
+        if (outputs[state] == null) {
+            outputs[state] = inherited;
+            return;
+        }
+        long[] merged = outputs[state].clone();
+        for (int i = 0; i < merged.length; ++i) {
+            merged[i] |= inherited[i];
+        }
+        outputs[state] = merged;
+    }
+
+    public int getPatternCount() {
+        return patternCount;
+    }
+
+    /**
+     * @return the size of the bitmap for {@link #findAll(CharSequence, long[])}
+     */
+    public int getResultSize() {
+        return (patternCount + Long.SIZE - 1) / Long.SIZE;
+    }
+
+    /**
+     * Finds the patterns that occur in the text. The bit {@code id} of the result is set if the pattern {@code id}
+     * occurs, the bits of the other patterns aren't changed.
+     *
+     * @param text the text to search in
+     * @param result the bitmap of at least {@link #getResultSize()} elements
+     * @return {@code true} if any pattern occurs in the text
+     */
+    public boolean findAll(CharSequence text, long[] result) {
+        boolean found = false;
+        int state = ROOT;
+        for (int i = 0; i < text.length(); ++i) {
+            state = getTransition(state, fold(text.charAt(i)));
+            long[] output = outputs[state];
+            if (output != null) {
+                found = true;
+                for (int j = 0; j < output.length; ++j) {
+                    result[j] |= output[j];
+                }
+            }
+        }
+        return found;
+    }
+
+    private int getTransition(int state, char c) {
+        if (c < ASCII_SIZE) {
+            return asciiTransitions[state * ASCII_SIZE + c];
+        }
+        int current = state;
+        while (true) {
+            Map<Character, Integer> edges = otherEdges.get(current);
+            Integer next = edges != null ? edges.get(c) : null;
+            if (next != null) {
+                return next;
+            }
+            if (current == ROOT) {
+                return ROOT;
+            }
+            current = failureLinks[current];
+        }
+    }
+
+    private char fold(char c) {
+        return ignoreAsciiCase && c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c;
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.utils;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Merges several streams of elements into one sorted list. Elements are routed into streams by the key, e.g. log
+ * records by the buffer. Each stream is expected to be almost sorted: the elements that are out of order are only
+ * slightly out of order. Such streams are sorted in linear time and then merged in O(n log k).
+ * <p>
+ * The result is the same as of the stable sort of all added elements: the equal elements of the same stream keep
+ * their order, the equal elements of the different streams are ordered by the first appearance of the stream.
+ * <p>
+ * This class isn't thread-safe.
+ *
+ * @param <T> the type of the elements
+ */
+public class KWayMerger<T> {
+    /**
+     * Elements that have to be moved further back than this fall back to the regular sort of the stream.
+     */
+    static final int MAX_OUT_OF_ORDER_DISTANCE = 64;
+
+    private final Comparator<? super T> comparator;
+    private final Function<? super T, ?> streamKey;
+    private final Map<Object, List<T>> streams = new LinkedHashMap<>();
+    private int size;
+
+    public KWayMerger(Comparator<? super T> comparator, Function<? super T, ?> streamKey) {
+        this.comparator = comparator;
+        this.streamKey = streamKey;
+    }
+
+    public void add(T element) {
+        Object key = streamKey.apply(element);
+        List<T> stream = streams.get(key);
+        if (stream == null) {
+            stream = new ArrayList<>();
+            streams.put(key, stream);
+        }
+        stream.add(element);
+        ++size;
+    }
+
+    public void addAll(List<? extends T> elements) {
+        for (T element : elements) {
+            add(element);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns all added elements in sorted order and clears this merger.
+     */
+    public List<T> drain() {
+        List<List<T>> sortedStreams = new ArrayList<>(streams.values());
+        for (List<T> stream : sortedStreams) {
+            sortAlmostSorted(stream, comparator);
+        }
+        streams.clear();
+        size = 0;
+        return merge(sortedStreams, comparator);
+    }
+
+    /**
+     * Sorts the list that is almost sorted with insertion sort. The sort is stable. If an element is too far from its
+     * place, the list is sorted with {@link List#sort(Comparator)} instead, so the worst case is still O(n log n).
+     */
+    public static <T> void sortAlmostSorted(List<T> list, Comparator<? super T> comparator) {
+        for (int i = 1; i < list.size(); ++i) {
+            T element = list.get(i);
+            if (comparator.compare(list.get(i - 1), element) <= 0) {
+                continue;
+            }
+            int pos = i - 1;
+            while (pos > 0 && comparator.compare(list.get(pos - 1), element) > 0) {
+                if (i - pos >= MAX_OUT_OF_ORDER_DISTANCE) {
+                    list.sort(comparator);
+                    return;
+                }
+                --pos;
+            }
+            for (int j = i; j > pos; --j) {
+                list.set(j, list.get(j - 1));
+            }
+            list.set(pos, element);
+        }
+    }
+
+    /**
+     * Merges the sorted lists in O(n log k). Equal elements are taken in the order of the lists.
+     *
+     * @param sortedLists the lists, each one must be sorted according to the comparator
+     * @return the new list with all elements in sorted order
+     */
+    public static <T> List<T> merge(List<? extends List<? extends T>> sortedLists, Comparator<? super T> comparator) {
+        int total = 0;
+        for (List<? extends T> list : sortedLists) {
+            total += list.size();
+        }
+        List<T> result = new ArrayList<>(total);
+        if (sortedLists.size() == 1) {
+            result.addAll(sortedLists.get(0));
+            return result;
+        }
+        new Heap<T>(sortedLists, comparator).drainTo(result);
+        return result;
+    }
+
+    /**
+     * Binary min-heap of the list indices ordered by the current element of the list and then by the index.
+     */
+    private static class Heap<T> {
+        private final List<? extends List<? extends T>> lists;
+        private final Comparator<? super T> comparator;
+        private final int[] positions;
+        private final int[] heap;
+        private int heapSize;
+
+        Heap(List<? extends List<? extends T>> lists, Comparator<? super T> comparator) {
+            this.lists = lists;
+            this.comparator = comparator;
+            this.positions = new int[lists.size()];
+            this.heap = new int[lists.size()];
+            for (int i = 0; i < lists.size(); ++i) {
+                if (!lists.get(i).isEmpty()) {
+                    heap[heapSize++] = i;
+                }
+            }
+            for (int i = heapSize / 2 - 1; i >= 0; --i) {
+                siftDown(i);
+            }
+        }
+
+        void drainTo(List<T> result) {
+            while (heapSize > 0) {
+                int top = heap[0];
+                List<? extends T> list = lists.get(top);
+                result.add(list.get(positions[top]++));
+                if (positions[top] == list.size()) {
+                    heap[0] = heap[--heapSize];
+                }
+                siftDown(0);
+            }
+        }
+
+        private void siftDown(int index) {
+            int current = index;
+            while (true) {
+                int smallest = current;
+                int left = 2 * current + 1;
+                int right = left + 1;
+                if (left < heapSize && less(heap[left], heap[smallest])) {
+                    smallest = left;
+                }
+                if (right < heapSize && less(heap[right], heap[smallest])) {
+                    smallest = right;
+                }
+                if (smallest == current) {
+                    return;
+                }
+                int tmp = heap[current];
+                heap[current] = heap[smallest];
+                heap[smallest] = tmp;
+                current = smallest;
+            }
+        }
+
+        private boolean less(int a, int b) {
+            int cmp = comparator.compare(lists.get(a).get(positions[a]), lists.get(b).get(positions[b]));
+            return cmp < 0 || (cmp == 0 && a < b);
+        }
+    }
+}
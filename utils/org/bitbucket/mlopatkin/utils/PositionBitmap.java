@@ -0,0 +1,174 @@
+/*
+ * Copyright 2018 Mikhail Lopatkin
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.bitbucket.mlopatkin.utils;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+/**
+ * Set of positions in a list, e.g. the rows of a table, stored as a bitmap. The positions can follow the elements
+ * when the elements are inserted into or removed from the list. Membership checks take constant time. The shifts move
+ * the set bits one by one, so the bitmap is intended for sparse sets.
+ * <p>
+ * This class isn't thread-safe.
+ */
+public final class PositionBitmap {
+    private long[] words;
+
+    public PositionBitmap() {
+        this(new long[1]);
+    }
+
+    private PositionBitmap(long[] words) {
+        this.words = words;
+    }
+
+    public boolean get(int position) {
+        Preconditions.checkArgument(position >= 0, "Negative position %s", position);
+        int word = position / Long.SIZE;
+        return word < words.length && (words[word] & (1L << position)) != 0;
+    }
+
+    public void set(int position) {
+        Preconditions.checkArgument(position >= 0, "Negative position %s", position);
+        int word = position / Long.SIZE;
+        if (word >= words.length) {
+            words = Arrays.copyOf(words, Math.max(word + 1, words.length * 2));
+        }
+        words[word] |= 1L << position;
+    }
+
+    public void clear(int position) {
+        Preconditions.checkArgument(position >= 0, "Negative position %s", position);
+        int word = position / Long.SIZE;
+        if (word < words.length) {
+            words[word] &= ~(1L << position);
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(words, 0);
+    }
+
+    /**
+     * @return the first set position that is not less than {@code from} or -1 if there is none
+     */
+    public int nextSetBit(int from) {
+        int word = from / Long.SIZE;
+        if (word >= words.length) {
+            return -1;
+        }
+        long bits = words[word] & (-1L << from);
+        while (true) {
+            if (bits != 0) {
+                return word * Long.SIZE + Long.numberOfTrailingZeros(bits);
+            }
+            if (++word == words.length) {
+                return -1;
+            }
+            bits = words[word];
+        }
+    }
+
+    /**
+     * @return the number of the set positions less than {@code position}
+     */
+    public int rank(int position) {
+        int lastWord = Math.min(position / Long.SIZE, words.length);
+        int result = 0;
+        for (int i = 0; i < lastWord; ++i) {
+            result += Long.bitCount(words[i]);
+        }
+        if (lastWord < words.length && position % Long.SIZE != 0) {
+            result += Long.bitCount(words[lastWord] & ~(-1L << position));
+        }
+        return result;
+    }
+
+    /**
+     * @return the number of the set positions
+     */
+    public int cardinality() {
+        return rank(words.length * Long.SIZE);
+    }
+
+    public boolean isEmpty() {
+        for (long word : words) {
+            if (word != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the set positions in ascending order
+     */
+    public int[] toArray() {
+        return toArray(0);
+    }
+
+    /**
+     * Shifts the positions starting from {@code from} by {@code count}, as if {@code count} elements were inserted at
+     * {@code from}. The inserted positions aren't set.
+     */
+    public void insertRange(int from, int count) {
+        Preconditions.checkArgument(from >= 0 && count >= 0, "Invalid range %s, %s", from, count);
+        int[] shifted = toArray(from);
+        for (int i = shifted.length - 1; i >= 0; --i) {
+            clear(shifted[i]);
+            set(shifted[i] + count);
+        }
+    }
+
+    /**
+     * Removes the positions {@code [from, from + count)} and shifts the following ones back by {@code count}, as if the
+     * elements were removed.
+     */
+    public void removeRange(int from, int count) {
+        Preconditions.checkArgument(from >= 0 && count >= 0, "Invalid range %s, %s", from, count);
+        for (int pos = nextSetBit(from); pos >= 0 && pos < from + count; pos = nextSetBit(pos + 1)) {
+            clear(pos);
+        }
+        for (int pos : toArray(from + count)) {
+            clear(pos);
+            set(pos - count);
+        }
+    }
+
+    /**
+     * @return the independent copy of this bitmap
+     */
+    public PositionBitmap copy() {
+        return new PositionBitmap(words.clone());
+    }
+
+    private int[] toArray(int from) {
+        int[] result = new int[cardinality() - rank(from)];
+        int count = 0;
+        for (int pos = nextSetBit(from); pos >= 0; pos = nextSetBit(pos + 1)) {
+            result[count++] = pos;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+}